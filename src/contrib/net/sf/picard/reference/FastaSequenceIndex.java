@@ -170,6 +170,24 @@ public class FastaSequenceIndex implements Iterable<FastaSequenceIndexEntry> {
         return sequenceEntries.get(contigName);
     }
 
+    /**
+     * @param contigName Name of the contig for which to search.
+     * @return Number of bases in the given contig.
+     * @throws PicardException if the associated index entry can't be found.
+     */
+    public long getSize( String contigName ) {
+        return getIndexEntry(contigName).getSize();
+    }
+
+    /**
+     * @param contigName Name of the contig for which to search.
+     * @return Zero-based index of the given contig in the fasta file.
+     * @throws PicardException if the associated index entry can't be found.
+     */
+    public int getSequenceIndex( String contigName ) {
+        return getIndexEntry(contigName).getSequenceIndex();
+    }
+
     /**
      * Creates an iterator which can iterate through all entries in a fasta index.
      * @return iterator over all fasta index entries.
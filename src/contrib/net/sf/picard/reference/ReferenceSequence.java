@@ -24,6 +24,8 @@
 
 package contrib.net.sf.picard.reference;
 
+import java.util.Arrays;
+
 /**
  * Wrapper around a reference sequence that has been read from a reference file.
  *
@@ -49,6 +51,17 @@ public class ReferenceSequence {
         this.length = bases.length;
     }
 
+    /**
+     * For subclasses that do not hold the bases in an array; such subclasses must
+     * override {@link #getBase}, {@link #getBases(int, int)} and {@link #getBases()}
+     */
+    protected ReferenceSequence(String name, int index, int length) {
+        this.name = name;
+        this.contigIndex = index;
+        this.bases = null;
+        this.length = length;
+    }
+
     /** Gets the set of names given to this sequence in the source file. */
     public String getName() { return name; }
 
@@ -60,6 +73,15 @@ public class ReferenceSequence {
      */
     public byte[] getBases() { return bases; }
 
+    /** Gets the base at the given 0-based position, without copying any array. */
+    public byte getBase(int position) { return bases[position]; }
+
+    /**
+     * Gets a copy of the bases from position from (inclusive) to position to
+     * (exclusive), both 0-based.
+     */
+    public byte[] getBases(int from, int to) { return Arrays.copyOfRange(bases, from, to); }
+
     /** Gets the 0-based index of this contig in the source file from which it came. */
     public int getContigIndex() { return contigIndex; }
 
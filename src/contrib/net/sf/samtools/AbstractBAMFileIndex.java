@@ -345,6 +345,16 @@ public abstract class AbstractBAMFileIndex implements BAMIndex {
 
     abstract protected BAMIndexContent getQueryResults(int reference);
 
+    /**
+     * Gets the linear index covering the whole of the given reference sequence.
+     * @param reference the reference of interest
+     * @return the linear index, or null if the reference is not present in the index
+     */
+    public LinearIndex getLinearIndex(final int reference) {
+        final BAMIndexContent content = getQueryResults(reference);
+        return content == null ? null : content.getLinearIndex();
+    }
+
     /**
      * Gets the possible number of bins for a given reference sequence.
      * @return How many bins could possibly be used according to this indexing scheme to index a single contig.
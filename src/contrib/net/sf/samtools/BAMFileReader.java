@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
 
 import contrib.net.sf.samtools.SAMFileReader.ValidationStringency;
 import contrib.net.sf.samtools.seekablestream.SeekableStream;
@@ -226,6 +227,12 @@ class BAMFileReader extends SAMFileReader.ReaderImplementation {
         this.mCompressedInputStream.setCheckCrcs(enabled);
     }
 
+    @Override void setBlockReadAhead(final Executor executor, final int nBlocks) {
+        if (mIsSeekable) {
+            this.mCompressedInputStream.setReadAhead(executor, nBlocks);
+        }
+    }
+
     @Override void setSAMRecordFactory(final SAMRecordFactory factory) { this.samRecordFactory = factory; }
 
     /**
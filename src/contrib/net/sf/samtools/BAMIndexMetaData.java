@@ -179,7 +179,7 @@ public class BAMIndexMetaData {
     /**
      * @return the last virtual file offset used by this reference
      */
-    long getLastOffset() {
+    public long getLastOffset() {
         return lastOffset;
     }
 
@@ -28,6 +28,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.zip.GZIPInputStream;
 
 import contrib.net.sf.samtools.seekablestream.SeekableBufferedStream;
@@ -106,6 +107,7 @@ public class SAMFileReader implements Iterable<SAMRecord>, Closeable {
         abstract void enableIndexCaching(final boolean enabled);
         abstract void enableIndexMemoryMapping(final boolean enabled);
         abstract void enableCrcChecking(final boolean enabled);
+        abstract void setBlockReadAhead(final Executor executor, final int nBlocks);
         abstract void setSAMRecordFactory(final SAMRecordFactory factory);
         abstract boolean hasIndex();
         abstract BAMIndex getIndex();
@@ -264,6 +266,15 @@ public class SAMFileReader implements Iterable<SAMRecord>, Closeable {
         this.mReader.enableCrcChecking(enabled);
     }
 
+    /**
+     * Only meaningful for seekable BAM file readers - inflates up to nBlocks compressed blocks ahead
+     * of the current one concurrently, using the given executor. Can be turned on or off between
+     * queries; pass a null executor or nBlocks == 0 to turn it off.
+     */
+    public void setBlockReadAhead(final Executor executor, final int nBlocks) {
+        this.mReader.setBlockReadAhead(executor, nBlocks);
+    }
+
     /**
      * Override the default SAMRecordFactory class used to instantiate instances of SAMRecord and BAMRecord.
      */
@@ -351,6 +362,16 @@ public class SAMFileReader implements Iterable<SAMRecord>, Closeable {
         return new AssertableIterator(mReader.getIterator(chunks));
     }
 
+    /**
+     * Iterate through a BAM file, starting at the record at the given virtual file offset
+     * (as returned by SAMFileSource.getVirtualFileOffset).
+     * @param virtualFileOffset Offset of the first record to retrieve.
+     * @return An iterator over all records from the given offset to the end of the file.
+     */
+    public SAMRecordIterator iterator(final long virtualFileOffset) {
+        return iterator(new BAMFileSpan(new Chunk(virtualFileOffset, Long.MAX_VALUE)));
+    }
+
     /**
      * Gets a pointer spanning all reads in the BAM file.
      * @return Unbounded pointer to the first record, in chunk format. 
@@ -65,4 +65,15 @@ public class SAMFileSource {
     public SAMFileSpan getFilePointer() {
         return mFilePointer;
     }
+
+    /**
+     * Virtual file offset of the start of the record, for BAM files.
+     * @return The offset, or -1 if not known.
+     */
+    public long getVirtualFileOffset() {
+        if (!(mFilePointer instanceof BAMFileSpan) || mFilePointer.isEmpty()) {
+            return -1;
+        }
+        return ((BAMFileSpan) mFilePointer).getFirstOffset();
+    }
 }
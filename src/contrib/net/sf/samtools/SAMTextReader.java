@@ -26,6 +26,7 @@ package contrib.net.sf.samtools;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.concurrent.Executor;
 
 import contrib.net.sf.samtools.util.BufferedLineReader;
 import contrib.net.sf.samtools.util.CloseableIterator;
@@ -96,6 +97,11 @@ class SAMTextReader extends SAMFileReader.ReaderImplementation {
         // Do nothing - this has no meaning for SAM reading
     }
 
+    @Override
+    void setBlockReadAhead(final Executor executor, final int nBlocks) {
+        // Do nothing - this has no meaning for SAM reading
+    }
+
     @Override
     void setSAMRecordFactory(final SAMRecordFactory factory) {
         this.samRecordFactory = factory;
@@ -32,7 +32,12 @@ import java.io.RandomAccessFile;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import contrib.it.unimi.dsi.io.ByteBufferInputStream;
 import contrib.net.sf.samtools.FileTruncatedException;
@@ -58,6 +63,37 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private long mBlockAddress = 0;
     private int mLastBlockLength = 0;
     private final BlockGunzipper blockGunzipper = new BlockGunzipper();
+    private boolean mCheckCrcs = false;
+
+    // Read-ahead mode: compressed blocks are read sequentially from mFile, and inflated
+    // concurrently by mReadAheadExecutor; mReadAheadQueue holds them in file order.
+    private Executor mReadAheadExecutor = null;
+    private int mReadAheadBlocks = 0;
+    private final ArrayDeque<ReadAheadBlock> mReadAheadQueue = new ArrayDeque<ReadAheadBlock>();
+    private long mReadAheadAddress = 0;
+    private boolean mReadAheadEOF = false;
+
+    private static final ThreadLocal<BlockGunzipper> readAheadGunzippers = new ThreadLocal<BlockGunzipper>() {
+        @Override
+        protected BlockGunzipper initialValue() {
+            return new BlockGunzipper();
+        }
+    };
+
+    private static final class ReadAheadBlock {
+        final long address;
+        final int compressedLength; // 0 at end of file
+        final FutureTask<byte[]> inflated; // null at end of file or on error
+        final IOException error;
+
+        ReadAheadBlock(final long address, final int compressedLength, final FutureTask<byte[]> inflated,
+                       final IOException error) {
+            this.address = address;
+            this.compressedLength = compressedLength;
+            this.inflated = inflated;
+            this.error = error;
+        }
+    }
 
 
     /**
@@ -113,6 +149,38 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
      */
     public void setCheckCrcs(final boolean check) {
         this.blockGunzipper.setCheckCrcs(check);
+        this.mCheckCrcs = check;
+    }
+
+    /**
+     * Turns on read-ahead mode, in which up to nBlocks blocks following the current one are
+     * inflated concurrently using the given executor, and handed over in file order. Inflation
+     * of a block that the executor has not started yet when the block is needed is performed
+     * by the reading thread. Only supported for seekable sources.
+     * @param executor executor used for inflation, or null to turn off read-ahead
+     * @param nBlocks number of blocks to read ahead; 0 turns off read-ahead
+     */
+    public void setReadAhead(final Executor executor, final int nBlocks) {
+        if (mFile == null && executor != null && nBlocks > 0) {
+            throw new IllegalStateException("Read-ahead requires a seekable source");
+        }
+        final boolean wasReadingAhead = isReadingAhead();
+        mReadAheadExecutor = executor;
+        mReadAheadBlocks = nBlocks;
+        if (wasReadingAhead != isReadingAhead() && mFile != null) {
+            // Put the underlying file back at the position expected by the mode now in use
+            final long nextBlockAddress = mBlockAddress + mLastBlockLength;
+            clearReadAhead(nextBlockAddress);
+            try {
+                mFile.seek(nextBlockAddress);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+    }
+
+    private boolean isReadingAhead() {
+        return mReadAheadExecutor != null && mReadAheadBlocks > 0;
     }
 
     /**
@@ -139,6 +207,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     @Override
     public void close()
         throws IOException {
+        clearReadAhead(0);
         if (mFile != null) {
             mFile.close();
             mFile = null;
@@ -290,7 +359,13 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         final int available;
         if (mBlockAddress == compressedOffset && mCurrentBlock != null) {
             available = mCurrentBlock.length;
+        } else if (isReadingAhead() && skipReadAheadTo(compressedOffset)) {
+            mBlockAddress = compressedOffset;
+            mLastBlockLength = 0;
+            readBlock();
+            available = available();
         } else {
+            clearReadAhead(compressedOffset);
             mFile.seek(compressedOffset);
             mBlockAddress = compressedOffset;
             mLastBlockLength = 0;
@@ -305,6 +380,10 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     }
 
     private boolean eof() throws IOException {
+        if (isReadingAhead()) {
+            // The underlying file is positioned ahead of the current block
+            return mFile.length() - (mBlockAddress + mLastBlockLength) <= BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length;
+        }
         if (mFile.eof()) {
             return true;
         }
@@ -363,6 +442,10 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private void readBlock()
         throws IOException {
 
+        if (isReadingAhead()) {
+            readBlockAhead();
+            return;
+        }
         if (mFileBuffer == null) {
             mFileBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
         }
@@ -371,6 +454,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             // Handle case where there is no empty gzip block at end.
             mCurrentOffset = 0;
             mBlockAddress += mLastBlockLength;
+            mLastBlockLength = 0;
             mCurrentBlock = new byte[0];
             return;
         }
@@ -392,6 +476,125 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mLastBlockLength = blockLength;
     }
 
+    /**
+     * Discards blocks that precede the given address in the read-ahead queue
+     * @return true if the block at that address is now at the head of the queue
+     */
+    private boolean skipReadAheadTo(final long address) {
+        while (!mReadAheadQueue.isEmpty()) {
+            final ReadAheadBlock block = mReadAheadQueue.peekFirst();
+            if (block.address == address && block.compressedLength > 0) {
+                return true;
+            }
+            if (block.address > address || block.compressedLength == 0) {
+                break;
+            }
+            mReadAheadQueue.removeFirst();
+            if (block.inflated != null) {
+                block.inflated.cancel(false);
+            }
+        }
+        return false;
+    }
+
+    private void clearReadAhead(final long nextAddress) {
+        for (final ReadAheadBlock block : mReadAheadQueue) {
+            if (block.inflated != null) {
+                block.inflated.cancel(false);
+            }
+        }
+        mReadAheadQueue.clear();
+        mReadAheadAddress = nextAddress;
+        mReadAheadEOF = false;
+    }
+
+    private void fillReadAheadQueue() {
+        while (mReadAheadQueue.size() < mReadAheadBlocks && !mReadAheadEOF) {
+            final long address = mReadAheadAddress;
+            try {
+                final byte[] header = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+                int count = readBytes(header, 0, header.length);
+                if (count == 0) {
+                    // Handle case where there is no empty gzip block at end.
+                    mReadAheadEOF = true;
+                    mReadAheadQueue.addLast(new ReadAheadBlock(address, 0, null, null));
+                    return;
+                }
+                if (count != BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH) {
+                    throw new IOException("Premature end of file");
+                }
+                final int blockLength = unpackInt16(header, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+                if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH ||
+                        blockLength > BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE) {
+                    throw new IOException("Unexpected compressed block length: " + blockLength);
+                }
+                final byte[] compressedBlock = Arrays.copyOf(header, blockLength);
+                final int remaining = blockLength - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+                count = readBytes(compressedBlock, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH, remaining);
+                if (count != remaining) {
+                    throw new FileTruncatedException("Premature end of file");
+                }
+                final int uncompressedLength = unpackInt32(compressedBlock, blockLength - 4);
+                if (uncompressedLength < 0) {
+                    throw new RuntimeException("BGZF file has invalid uncompressedLength: " + uncompressedLength);
+                }
+                final boolean checkCrcs = mCheckCrcs;
+                final FutureTask<byte[]> inflated = new FutureTask<byte[]>(() -> {
+                    final byte[] buffer = new byte[uncompressedLength];
+                    final BlockGunzipper gunzipper = readAheadGunzippers.get();
+                    gunzipper.setCheckCrcs(checkCrcs);
+                    gunzipper.unzipBlock(buffer, compressedBlock, blockLength);
+                    return buffer;
+                });
+                mReadAheadQueue.addLast(new ReadAheadBlock(address, blockLength, inflated, null));
+                mReadAheadAddress += blockLength;
+                try {
+                    mReadAheadExecutor.execute(inflated);
+                } catch (final RejectedExecutionException e) {
+                    // Block will be inflated by the reading thread
+                }
+            } catch (final IOException e) {
+                // Only report the error once the reader gets to the offending block
+                mReadAheadEOF = true;
+                mReadAheadQueue.addLast(new ReadAheadBlock(address, 0, null, e));
+            }
+        }
+    }
+
+    private void readBlockAhead()
+        throws IOException {
+        fillReadAheadQueue();
+        final ReadAheadBlock block = mReadAheadQueue.peekFirst();
+        if (block.error != null) {
+            throw block.error;
+        }
+        mCurrentOffset = 0;
+        mBlockAddress += mLastBlockLength;
+        if (block.compressedLength == 0) {
+            // End of file; the marker is left in the queue
+            mLastBlockLength = 0;
+            mCurrentBlock = new byte[0];
+            return;
+        }
+        mReadAheadQueue.removeFirst();
+        // Inflate in this thread if the executor has not got to it yet
+        block.inflated.run();
+        try {
+            mCurrentBlock = block.inflated.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        mLastBlockLength = block.compressedLength;
+        fillReadAheadQueue();
+    }
+
     private void inflateBlock(final byte[] compressedBlock, final int compressedLength)
         throws IOException {
         final int uncompressedLength = unpackInt32(compressedBlock, compressedLength-4);
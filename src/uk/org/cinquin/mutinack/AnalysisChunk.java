@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Phaser;
 import java.util.stream.Collectors;
 
@@ -30,16 +31,48 @@ import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
+import uk.org.cinquin.mutinack.features.RegionMask;
 import uk.org.cinquin.mutinack.misc_util.StaticStuffToAvoidMutating;
 
 public class AnalysisChunk {
 	int contig;
 	final @NonNull String contigName;
 	int startAtPosition;
-	int terminateAtPosition;
+	/**
+	 * Volatile because it is read by the thread supervising the contig
+	 */
+	volatile int terminateAtPosition;
 	int pauseAtPosition;
-	int lastProcessedPosition;
+	/**
+	 * Volatile because it is read by the thread supervising the contig
+	 */
+	volatile int lastProcessedPosition;
 	@Nullable Phaser phaser;
+	/**
+	 * Set by the thread supervising the contig to ask the phaser to hand off the tail of
+	 * this chunk to a new chunk at the end of the current processing step
+	 */
+	volatile boolean tailHandoffRequested;
+	/**
+	 * Set by the phaser when the tail of this chunk turned out to be too short to be
+	 * split, so that the thread supervising the contig does not ask again
+	 */
+	volatile boolean tailHandoffDeclined;
+	/**
+	 * Receives chunks created from the tail of this chunk; null if dynamic splitting
+	 * is disabled
+	 */
+	@Nullable BlockingQueue<@NonNull AnalysisChunk> handedOffTails;
+	/**
+	 * Records shared with the chunk on the left / right; null if sharing is disabled
+	 * or if there is no such chunk
+	 */
+	volatile @Nullable ChunkOverlap overlapWithLeft, overlapWithRight;
+	/**
+	 * Positions excluded by param.excludeRegionsInBED between startAtPosition and the
+	 * initial terminateAtPosition; null if there are no such BED files
+	 */
+	@Nullable RegionMask excludeMask;
 	final MutableList<@NonNull SubAnalyzer> subAnalyzers = Lists.mutable.empty();
 	final ParallelListIterable<@NonNull SubAnalyzer> subAnalyzersParallel =
 		subAnalyzers.asParallel(StaticStuffToAvoidMutating.getExecutorService(), 1);
@@ -56,7 +56,6 @@ import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
 import uk.org.cinquin.final_annotation.Final;
-import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers.Builder;
 import uk.org.cinquin.mutinack.misc_util.Assert;
 import uk.org.cinquin.mutinack.misc_util.ComparablePair;
 import uk.org.cinquin.mutinack.misc_util.FieldIteration;
@@ -64,6 +63,7 @@ import uk.org.cinquin.mutinack.misc_util.SerializablePredicate;
 import uk.org.cinquin.mutinack.misc_util.Util;
 import uk.org.cinquin.mutinack.misc_util.collections.MutationHistogramMap;
 import uk.org.cinquin.mutinack.output.LocationAnalysis;
+import uk.org.cinquin.mutinack.output.RunLengthCoverageWriter;
 import uk.org.cinquin.mutinack.qualities.Quality;
 import uk.org.cinquin.mutinack.statistics.Actualizable;
 import uk.org.cinquin.mutinack.statistics.CounterWithSeqLocOnly;
@@ -73,10 +73,12 @@ import uk.org.cinquin.mutinack.statistics.CounterWithSeqLocationReportAll;
 import uk.org.cinquin.mutinack.statistics.DivideByTwo;
 import uk.org.cinquin.mutinack.statistics.DoubleAdderFormatter;
 import uk.org.cinquin.mutinack.statistics.Histogram;
+import uk.org.cinquin.mutinack.statistics.LocationPredicateCache;
 import uk.org.cinquin.mutinack.statistics.LongAdderFormatter;
 import uk.org.cinquin.mutinack.statistics.MultiCounter;
 import uk.org.cinquin.mutinack.statistics.PrintInStatus;
 import uk.org.cinquin.mutinack.statistics.PrintInStatus.OutputLevel;
+import uk.org.cinquin.mutinack.statistics.ShardedHistogram;
 import uk.org.cinquin.mutinack.statistics.StatsCollector;
 import uk.org.cinquin.mutinack.statistics.SwitchableStats;
 import uk.org.cinquin.mutinack.statistics.Traceable;
@@ -98,6 +100,7 @@ public class AnalysisStats implements Serializable, Actualizable {
 	public transient OutputStreamWriter annotationOutputStream;
 	public transient @Nullable OutputStreamWriter topBottomDisagreementWriter, noWtDisagreementWriter,
 		mutationBEDWriter, coverageBEDWriter;
+	private transient LocationPredicateCache locationPredicateCache = new LocationPredicateCache();
 	public boolean canSkipDuplexLoading = false;
 
 	public AnalysisStats(@NonNull String name,
@@ -181,7 +184,7 @@ public class AnalysisStats implements Serializable, Actualizable {
 		nPosDuplexQualityQ2OthersQ1Q2CodingOrTemplate = new MultiCounter<>(null, () -> new CounterWithSeqLocOnly(false, groupSettings));
 		nPosCandidatesForUniqueMutation = new MultiCounter<>(null, () -> new CounterWithSeqLocOnly(false, groupSettings));
 
-		nReadsInPrefetchQueue = new Histogram(1_000);
+		nReadsInPrefetchQueue = new ShardedHistogram(1_000);
 
 		{	//Force output of fields annotated with AddChromosomeBins to be broken down by
 			//bins for each contig (bin size as defined by CounterWithSeqLocation.BIN_SIZE, for now)
@@ -382,9 +385,24 @@ public class AnalysisStats implements Serializable, Actualizable {
 	@PrintInStatus(outputLevel = VERBOSE)
 	public @Final @Persistent StatsCollector nPosExcluded = new StatsCollector();
 
+	@PrintInStatus(outputLevel = VERY_VERBOSE)
+	public @Final @Persistent StatsCollector nReadsSkippedInExcludedRegions = new StatsCollector();
+
 	@PrintInStatus(outputLevel = TERSE)
 	public @Final @Persistent StatsCollector nRecordsProcessed = new StatsCollector();
 
+	@PrintInStatus(outputLevel = VERBOSE)
+	public @Final @Persistent StatsCollector nProcessingStepsLengthened = new StatsCollector();
+
+	@PrintInStatus(outputLevel = VERBOSE)
+	public @Final @Persistent StatsCollector nRecordsSharedByChunkOverlap = new StatsCollector();
+
+	@PrintInStatus(outputLevel = VERBOSE)
+	public @Final @Persistent StatsCollector nChunkTailsHandedOff = new StatsCollector();
+
+	@PrintInStatus(outputLevel = VERBOSE)
+	public @Final @Persistent StatsCollector nPosExaminedConcurrently = new StatsCollector();
+
 	@PrintInStatus(outputLevel = TERSE)
 	public @Final @Persistent StatsCollector ignoredUnpairedReads = new StatsCollector();
 
@@ -399,11 +417,11 @@ public class AnalysisStats implements Serializable, Actualizable {
 
 	@PrintInStatus(outputLevel = VERBOSE)
 	public @Final @Persistent(serialized = "true") @Extension(vendorName = "datanucleus", key = "is-second-class", value="false")
-	Histogram mappingQualityKeptRecords = new Histogram(500);
+	Histogram mappingQualityKeptRecords = new ShardedHistogram(500);
 
 	@PrintInStatus(outputLevel = VERBOSE)
 	public @Final @Persistent(serialized = "true") @Extension(vendorName = "datanucleus", key = "is-second-class", value="false")
-	Histogram mappingQualityAllRecords = new Histogram(500);
+	Histogram mappingQualityAllRecords = new ShardedHistogram(500);
 
 	@PrintInStatus(outputLevel = VERBOSE)
 	public @Final @Persistent(serialized = "true") @Extension(vendorName = "datanucleus", key = "is-second-class", value="false")
@@ -728,7 +746,7 @@ public class AnalysisStats implements Serializable, Actualizable {
 
 	@PrintInStatus(outputLevel = VERY_VERBOSE)
 	public @Final @Persistent(serialized = "true") @Extension(vendorName = "datanucleus", key = "is-second-class", value="false")
-	Histogram duplexLocalGroupSize = new Histogram(500);
+	Histogram duplexLocalGroupSize = new ShardedHistogram(500);
 
 	@PrintInStatus(outputLevel = VERY_VERBOSE)
 	public @Final @Persistent(serialized = "true") @Extension(vendorName = "datanucleus", key = "is-second-class", value="false")
@@ -953,8 +971,7 @@ public class AnalysisStats implements Serializable, Actualizable {
 	@PrintInStatus(outputLevel = VERY_VERBOSE)
 	public final DoubleAdder phredSumFirst6basesSecondOfPair = new DoubleAdder();*/
 
-	public @Persistent Map<String, int[]> positionByPositionCoverage;
-	transient Builder positionByPositionCoverageProtobuilder;
+	public transient @Nullable RunLengthCoverageWriter coverageRunWriter;
 
 	public final StatsCollector nChimericReadsMateWrongContig = new StatsCollector();
 
@@ -1089,10 +1106,24 @@ public class AnalysisStats implements Serializable, Actualizable {
 		}
 	}
 
+	/**
+	 * @param filter
+	 * @return A predicate equivalent to filter, whose results are shared with the other
+	 * predicates obtained from this object for the same filter
+	 */
+	public @NonNull SerializablePredicate<SequenceLocation> getCachedLocationPredicate(
+			@NonNull SerializablePredicate<SequenceLocation> filter) {
+		if (locationPredicateCache == null) {
+			locationPredicateCache = new LocationPredicateCache();
+		}
+		return locationPredicateCache.cached(filter);
+	}
+
 	public void addLocationPredicate(String filterName, @NonNull SerializablePredicate<SequenceLocation> filter) {
+		final @NonNull SerializablePredicate<SequenceLocation> cachedFilter = getCachedLocationPredicate(filter);
 		FieldIteration.iterateFields((f, value) -> {
 			if (f.getAnnotation(AddLocationPredicates.class) != null) {
-				((MultiCounter<?>) value).addPredicate(filterName, filter);
+				((MultiCounter<?>) value).addPredicate(filterName, cachedFilter);
 			}
 		}, this);
 	}
@@ -0,0 +1,112 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gnu.trove.map.hash.TLongByteHashMap;
+
+/**
+ * Per-read record of base Phred scores, keyed by reference location.
+ * Scores for positions covered by the read's alignment are stored in a byte array
+ * indexed by offset from the alignment start; other locations (plusHalf locations,
+ * or all locations for alignments with very long reference spans, e.g. because of
+ * introns) go to a small map that is only allocated if needed.
+ */
+@NotThreadSafe
+public final class BasePhredScores {
+
+	public static final byte NO_ENTRY = -1;
+
+	/**
+	 * Alignments spanning more reference bases than this do not get an array
+	 */
+	static final int MAX_ARRAY_SPAN = 2_000;
+
+	private final int contigIndex;
+	private final int offset;
+	private final byte @Nullable[] scores;
+	private @Nullable TLongByteHashMap otherScores;
+
+	public BasePhredScores(int contigIndex, int alignmentStart, int alignmentEnd) {
+		this.contigIndex = contigIndex;
+		this.offset = alignmentStart;
+		final int span = alignmentEnd - alignmentStart + 1;
+		if (span > 0 && span <= MAX_ARRAY_SPAN) {
+			scores = new byte[span];
+			Arrays.fill(scores, NO_ENTRY);
+		} else {
+			scores = null;
+		}
+	}
+
+	/**
+	 * @return Index in scores array, or -1 if location needs to be stored in otherScores
+	 */
+	private int index(byte @NonNull[] scores1, int contigIndex1, int position, boolean plusHalf) {
+		if (plusHalf || contigIndex1 != contigIndex) {
+			return -1;
+		}
+		final int index = position - offset;
+		return index < 0 || index >= scores1.length ? -1 : index;
+	}
+
+	/**
+	 * @param location
+	 * @return NO_ENTRY if no score has been recorded at location
+	 */
+	public byte get(@NonNull SequenceLocation location) {
+		final byte[] scores1 = scores;
+		if (scores1 != null) {
+			final int index = index(scores1, location.contigIndex, location.position, location.plusHalf);
+			if (index >= 0) {
+				return scores1[index];
+			}
+		}
+		final TLongByteHashMap other = otherScores;
+		return other == null ? NO_ENTRY : other.get(location.toLong());
+	}
+
+	/**
+	 * @param location
+	 * @param phred
+	 * @return Score previously recorded at location, or NO_ENTRY
+	 */
+	public byte put(@NonNull SequenceLocation location, byte phred) {
+		final byte[] scores1 = scores;
+		if (scores1 != null) {
+			final int index = index(scores1, location.contigIndex, location.position, location.plusHalf);
+			if (index >= 0) {
+				final byte previous = scores1[index];
+				scores1[index] = phred;
+				return previous;
+			}
+		}
+		TLongByteHashMap other = otherScores;
+		if (other == null) {
+			other = new TLongByteHashMap(8, 0.5f, -1L, NO_ENTRY);
+			otherScores = other;
+		}
+		return other.put(location.toLong(), phred);
+	}
+}
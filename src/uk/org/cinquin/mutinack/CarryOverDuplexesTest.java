@@ -0,0 +1,123 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import mockit.integration.junit4.JMockit;
+import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexArrayListKeeper;
+import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexKeeper;
+
+@RunWith(JMockit.class)
+@SuppressWarnings("static-method")
+public class CarryOverDuplexesTest {
+
+	private static Duplex duplex(MutinackGroup groupSettings, ExtendedSAMRecord top,
+			ExtendedSAMRecord bottom) {
+		final Duplex duplex = new Duplex(groupSettings, new byte[] {'A', 'A', 'A'},
+			new byte[] {'C', 'C', 'C'}, false, false);
+		duplex.topStrandRecords.add(top);
+		duplex.bottomStrandRecords.add(bottom);
+		top.duplex = duplex;
+		bottom.duplex = duplex;
+		return duplex;
+	}
+
+	private static DuplexKeeper keeper(Duplex duplex) {
+		final DuplexKeeper keeper = new DuplexArrayListKeeper(1);
+		keeper.add(duplex);
+		return keeper;
+	}
+
+	@Test
+	public void testRetireDuplexWithAllReadsDiscarded(@Injectable MutinackGroup groupSettings,
+			@Injectable ExtendedSAMRecord top, @Injectable ExtendedSAMRecord bottom) {
+		final Duplex duplex = duplex(groupSettings, top, bottom);
+		top.discarded = true;
+		bottom.discarded = true;
+		final DuplexKeeper carriedOver = new DuplexArrayListKeeper(1);
+		final Set<Duplex> changed = new HashSet<>();
+		SubAnalyzer.carryOverDuplexes(keeper(duplex), carriedOver, changed);
+		assertTrue(carriedOver.isEmpty());
+		assertTrue(changed.isEmpty());
+		assertTrue(duplex.topStrandRecords.isEmpty());
+		assertTrue(duplex.bottomStrandRecords.isEmpty());
+	}
+
+	@Test
+	public void testDuplexThatLostReadsIsChanged(@Injectable MutinackGroup groupSettings,
+			@Injectable ExtendedSAMRecord top, @Injectable ExtendedSAMRecord bottom) {
+		final Duplex duplex = duplex(groupSettings, top, bottom);
+		top.discarded = true;
+		final DuplexKeeper carriedOver = new DuplexArrayListKeeper(1);
+		final Set<Duplex> changed = new HashSet<>();
+		SubAnalyzer.carryOverDuplexes(keeper(duplex), carriedOver, changed);
+		assertEquals(1, carriedOver.size());
+		assertSame(duplex, carriedOver.iterator().next());
+		assertTrue(changed.contains(duplex));
+		assertTrue(duplex.topStrandRecords.isEmpty());
+		assertEquals(1, duplex.bottomStrandRecords.size());
+	}
+
+	@Test
+	public void testUnchangedDuplexIsReset(@Injectable MutinackGroup groupSettings,
+			@Injectable ExtendedSAMRecord top, @Injectable ExtendedSAMRecord bottom) {
+		final Duplex duplex = duplex(groupSettings, top, bottom);
+		duplex.lastExaminedPosition = 1_000;
+		duplex.missingStrand = true;
+		final DuplexKeeper carriedOver = new DuplexArrayListKeeper(1);
+		final Set<Duplex> changed = new HashSet<>();
+		SubAnalyzer.carryOverDuplexes(keeper(duplex), carriedOver, changed);
+		assertEquals(1, carriedOver.size());
+		assertTrue(changed.isEmpty());
+		assertEquals(-1, duplex.lastExaminedPosition);
+		assertFalse(duplex.missingStrand);
+		assertSame(duplex, top.duplex);
+	}
+
+	@Test
+	public void testRetireDuplexWhoseMateArrived(@Injectable MutinackGroup groupSettings,
+			@Injectable ExtendedSAMRecord top, @Injectable ExtendedSAMRecord bottom,
+			@Injectable ExtendedSAMRecord mate) {
+		final Duplex duplex = duplex(groupSettings, top, bottom);
+		top.mateMissingWhenGrouped = true;
+		new NonStrictExpectations() {{
+			top.getMate(); result = mate;
+		}};
+		final DuplexKeeper carriedOver = new DuplexArrayListKeeper(1);
+		final Set<Duplex> changed = new HashSet<>();
+		SubAnalyzer.carryOverDuplexes(keeper(duplex), carriedOver, changed);
+		assertTrue(carriedOver.isEmpty());
+		assertTrue(changed.isEmpty());
+		//Reads must be grouped again
+		assertNull(top.duplex);
+		assertNull(bottom.duplex);
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.net.sf.samtools.SAMRecord;
+
+/**
+ * Records shared between two adjacent chunks of the same contig. Before it can
+ * finish up, the chunk on the left needs to read records that start up to
+ * maxInsertSize past its last position; the chunk on the right decodes the same
+ * records early on, as part of its own work. The right chunk therefore publishes
+ * them here, one list per sample, and the left chunk switches over to that list
+ * instead of reading and decoding them from its own BAM iterator. If the list is
+ * not ready by the time the left chunk gets there, the left chunk just keeps on
+ * using its own iterator.
+ *
+ * Both iterators return the records that start at or after firstAlignmentStart
+ * in the same order, so the sequence of records seen by the left chunk is the
+ * same either way.
+ */
+final class ChunkOverlap {
+
+	private static final @NonNull List<@NonNull SAMRecord> CLAIMED = Collections.emptyList();
+
+	/**
+	 * 1-based alignment start of the first record to share (i.e. first position of
+	 * the right chunk, in 1-based coordinates)
+	 */
+	final int firstAlignmentStart;
+	/**
+	 * Sharing stops with the first record that starts at or after this 1-based position,
+	 * which is the record that makes the left chunk finish up
+	 */
+	final int lastAlignmentStart;
+
+	private final ConcurrentMap<Mutinack, @NonNull List<@NonNull SAMRecord>> records =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * @param rightChunkStart First (0-based) position of the chunk on the right
+	 * @param maxInsertSize
+	 */
+	ChunkOverlap(int rightChunkStart, int maxInsertSize) {
+		firstAlignmentStart = rightChunkStart + 1;
+		lastAlignmentStart = rightChunkStart + maxInsertSize + 1;
+	}
+
+	/**
+	 * Records are read concurrently by both chunks once shared, so anything that
+	 * would modify them during processing rules sharing out.
+	 * @param param
+	 * @return
+	 */
+	static boolean canShare(@NonNull Parameters param) {
+		return param.shareChunkOverlapReads && param.outputAlignmentFile.isEmpty() &&
+			!param.randomizeMates && !param.allowMissingSupplementaryFlag;
+	}
+
+	/**
+	 * Decode all lazily-computed fields of record now, so that it can then safely be
+	 * read from several threads.
+	 * @param record
+	 */
+	static void prepareForSharing(@NonNull SAMRecord record) {
+		record.eagerDecode();
+		record.getAlignmentEnd();
+		record.getAlignmentBlocks();
+	}
+
+	/**
+	 * Called by the right chunk. Has no effect if the left chunk already gave up on
+	 * the records.
+	 * @param analyzer
+	 * @param list Records starting at or after firstAlignmentStart, in iteration order,
+	 * ending either with a record starting at or after lastAlignmentStart or with the
+	 * last record of the contig
+	 */
+	void publish(@NonNull Mutinack analyzer, @NonNull List<@NonNull SAMRecord> list) {
+		records.putIfAbsent(analyzer, list);
+	}
+
+	/**
+	 * Called by the left chunk, at most once per sample.
+	 * @param analyzer
+	 * @return The published records, or null if they are not available (in which
+	 * case they will not be published later)
+	 */
+	@Nullable List<@NonNull SAMRecord> claim(@NonNull Mutinack analyzer) {
+		final List<@NonNull SAMRecord> result = records.put(analyzer, CLAIMED);
+		//noinspection ObjectEquality
+		return result == null || result == CLAIMED || result.isEmpty() ? null : result;
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import contrib.net.sf.samtools.SAMFileHeader;
+import contrib.net.sf.samtools.SAMRecord;
+import mockit.Injectable;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+@SuppressWarnings("static-method")
+public class ChunkOverlapTest {
+
+	private static List<SAMRecord> records(int n) {
+		final List<SAMRecord> result = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			result.add(new SAMRecord(new SAMFileHeader()));
+		}
+		return result;
+	}
+
+	@Test
+	public void testAlignmentStartBounds() {
+		final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+		assertEquals(1_001, overlap.firstAlignmentStart);
+		assertEquals(1_301, overlap.lastAlignmentStart);
+	}
+
+	@Test
+	public void testPublishThenClaim(@Injectable Mutinack sample) {
+		final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+		final List<SAMRecord> list = records(3);
+		overlap.publish(sample, list);
+		assertSame(list, overlap.claim(sample));
+		//Records are only handed over once
+		assertNull(overlap.claim(sample));
+	}
+
+	@Test
+	public void testClaimThenPublish(@Injectable Mutinack sample) {
+		final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+		assertNull(overlap.claim(sample));
+		//Records published after the left chunk gave up must not be retained
+		overlap.publish(sample, records(3));
+		assertNull(overlap.claim(sample));
+	}
+
+	@Test
+	public void testEmptyListNotHandedOver(@Injectable Mutinack sample) {
+		final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+		overlap.publish(sample, Collections.emptyList());
+		assertNull(overlap.claim(sample));
+	}
+
+	@Test
+	public void testSamplesIndependent(@Injectable Mutinack sample1, @Injectable Mutinack sample2) {
+		final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+		final List<SAMRecord> list2 = records(2);
+		assertNull(overlap.claim(sample1));
+		overlap.publish(sample1, records(1));
+		overlap.publish(sample2, list2);
+		assertSame(list2, overlap.claim(sample2));
+		assertNull(overlap.claim(sample1));
+	}
+
+	/**
+	 * Whichever of publish and claim comes first, the left chunk gets either the
+	 * complete list or nothing, and a later claim never returns the list again
+	 */
+	@Test
+	public void testConcurrentPublishAndClaim(@Injectable Mutinack sample) throws Exception {
+		final int nIterations = 2_000;
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final List<SAMRecord> list = records(5);
+		for (int i = 0; i < nIterations; i++) {
+			final ChunkOverlap overlap = new ChunkOverlap(1_000, 300);
+			final AtomicReference<Throwable> error = new AtomicReference<>();
+			final Thread publisher = new Thread(() -> {
+				try {
+					barrier.await();
+					overlap.publish(sample, list);
+				} catch (Throwable t) {
+					error.set(t);
+				}
+			});
+			publisher.start();
+			barrier.await();
+			final List<SAMRecord> claimed = overlap.claim(sample);
+			publisher.join();
+			assertNull(error.get());
+			if (claimed != null) {
+				assertSame(list, claimed);
+			}
+			assertNull(overlap.claim(sample));
+		}
+	}
+
+	@Test
+	public void testCanShare() {
+		final Parameters param = new Parameters();
+		assertFalse(ChunkOverlap.canShare(param));
+		param.shareChunkOverlapReads = true;
+		assertTrue(ChunkOverlap.canShare(param));
+
+		param.randomizeMates = true;
+		assertFalse(ChunkOverlap.canShare(param));
+		param.randomizeMates = false;
+
+		param.allowMissingSupplementaryFlag = true;
+		assertFalse(ChunkOverlap.canShare(param));
+		param.allowMissingSupplementaryFlag = false;
+
+		param.outputAlignmentFile.add("out.bam");
+		assertFalse(ChunkOverlap.canShare(param));
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMFileReader.QueryInterval;
+import contrib.net.sf.samtools.SAMRecord;
+import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.map.hash.THashMap;
+import uk.org.cinquin.mutinack.misc_util.NamedPoolThreadFactory;
+import uk.org.cinquin.mutinack.misc_util.RequestBatcher;
+import uk.org.cinquin.mutinack.misc_util.exceptions.AssertionFailedException;
+
+/**
+ * Prefetches distant mates on behalf of {@link ExtendedSAMRecord#checkMate}, in
+ * batches. Requests are accumulated for a short while, sorted by mate contig and
+ * position, and grouped into clusters of nearby mates; each cluster is then served
+ * by a single BAM query, instead of one query per request as performed by checkMate.
+ * The record that is retrieved for each request is the same as would be retrieved by
+ * checkMate.
+ */
+final class DistantMateFetcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(DistantMateFetcher.class);
+
+	/**
+	 * checkMate looks for records overlapping this window around the mate position
+	 */
+	private static final int WINDOW_HALF_WIDTH = 1;
+	/**
+	 * Mates further apart than this go to different clusters
+	 */
+	static final int MAX_CLUSTER_GAP = 5_000;
+	static final int MAX_CLUSTER_SPAN = 100_000;
+	private static final int MAX_BATCH_SIZE = 1_000;
+	private static final int BATCH_DELAY_MS = 50;
+
+	private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+		Math.min(4, Runtime.getRuntime().availableProcessors()),
+		new NamedPoolThreadFactory("Batched distant mate fetcher - "));
+
+	private final @NonNull Mutinack analyzer;
+	private final @NonNull RequestBatcher<@NonNull ExtendedSAMRecord> batcher =
+		new RequestBatcher<>(MAX_BATCH_SIZE, BATCH_DELAY_MS, executor, this::fetchBatch);
+
+	DistantMateFetcher(@NonNull Mutinack analyzer) {
+		this.analyzer = analyzer;
+	}
+
+	void request(@NonNull ExtendedSAMRecord read) {
+		batcher.add(read);
+	}
+
+	private void fetchBatch(@NonNull List<@NonNull ExtendedSAMRecord> requests) {
+		final List<@NonNull ExtendedSAMRecord> batch = new ArrayList<>(requests.size());
+		for (ExtendedSAMRecord read: requests) {
+			if (read.mustFetchMateFromFile()) {
+				batch.add(read);
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			fetch(batch);
+		} catch (Exception e) {
+			//checkMate will fetch the mates that have not been filled in
+			logger.warn("Problem fetching distant mates for " + analyzer.name, e);
+		}
+	}
+
+	private void fetch(@NonNull List<@NonNull ExtendedSAMRecord> batch) throws Exception {
+		batch.sort(Comparator.<ExtendedSAMRecord>comparingInt(r -> r.record.getMateReferenceIndex()).
+			thenComparingInt(r -> r.record.getMateAlignmentStart()));
+		int clusterStart = 0;
+		for (int i = 1; i <= batch.size(); i++) {
+			if (i == batch.size() || !sameCluster(batch.get(clusterStart), batch.get(i - 1), batch.get(i))) {
+				fetchCluster(batch.subList(clusterStart, i));
+				clusterStart = i;
+			}
+		}
+	}
+
+	private static boolean sameCluster(ExtendedSAMRecord first, ExtendedSAMRecord previous,
+			ExtendedSAMRecord r) {
+		return r.record.getMateReferenceIndex().equals(first.record.getMateReferenceIndex()) &&
+			r.record.getMateAlignmentStart() - previous.record.getMateAlignmentStart() <= MAX_CLUSTER_GAP &&
+			r.record.getMateAlignmentStart() - first.record.getMateAlignmentStart() <= MAX_CLUSTER_SPAN;
+	}
+
+	private void fetchCluster(@NonNull List<@NonNull ExtendedSAMRecord> cluster) throws Exception {
+		final THashMap<String, List<@NonNull ExtendedSAMRecord>> byName = new THashMap<>();
+		for (ExtendedSAMRecord r: cluster) {
+			byName.computeIfAbsent(r.record.getReadName(), k -> new ArrayList<>(1)).add(r);
+		}
+		final String contigName = cluster.get(0).record.getMateReferenceName();
+		final int start = cluster.get(0).record.getMateAlignmentStart();
+		final int end = cluster.get(cluster.size() - 1).record.getMateAlignmentStart();
+
+		final SAMFileReader bamReader = analyzer.readerPool.getObj();
+		try {
+			final QueryInterval[] interval = {
+				bamReader.makeQueryInterval(contigName, Math.max(start - WINDOW_HALF_WIDTH, 1),
+					end + WINDOW_HALF_WIDTH)};
+			try (SAMRecordIterator it = bamReader.queryOverlapping(interval)) {
+				while (it.hasNext() && !byName.isEmpty()) {
+					final SAMRecord record = it.next();
+					final List<@NonNull ExtendedSAMRecord> waiting = byName.get(record.getReadName());
+					if (waiting == null) {
+						continue;
+					}
+					waiting.removeIf(r -> {
+						if (matches(r, record)) {
+							r.setMateFetchedFromFile(record);
+							return true;
+						}
+						return false;
+					});
+					if (waiting.isEmpty()) {
+						byName.remove(record.getReadName());
+					}
+				}
+			}
+		} finally {
+			analyzer.readerPool.returnObj(bamReader);
+		}
+		//Mates that were not found would not have been found by checkMate either
+		byName.forEach((k, v) -> v.forEach(r -> r.setMateFetchedFromFile(null)));
+	}
+
+	/**
+	 * Same criteria as Mutinack::getRead, as called from checkMate
+	 */
+	private static boolean matches(ExtendedSAMRecord r, SAMRecord candidate) {
+		if (candidate.getFirstOfPairFlag() == r.record.getFirstOfPairFlag()) {
+			return false;
+		}
+		final int matePosition = r.record.getMateAlignmentStart();
+		final int candidateEnd = Math.max(candidate.getAlignmentStart(), candidate.getAlignmentEnd());
+		if (!candidate.getReferenceName().equals(r.record.getMateReferenceName())) {
+			throw new AssertionFailedException();
+		}
+		return candidate.getAlignmentStart() != 0 &&
+			candidate.getAlignmentStart() <= matePosition + WINDOW_HALF_WIDTH &&
+			candidateEnd >= matePosition - WINDOW_HALF_WIDTH;
+	}
+}
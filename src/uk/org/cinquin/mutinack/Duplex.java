@@ -259,6 +259,27 @@ public final class Duplex implements HasInterval<Integer> {
 		maxDistanceToLig = Integer.MIN_VALUE;
 	}
 
+	/**
+	 * Clear state accumulated while this duplex was analyzed and examined, so that
+	 * it can be carried over to the next processing step (when duplexes are grouped
+	 * incrementally) and behave as if it had just been created.
+	 */
+	void resetExaminationState() {
+		Assert.isFalse(invalid);
+		issues.clear();
+		globalQuality.reset();
+		localAndGlobalQuality = null;
+		minQuality = MAXIMUM;
+		maxQuality = MINIMUM;
+		missingStrand = false;
+		minFracTopCandidate = Float.MAX_VALUE;
+		lastExaminedPosition = -1;
+		assignedToLocalGroup = false;
+		probAtLeastOneCollision = -1;
+		averageNClipped = -1;
+		resetMaxDistanceToLigSite();
+	}
+
 	private void acceptDistanceToLigSite(int d) {
 		if (d > maxDistanceToLig) {
 			maxDistanceToLig = d;
@@ -269,6 +290,125 @@ public final class Duplex implements HasInterval<Integer> {
 		return maxDistanceToLig;
 	}
 
+	/**
+	 * Changes made to a duplex by its examination at one location, for use when
+	 * several locations are examined before any of them is reported. Examination sets
+	 * fields that are specific to the location (localAndGlobalQuality, maxDistanceToLig)
+	 * and updates fields that accumulate over locations (issues, missingStrand,
+	 * minFracTopCandidate, minQuality, maxQuality). Since locations may then be examined
+	 * out of order, the accumulating fields are reverted right after examination;
+	 * {@link #restore}, called in position order just before the location is reported,
+	 * sets the location-specific fields and applies the accumulated changes again,
+	 * along with the statistics that depend on them, so that the duplex ends up in the
+	 * same state as with sequential examination.
+	 */
+	static final class LocationState {
+		private final @NonNull Duplex duplex;
+		private final int position;
+		private final int nIssuesBefore;
+		private final boolean missingStrandBefore;
+		private final float minFracTopCandidateBefore;
+		private final @NonNull Quality minQualityBefore, maxQualityBefore;
+		private DetailedQualities<DuplexAssay> localAndGlobalQuality;
+		private int maxDistanceToLig;
+		private @NonNull List<String> newIssues = Collections.emptyList();
+		private boolean missingStrand;
+		/**
+		 * Whether examination set minFracTopCandidate from the top strand, in which
+		 * case the value does not depend on earlier locations
+		 */
+		private boolean topFracSet;
+		private float fracTopCandidate;
+		/**
+		 * Histograms that sequential examination would have updated with the
+		 * accumulated values of missingStrand and minFracTopCandidate; null if not
+		 * applicable
+		 */
+		@Nullable Histogram collisionProbabilityHistogram, minFracTopCandidateHistogram;
+
+		private LocationState(@NonNull Duplex duplex, int position) {
+			this.duplex = duplex;
+			this.position = position;
+			nIssuesBefore = duplex.issues.size();
+			missingStrandBefore = duplex.missingStrand;
+			minFracTopCandidateBefore = duplex.minFracTopCandidate;
+			minQualityBefore = duplex.minQuality;
+			maxQualityBefore = duplex.maxQuality;
+			//Start from neutral values so the changes made by examination can be isolated
+			duplex.missingStrand = false;
+			duplex.minFracTopCandidate = Float.MAX_VALUE;
+		}
+
+		private void captureAndRevert() {
+			localAndGlobalQuality = duplex.localAndGlobalQuality;
+			maxDistanceToLig = duplex.maxDistanceToLig;
+			final List<String> addedIssues = duplex.issues.subList(nIssuesBefore, duplex.issues.size());
+			if (!addedIssues.isEmpty()) {
+				newIssues = new ArrayList<>(addedIssues);
+				addedIssues.clear();
+			}
+			missingStrand = duplex.missingStrand;
+			fracTopCandidate = duplex.minFracTopCandidate;
+			duplex.missingStrand = missingStrandBefore;
+			duplex.minFracTopCandidate = minFracTopCandidateBefore;
+			duplex.minQuality = minQualityBefore;
+			duplex.maxQuality = maxQualityBefore;
+		}
+
+		void restore() {
+			duplex.localAndGlobalQuality = localAndGlobalQuality;
+			duplex.maxDistanceToLig = maxDistanceToLig;
+			duplex.lastExaminedPosition = position;
+			duplex.issues.addAll(newIssues);
+			duplex.missingStrand |= missingStrand;
+			duplex.minFracTopCandidate = topFracSet ?
+					fracTopCandidate
+				:
+					Math.min(duplex.minFracTopCandidate, fracTopCandidate);
+			duplex.maxQuality = max(duplex.maxQuality, localAndGlobalQuality.getNonNullValue());
+			duplex.minQuality = min(duplex.minQuality, localAndGlobalQuality.getNonNullValue());
+
+			final Histogram collisionHist = collisionProbabilityHistogram;
+			if (collisionHist != null && !duplex.missingStrand) {
+				collisionHist.insert((int) (1_000f * duplex.probAtLeastOneCollision));
+			}
+			final Histogram fracHist = minFracTopCandidateHistogram;
+			if (fracHist != null) {
+				registerMinFracTopCandidate(duplex, fracHist);
+			}
+		}
+	}
+
+	/**
+	 * Record minFracTopCandidate for duplexes that have more than one read
+	 * @param d
+	 * @param hist
+	 */
+	static void registerMinFracTopCandidate(@NonNull Duplex d, @NonNull Histogram hist) {
+		if (d.allRecords.size() < 2 || d.minFracTopCandidate == Float.MAX_VALUE) {
+			return;
+		}
+		hist.insert((int) (d.minFracTopCandidate * 10));
+	}
+
+	/**
+	 * @return Smallest number of consecutive positions between from and to (inclusive)
+	 * on contig that includes the parts of all records of this duplex that fall in that
+	 * range, or 0 if there are none
+	 */
+	int getSpanOnContig(int contigIndex, int from, int to) {
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (ExtendedSAMRecord r: allRecords) {
+			if (r.getReferenceIndex() != contigIndex || r.getUnclippedEnd() < from ||
+					r.getUnclippedStart() > to) {
+				continue;
+			}
+			min = Math.min(min, Math.max(from, r.getUnclippedStart()));
+			max = Math.max(max, Math.min(to, r.getUnclippedEnd()));
+		}
+		return max < min ? 0 : max - min + 1;
+	}
+
 	public int distanceTo(Duplex d2) {
 		return Math.max(Math.abs(leftAlignmentStart.position - d2.leftAlignmentStart.position),
 			Math.abs(rightAlignmentEnd.position - d2.rightAlignmentEnd.position));
@@ -641,6 +781,38 @@ public final class Duplex implements HasInterval<Integer> {
 			Mutinack analyzer,
 			Parameters param,
 			AnalysisStats stats) {
+		examineAtLoc0(location, result, candidateSet, topCounter, bottomCounter,
+			analyzer, param, stats, null);
+	}
+
+	/**
+	 * Same as {@link #examineAtLoc}, but changes to fields that accumulate over locations
+	 * are deferred until {@link LocationState#restore} is called on the result.
+	 */
+	@NonNull LocationState examineAtLocDeferred(@NonNull SequenceLocation location,
+			LocationExaminationResults result,
+			@NonNull SetIterable<@NonNull CandidateSequence> candidateSet,
+			@NonNull CandidateCounter topCounter,
+			@NonNull CandidateCounter bottomCounter,
+			Mutinack analyzer,
+			Parameters param,
+			AnalysisStats stats) {
+		final LocationState state = new LocationState(this, location.position);
+		examineAtLoc0(location, result, candidateSet, topCounter, bottomCounter,
+			analyzer, param, stats, state);
+		state.captureAndRevert();
+		return state;
+	}
+
+	private void examineAtLoc0(@NonNull SequenceLocation location,
+			LocationExaminationResults result,
+			@NonNull SetIterable<@NonNull CandidateSequence> candidateSet,
+			@NonNull CandidateCounter topCounter,
+			@NonNull CandidateCounter bottomCounter,
+			Mutinack analyzer,
+			Parameters param,
+			AnalysisStats stats,
+			@Nullable LocationState deferredState) {
 
 		if (result.threadCount.incrementAndGet() != 1) {
 			throw new AssertionFailedException();
@@ -648,7 +820,7 @@ public final class Duplex implements HasInterval<Integer> {
 
 		try {
 			examineAtLoc1(location, result, candidateSet,
-				topCounter, bottomCounter, analyzer, param, stats);
+				topCounter, bottomCounter, analyzer, param, stats, deferredState);
 			lastExaminedPosition = location.position;
 		} catch (Exception e) {
 			throw new RuntimeException("Problem with duplex " + this, e);
@@ -668,7 +840,8 @@ public final class Duplex implements HasInterval<Integer> {
 			@NonNull CandidateCounter bottomCounter,
 			Mutinack analyzer,
 			Parameters param,
-			AnalysisStats stats) {
+			AnalysisStats stats,
+			@Nullable LocationState deferredState) {
 
 		topCounter.reset();
 		bottomCounter.reset();
@@ -804,6 +977,9 @@ public final class Duplex implements HasInterval<Integer> {
 
 		if (top != null) {
 			minFracTopCandidate = top.count / ((float) nTopReadsWithCandidate);
+			if (deferredState != null) {
+				deferredState.topFracSet = true;
+			}
 		}
 
 		if (bottom != null) {
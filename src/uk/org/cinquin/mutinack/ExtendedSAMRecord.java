@@ -39,7 +39,6 @@ import contrib.uk.org.lidalia.slf4jext.Logger;
 import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.map.hash.TObjectByteHashMap;
 import uk.org.cinquin.mutinack.candidate_sequences.CigarSplitAnalysis;
 import uk.org.cinquin.mutinack.candidate_sequences.ExtendedAlignmentBlock;
 import uk.org.cinquin.mutinack.candidate_sequences.SAMTranslocationTagParser;
@@ -64,11 +63,13 @@ public final class ExtendedSAMRecord implements HasInterval<Integer> {
 	private final @Nullable Map<String, ExtendedSAMRecord> extSAMCache;
 	public final @NonNull SAMRecord record;
 	private final @NonNull String name;
-	private @Nullable ExtendedSAMRecord mate;
+	private volatile @Nullable ExtendedSAMRecord mate;
 	private volatile boolean triedRetrievingMateFromFile = false;
 	private final @NonNull String mateName;
 	private final int hashCode;
 	public @Nullable Duplex duplex;
+	//Set when the read is assigned to a duplex
+	boolean mateMissingWhenGrouped;
 	private byte @Nullable[] mateVariableBarcode;
 	public final byte @NonNull[] variableBarcode;
 	public final byte @Nullable[] constantBarcode;
@@ -84,9 +85,8 @@ public final class ExtendedSAMRecord implements HasInterval<Integer> {
 	 */
 	public final int effectiveLength;
 	int nReferenceDisagreements = 0;
-	public static final byte PHRED_NO_ENTRY = -1;
-	public final @NonNull TObjectByteHashMap<SequenceLocation> basePhredScores =
-		new TObjectByteHashMap<>(150, 0.5f, PHRED_NO_ENTRY);
+	public static final byte PHRED_NO_ENTRY = BasePhredScores.NO_ENTRY;
+	private @Nullable BasePhredScores basePhredScores;//Allocated upon first use
 	private int nClipped = -1;
 	private Boolean formsWrongPair;
 	public boolean processed = false;
@@ -175,6 +175,31 @@ public final class ExtendedSAMRecord implements HasInterval<Integer> {
 		nClipped = -1;
 	}
 
+	/**
+	 * @param location
+	 * @return Phred score of the base aligned at location, or PHRED_NO_ENTRY if none
+	 * has been recorded
+	 */
+	public byte getBasePhredScore(@NonNull SequenceLocation location) {
+		final BasePhredScores scores = basePhredScores;
+		return scores == null ? PHRED_NO_ENTRY : scores.get(location);
+	}
+
+	/**
+	 * @param location
+	 * @param phred
+	 * @return Phred score previously recorded at location, or PHRED_NO_ENTRY
+	 */
+	public byte putBasePhredScore(@NonNull SequenceLocation location, byte phred) {
+		BasePhredScores scores = basePhredScores;
+		if (scores == null) {
+			scores = new BasePhredScores(getLocation().contigIndex, getAlignmentStart(),
+				getAlignmentEnd());
+			basePhredScores = scores;
+		}
+		return scores.put(location, phred);
+	}
+
 	@SuppressWarnings("static-access")
 	public ExtendedSAMRecord(@NonNull SAMRecord rec, @NonNull String fullName,
 			@NonNull List<@NonNull AnalysisStats> stats,
@@ -657,37 +682,65 @@ public final class ExtendedSAMRecord implements HasInterval<Integer> {
 	}
 
 	public ExtendedSAMRecord checkMate() {
-		if (mate != null) {
+		if (!mustFetchMateFromFile()) {
 			return mate;
 		}
+		if (!triedRetrievingMateFromFile) {
+			synchronized (this) {
+				if (!triedRetrievingMateFromFile) {
+					mate = analyzer.getRead(record.getReadName(), !record.getFirstOfPairFlag(),
+						new SequenceLocation(location.referenceGenome, record.getMateReferenceName(), groupSettings.getIndexContigNameReverseMap(),
+							record.getMateAlignmentStart() - 1, false) , -1, 1, !runAndTile.isEmpty());
+					triedRetrievingMateFromFile = true;
+				}
+			}
+		}
+		return mate;
+	}
+
+	/**
+	 * Looks for the mate in the cache if needed.
+	 * @return True iff checkMate would need to retrieve the mate from the BAM file
+	 */
+	boolean mustFetchMateFromFile() {
+		if (mate != null) {
+			return false;
+		}
 		if (record.getMateUnmappedFlag()) {
-			return null;
+			return false;
 		}
 		if (extSAMCache != null) {
 			mate = extSAMCache.get(mateName);
 			if (mate != null) {
-				return mate;
+				return false;
 			}
 		}
 		if (!analyzer.getParam().fetchDistantMates) {
-			return null;
+			return false;
 		}
 		final int inferredSize = record.getInferredInsertSize();
 		if (inferredSize != 0 && Math.abs(inferredSize) <= analyzer.getParam().maxInsertSize &&
 				Objects.equals(record.getReferenceIndex(), record.getMateReferenceIndex())) {
-			return null;
-		}
-		if (!triedRetrievingMateFromFile) {
-			synchronized (this) {
-				if (!triedRetrievingMateFromFile) {
-					mate = analyzer.getRead(record.getReadName(), !record.getFirstOfPairFlag(),
-						new SequenceLocation(location.referenceGenome, record.getMateReferenceName(), groupSettings.getIndexContigNameReverseMap(),
-							record.getMateAlignmentStart() - 1, false) , -1, 1, !runAndTile.isEmpty());
-					triedRetrievingMateFromFile = true;
-				}
-			}
+			return false;
 		}
-		return mate;
+		return !triedRetrievingMateFromFile;
+	}
+
+	/**
+	 * Record the result of a mate lookup performed on behalf of checkMate (see
+	 * {@link DistantMateFetcher}); has no effect if checkMate already performed the lookup.
+	 * @param mateRecord The first record found by the same criteria as used by checkMate,
+	 * or null if there was none
+	 */
+	synchronized void setMateFetchedFromFile(@Nullable SAMRecord mateRecord) {
+		if (triedRetrievingMateFromFile) {
+			return;
+		}
+		mate = mateRecord == null ? null :
+			SubAnalyzer.getExtendedNoCaching(mateRecord,
+				new SequenceLocation(location.referenceGenome, mateRecord.getReferenceName(), groupSettings.getIndexContigNameReverseMap(),
+					mateRecord.getAlignmentStart() - 1, false), analyzer, !runAndTile.isEmpty());
+		triedRetrievingMateFromFile = true;
 	}
 
 	/** Indexing starts at 0
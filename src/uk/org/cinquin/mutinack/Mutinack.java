@@ -39,12 +39,12 @@ import java.io.PrintStream;
 import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,6 +52,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -63,18 +64,24 @@ import java.util.OptionalLong;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.DoubleAdder;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -122,7 +129,6 @@ import uk.org.cinquin.mutinack.features.BedComplement;
 import uk.org.cinquin.mutinack.features.BedReader;
 import uk.org.cinquin.mutinack.features.GenomeFeatureTester;
 import uk.org.cinquin.mutinack.features.GenomeInterval;
-import uk.org.cinquin.mutinack.features.PosByPosNumbersPB;
 import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
 import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers.Builder;
 import uk.org.cinquin.mutinack.misc_util.Assert;
@@ -130,6 +136,7 @@ import uk.org.cinquin.mutinack.misc_util.BAMUtil;
 import uk.org.cinquin.mutinack.misc_util.CloseableCloser;
 import uk.org.cinquin.mutinack.misc_util.CloseableListWrapper;
 import uk.org.cinquin.mutinack.misc_util.CloseableWrapper;
+import uk.org.cinquin.mutinack.misc_util.CoverageAwareSplitter;
 import uk.org.cinquin.mutinack.misc_util.GetReadStats;
 import uk.org.cinquin.mutinack.misc_util.GitCommitInfo;
 import uk.org.cinquin.mutinack.misc_util.Handle;
@@ -146,8 +153,11 @@ import uk.org.cinquin.mutinack.misc_util.collections.ByteArray;
 import uk.org.cinquin.mutinack.misc_util.collections.TSVMapReader;
 import uk.org.cinquin.mutinack.misc_util.exceptions.AssertionFailedException;
 import uk.org.cinquin.mutinack.output.ParedDownMutinack;
+import uk.org.cinquin.mutinack.output.RunLengthCoverageWriter;
 import uk.org.cinquin.mutinack.output.RunResult;
 import uk.org.cinquin.mutinack.qualities.Quality;
+import uk.org.cinquin.mutinack.sequence_IO.UncompressedReadCache;
+import uk.org.cinquin.mutinack.sequence_IO.ReadNameIndex;
 import uk.org.cinquin.mutinack.statistics.Actualizable;
 import uk.org.cinquin.mutinack.statistics.CounterWithBedFeatureBreakdown;
 import uk.org.cinquin.mutinack.statistics.DoubleAdderFormatter;
@@ -202,6 +212,11 @@ public class Mutinack implements Actualizable, Closeable {
 	));
 	@SuppressWarnings("StaticVariableMayNotBeInitialized")
 	private volatile static ExecutorService contigThreadPool;
+	/**
+	 * Number of threads of the executor pool that are taken up by read loaders, across
+	 * all contigs
+	 */
+	private static final AtomicInteger nLoaderThreads = new AtomicInteger();
 
 	private final Collection<Closeable> itemsToClose = new ArrayList<>();
 	private final Date startDate;
@@ -260,6 +275,18 @@ public class Mutinack implements Actualizable, Closeable {
 	private String finalOutputBaseName;
 	public boolean notifiedUnpairedReads = false;
 	final @Nullable SAMFileWriter outputAlignmentWriter;
+	/**
+	 * Built or loaded from cache when the analyzer is created, before any reads
+	 * are loaded, so that reader threads never wait for it; null if not used
+	 */
+	private final @Nullable ReadNameIndex readNameIndex;
+	/**
+	 * False if the uncompressed read cache was not requested, or if it cannot be used
+	 * for the input file
+	 */
+	final boolean useUncompressedReadCache;
+	private volatile @Nullable UncompressedReadCache uncompressedReadCache;//Loaded upon first use
+	final @Nullable DistantMateFetcher distantMateFetcher;
 
 	/**
 	 *
@@ -285,6 +312,22 @@ public class Mutinack implements Actualizable, Closeable {
 		}
 
 		try {
+			final ReadNameIndex index = readNameIndex;
+			if (index != null) {
+				final long[] offsets = index.getCandidateOffsets(readName, firstOfPair);
+				if (offsets.length > 0) {
+					//All records with that name and pair flag are indexed, so if none
+					//matches the scan below would not find any either
+					final SAMRecord record = ReadNameIndex.getRecord(bamReader, offsets, readName,
+						firstOfPair, location.contigName, location.position + 1 - windowHalfWidth,
+						location.position + 1 + windowHalfWidth, avoidAlignmentStart0Based);
+					return record == null ? null : SubAnalyzer.getExtendedNoCaching(record,
+						new SequenceLocation(location.referenceGenome, location.contigName, groupSettings.getIndexContigNameReverseMap(),
+							record.getAlignmentStart() - 1, false), this, parseReadNameForPosition);
+				}
+				//Fall back to a scan for reads that are not in the index
+			}
+
 			final QueryInterval[] bamContig = {
 				bamReader.makeQueryInterval(location.contigName, Math.max(location.position + 1 - windowHalfWidth, 1),
 					location.position + 1 + windowHalfWidth)};
@@ -306,6 +349,20 @@ public class Mutinack implements Actualizable, Closeable {
 		}
 	}
 
+	@NonNull UncompressedReadCache getUncompressedReadCache() {
+		UncompressedReadCache result = uncompressedReadCache;
+		if (result == null) {
+			synchronized (this) {
+				result = uncompressedReadCache;
+				if (result == null) {
+					result = UncompressedReadCache.getCache(inputBam);
+					uncompressedReadCache = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	public void addFilterForCandidateReporting(String filterName, GenomeFeatureTester filter) {
 		if (filtersForCandidateReporting.put(filterName, filter) != null) {
 			throw new IllegalArgumentException("Filter " + filterName + " already added");
@@ -335,6 +392,15 @@ public class Mutinack implements Actualizable, Closeable {
 		this.inputBam = inputBam;
 		this.samValidationStringency = samValidationStringency;
 		this.outputAlignmentWriter = outputAlignmentWriter;
+		this.distantMateFetcher = param.fetchDistantMates && param.batchDistantMateFetches ?
+			new DistantMateFetcher(this) : null;
+		this.readNameIndex = param.readNameIndex ?
+			ReadNameIndex.getIndex(inputBam, param.maxInsertSize) : null;
+		this.useUncompressedReadCache = param.uncompressedReadCache && UncompressedReadCache.isCacheable(inputBam);
+		if (param.uncompressedReadCache && !useUncompressedReadCache) {
+			logger.warn("Not using uncompressed read cache for " + inputBam.getAbsolutePath() +
+				", whose header does not declare coordinate sort order");
+		}
 		if (approximateReadInsertSize != null) {
 			insertSizeProbRaw = approximateReadInsertSize.toProbabilityArray(false);
 			insertSizeProbSmooth = approximateReadInsertSize.toProbabilityArray(true);
@@ -370,7 +436,9 @@ public class Mutinack implements Actualizable, Closeable {
 
 		sortStatsListByDuplexLoadParams(stats);
 
-		final @NonNull String inputHash = (inputBam.length() > param.computeHashForBAMSmallerThanInGB * Math.pow(1024,3)) ?
+		final @NonNull String inputHash = param.fastBAMHash ?
+				BAMUtil.getBlockHash(inputBam)
+			: (inputBam.length() > param.computeHashForBAMSmallerThanInGB * Math.pow(1024,3)) ?
 				"too big"
 			:
 				BAMUtil.getHash(inputBam);
@@ -790,7 +858,7 @@ public class Mutinack implements Actualizable, Closeable {
 		groupSettings.setContigNamesToProcess(contigNamesToProcess);
 
 		StaticStuffToAvoidMutating.loadContigs(param.referenceGenomeShortName, param.referenceGenome,
-			contigNames);
+			contigNames, param.packedReference, param.windowedReference);
 
 		groupSettings.forceOutputAtLocations.clear();
 
@@ -1055,20 +1123,39 @@ public class Mutinack implements Actualizable, Closeable {
 				}
 			});
 
-			if (param.outputCoverageProto) {
+			if (param.outputCoverageProto || param.outputCoverageBedGraph) {
+				if (param.outputCoverageProto && contigSizes.isEmpty()) {
+					throw new IllegalArgumentException("Need contig sizes for outputCoverageProto; " +
+						"set readContigsFromFile option");
+				}
 				analyzer.stats.forEach(s -> {
-					s.positionByPositionCoverage = new HashMap<>();
-					if (contigSizes.isEmpty()) {
-						throw new IllegalArgumentException("Need contig sizes for outputCoverageProto; " +
-							"set readContigsFromFile option");
+					final @Nullable GenomeNumbers protoHeader;
+					final @Nullable String protoPath;
+					if (param.outputCoverageProto) {
+						final Builder builder = GenomeNumbers.newBuilder();
+						builder.setGeneratingProgramVersion(GitCommitInfo.getGitCommit());
+						builder.setGeneratingProgramArgs(param.toString());
+						protoPath = analyzer.finalOutputBaseName + '_' +
+							s.getName() + '_' + name + "_pos_by_pos_coverage.proto";
+						builder.setSampleName(new File(protoPath).getName());
+						protoHeader = builder.build();
+					} else {
+						protoHeader = null;
+						protoPath = null;
+					}
+					final String bedGraphPath = param.outputCoverageBedGraph ?
+						analyzer.finalOutputBaseName + "_coverage_" + s.getName() + ".bedGraph"
+					:
+						null;
+					try {
+						Optional.ofNullable(new File(protoPath != null ? protoPath : bedGraphPath).
+							getAbsoluteFile().getParentFile()).map(File::mkdirs);
+						s.coverageRunWriter = new RunLengthCoverageWriter(contigNames, contigSizes,
+							bedGraphPath, protoHeader, protoPath);
+						analyzer.itemsToClose.add(s.coverageRunWriter);
+					} catch (IOException e) {
+						handleOutputException(protoPath != null ? protoPath : bedGraphPath, e, param);
 					}
-					contigSizes.forEach((k,v) -> s.positionByPositionCoverage.put(k, new int [v]));
-					Builder builder = GenomeNumbers.newBuilder();
-					builder.setGeneratingProgramVersion(GitCommitInfo.getGitCommit());
-					builder.setGeneratingProgramArgs(param.toString());
-					builder.setSampleName(analyzer.finalOutputBaseName + '_' +
-						s.getName() + '_' + name + "_pos_by_pos_coverage");
-					s.positionByPositionCoverageProtobuilder = builder;
 				});
 			}
 
@@ -1191,7 +1278,8 @@ public class Mutinack implements Actualizable, Closeable {
 							throw new AssertionFailedException();
 						}
 						counter.setOutputFile(new File(outputPath + "_nPosDuplex.bed"));
-						s.nPosDuplex.addPredicate("breakdown_" + f.getName(), filter, counter);
+						s.nPosDuplex.addPredicate("breakdown_" + f.getName(),
+							s.getCachedLocationPredicate(filter), counter);
 						for (List<IntervalData<GenomeInterval>> locs: filter.bedFileIntervals.values()) {
 							for (IntervalData<GenomeInterval> loc: locs) {
 								for (GenomeInterval interval : loc.getData()) {
@@ -1208,7 +1296,8 @@ public class Mutinack implements Actualizable, Closeable {
 						counter.setAnalyzerName(name);
 						counter.setOutputFile(new File(bedPath + '_' + s.getName() +
 							"_nPosDuplexQualityQ2OthersQ1Q2_" + name + ".bed"));
-						s.nPosDuplexQualityQ2OthersQ1Q2.addPredicate("breakdown_" + f.getName(), filter, counter);
+						s.nPosDuplexQualityQ2OthersQ1Q2.addPredicate("breakdown_" + f.getName(),
+							s.getCachedLocationPredicate(filter), counter);
 					});
 				} catch (Exception e) {
 					throw new RuntimeException("Problem setting up BED file " + bedPath, e);
@@ -1318,6 +1407,31 @@ public class Mutinack implements Actualizable, Closeable {
 
 		@SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
 		final List<Phaser> phasers = new ArrayList<>();
+		final Consumer<@NonNull AnalysisChunk> setUpChunk = analysisChunk -> {
+			analyzers.forEach(a -> {
+				final SubAnalyzer subAnalyzer = new SubAnalyzer(Objects.requireNonNull(a));
+				synchronized (a.subAnalyzers) {
+					a.subAnalyzers.add(subAnalyzer);
+				}
+				analysisChunk.subAnalyzers.add(subAnalyzer);
+			});
+
+			final SubAnalyzerPhaser phaser = new SubAnalyzerPhaser(
+				param,
+				analysisChunk,
+				!param.outputAlignmentFile.isEmpty(),
+				groupSettings.forceOutputAtLocations,
+				dubiousOrGoodDuplexCovInAllInputs,
+				goodDuplexCovInAllInputs,
+				analysisChunk.contigName,
+				analysisChunk.contig,
+				excludeBEDs,
+				repetitiveBEDs,
+				groupSettings.PROCESSING_CHUNK);
+			analysisChunk.phaser = phaser;
+			phaser.bulkRegister(analyzers.size());
+		};
+
 		for (final String contigName: contigNamesToProcess) {
 			final int contigIndex = Objects.requireNonNull(
 				groupSettings.getIndexContigNameReverseMap().get(contigName));
@@ -1345,21 +1459,37 @@ public class Mutinack implements Actualizable, Closeable {
 
 			final int contigParallelizationFactor = getContigParallelizationFactor(
 				contigIndex, param, Objects.requireNonNull(contigSizes.get(contigNames.get(contigIndex))));
-			List<AnalysisChunk> contigAnalysisChunks = new ArrayList<>();
+			//Chunks can be added during processing by dynamic splitting
+			List<AnalysisChunk> contigAnalysisChunks = new CopyOnWriteArrayList<>();
 			analysisChunks.add(contigAnalysisChunks);
 
 			final int subAnalyzerSpan = (terminateContigAtPosition - startContigAtPosition + 1) /
 				contigParallelizationFactor;
+			final int @Nullable[] chunkBoundaries =
+				(param.coverageAwareParallelization && contigParallelizationFactor > 1) ?
+					CoverageAwareSplitter.computeChunkBoundaries(
+						analyzers.stream().map(a -> a.inputBam).collect(Collectors.toList()),
+						contigName, startContigAtPosition, terminateContigAtPosition,
+						contigParallelizationFactor)
+				:
+					null;
 			for (int p = 0; p < contigParallelizationFactor; p++) {
 				final AnalysisChunk analysisChunk = new AnalysisChunk(
 					param.referenceGenomeShortName,
 					Objects.requireNonNull(contigNames.get(contigIndex)), nParameterSets, groupSettings);
 				contigAnalysisChunks.add(analysisChunk);
 
-				final int startSubAt = startContigAtPosition + p * subAnalyzerSpan;
-				final int terminateAtPosition = (p == contigParallelizationFactor - 1) ?
-					terminateContigAtPosition
-					: startSubAt + subAnalyzerSpan - 1;
+				final int startSubAt;
+				final int terminateAtPosition;
+				if (chunkBoundaries != null) {
+					startSubAt = chunkBoundaries[p];
+					terminateAtPosition = chunkBoundaries[p + 1] - 1;
+				} else {
+					startSubAt = startContigAtPosition + p * subAnalyzerSpan;
+					terminateAtPosition = (p == contigParallelizationFactor - 1) ?
+						terminateContigAtPosition
+						: startSubAt + subAnalyzerSpan - 1;
+				}
 
 				Assert.isTrue(terminateAtPosition >= startSubAt - 1);
 				analysisChunk.contig = contigIndex;
@@ -1367,27 +1497,14 @@ public class Mutinack implements Actualizable, Closeable {
 				analysisChunk.lastProcessedPosition = analysisChunk.startAtPosition - 1;
 				analysisChunk.terminateAtPosition = terminateAtPosition;
 
-				analyzers.forEach(a -> {
-					final SubAnalyzer subAnalyzer = new SubAnalyzer(Objects.requireNonNull(a));
-					a.subAnalyzers.add(subAnalyzer);
-					analysisChunk.subAnalyzers.add(subAnalyzer);
-				});
+				if (p > 0 && ChunkOverlap.canShare(param)) {
+					final ChunkOverlap overlap = new ChunkOverlap(startSubAt, param.maxInsertSize);
+					contigAnalysisChunks.get(p - 1).overlapWithRight = overlap;
+					analysisChunk.overlapWithLeft = overlap;
+				}
 
-				final SubAnalyzerPhaser phaser = new SubAnalyzerPhaser(
-					param,
-					analysisChunk,
-					!param.outputAlignmentFile.isEmpty(),
-					groupSettings.forceOutputAtLocations,
-					dubiousOrGoodDuplexCovInAllInputs,
-					goodDuplexCovInAllInputs,
-					contigNames.get(contigIndex),
-					contigIndex,
-					excludeBEDs,
-					repetitiveBEDs,
-					groupSettings.PROCESSING_CHUNK);
-				analysisChunk.phaser = phaser;
-				phaser.bulkRegister(analyzers.size());
-				phasers.add(phaser);
+				setUpChunk.accept(analysisChunk);
+				phasers.add(analysisChunk.phaser);
 			}//End parallelization loop over analysisChunks
 		}//End loop over contig index
 
@@ -1399,6 +1516,12 @@ public class Mutinack implements Actualizable, Closeable {
 				}
 			}
 		}
+		final AtomicInteger nRunningChunks = new AtomicInteger();
+		final int maxRunningChunks = param.maxDynamicSplitRunningChunks > 0 ?
+			param.maxDynamicSplitRunningChunks
+		:
+			Runtime.getRuntime().availableProcessors();
+
 		@SuppressWarnings("StaticVariableUsedBeforeInitialization")
 		final ParFor parFor = new ParFor(0, contigNamesToProcess.size() - 1, null, contigThreadPool, true);
 		parFor.setName("contig loop");
@@ -1409,18 +1532,21 @@ public class Mutinack implements Actualizable, Closeable {
 				final String contigName = contigNamesToProcess.get(loopIndex);
 				final int contigIndex = contigNames.indexOf(contigName);
 
-				final int contigParallelizationFactor = getContigParallelizationFactor(
-					contigIndex, param, Objects.requireNonNull(contigSizes.get(contigName)));
-
+				final List<AnalysisChunk> contigAnalysisChunks = analysisChunks.get(loopIndex);
 				final List<Future<?>> futures = new ArrayList<>();
-				int analyzerIndex = -1;
+				final BlockingQueue<@NonNull AnalysisChunk> handedOffTails = new LinkedBlockingQueue<>();
 
-				for (Mutinack analyzer: analyzers) {
-					analyzerIndex++;
+				final Consumer<@NonNull AnalysisChunk> launchChunk = analysisChunk -> {
+					if (param.dynamicChunkSplitting) {
+						analysisChunk.handedOffTails = handedOffTails;
+					}
+					nRunningChunks.incrementAndGet();
+					final AtomicInteger nRunningLoaders = new AtomicInteger(analyzers.size());
+					int analyzerIndex = -1;
+
+					for (Mutinack analyzer: analyzers) {
+						analyzerIndex++;
 
-					for (int p = 0; p < contigParallelizationFactor; p++) {
-						final AnalysisChunk analysisChunk = analysisChunks.get(loopIndex).
-							get(p);
 						final SubAnalyzer subAnalyzer = analysisChunk.subAnalyzers.get(analyzerIndex);
 
 						final String savedThreadName = Thread.currentThread().getName();
@@ -1443,11 +1569,49 @@ public class Mutinack implements Actualizable, Closeable {
 								}
 							} finally {
 								Thread.currentThread().setName(savedThreadName);
+								nLoaderThreads.decrementAndGet();
+								if (nRunningLoaders.decrementAndGet() == 0) {
+									nRunningChunks.decrementAndGet();
+								}
 							}
 						};
-						futures.add(StaticStuffToAvoidMutating.getExecutorService().submit(r));
-					}//End loop over parallelization factor
-				}//End loop over analyzers
+						nLoaderThreads.incrementAndGet();
+						try {
+							futures.add(StaticStuffToAvoidMutating.getExecutorService().submit(r));
+						} catch (RejectedExecutionException e) {
+							nLoaderThreads.decrementAndGet();
+							throw e;
+						}
+					}//End loop over analyzers
+				};
+
+				contigAnalysisChunks.forEach(launchChunk);
+
+				//Tails that have been handed off but that are waiting for enough
+				//threads to be available in the executor pool
+				final Deque<@NonNull AnalysisChunk> pendingTails = new ArrayDeque<>();
+
+				//Futures cannot all be done while a tail is waiting in the queue, since tails are
+				//handed off by a phaser whose own chunk is still being processed
+				while (param.dynamicChunkSplitting && groupSettings.errorCause == null &&
+						!(futures.stream().allMatch(Future::isDone) && handedOffTails.isEmpty() &&
+							pendingTails.isEmpty())) {
+					synchronized (Mutinack.class) {
+						while (!pendingTails.isEmpty() && hasThreadsForChunk(analyzers.size())) {
+							launchChunk.accept(pendingTails.remove());
+						}
+						if (pendingTails.isEmpty() && nRunningChunks.get() < maxRunningChunks &&
+								hasThreadsForChunk(analyzers.size())) {
+							requestTailHandoff(contigAnalysisChunks, param.minDynamicSplitSpan);
+						}
+					}
+					final AnalysisChunk tail = handedOffTails.poll(1, TimeUnit.SECONDS);
+					if (tail != null) {
+						setUpChunk.accept(tail);
+						contigAnalysisChunks.add(tail);
+						pendingTails.add(tail);
+					}
+				}
 
 				MultipleExceptionGatherer gatherer = new MultipleExceptionGatherer();
 
@@ -1464,20 +1628,20 @@ public class Mutinack implements Actualizable, Closeable {
 
 				gatherer.throwIfPresent();
 
-				for (int p = 0; p < contigParallelizationFactor; p++) {
-					final AnalysisChunk analysisChunk = analysisChunks.get(loopIndex).
-						get(p);
+				for (AnalysisChunk analysisChunk: contigAnalysisChunks) {
 					Assert.noException(
 						() -> analysisChunk.subAnalyzers.forEach(sa -> {
 							sa.checkAllDone();
 							analyzers.forEach(a -> {
 								boolean found = false;
-								for (int i = 0; i < a.subAnalyzers.size(); i++) {
-									//noinspection ObjectEquality
-									if (a.subAnalyzers.get(i) == sa) {
-										Assert.isFalse(found);
-										a.subAnalyzers.set(i, null);
-										found = true;
+								synchronized (a.subAnalyzers) {
+									for (int i = 0; i < a.subAnalyzers.size(); i++) {
+										//noinspection ObjectEquality
+										if (a.subAnalyzers.get(i) == sa) {
+											Assert.isFalse(found);
+											a.subAnalyzers.set(i, null);
+											found = true;
+										}
 									}
 								}
 							});
@@ -1597,6 +1761,55 @@ public class Mutinack implements Actualizable, Closeable {
 
 	}
 
+	/**
+	 * Launching a chunk takes one thread per input from the executor pool for the
+	 * whole time the chunk is processed; the pool rejects tasks once it reaches its
+	 * maximum size.
+	 * @param nInputs
+	 * @return Whether there are enough threads left in the executor pool for one more
+	 * chunk to be launched
+	 */
+	private static boolean hasThreadsForChunk(int nInputs) {
+		final ExecutorService executor = StaticStuffToAvoidMutating.getExecutorService();
+		if (!(executor instanceof ThreadPoolExecutor)) {
+			return true;
+		}
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+		//The active count lags a little behind submissions, so also take into account
+		//the loader threads that have been submitted
+		final int inUse = Math.max(pool.getActiveCount(), nLoaderThreads.get());
+		return (pool.getMaximumPoolSize() - inUse) / nInputs > 0;
+	}
+
+	/**
+	 * Ask the phaser of the chunk that has the most positions left to process to hand off
+	 * the tail of that chunk at the end of its current processing step.
+	 */
+	private static void requestTailHandoff(List<AnalysisChunk> analysisChunks, int minSplitSpan) {
+		AnalysisChunk mostRemaining = null;
+		int maxRemaining = 0;
+		for (AnalysisChunk analysisChunk: analysisChunks) {
+			final Phaser phaser = analysisChunk.phaser;
+			if (phaser == null || phaser.isTerminated()) {
+				continue;
+			}
+			if (analysisChunk.tailHandoffRequested) {
+				return;
+			}
+			if (analysisChunk.tailHandoffDeclined) {
+				continue;
+			}
+			final int remaining = analysisChunk.terminateAtPosition - analysisChunk.lastProcessedPosition;
+			if (remaining > maxRemaining) {
+				maxRemaining = remaining;
+				mostRemaining = analysisChunk;
+			}
+		}
+		if (mostRemaining != null && maxRemaining > 2 * minSplitSpan) {
+			mostRemaining.tailHandoffRequested = true;
+		}
+	}
+
 	private static int getContigParallelizationFactor(int contigIndex, Parameters param, int contigSize) {
 		List<Integer> factorList = param.contigByContigParallelization;
 		final int result;
@@ -1661,25 +1874,6 @@ public class Mutinack implements Actualizable, Closeable {
 
 		gatherer.tryAdd(() -> PoolSettings.removePoolSetting(poolSettings));
 
-		stats.forEach(s -> gatherer.tryAdd(() -> {
-			if (s.positionByPositionCoverage != null) {
-				Builder builder = s.positionByPositionCoverageProtobuilder;
-				for (Entry<String, int[]> e: s.positionByPositionCoverage.entrySet()) {
-					PosByPosNumbersPB.ContigNumbers.Builder builder2 =
-						PosByPosNumbersPB.ContigNumbers.newBuilder();
-					builder2.setContigName(e.getKey());
-					int [] numbers = e.getValue();
-					builder2.ensureNumbersIsMutable(numbers.length);
-					builder2.numUsedInNumbers_ = numbers.length;
-					builder2.numbers_ = numbers;
-					builder.addContigNumbers(builder2);
-				}
-				Path path = Paths.get(builder.getSampleName() + ".proto");
-				builder.setSampleName(path.getFileName().toString());
-				Files.write(path, builder.build().toByteArray());
-			}
-		}));
-
 		gatherer.throwIfPresent();
 	}
 
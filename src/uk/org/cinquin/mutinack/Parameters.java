@@ -86,6 +86,14 @@ public final class Parameters implements Serializable, Cloneable {
 				+ "contigByContigParallelization at the same time");
 		}
 
+		if (dynamicChunkSplitting && minDynamicSplitSpan < 1) {
+			throw new IllegalArgumentException("Parameter minDynamicSplitSpan must be at least 1");
+		}
+
+		if (maxDynamicSplitRunningChunks < 0) {
+			throw new IllegalArgumentException("Parameter maxDynamicSplitRunningChunks must be at least 0");
+		}
+
 		if (ignoreFirstNBasesQ2 < ignoreFirstNBasesQ1) {
 			throw new IllegalArgumentException("Parameter ignoreFirstNBasesQ2 must be greater than ignoreFirstNBasesQ1");
 		}
@@ -114,6 +122,10 @@ public final class Parameters implements Serializable, Cloneable {
 			throw new IllegalArgumentException("-clipPairOverlap requires -collapseFilteredReads");
 		}
 
+		if (packedReference && windowedReference) {
+			throw new IllegalArgumentException("Cannot use both -packedReference and -windowedReference");
+		}
+
 		switch(candidateQ2Criterion) {
 			case "1Q2Duplex":
 				String baseErrorMessage = " only valid when candidateQ2Criterion==NQ1Duplexes";
@@ -373,6 +385,34 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-contigByContigParallelization", description = "Contig-by-contig list of number of chunks into which to split contig for parallel processing; setting this value too high can be highly counter-productive; last value in the list applies to all contigs whose index falls outside of the list", required = false)
 	public List<Integer> contigByContigParallelization = new ArrayList<>();
 
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-coverageAwareParallelization", description = "When splitting contigs for parallel processing, use the BAM indices to choose chunk boundaries such that each chunk holds a similar number of reads (summed across all inputs), instead of giving all chunks the same width; useful for capture or amplicon data", required = false, arity = 1)
+	public boolean coverageAwareParallelization = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-sampleReadAheadRecords", description = "If positive, number of records of each sample to decode ahead of processing, on a separate thread; processing steps are then lengthened to cover all positions that every sample has already decoded, so that samples synchronize less often and faster samples keep reading ahead while waiting for slower ones. 0 to use a fixed read-ahead of 100 records and fixed-length processing steps", required = false)
+	public int sampleReadAheadRecords = 0;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-bgzfReadAheadBlocks", description = "When reading input BAM files sequentially, number of compressed blocks to read ahead and inflate concurrently on a shared thread pool; 0 to inflate blocks one at a time on the reading thread", required = false)
+	public int bgzfReadAheadBlocks = 0;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-dynamicChunkSplitting", description = "When fewer contig chunks are being processed than there are available processors (see maxDynamicSplitRunningChunks), hand off the unprocessed tail of the chunk that has the most left to do to a new chunk", required = false, arity = 1)
+	public boolean dynamicChunkSplitting = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-minDynamicSplitSpan", description = "Minimal number of positions in each of the two parts that result from dynamic splitting of a chunk", required = false)
+	public int minDynamicSplitSpan = 100_000;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-maxDynamicSplitRunningChunks", description = "Dynamic splitting only hands off tails while fewer than this number of chunks are being processed; 0 to use the number of available processors", required = false)
+	public int maxDynamicSplitRunningChunks = 0;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-shareChunkOverlapReads", description = "Let each contig chunk pass the records it decodes at its start to the chunk to its left, which needs them to finish up, instead of having both chunks decode them from the BAM file; ignored when writing an output alignment, randomizing mates, or allowing missing supplementary flags, since records are then modified during processing", required = false, arity = 1)
+	public boolean shareChunkOverlapReads = false;
+
 	@IgnoreInHashcodeEquals
 	@Parameter(names = "-maxThreadsPerPool", description = "Maximum number of threads per pool;" +
 		" for now, to avoid deadlocks this number should be kept higher than number of inputs *" +
@@ -407,6 +447,10 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-computeHashForBAMSmallerThanInGB", description = "A simple hash will be computed for all input BAM files whose size is below specified threshold (in GB)", required = false)
 	public float computeHashForBAMSmallerThanInGB = 0.5f;
 
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-fastBAMHash", description = "Compute the hash of all input BAM files, irrespective of computeHashForBAMSmallerThanInGB, from the CRC32 and sizes recorded in their compressed blocks; this does not require any decompression, is performed in parallel, and is cached next to each input", required = false, arity = 1)
+	public boolean fastBAMHash = false;
+
 	@Parameter(names = "-lenientSamValidation", description = "NOW IGNORED; use -samValidation instead. Passed to Picard; seems at least sometimes necessary for" +
 		" alignments produced by BWA", required = false, hidden = true)
 	public boolean lenientSamValidation = true;
@@ -713,6 +757,18 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-fetchDistantMates", description = "high computational cost", required = false)
 	public boolean fetchDistantMates = false;
 
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-uncompressedReadCache", description = "Read records from an uncompressed, columnar copy of each input BAM file, written next to it (with extension .uncompressedReads) the first time the file is analyzed and reused by later runs, e.g. of parameter sweeps, as long as the input file fingerprint does not change; this saves BGZF inflation and BAM parsing at the cost of disk space, but barcode extraction, read name parsing and read filtering are still performed by each run; ignored for files whose header does not declare coordinate sort order", required = false, arity = 1)
+	public boolean uncompressedReadCache = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-readNameIndex", description = "When fetching distant mates or alternative alignments, look reads up by name in an index built in one pass over each input BAM file and cached next to it (with extension .readNameIndex), instead of scanning all reads around the expected position", required = false, arity = 1)
+	public boolean readNameIndex = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-batchDistantMateFetches", description = "When fetching distant mates, accumulate requests for a short while, sort them by mate position and retrieve nearby mates with a single query per cluster, using a small fixed number of threads", required = false, arity = 1)
+	public boolean batchDistantMateFetches = false;
+
 	@Parameter(names = "-acceptNInBarCode", description = "If true, an N read within the barcode is" +
 		" considered a match", required = false)
 	public boolean acceptNInBarCode = true;
@@ -735,6 +791,10 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-requireMatchInAlignmentEnd", description = "Used while grouping reads into duplexes; turn off if alignments were aggregated from sequencing runs with different read lengths", required = false)
 	public boolean requireMatchInAlignmentEnd = false;
 
+	@UsedAtDuplexGrouping
+	@Parameter(names = "-incrementalDuplexGrouping", description = "Carry duplexes over from one processing step to the next, only grouping newly-loaded reads and regrouping duplexes that gained or lost reads; much faster with high-depth data; duplexes should be the same as obtained by regrouping all reads at each step, but merges between duplexes that did not change are not repeated and are therefore not counted again in duplexGroupingDepth; ignored when jiggle or randomizeStrand is set", required = false, arity = 1)
+	public boolean incrementalDuplexGrouping = false;
+
 	@Parameter(names = "-computeDuplexGroupingStats", description = "Off by default for higher performance", required = false)
 	public boolean computeDuplexGroupingStats = false;
 
@@ -781,6 +841,10 @@ public final class Parameters implements Serializable, Cloneable {
 		required = false)
 	public boolean outputCoverageProto = false;
 
+	@Parameter(names = "-outputCoverageBedGraph", description = "Output run-length encoded bedGraph file that gives number of duplexes covering each position in the reference sequence;" +
+		" positions with no coverage are omitted", required = false)
+	public boolean outputCoverageBedGraph = false;
+
 	/**
 	 * Output section
 	 */
@@ -876,6 +940,11 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-excludeRegionsInBED", description = "Positions covered by this BED file will be completely ignored in the analysis", required = false)
 	public List<@NonNull String> excludeRegionsInBED = new ArrayList<>();
 
+	@Parameter(names = "-skipReadsInExcludedRegions", description = "Do not process reads that only cover positions listed by -excludeRegionsInBED" +
+		" (they are still used for duplex grouping); faster when large regions are excluded, but such reads are then not counted in" +
+		" read-level statistics (e.g. nReadsInsertSizeAboveMaximum, nReadMedianPhredBelowThreshold) or in nCandidateSubstitutionsConsidered", required = false, arity = 1)
+	public boolean skipReadsInExcludedRegions = false;
+
 	@FilePathList
 	@NoDuplicates
 	@Parameter(names = "-repetiveRegionBED", description = "If specified, used for stats (mutant|wt)Q2CandidateQ1Q2DCoverage[Non]Repetitive", required = false)
@@ -969,6 +1038,18 @@ public final class Parameters implements Serializable, Cloneable {
 	@Parameter(names = "-cartesianProductOfExploredParameters", description = "", required = false, hidden = true, arity = 1)
 	public boolean cartesianProductOfExploredParameters = true;
 
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-packedReference", description = "Serve the reference genome from a memory-mapped file with 2 bits per base, built once and cached next to the FASTA file, instead of loading contigs on the heap", required = false, arity = 1)
+	public boolean packedReference = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-windowedReference", description = "Read the reference genome on demand, in windows whose total size is bounded, using the FASTA index; avoids loading whole contigs when only small regions are analyzed", required = false, arity = 1)
+	public boolean windowedReference = false;
+
+	@IgnoreInHashcodeEquals
+	@Parameter(names = "-concurrentPositionExamination", description = "Within each processing step of each contig chunk, examine positions on multiple threads, in blocks longer than any duplex so that no duplex is examined from two threads at the same time; mutation reporting and read output are still performed in position order", required = false, arity = 1)
+	public boolean concurrentPositionExamination = false;
+
 	@IgnoreInHashcodeEquals
 	@Parameter(names = "-includeInsertionsInParamExploration", description = "", required = false, hidden = true, arity = 1)
 	public boolean includeInsertionsInParamExploration = false;
@@ -34,6 +34,7 @@ import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -49,7 +50,7 @@ import contrib.net.sf.samtools.SAMFileReader;
 import contrib.net.sf.samtools.SAMFileReader.QueryInterval;
 import contrib.net.sf.samtools.SAMFileWriter;
 import contrib.net.sf.samtools.SAMRecord;
-import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.net.sf.samtools.util.CloseableIterator;
 import contrib.uk.org.lidalia.slf4jext.Level;
 import contrib.uk.org.lidalia.slf4jext.Logger;
 import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
@@ -57,6 +58,7 @@ import gnu.trove.map.TMap;
 import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
 import uk.org.cinquin.mutinack.candidate_sequences.SAMTranslocationTagParser;
+import uk.org.cinquin.mutinack.features.RegionMask;
 import uk.org.cinquin.mutinack.misc_util.Assert;
 import uk.org.cinquin.mutinack.misc_util.Handle;
 import uk.org.cinquin.mutinack.misc_util.NamedPoolThreadFactory;
@@ -64,8 +66,9 @@ import uk.org.cinquin.mutinack.misc_util.Pair;
 import uk.org.cinquin.mutinack.misc_util.SettableInteger;
 import uk.org.cinquin.mutinack.misc_util.SimpleCounter;
 import uk.org.cinquin.mutinack.misc_util.Util;
-import uk.org.cinquin.mutinack.misc_util.collections.InterningSet;
+import uk.org.cinquin.mutinack.misc_util.collections.LocationInterningSet;
 import uk.org.cinquin.mutinack.misc_util.exceptions.AssertionFailedException;
+import uk.org.cinquin.mutinack.sequence_IO.BatchedIteratorPrefetcher;
 import uk.org.cinquin.mutinack.sequence_IO.IteratorPrefetcher;
 import uk.org.cinquin.mutinack.statistics.DoubleAdderFormatter;
 
@@ -81,6 +84,21 @@ public class ReadLoader {
     new NamedPoolThreadFactory("Distant mate prefetcher - "),
     new ThreadPoolExecutor.CallerRunsPolicy());
 
+	private static final int N_BGZF_INFLATER_THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Each queued task holds a compressed block of up to 64 kB; when the queue is full,
+	 * submissions are rejected and the blocks are inflated by the reading threads
+	 * themselves when they get to them
+	 */
+	private static final int MAX_QUEUED_BGZF_BLOCKS = 16 * N_BGZF_INFLATER_THREADS;
+	private static final ThreadPoolExecutor bgzfInflaterService = new ThreadPoolExecutor(
+		N_BGZF_INFLATER_THREADS, N_BGZF_INFLATER_THREADS, 60, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<>(MAX_QUEUED_BGZF_BLOCKS),
+		new NamedPoolThreadFactory("BGZF inflater - "), new ThreadPoolExecutor.AbortPolicy());
+	static {
+		bgzfInflaterService.allowCoreThreadTimeOut(true);
+	}
+
 	@SuppressWarnings("resource")
 	public static void load(
 			Mutinack analyzer,
@@ -123,7 +141,6 @@ public class ReadLoader {
 
 		try {
 			final String contigName = contigs.get(contigIndex);
-			final int truncateAtPosition = analysisChunk.terminateAtPosition;
 
 			final Set<String> droppedReads = param.dropReadProbability > 0 ? new THashSet<>(1_000_000) : null;
 			final Set<String> keptReads = param.dropReadProbability > 0 ?  new THashSet<>(1_000_000) : null;
@@ -148,8 +165,11 @@ public class ReadLoader {
 			groupSettings.addStatusUpdateTask(statusUpdateName, info);
 
 			final SAMFileReader bamReader = analyzer.readerPool.getObj();
-			SAMRecordIterator it0 = null;
+			CloseableIterator<SAMRecord> it0 = null;
 			try {
+				if (param.bgzfReadAheadBlocks > 0) {
+					bamReader.setBlockReadAhead(bgzfInflaterService, param.bgzfReadAheadBlocks);
+				}
 
 				if (contigs.get(0).equals(contigName)) {
 					final SequenceLocation contigLocation = new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, 0);
@@ -161,7 +181,9 @@ public class ReadLoader {
 						bamReader.makeQueryInterval(contigName, Math.max(1, startAt - maxInsertSize + 1))};
 				analyzer.timeStartProcessing = System.nanoTime();
 
-				subAnalyzer.truncateProcessingAt = truncateAtPosition;
+				//analysisChunk.terminateAtPosition is read afresh after each phaser advance
+				//because SubAnalyzerPhaser can move it back when the chunk tail is handed off
+				subAnalyzer.truncateProcessingAt = analysisChunk.terminateAtPosition;
 				subAnalyzer.startProcessingAt = startAt;
 
 				final List<Iterator<SAMRecord>> intersectionIterators = new ArrayList<>();
@@ -181,7 +203,12 @@ public class ReadLoader {
 				SimpleCounter<Pair<String, Integer>> readAheadStash = new SimpleCounter<>();
 
 				try {
-					it0 = bamReader.queryOverlapping(bamContig);
+					if (analyzer.useUncompressedReadCache) {
+						it0 = analyzer.getUncompressedReadCache().queryOverlapping(bamContig[0].referenceIndex,
+							bamContig[0].start);
+					} else {
+						it0 = bamReader.queryOverlapping(bamContig);
+					}
 				} catch (Exception e) {
 					throw new RuntimeException("Problem with sample " + analyzer.name, e);
 				}
@@ -189,13 +216,21 @@ public class ReadLoader {
 				Handle<Boolean> firstRun = new Handle<>(true);
 				subAnalyzer.stats = subAnalyzer.analyzer.stats.get(0);
 
-				final InterningSet<@NonNull SequenceLocation> locationInterningSet = new InterningSet<>(10_000);
+				final LocationInterningSet locationInterningSet = new LocationInterningSet(10_000);
+
+				//Records at the start of this chunk that the chunk on the left also needs
+				ChunkOverlap overlapToShare = analysisChunk.overlapWithLeft;
+				final @Nullable List<@NonNull SAMRecord> sharedRecords = overlapToShare == null ? null : new ArrayList<>();
+				//Records at the start of the chunk on the right, used in place of iterator once available
+				boolean lookForSharedRecords = true;
+				Iterator<@NonNull SAMRecord> sharedRecordIterator = null;
 
 				int furthestPositionReadInContig = 0;
 				final TMap<String, Pair<@NonNull ExtendedSAMRecord, @NonNull ReferenceSequence>> readsToProcess =
 					new THashMap<>(5_000, param.hashMapLoadFactor);
 				final @NonNull List<@NonNull AnalysisStats> stats = analyzer.stats;
-				try (IteratorPrefetcher<SAMRecord> iterator = new IteratorPrefetcher<>(it0, 100, it0,
+				try (BatchedIteratorPrefetcher<SAMRecord> iterator = new BatchedIteratorPrefetcher<>(it0,
+						param.sampleReadAheadRecords > 0 ? param.sampleReadAheadRecords : 100, it0,
 						e -> {
 							//Work around BWA output problem with reads that hang off the reference end
 							//See e.g. https://www.biostars.org/p/65338/
@@ -206,12 +241,46 @@ public class ReadLoader {
 							e.getUnclippedEnd();
 							e.getUnclippedStart();
 						},
-						subAnalyzer.stats.nReadsInPrefetchQueue))//TODO Create a sample-wide stats object
+						subAnalyzer.stats.nReadsInPrefetchQueue,//TODO Create a sample-wide stats object
+						BatchedIteratorPrefetcher.DEFAULT_BATCH_SIZE,
+						param.sampleReadAheadRecords > 0 ? SAMRecord::getAlignmentStart : null))
 				{
-					while (iterator.hasNext() && !phaser.isTerminated() && !groupSettings.terminateAnalysis) {
+					if (param.sampleReadAheadRecords > 0) {
+						subAnalyzer.decodedUpTo = iterator::getFetchedUpTo;
+					}
+					while ((sharedRecordIterator != null ? sharedRecordIterator.hasNext() : iterator.hasNext()) &&
+							!phaser.isTerminated() && !groupSettings.terminateAnalysis) {
 
 						processingStats.nRecordsProcessed++;
-						final SAMRecord samRecord = iterator.next();
+						SAMRecord samRecord = sharedRecordIterator != null ? sharedRecordIterator.next() : iterator.next();
+
+						if (overlapToShare != null && samRecord.getAlignmentStart() >= overlapToShare.firstAlignmentStart) {
+							Objects.requireNonNull(sharedRecords);
+							ChunkOverlap.prepareForSharing(samRecord);
+							sharedRecords.add(samRecord);
+							if (samRecord.getAlignmentStart() >= overlapToShare.lastAlignmentStart) {
+								overlapToShare.publish(analyzer, sharedRecords);
+								overlapToShare = null;
+							}
+						}
+
+						if (lookForSharedRecords) {
+							final ChunkOverlap overlapWithRight = analysisChunk.overlapWithRight;
+							if (overlapWithRight != null && samRecord.getAlignmentStart() >= overlapWithRight.firstAlignmentStart) {
+								lookForSharedRecords = false;
+								final List<@NonNull SAMRecord> shared = overlapWithRight.claim(analyzer);
+								if (shared != null) {
+									//The first shared record is the one that was just read from iterator
+									sharedRecordIterator = shared.iterator();
+									samRecord = sharedRecordIterator.next();
+									logger.debug("Using " + shared.size() + " records shared by chunk to the right of " +
+										analysisChunk + " for " + analyzer.name);
+									final @NonNull SequenceLocation sharedLocation = new SequenceLocation(
+										param.referenceGenomeShortName, contigIndex, contigName, samRecord.getAlignmentStart());
+									stats.forEach(s -> s.nRecordsSharedByChunkOverlap.add(sharedLocation, shared.size()));
+								}
+							}
+						}
 
 						if (alignmentWriter != null) {
 							samRecord.setAttribute("DS", null); //If not output read will not be written
@@ -387,9 +456,9 @@ public class ReadLoader {
 						lastProcessable.set(samRecord.getAlignmentStart() - 2);
 
 						final boolean finishUp;
-						if (lastProcessable.get() >= truncateAtPosition + maxInsertSize) {
+						if (lastProcessable.get() >= analysisChunk.terminateAtPosition + maxInsertSize) {
 							statusLogger.debug("Analysis of contig " + contigName + " stopping "
-									+ "because it went past " + truncateAtPosition);
+									+ "because it went past " + analysisChunk.terminateAtPosition);
 							finishUp = true;
 						} else {
 							finishUp = false;
@@ -442,7 +511,12 @@ public class ReadLoader {
 						}
 						final ExtendedSAMRecord extendedCopy = extended;
 						//Below duplicated to generate different stack traces
-						if (param.fetchDistantMates) {
+						final DistantMateFetcher distantMateFetcher = analyzer.distantMateFetcher;
+						if (distantMateFetcher != null) {
+							if (extendedCopy.mustFetchMateFromFile()) {
+								distantMateFetcher.request(extendedCopy);
+							}
+						} else if (param.fetchDistantMates) {
 							if (SAMTranslocationTagParser.hasRearrangementAttribute(samRecord)) {
 								@SuppressWarnings("unused")
 								Future<?> f = distantMatePrefetcherService.submit(extendedCopy::checkMate);
@@ -471,6 +545,7 @@ public class ReadLoader {
 							 * next round.
 							 */
 							final int localPauseAt = analysisChunk.pauseAtPosition;
+							final @Nullable RegionMask excludeMask = analysisChunk.excludeMask;
 							readsToProcess.retainEntries((k, v) -> {
 								final ExtendedSAMRecord read = v.fst;
 								if (firstRun.get() && read.getAlignmentStart() + maxInsertSize < startAt) {
@@ -480,7 +555,11 @@ public class ReadLoader {
 								}
 								if (read.getAlignmentStart() - 1 <= localPauseAt ||
 										read.getMateAlignmentStart() - 1 <= localPauseAt) {
-									subAnalyzer.processRead(location, locationInterningSet, read, v.snd);
+									if (coversExcludedPositionsOnly(excludeMask, read, contigIndex, param)) {
+										stats.forEach(s -> s.nReadsSkippedInExcludedRegions.increment(location));
+									} else {
+										subAnalyzer.processRead(location, locationInterningSet, read, v.snd);
+									}
 									return false;
 								}
 								return true;
@@ -493,12 +572,17 @@ public class ReadLoader {
 							break;
 						}
 					}//End samRecord loop
+
+					if (overlapToShare != null && !iterator.hasNext() && !phaser.isTerminated()) {
+						//Reached end of contig
+						overlapToShare.publish(analyzer, Objects.requireNonNull(sharedRecords));
+					}
 				}//End iterator try block
 
 				logger.trace("Member of phaser " + phaser + " reached final " + lastProcessable +
 						"; pauseAtPosition is " + analysisChunk.pauseAtPosition);
 
-				if (analysisChunk.lastProcessedPosition < truncateAtPosition) {
+				if (analysisChunk.lastProcessedPosition < analysisChunk.terminateAtPosition) {
 					readsToProcess.forEach((k, v) -> {
 						final SequenceLocation location = SequenceLocation.get(locationInterningSet, contigIndex,
 							param.referenceGenomeShortName, contigName, v.fst.record.getAlignmentStart());
@@ -506,10 +590,10 @@ public class ReadLoader {
 					});
 				}
 
-				if (truncateAtPosition == Integer.MAX_VALUE) {
+				if (analysisChunk.terminateAtPosition == Integer.MAX_VALUE) {
 					lastProcessable.set(furthestPositionReadInContig);
 				} else {
-					lastProcessable.set(truncateAtPosition + 1);
+					lastProcessable.set(analysisChunk.terminateAtPosition + 1);
 				}
 
 				while (!phaser.isTerminated() && !groupSettings.terminateAnalysis) {
@@ -518,9 +602,16 @@ public class ReadLoader {
 
 				logger.debug("Done processing contig " + contigName + " of file " + analyzer.inputBam);
 			} finally {
+				final ChunkOverlap overlapWithRight = analysisChunk.overlapWithRight;
+				if (overlapWithRight != null) {
+					//Make sure records are not retained if they were not used
+					overlapWithRight.claim(analyzer);
+				}
 				if (it0 != null) {
 					it0.close();
 				}
+				//Pooled readers are also used for random access, for which read-ahead is wasteful
+				bamReader.setBlockReadAhead(null, 0);
 				analyzer.readerPool.returnObj(bamReader);
 			}
 		} catch (Throwable t) {
@@ -561,6 +652,9 @@ public class ReadLoader {
 				sa.analyzedDuplexes.clear();
 				sa.analyzedDuplexes = null;
 			}
+			sa.persistentDuplexKeeper = null;
+			sa.decodedUpTo = null;
+			sa.persistentDuplexKeeperParam = null;
 			sa.averageClipping = null;
 			nullReadsToWrite(sa);//Set to null to generate NPE is an attempt is made
 			//to reuse it
@@ -575,6 +669,26 @@ public class ReadLoader {
 		sa.readsToWrite = null;
 	}
 
+	/**
+	 * Reads that only cover positions excluded by param.excludeRegionsInBED would
+	 * only give rise to candidates that are discarded without being examined, so they
+	 * do not need to be processed if param.skipReadsInExcludedRegions is set (they are
+	 * still used for duplex grouping, but do not contribute to read-level statistics).
+	 */
+	private static boolean coversExcludedPositionsOnly(@Nullable RegionMask excludeMask,
+			@NonNull ExtendedSAMRecord read, int contigIndex, @NonNull Parameters param) {
+		if (excludeMask == null || !param.skipReadsInExcludedRegions) {
+			return false;
+		}
+		final SAMRecord record = read.record;
+		if (param.lookForRearrangements && SAMTranslocationTagParser.hasRearrangementAttribute(record)) {
+			return false;
+		}
+		//SAM coordinates are 1-based; allow for candidates created just before the read
+		return excludeMask.containsRange(contigIndex, record.getUnclippedStart() - 2,
+			record.getUnclippedEnd());
+	}
+
 	private static void switchPair(SAMRecord r) {
 		r.setFirstOfPairFlag(!r.getFirstOfPairFlag());
 		r.setSecondOfPairFlag(!r.getSecondOfPairFlag());
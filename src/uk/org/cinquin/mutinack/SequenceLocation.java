@@ -19,7 +19,6 @@ package uk.org.cinquin.mutinack;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,10 +32,11 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import contrib.net.sf.picard.reference.ReferenceSequence;
 import uk.org.cinquin.final_annotation.Final;
 import uk.org.cinquin.mutinack.misc_util.Assert;
 import uk.org.cinquin.mutinack.misc_util.StaticStuffToAvoidMutating;
-import uk.org.cinquin.mutinack.misc_util.collections.InterningSet;
+import uk.org.cinquin.mutinack.misc_util.collections.LocationInterningSet;
 import uk.org.cinquin.mutinack.misc_util.exceptions.ParseRTException;
 
 @PersistenceCapable//(identityType = IdentityType.APPLICATION, objectIdClass = SequenceLocation.PK.class)
@@ -156,20 +156,48 @@ public final class SequenceLocation implements Comparable<SequenceLocation>, Ser
 		this.hash = computeHash();
 	}
 
-	public static @NonNull SequenceLocation get(InterningSet<@NonNull SequenceLocation> interningSet,
+	public static @NonNull SequenceLocation get(LocationInterningSet interningSet,
 			int contigIndex, @NonNull String referenceGenome, @NonNull String contigName, int position, boolean plusHalf) {
-		//TODO Since escape analysis does not remove the allocation below (as shown by HotSpot logs;
-		//removing the allocation would need to be done only for objects not already present in the set),
-		//create a custom method to retrieve pre-existing objects from the set based only on the
-		//constructor parameters (without instantiating a temporary object).
-		return interningSet.intern(new SequenceLocation(referenceGenome, contigIndex, contigName, position, plusHalf));
+		return interningSet.intern(referenceGenome, contigIndex, contigName, position, plusHalf);
 	}
 
-	public static @NonNull SequenceLocation get(InterningSet<@NonNull SequenceLocation> interningSet,
+	public static @NonNull SequenceLocation get(LocationInterningSet interningSet,
 			int contigIndex, @NonNull String referenceGenome, @NonNull String contigName, int position) {
 		return get(interningSet, contigIndex, referenceGenome, contigName, position, false);
 	}
 
+	/**
+	 * Encode contig index, position, and plusHalf into a single long, which can be used
+	 * as a primitive map key. Reference genome and contig name are not part of the
+	 * encoding, so keys should only be compared for locations on the same reference genome.
+	 * Packed values sort in the same order as given by {@link #compareTo}.
+	 * @param contigIndex
+	 * @param position
+	 * @param plusHalf
+	 * @return
+	 */
+	public static long pack(int contigIndex, int position, boolean plusHalf) {
+		return (((long) contigIndex) << 33) |
+			((position - (long) Integer.MIN_VALUE) << 1) |
+			(plusHalf ? 1L : 0L);
+	}
+
+	public static int unpackContigIndex(long packed) {
+		return (int) (packed >>> 33);
+	}
+
+	public static int unpackPosition(long packed) {
+		return (int) (((packed >>> 1) & 0xFFFF_FFFFL) + Integer.MIN_VALUE);
+	}
+
+	public static boolean unpackPlusHalf(long packed) {
+		return (packed & 1L) != 0;
+	}
+
+	public long toLong() {
+		return pack(contigIndex, position, plusHalf);
+	}
+
 
 	public SequenceLocation(@NonNull String referenceGenome, int contigIndex, List<String> contigNames, int position, boolean plusHalf) {
 		this(referenceGenome, contigIndex, Objects.requireNonNull(contigNames.get(contigIndex)), position, plusHalf);
@@ -297,10 +325,10 @@ public final class SequenceLocation implements Comparable<SequenceLocation>, Ser
 	}
 
 	public byte[] getSequenceContext(int windowHalfWidth) {
-		final byte[] refSeq = StaticStuffToAvoidMutating.getContigSequence(
-			referenceGenome, contigName).getBases();
-		return Arrays.copyOfRange(refSeq, Math.max(0, position - windowHalfWidth),
-			1 + Math.min(refSeq.length - 1, position + windowHalfWidth));
+		final ReferenceSequence refSeq = StaticStuffToAvoidMutating.getContigSequence(
+			referenceGenome, contigName);
+		return refSeq.getBases(Math.max(0, position - windowHalfWidth),
+			1 + Math.min(refSeq.length() - 1, position + windowHalfWidth));
 	}
 
 }
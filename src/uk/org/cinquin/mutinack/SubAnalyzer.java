@@ -56,6 +56,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -84,6 +85,7 @@ import gnu.trove.map.TByteObjectMap;
 import gnu.trove.map.hash.TByteObjectHashMap;
 import gnu.trove.map.hash.THashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.procedure.TObjectProcedure;
 import gnu.trove.set.hash.TCustomHashSet;
 import gnu.trove.set.hash.THashSet;
@@ -105,10 +107,11 @@ import uk.org.cinquin.mutinack.misc_util.SettableDouble;
 import uk.org.cinquin.mutinack.misc_util.SettableInteger;
 import uk.org.cinquin.mutinack.misc_util.Util;
 import uk.org.cinquin.mutinack.misc_util.collections.HashingStrategies;
-import uk.org.cinquin.mutinack.misc_util.collections.InterningSet;
+import uk.org.cinquin.mutinack.misc_util.collections.LocationInterningSet;
 import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexArrayListKeeper;
 import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexHashMapKeeper;
 import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexKeeper;
+import uk.org.cinquin.mutinack.misc_util.collections.duplex_keeper.DuplexKeeperCollectionWrapper;
 import uk.org.cinquin.mutinack.misc_util.exceptions.AssertionFailedException;
 import uk.org.cinquin.mutinack.output.LocationExaminationResults;
 import uk.org.cinquin.mutinack.qualities.DetailedPositionQualities;
@@ -128,15 +131,26 @@ public final class SubAnalyzer {
 	@NonNull Parameters param;
 	@NonNull public AnalysisStats stats;//Will in fact be null until set in SubAnalyzerPhaser but that's OK
 	final @NonNull SettableInteger lastProcessablePosition = new SettableInteger(-1);
-	final @NonNull THashMap<SequenceLocation, THashSet<CandidateSequence>> candidateSequences =
-			new THashMap<>(1_000);
+	//Position up to which reads have been decoded ahead of processing; only set
+	//if param.sampleReadAheadRecords > 0
+	volatile @Nullable IntSupplier decodedUpTo;
+	//Keyed by SequenceLocation::toLong
+	final @NonNull TLongObjectHashMap<THashSet<CandidateSequence>> candidateSequences =
+			new TLongObjectHashMap<>(1_000);
 	int truncateProcessingAt = Integer.MAX_VALUE;
 	int startProcessingAt = 0;
 	MutableList<@NonNull Duplex> analyzedDuplexes;
+	//Only used when duplexes are grouped incrementally from one step to the next
+	@Nullable DuplexKeeper persistentDuplexKeeper;
+	@Nullable Parameters persistentDuplexKeeperParam;
 	float[] averageClipping;
 	int averageClippingOffset = Integer.MAX_VALUE;
 	final @NonNull THashMap<String, @NonNull ExtendedSAMRecord> extSAMCache;
 	private final AtomicInteger threadCount = new AtomicInteger();
+	/**
+	 * Number of threads currently running {@link #examineLocationConcurrently}
+	 */
+	private final AtomicInteger nConcurrentExaminations = new AtomicInteger();
 	@SuppressWarnings("FieldAccessedSynchronizedAndUnsynchronized")
 	@NonNull Map<@NonNull ExtendedSAMRecord, @NonNull SAMRecord> readsToWrite
 		= new THashMap<>();
@@ -274,7 +288,8 @@ public final class SubAnalyzer {
 
 		//No need for synchronization since we should not be
 		//concurrently inserting two candidates at the same position
-		THashSet<CandidateSequence> candidates = candidateSequences.computeIfAbsent(location, k -> new THashSet<>(2, 0.2f));
+		THashSet<CandidateSequence> candidates = candidateSequences.computeIfAbsent(location.toLong(),
+			() -> new THashSet<>(2, 0.2f));
 		CandidateSequence candidateMapValue = candidates.get(candidate);
 		if (candidateMapValue == null) {
 			boolean added = candidates.add(candidate);
@@ -310,8 +325,8 @@ public final class SubAnalyzer {
 	void checkAllDone() {
 		if (!candidateSequences.isEmpty()) {
 			final SettableInteger nLeftBehind = new SettableInteger(-1);
-			candidateSequences.forEach((k,v) -> {
-				Assert.isTrue(v.isEmpty() || (v.iterator().next().getLocation().equals(k)),
+			candidateSequences.forEachEntry((k,v) -> {
+				Assert.isTrue(v.isEmpty() || (v.iterator().next().getLocation().toLong() == k),
 						"Mismatched locations");
 
 				String s = v.stream().
@@ -328,6 +343,7 @@ public final class SubAnalyzer {
 				if (!s.equals("")) {
 					logger.error(s);
 				}
+				return true;
 			});
 
 			Assert.isFalse(nLeftBehind.get() > 0);
@@ -391,11 +407,103 @@ public final class SubAnalyzer {
 		 */
 
 		final boolean fallBackOnIntervalTree = extSAMCache.size() > 5_000;
+
+		//Duplexes from the previous step can only be reused if they were computed
+		//with the same parameters, and if the reads they contain were not
+		//reassigned in the meantime by a load with another parameter set
+		final boolean incremental = param.incrementalDuplexGrouping &&
+			!param.jiggle && !param.randomizeStrand;
+		final @Nullable DuplexKeeper previousDuplexes =
+			persistentDuplexKeeperParam == param ? persistentDuplexKeeper : null;
+		persistentDuplexKeeper = null;
+		persistentDuplexKeeperParam = null;
+
+		final @NonNull DuplexKeeper cleanedUpDuplexes;
+		if (incremental && previousDuplexes != null) {
+			cleanedUpDuplexes = regroupIncrementally(previousDuplexes, fallBackOnIntervalTree);
+		} else {
+			cleanedUpDuplexes = loadAndGroupAllReads(fallBackOnIntervalTree);
+		}
+		if (incremental) {
+			persistentDuplexKeeper = cleanedUpDuplexes;
+			persistentDuplexKeeperParam = param;
+		}
+
+		if (param.nVariableBarcodeMismatchesAllowed == 0) {
+			cleanedUpDuplexes.forEach(d -> d.computeConsensus(true,
+				param.variableBarcodeLength));
+		}
+
+		if (param.variableBarcodeLength == 0) {
+			//Group duplexes by alignment start (or equivalent)
+			TIntObjectHashMap<List<Duplex>> duplexPositions = new TIntObjectHashMap<>
+				(1_000, 0.5f, -999);
+			cleanedUpDuplexes.forEach(dr -> {
+				List<Duplex> list = duplexPositions.computeIfAbsent(dr.leftAlignmentStart.position,
+					(Supplier<List<Duplex>>) ArrayList::new);
+				list.add(dr);
+			});
+			final double @NonNull[] insertSizeProb =
+				Objects.requireNonNull(analyzer.insertSizeProbSmooth);
+			duplexPositions.forEachValue(list -> {
+				for (Duplex dr: list) {
+					double sizeP = insertSizeProb[
+					  Math.min(insertSizeProb.length - 1, dr.maxInsertSize)];
+					Assert.isTrue(Double.isNaN(sizeP) || sizeP >= 0,
+						() -> "Insert size problem: " + Arrays.toString(insertSizeProb));
+					dr.probAtLeastOneCollision = 1 - Math.pow(1 - sizeP, list.size());
+				}
+				return true;
+			});
+		}
+
+		cleanedUpDuplexes.forEach(duplex -> duplex.analyzeForStats(param, stats));
+
+		finalResult.addAll(cleanedUpDuplexes);
+
+		averageClippingOffset = fromPosition;
+		final int arrayLength = toPosition - fromPosition + 1;
+		averageClipping = new float[arrayLength];
+		int[] duplexNumber = new int[arrayLength];
+
+		cleanedUpDuplexes.forEach(duplex -> {
+			int start = duplex.getUnclippedAlignmentStart() - fromPosition;
+			int stop = duplex.getUnclippedAlignmentEnd() - fromPosition;
+			start = Math.min(Math.max(0, start), toPosition - fromPosition);
+			stop = Math.min(Math.max(0, stop), toPosition - fromPosition);
+
+			for (int i = start; i <= stop; i++) {
+				averageClipping[i] += duplex.averageNClipped;
+				duplexNumber[i]++;
+			}
+		});
+
+		insertDuplexGroupSizeStats(cleanedUpDuplexes, 0, stats.duplexLocalGroupSize);
+		if (param.computeShiftedDuplexStats) {
+			insertDuplexGroupSizeStats(cleanedUpDuplexes, 15, stats.duplexLocalShiftedGroupSize);
+		}
+
+		if (param.computeDuplexDistances && cleanedUpDuplexes.size() < analyzer.maxNDuplexes) {
+			cleanedUpDuplexes.forEach(d1 -> cleanedUpDuplexes.forEach(d2 ->
+				stats.duplexDistance.insert(d1.euclideanDistanceTo(d2))));
+		}
+
+		for (int i = 0; i < averageClipping.length; i++) {
+			int n = duplexNumber[i];
+			if (n == 0) {
+				Assert.isTrue(averageClipping[i] == 0);
+			} else {
+				averageClipping[i] /= n;
+			}
+		}
+	}//End loadAll
+
+	private @NonNull DuplexKeeper loadAndGroupAllReads(final boolean fallBackOnIntervalTree) {
 		@NonNull DuplexKeeper duplexKeeper =
 				getDuplexKeeper(fallBackOnIntervalTree);
 
-		InterningSet<SequenceLocation> sequenceLocationCache =
-			new InterningSet<>(500);
+		LocationInterningSet sequenceLocationCache =
+			new LocationInterningSet(500);
 
 		final AlignmentExtremitiesDistance ed = new AlignmentExtremitiesDistance(
 				analyzer.getGroupSettings());
@@ -442,7 +550,7 @@ public final class SubAnalyzer {
 		//and left/right consensus that differ by at most
 		//param.nVariableBarcodeMismatchesAllowed
 
-		final DuplexKeeper cleanedUpDuplexes;
+		final @NonNull DuplexKeeper cleanedUpDuplexes;
 		if (param.nVariableBarcodeMismatchesAllowed > 0 /*&& duplexKeeper.size() < analyzer.maxNDuplexes*/) {
 			cleanedUpDuplexes = Duplex.groupDuplexes(
 					duplexKeeper,
@@ -455,75 +563,149 @@ public final class SubAnalyzer {
 			cleanedUpDuplexes = duplexKeeper;
 			cleanedUpDuplexes.forEach(Duplex::computeGlobalProperties);
 		}
+		return cleanedUpDuplexes;
+	}
 
-		if (param.nVariableBarcodeMismatchesAllowed == 0) {
-			cleanedUpDuplexes.forEach(d -> d.computeConsensus(true,
-				param.variableBarcodeLength));
-		}
+	/**
+	 * Carry duplexes computed at the previous processing step over to the current step.
+	 * Reads discarded since then are removed from their duplex, and duplexes left
+	 * without reads are retired. A read that was grouped before its mate was loaded
+	 * was grouped using placeholder values for the mate barcode and alignment
+	 * extremities; if the mate has been loaded since, the duplex is retired and its
+	 * reads are unassigned so that they get grouped again along with new reads.
+	 * @param previousDuplexes
+	 * @param duplexKeeper Receives the duplexes that are carried over
+	 * @param changedDuplexes Receives the duplexes that are carried over but lost reads
+	 */
+	static void carryOverDuplexes(
+			final @NonNull DuplexKeeper previousDuplexes,
+			final @NonNull DuplexKeeper duplexKeeper,
+			final @NonNull Set<Duplex> changedDuplexes) {
+		previousDuplexes.forEach(duplex -> {
+			Assert.isFalse(duplex.invalid);
+			final boolean lostTopReads = duplex.topStrandRecords.removeIf(r -> r.discarded);
+			final boolean lostBottomReads = duplex.bottomStrandRecords.removeIf(r -> r.discarded);
+			if (duplex.topStrandRecords.isEmpty() && duplex.bottomStrandRecords.isEmpty()) {
+				return;//Retire duplex
+			}
+			if (duplex.allRecords.anySatisfy(r -> r.mateMissingWhenGrouped && r.getMate() != null)) {
+				duplex.allRecords.forEach(r -> r.duplex = null);
+				return;//Retire duplex
+			}
+			duplex.resetExaminationState();
+			if (lostTopReads || lostBottomReads) {
+				changedDuplexes.add(duplex);
+			}
+			boolean added = duplexKeeper.add(duplex);
+			Assert.isTrue(added);
+		});
+	}
 
-		if (param.variableBarcodeLength == 0) {
-			//Group duplexes by alignment start (or equivalent)
-			TIntObjectHashMap<List<Duplex>> duplexPositions = new TIntObjectHashMap<>
-				(1_000, 0.5f, -999);
-			cleanedUpDuplexes.forEach(dr -> {
-				List<Duplex> list = duplexPositions.computeIfAbsent(dr.leftAlignmentStart.position,
-					(Supplier<List<Duplex>>) ArrayList::new);
-				list.add(dr);
-			});
-			final double @NonNull[] insertSizeProb =
-				Objects.requireNonNull(analyzer.insertSizeProbSmooth);
-			duplexPositions.forEachValue(list -> {
-				for (Duplex dr: list) {
-					double sizeP = insertSizeProb[
-					  Math.min(insertSizeProb.length - 1, dr.maxInsertSize)];
-					Assert.isTrue(Double.isNaN(sizeP) || sizeP >= 0,
-						() -> "Insert size problem: " + Arrays.toString(insertSizeProb));
-					dr.probAtLeastOneCollision = 1 - Math.pow(1 - sizeP, list.size());
-				}
-				return true;
-			});
-		}
+	/**
+	 * Update the duplexes computed at the previous processing step instead of
+	 * grouping all reads from scratch. Reads discarded since then are removed
+	 * from their duplex, and duplexes left without reads or that need to be regrouped
+	 * are retired (see {@link #carryOverDuplexes}); reads that have arrived since then
+	 * and reads of retired duplexes are loaded; barcode mismatch merging is only rerun
+	 * for duplexes that changed and for the duplexes they overlap.
+	 * @param previousDuplexes
+	 * @param fallBackOnIntervalTree
+	 * @return
+	 */
+	private @NonNull DuplexKeeper regroupIncrementally(
+			final @NonNull DuplexKeeper previousDuplexes,
+			final boolean fallBackOnIntervalTree) {
 
-		cleanedUpDuplexes.forEach(duplex -> duplex.analyzeForStats(param, stats));
+		final @NonNull DuplexKeeper duplexKeeper =
+			getDuplexKeeper(fallBackOnIntervalTree);
+		final TCustomHashSet<Duplex> changedDuplexes =
+			new TCustomHashSet<>(HashingStrategies.identityHashingStrategy, 200);
 
-		finalResult.addAll(cleanedUpDuplexes);
+		carryOverDuplexes(previousDuplexes, duplexKeeper, changedDuplexes);
 
-		averageClippingOffset = fromPosition;
-		final int arrayLength = toPosition - fromPosition + 1;
-		averageClipping = new float[arrayLength];
-		int[] duplexNumber = new int[arrayLength];
+		LocationInterningSet sequenceLocationCache =
+			new LocationInterningSet(500);
 
-		cleanedUpDuplexes.forEach(duplex -> {
-			int start = duplex.getUnclippedAlignmentStart() - fromPosition;
-			int stop = duplex.getUnclippedAlignmentEnd() - fromPosition;
-			start = Math.min(Math.max(0, start), toPosition - fromPosition);
-			stop = Math.min(Math.max(0, stop), toPosition - fromPosition);
+		final AlignmentExtremitiesDistance ed = new AlignmentExtremitiesDistance(
+				analyzer.getGroupSettings());
 
-			for (int i = start; i <= stop; i++) {
-				averageClipping[i] += duplex.averageNClipped;
-				duplexNumber[i]++;
+		final SettableInteger nReadsExcludedFromDuplexes = new SettableInteger(0);
+
+		extSAMCache.forEachValue(rExtended -> {
+			//Reads loaded at a previous step have already been assigned a duplex,
+			//except for those that were excluded and will be excluded again, and
+			//those whose duplex was retired so that they would be regrouped
+			if (rExtended.duplex == null) {
+				loadRead(rExtended, duplexKeeper, ed, sequenceLocationCache, nReadsExcludedFromDuplexes);
+				final Duplex duplex = rExtended.duplex;
+				if (duplex != null) {
+					changedDuplexes.add(duplex);
+				}
 			}
+			return true;
 		});
 
-		insertDuplexGroupSizeStats(cleanedUpDuplexes, 0, stats.duplexLocalGroupSize);
-		if (param.computeShiftedDuplexStats) {
-			insertDuplexGroupSizeStats(cleanedUpDuplexes, 15, stats.duplexLocalShiftedGroupSize);
+		sequenceLocationCache.clear();
+
+		for (Duplex duplex: changedDuplexes) {
+			duplex.computeGlobalProperties();
 		}
 
-		if (param.computeDuplexDistances && cleanedUpDuplexes.size() < analyzer.maxNDuplexes) {
-			cleanedUpDuplexes.forEach(d1 -> cleanedUpDuplexes.forEach(d2 ->
-				stats.duplexDistance.insert(d1.euclideanDistanceTo(d2))));
+		if (param.enableCostlyAssertions) {
+			Assert.isTrue(checkReadsOccurOnceInDuplexes(extSAMCache.values(),
+				duplexKeeper, nReadsExcludedFromDuplexes.get()));
 		}
 
-		for (int i = 0; i < averageClipping.length; i++) {
-			int n = duplexNumber[i];
-			if (n == 0) {
-				Assert.isTrue(averageClipping[i] == 0);
-			} else {
-				averageClipping[i] /= n;
+		if (param.nVariableBarcodeMismatchesAllowed == 0 || changedDuplexes.isEmpty()) {
+			return duplexKeeper;
+		}
+
+		if (!(duplexKeeper instanceof DuplexHashMapKeeper)) {
+			//Without a position-indexed keeper there is no cheap way of restricting
+			//regrouping to the neighborhood of duplexes that changed
+			return Duplex.groupDuplexes(
+				duplexKeeper,
+				duplex -> duplex.computeConsensus(false, param.variableBarcodeLength),
+				() -> getDuplexKeeper(fallBackOnIntervalTree),
+				param,
+				stats,
+				0);
+		}
+
+		//Pairs of duplexes that have not changed were already examined at the
+		//previous step, so only regroup those that could be merged with a changed one
+		final TCustomHashSet<Duplex> toRegroup =
+			new TCustomHashSet<>(HashingStrategies.identityHashingStrategy, 200);
+		for (Duplex duplex: changedDuplexes) {
+			toRegroup.add(duplex);
+			toRegroup.addAll(duplexKeeper.getOverlapping(duplex));
+		}
+
+		final @NonNull DuplexKeeper result = getDuplexKeeper(fallBackOnIntervalTree);
+		duplexKeeper.forEach(duplex -> {
+			if (!toRegroup.contains(duplex)) {
+				boolean added = result.add(duplex);
+				Assert.isTrue(added);
 			}
+		});
+
+		Duplex.groupDuplexes(
+			new DuplexKeeperCollectionWrapper(new ArrayList<>(toRegroup)),
+			duplex -> duplex.computeConsensus(false, param.variableBarcodeLength),
+			() -> getDuplexKeeper(fallBackOnIntervalTree),
+			param,
+			stats,
+			0).forEach(duplex -> {
+				boolean added = result.add(duplex);
+				Assert.isTrue(added);
+			});
+
+		if (param.enableCostlyAssertions) {
+			Duplex.checkNoEqualDuplexes(result);
 		}
-	}//End loadAll
+
+		return result;
+	}
 
 	private static void insertDuplexGroupSizeStats(DuplexKeeper keeper, int offset, Histogram stats) {
 		keeper.forEach(duplex -> {
@@ -562,7 +744,7 @@ public final class SubAnalyzer {
 	}
 
 	private void loadRead(@NonNull ExtendedSAMRecord rExtended, @NonNull DuplexKeeper duplexKeeper,
-			AlignmentExtremitiesDistance ed, InterningSet<SequenceLocation> sequenceLocationCache,
+			AlignmentExtremitiesDistance ed, LocationInterningSet sequenceLocationCache,
 			SettableInteger nReadsExcludedFromDuplexes) {
 
 		final @NonNull SequenceLocation location = rExtended.getLocation();
@@ -571,7 +753,8 @@ public final class SubAnalyzer {
 		final byte @NonNull[] mateBarcode = rExtended.getMateVariableBarcode();
 		final @NonNull SAMRecord r = rExtended.record;
 
-		if (rExtended.getMate() == null) {
+		rExtended.mateMissingWhenGrouped = rExtended.getMate() == null;
+		if (rExtended.mateMissingWhenGrouped) {
 			stats.nMateOutOfReach.add(location, 1);
 		}
 
@@ -793,12 +976,36 @@ public final class SubAnalyzer {
 	@NonNull LocationExaminationResults examineLocation(final @NonNull SequenceLocation location) {
 		Assert.isFalse(threadCount.incrementAndGet() > 1);
 		try {
-			return examineLocation0(location);
+			Assert.isTrue(nConcurrentExaminations.get() == 0);
+			return examineLocation0(location, null);
 		} finally {
 			threadCount.decrementAndGet();
 		}
 	}
 
+	/**
+	 * Same as {@link #examineLocation}, but can be called concurrently for different
+	 * locations, as long as no duplex is examined at two locations concurrently (i.e.
+	 * the locations are further apart than the span of any duplex), and this
+	 * subanalyzer is not otherwise modified in the meantime. Changes to duplex state
+	 * that accumulates over locations are deferred: they are applied when the
+	 * {@link Duplex.LocationState}s added to duplexStates are restored, which must be
+	 * done in position order before reporting each location.
+	 * @param location
+	 * @param duplexStates
+	 * @return
+	 */
+	@NonNull LocationExaminationResults examineLocationConcurrently(final @NonNull SequenceLocation location,
+			@NonNull List<Duplex.@NonNull LocationState> duplexStates) {
+		nConcurrentExaminations.incrementAndGet();
+		try {
+			Assert.isTrue(threadCount.get() == 0);
+			return examineLocation0(location, duplexStates);
+		} finally {
+			nConcurrentExaminations.decrementAndGet();
+		}
+	}
+
 	@SuppressWarnings({"null", "ReferenceEquality"})
 	/**
 	 * This method is *NOT* thread-safe (it modifies Duplexes associated with location retrieved
@@ -807,10 +1014,11 @@ public final class SubAnalyzer {
 	 * @return
 	 */
 	@NonNull
-	private LocationExaminationResults examineLocation0(final @NonNull SequenceLocation location) {
+	private LocationExaminationResults examineLocation0(final @NonNull SequenceLocation location,
+			final @Nullable List<Duplex.@NonNull LocationState> deferredDuplexStates) {
 		final LocationExaminationResults result = new LocationExaminationResults(param);
 
-		final THashSet<CandidateSequence> candidateSet0 = candidateSequences.get(location);
+		final THashSet<CandidateSequence> candidateSet0 = candidateSequences.get(location.toLong());
 		if (candidateSet0 == null) {
 			stats.nPosUncovered.increment(location);
 			result.analyzedCandidateSequences = SortedSets.immutable.empty();
@@ -827,6 +1035,8 @@ public final class SubAnalyzer {
 		//the reads since they depend on read length)
 		final TCustomHashSet<Duplex> duplexes =
 			new TCustomHashSet<>(HashingStrategies.identityHashingStrategy, 200);
+		final @Nullable List<Duplex.@NonNull LocationState> duplexStates =
+			deferredDuplexStates == null ? null : new ArrayList<>();
 
 		candidateSet.forEach(candidate -> {
 			candidate.reset();
@@ -874,15 +1084,31 @@ public final class SubAnalyzer {
 			Assert.isTrue(param.variableBarcodeLength > 0 ||
 				Double.isNaN(duplex.probAtLeastOneCollision) ||
 				duplex.probAtLeastOneCollision >= 0);
-			duplex.examineAtLoc(
-				location,
-				result,
-				candidateSet,
-				topCounter,
-				bottomCounter,
-				analyzer,
-				param,
-				stats);
+			if (duplexStates != null) {
+				final Duplex.LocationState state = duplex.examineAtLocDeferred(
+					location,
+					result,
+					candidateSet,
+					topCounter,
+					bottomCounter,
+					analyzer,
+					param,
+					stats);
+				if (param.variableBarcodeLength == 0) {
+					state.collisionProbabilityHistogram = stats.duplexCollisionProbabilityWhen2Strands;
+				}
+				duplexStates.add(state);
+			} else {
+				duplex.examineAtLoc(
+					location,
+					result,
+					candidateSet,
+					topCounter,
+					bottomCounter,
+					analyzer,
+					param,
+					stats);
+			}
 			if (index.get() < insertSizes.length) {
 				//Check in case array size was capped (for future use; it is
 				//never capped currently)
@@ -891,7 +1117,7 @@ public final class SubAnalyzer {
 			}
 
 			averageCollisionProbS.addAndGet(duplex.probAtLeastOneCollision);
-			if (param.variableBarcodeLength == 0 && !duplex.missingStrand) {
+			if (duplexStates == null && param.variableBarcodeLength == 0 && !duplex.missingStrand) {
 				stats.duplexCollisionProbabilityWhen2Strands.insert((int)
 					(1_000f * duplex.probAtLeastOneCollision));
 			}
@@ -1027,12 +1253,18 @@ public final class SubAnalyzer {
 		} while (true);
 
 		if (qualityOKBeforeTopAllele) {
-			registerDuplexMinFracTopCandidate(duplexes,
-				!topAlleleQuality.isPresent() ?
+			final Histogram hist = !topAlleleQuality.isPresent() ?
 					stats.minTopCandFreqQ2PosTopAlleleFreqOK
 				:
-					stats.minTopCandFreqQ2PosTopAlleleFreqKO
-				);
+					stats.minTopCandFreqQ2PosTopAlleleFreqKO;
+			if (duplexStates != null) {
+				duplexStates.forEach(state -> state.minFracTopCandidateHistogram = hist);
+			} else {
+				duplexes.forEach(dr -> {
+					Duplex.registerMinFracTopCandidate(dr, hist);
+					return true;
+				});
+			}
 		}
 
 		if (positionQualities.getValue(true) != null && positionQualities.getValue(true).lowerThan(GOOD)) {
@@ -1110,19 +1342,12 @@ public final class SubAnalyzer {
 			throw new AssertionFailedException();
 		}
 		result.analyzedCandidateSequences = candidateSet;
+		if (deferredDuplexStates != null) {
+			deferredDuplexStates.addAll(Objects.requireNonNull(duplexStates));
+		}
 		return result;
 	}//End examineLocation
 
-	private static void registerDuplexMinFracTopCandidate(TCustomHashSet<Duplex> duplexes, Histogram hist) {
-		duplexes.forEach(dr -> {
-			if (dr.allRecords.size() < 2 || dr.minFracTopCandidate == Float.MAX_VALUE) {
-				return true;
-			}
-			hist.insert((int) (dr.minFracTopCandidate * 10));
-			return true;
-		});
-	}
-
 	private boolean lowMutFreq(Mutation mut, SetIterable<CandidateSequence> candidateSet, int nGOrDDuplexes) {
 		Objects.requireNonNull(mut);
 		Handle<Boolean> result = new Handle<>(true);
@@ -1460,7 +1685,7 @@ public final class SubAnalyzer {
 	 */
 	int processRead(
 			final @NonNull SequenceLocation location,
-			final @NonNull InterningSet<SequenceLocation> locationInterningSet,
+			final @NonNull LocationInterningSet locationInterningSet,
 			final @NonNull ExtendedSAMRecord extendedRec,
 			final @NonNull ReferenceSequence ref) {
 
@@ -1597,7 +1822,7 @@ public final class SubAnalyzer {
 
 	private void processAlignmentBlock(
 			@NonNull SequenceLocation location,
-			InterningSet<@NonNull SequenceLocation> locationInterningSet,
+			LocationInterningSet locationInterningSet,
 			final CandidateBuilder readLocalCandidates,
 			boolean hasRearrangement,
 			final @NonNull ReferenceSequence ref,
@@ -1628,7 +1853,7 @@ public final class SubAnalyzer {
 			public void fillInPhred(CandidateSequence candidate, SequenceLocation location1, int readPosition) {
 				final byte quality = rec.getBaseQualities()[readPosition];
 				candidate.addBasePhredScore(quality);
-				if (extendedRec.basePhredScores.put(location1, quality) !=
+				if (extendedRec.putBasePhredScore(location1, quality) !=
 						ExtendedSAMRecord.PHRED_NO_ENTRY) {
 					logger.warn("Recording Phred score multiple times at same position " + location1);
 				}
@@ -1677,7 +1902,7 @@ public final class SubAnalyzer {
 						fillInCandidateInfo,
 						readPosition,
 						refPosition,
-						ref.getBases()[refPosition - 1],
+						ref.getBase(refPosition - 1),
 						readEndOfPreviousAlignment,
 						refEndOfPreviousAlignment,
 						locationInterningSet,
@@ -1694,7 +1919,7 @@ public final class SubAnalyzer {
 						block,
 						readPosition,
 						refPosition,
-						ref.getBases()[refEndOfPreviousAlignment],
+						ref.getBase(refEndOfPreviousAlignment),
 						(byte) 0,
 						readEndOfPreviousAlignment,
 						refEndOfPreviousAlignment,
@@ -1739,7 +1964,7 @@ public final class SubAnalyzer {
 				continue;
 			}
 			stats.nCandidateSubstitutionsConsidered.increment(location);
-			byte wildType = StringUtil.toUpperCase(ref.getBases()[refPosition]);
+			byte wildType = StringUtil.toUpperCase(ref.getBase(refPosition));
 			if (isMutation(wildType, readBases[readPosition])) {/*Mismatch*/
 
 				final boolean tooLate = readOnNegativeStrand ? readPosition < param.ignoreLastNBases :
@@ -2033,7 +2258,7 @@ public final class SubAnalyzer {
 		final byte wildtypeBase,
 		final int readEndOfPreviousAlignment,
 		final int refEndOfPreviousAlignment,
-		final InterningSet<@NonNull SequenceLocation> locationInterningSet,
+		final LocationInterningSet locationInterningSet,
 		final CandidateBuilder readLocalCandidates,
 		final @NonNull ExtendedSAMRecord extendedRec) {
 
@@ -2075,7 +2300,7 @@ public final class SubAnalyzer {
 				param.referenceGenomeShortName, extendedRec.getLocation().getContigName(), newLocation.position + deletionLength);
 
 			final byte @Nullable[] deletedSequence = isIntron ? null :
-				Arrays.copyOfRange(ref.getBases(), refEndOfPreviousAlignment + 1, refPosition);
+				ref.getBases(refEndOfPreviousAlignment + 1, refPosition);
 
 			//Add hidden mutations to all locations covered by deletion
 			//So disagreements between deletions that have only overlapping
@@ -2135,7 +2360,7 @@ public final class SubAnalyzer {
 			final byte wildtypeBase,
 			final int readEndOfPreviousAlignment,
 			final int refEndOfPreviousAlignment,
-			final InterningSet<@NonNull SequenceLocation> locationInterningSet,
+			final LocationInterningSet locationInterningSet,
 			final CandidateBuilder readLocalCandidates,
 			final @NonNull ExtendedSAMRecord extendedRec) {
 
@@ -33,19 +33,24 @@ import static uk.org.cinquin.mutinack.qualities.Quality.POOR;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.eclipse.collections.api.list.ListIterable;
@@ -68,6 +73,7 @@ import uk.org.cinquin.mutinack.candidate_sequences.CandidateSequence;
 import uk.org.cinquin.mutinack.candidate_sequences.PositionAssay;
 import uk.org.cinquin.mutinack.features.BedReader;
 import uk.org.cinquin.mutinack.features.GenomeFeatureTester;
+import uk.org.cinquin.mutinack.features.RegionMask;
 import uk.org.cinquin.mutinack.misc_util.Assert;
 import uk.org.cinquin.mutinack.misc_util.ComparablePair;
 import uk.org.cinquin.mutinack.misc_util.Handle;
@@ -84,6 +90,7 @@ import uk.org.cinquin.mutinack.output.CrossSampleLocationAnalysis;
 import uk.org.cinquin.mutinack.output.LocationAnalysis;
 import uk.org.cinquin.mutinack.output.LocationExaminationResults;
 import uk.org.cinquin.mutinack.output.LocationExaminationResults.FloatPair;
+import uk.org.cinquin.mutinack.output.RunLengthCoverageWriter;
 import uk.org.cinquin.mutinack.qualities.Quality;
 import uk.org.cinquin.mutinack.sequence_IO.TrimOverlappingReads;
 import uk.org.cinquin.mutinack.statistics.Histogram;
@@ -102,6 +109,7 @@ public class SubAnalyzerPhaser extends Phaser {
 	private final @NonNull Parameters param;
 	private final @NonNull List<GenomeFeatureTester> excludeBEDs;
 	private final @NonNull List<@NonNull BedReader> repetitiveBEDs;
+	private final @Nullable RegionMask excludeMask, repetitiveMask;
 	private final int contigIndex;
 	private final @NonNull String contigName;
 	private final int PROCESSING_CHUNK;
@@ -139,6 +147,11 @@ public class SubAnalyzerPhaser extends Phaser {
 
 		this.excludeBEDs = excludeBEDs;
 		this.repetitiveBEDs = repetitiveBEDs;
+		excludeMask = excludeBEDs.isEmpty() ? null : RegionMask.build(excludeBEDs, contigIndex,
+			analysisChunk.startAtPosition, analysisChunk.terminateAtPosition);
+		analysisChunk.excludeMask = excludeMask;
+		repetitiveMask = repetitiveBEDs.isEmpty() ? null : RegionMask.build(repetitiveBEDs, contigIndex,
+			analysisChunk.startAtPosition, analysisChunk.terminateAtPosition);
 		this.PROCESSING_CHUNK = PROCESSING_CHUNK;
 	}
 
@@ -178,7 +191,7 @@ public class SubAnalyzerPhaser extends Phaser {
 				for (int i = 0; i < nSubAnalyzers; i++) {
 					SubAnalyzer sub = analysisChunk.subAnalyzers.get(i);
 					if (NONTRIVIAL_ASSERTIONS && nIterations > 1 && sub.candidateSequences.containsKey(
-							new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, analysisChunk.lastProcessedPosition))) {
+							SequenceLocation.pack(contigIndex, analysisChunk.lastProcessedPosition, false))) {
 						throw new AssertionFailedException();
 					}
 					if (saveLastProcessedPosition + 1 <= targetStopPosition && (statsIndex == 0 || !sub.stats.canSkipDuplexLoading)) {
@@ -186,7 +199,12 @@ public class SubAnalyzerPhaser extends Phaser {
 					}
 				}
 
-				outer:
+				if (param.concurrentPositionExamination &&
+						examinePositionsConcurrently(saveLastProcessedPosition + 1, targetStopPosition,
+							requireNonNull(insertion), outputReads && statsIndex == 0)) {
+					continue;
+				}
+
 				for (int position = saveLastProcessedPosition + 1;
 						position <= targetStopPosition && !groupSettings.terminateAnalysis;
 						position ++) {
@@ -195,16 +213,15 @@ public class SubAnalyzerPhaser extends Phaser {
 						new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, position,
 							requireNonNull(insertion));
 
-					for (GenomeFeatureTester tester: excludeBEDs) {
-						if (tester.test(location)) {
-							analysisChunk.subAnalyzers.
-								forEach(sa -> {
-									sa.candidateSequences.remove(location);
-									sa.stats.nPosExcluded.add(location, 1);
-								});
-							analysisChunk.lastProcessedPosition = position;
-							continue outer;
-						}
+					if (isExcluded(location)) {
+						final long packedLocation = location.toLong();
+						analysisChunk.subAnalyzers.
+							forEach(sa -> {
+								sa.candidateSequences.remove(packedLocation);
+								sa.stats.nPosExcluded.add(location, 1);
+							});
+						analysisChunk.lastProcessedPosition = position;
+						continue;
 					}
 
 					onAdvance1(location);
@@ -212,19 +229,12 @@ public class SubAnalyzerPhaser extends Phaser {
 					if (outputReads && statsIndex == 0) {//Only output reads once; note
 						//however that different parameter sets may lead to different duplex
 						//grouping, which will not be apparent in BAM output
-						final @NonNull SequenceLocation locationNoPH =
-							new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, position, false);
-						prepareReadsToWrite(
-							locationNoPH,
-							analysisChunk,
-							param.collapseFilteredReads,
-							param.writeBothStrands,
-							param.clipPairOverlap,
-							param.allowMissingSupplementaryFlag || param.rnaSeq,
-							dn,
-							param.maxSubQ2DuplexesForBAMOutput);
+						final @NonNull SequenceLocation locationNoPH = location.plusHalf ?
+								new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, position, false)
+							:
+								location;
+						prepareReadsToWrite(locationNoPH);
 					}
-
 				}
 			}
 
@@ -237,7 +247,7 @@ public class SubAnalyzerPhaser extends Phaser {
 
 				final int localLastProcessedPosition = analysisChunk.lastProcessedPosition;
 				subAnalyzer.candidateSequences.retainEntries((key, value) ->
-					key.position > localLastProcessedPosition);
+					SequenceLocation.unpackPosition(key) > localLastProcessedPosition);
 
 				if (shouldLog(TRACE)) {
 					logger.trace("SubAnalyzer " + analysisChunk + " completed " + (saveLastProcessedPosition + 1) +
@@ -260,14 +270,14 @@ public class SubAnalyzerPhaser extends Phaser {
 
 			if (nIterations < 2) {
 				nIterations++;
-				final SequenceLocation lowerBound =
-					new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, analysisChunk.lastProcessedPosition);
+				final long lowerBound =
+					SequenceLocation.pack(contigIndex, analysisChunk.lastProcessedPosition, false);
 				analysisChunk.subAnalyzers.
 				forEach(subAnalyzer -> subAnalyzer.candidateSequences.retainEntries((key, val) -> {
-					Assert.isTrue(key.contigIndex == contigIndex,
-						"Problem with contig indices, " + key + ' ' + key.contigIndex +
-							' ' + contigIndex);
-					return key.compareTo(lowerBound) >= 0;
+					Assert.isTrue(SequenceLocation.unpackContigIndex(key) == contigIndex,
+						"Problem with contig indices, " + SequenceLocation.unpackPosition(key) + ' ' +
+							SequenceLocation.unpackContigIndex(key) + ' ' + contigIndex);
+					return key >= lowerBound;
 				}));
 			}
 
@@ -275,14 +285,15 @@ public class SubAnalyzerPhaser extends Phaser {
 				//Check no sequences have been left behind
 				analysisChunk.subAnalyzersParallel.
 				forEach(subAnalyzer -> {
-					final SequenceLocation lowerBound = new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName,
-						analysisChunk.lastProcessedPosition);
-					subAnalyzer.candidateSequences.forEach(
+					final long lowerBound = SequenceLocation.pack(contigIndex,
+						analysisChunk.lastProcessedPosition, false);
+					subAnalyzer.candidateSequences.forEachKey(
 							e -> {
-								Assert.isFalse(e.contigIndex != contigIndex);
-								Assert.isFalse(e.compareTo(lowerBound) < 0/*,
+								Assert.isFalse(SequenceLocation.unpackContigIndex(e) != contigIndex);
+								Assert.isFalse(e < lowerBound/*,
 										"pauseAt: %s; lastProcessedPosition: %s but found: %s for chunk %s",
-											pauseAt.get(), lastProcessedPosition, e, analysisChunk*/);});
+											pauseAt.get(), lastProcessedPosition, e, analysisChunk*/);
+								return true;});
 				});
 			});
 
@@ -296,6 +307,12 @@ public class SubAnalyzerPhaser extends Phaser {
 			} else {
 				previousLastProcessable.set(maxLastProcessable);
 				analysisChunk.pauseAtPosition = maxLastProcessable + PROCESSING_CHUNK;
+				if (param.sampleReadAheadRecords > 0) {
+					extendStepToDecodedReads();
+				}
+				if (analysisChunk.tailHandoffRequested) {
+					handOffTail();
+				}
 				returnValue = false;
 			}
 			completedNormally = true;
@@ -313,6 +330,90 @@ public class SubAnalyzerPhaser extends Phaser {
 		return returnValue;
 	}//End onAdvance
 
+	/**
+	 * Lengthen the next processing step so that it covers all positions up to which
+	 * every sample has already decoded reads, as long as the reads needed to examine
+	 * them are in the read-ahead buffers. Samples then only wait for each other when
+	 * one of them has fallen behind in decoding, and the amount of memory used is
+	 * bounded by the size of the read-ahead buffers.
+	 */
+	private void extendStepToDecodedReads() {
+		int minDecodedUpTo = Integer.MAX_VALUE;
+		for (SubAnalyzer sa: analysisChunk.subAnalyzers) {
+			final IntSupplier decodedUpTo = sa.decodedUpTo;
+			if (decodedUpTo == null) {
+				return;
+			}
+			minDecodedUpTo = Math.min(minDecodedUpTo, decodedUpTo.getAsInt());
+		}
+		//ReadLoader only arrives once it has seen a read starting past
+		//pauseAtPosition + maxInsertSize + 2
+		final long extendedPauseAt = (long) minDecodedUpTo - param.maxInsertSize - 2;
+		if (extendedPauseAt > analysisChunk.pauseAtPosition) {
+			analysisChunk.pauseAtPosition = (int) extendedPauseAt;
+			final @NonNull SequenceLocation location = new SequenceLocation(param.referenceGenomeShortName,
+				contigIndex, contigName, analysisChunk.pauseAtPosition);
+			analysisChunk.subAnalyzers.forEach(sa -> sa.analyzer.stats.forEach(
+				s -> s.nProcessingStepsLengthened.increment(location)));
+		}
+	}
+
+	private boolean isExcluded(@NonNull SequenceLocation location) {
+		final RegionMask mask = excludeMask;
+		return mask != null ? mask.contains(location.contigIndex, location.position) :
+			BedReader.anyMatch(excludeBEDs, location);
+	}
+
+	/**
+	 * @return null if there are no repetitive region BED files
+	 */
+	private @Nullable Boolean isRepetitive(@NonNull SequenceLocation location) {
+		final RegionMask mask = repetitiveMask;
+		return mask == null ? null : mask.contains(location.contigIndex, location.position);
+	}
+
+	/**
+	 * Split off the tail of the chunk into a new chunk, to be picked up by the thread
+	 * supervising the contig. The split point is placed far enough ahead of the reads
+	 * that have already been loaded that the result is the same as if the contig had
+	 * been split at that point from the start.
+	 */
+	private void handOffTail() {
+		analysisChunk.tailHandoffRequested = false;
+		final BlockingQueue<@NonNull AnalysisChunk> handedOffTails = analysisChunk.handedOffTails;
+		if (handedOffTails == null) {
+			return;
+		}
+		final int firstPossibleStart = analysisChunk.pauseAtPosition + param.maxInsertSize + 1;
+		final int tailSpan = analysisChunk.terminateAtPosition - firstPossibleStart + 1;
+		if (tailSpan < 2 * param.minDynamicSplitSpan) {
+			//The span left to hand off can only shrink from now on
+			analysisChunk.tailHandoffDeclined = true;
+			return;
+		}
+		final int tailStart = firstPossibleStart + tailSpan / 2;
+		final AnalysisChunk tail = new AnalysisChunk(analysisChunk.referenceGenomeName, contigName,
+			analysisChunk.nParameterSets, groupSettings);
+		tail.contig = contigIndex;
+		tail.startAtPosition = tailStart;
+		tail.lastProcessedPosition = tailStart - 1;
+		tail.terminateAtPosition = analysisChunk.terminateAtPosition;
+		if (ChunkOverlap.canShare(param)) {
+			final ChunkOverlap overlap = new ChunkOverlap(tailStart, param.maxInsertSize);
+			tail.overlapWithRight = analysisChunk.overlapWithRight;
+			tail.overlapWithLeft = overlap;
+			analysisChunk.overlapWithRight = overlap;
+		}
+		analysisChunk.terminateAtPosition = tailStart - 1;
+		analysisChunk.subAnalyzers.forEach(sa -> sa.truncateProcessingAt = tailStart - 1);
+		logger.debug("Handing off " + tail + " from chunk " + analysisChunk);
+		handedOffTails.add(tail);
+		final @NonNull SequenceLocation location = new SequenceLocation(param.referenceGenomeShortName,
+			contigIndex, contigName, tailStart);
+		analysisChunk.subAnalyzers.forEach(sa -> sa.analyzer.stats.forEach(
+			s -> s.nChunkTailsHandedOff.increment(location)));
+	}
+
 	private static void examineLocation(SubAnalyzer sa, @NonNull SequenceLocation location,
 			MutableMap<SubAnalyzer, LocationExaminationResults> resultsMap) {
 		LocationExaminationResults results = sa.examineLocation(location);
@@ -341,6 +442,135 @@ public class SubAnalyzerPhaser extends Phaser {
 			analysisChunk.subAnalyzers.forEach(sa -> examineLocation(sa, location, locationExamResultsMap0));
 		}
 
+		reportLocation(location, locationExamResultsMap0);
+	}
+
+	private void prepareReadsToWrite(@NonNull SequenceLocation locationNoPH) {
+		prepareReadsToWrite(
+			locationNoPH,
+			analysisChunk,
+			param.collapseFilteredReads,
+			param.writeBothStrands,
+			param.clipPairOverlap,
+			param.allowMissingSupplementaryFlag || param.rnaSeq,
+			dn,
+			param.maxSubQ2DuplexesForBAMOutput);
+	}
+
+	/**
+	 * Results of the examination of a location by all subanalyzers, along with
+	 * duplex state to restore before the results are reported
+	 */
+	private static final class ExaminedLocation {
+		final @NonNull SequenceLocation location;
+		final @NonNull MutableMap<SubAnalyzer, LocationExaminationResults> results;
+		final @NonNull List<Duplex.@NonNull LocationState> duplexStates = new ArrayList<>();
+
+		ExaminedLocation(@NonNull SequenceLocation location,
+				@NonNull MutableMap<SubAnalyzer, LocationExaminationResults> results) {
+			this.location = location;
+			this.results = results;
+		}
+	}
+
+	/**
+	 * Examine positions from to to (inclusive) on several threads, then report them
+	 * and prepare reads for output sequentially, in position order. The range is
+	 * divided into blocks that are longer than any of the currently-loaded duplexes;
+	 * even blocks are examined concurrently, and then odd blocks, so that a duplex
+	 * is never examined at two locations at the same time. Changes to duplex state
+	 * made by examination are captured, and applied in position order before
+	 * reporting, so that reporting sees the same state as with sequential examination.
+	 * @return false if the range is too short for it to be worth splitting it, in
+	 * which case nothing was done
+	 */
+	private boolean examinePositionsConcurrently(final int from, final int to,
+			final boolean insertion, final boolean writeReads) {
+		int maxSpan = param.maxInsertSize;
+		for (SubAnalyzer sa: analysisChunk.subAnalyzers) {
+			for (Duplex d: sa.analyzedDuplexes) {
+				maxSpan = Math.max(maxSpan, d.getSpanOnContig(contigIndex, from, to));
+			}
+		}
+		final int blockLength = maxSpan + 1;
+		final int nPositions = to - from + 1;
+		final int nBlocks = (nPositions + blockLength - 1) / blockLength;
+		if (nBlocks < 3) {
+			return false;
+		}
+
+		final BitSet excluded = new BitSet(nPositions);
+		for (int position = from; position <= to; position++) {
+			final @NonNull SequenceLocation location =
+				new SequenceLocation(param.referenceGenomeShortName, contigIndex, contigName, position, insertion);
+			if (isExcluded(location)) {
+				excluded.set(position - from);
+				final long packedLocation = location.toLong();
+				analysisChunk.subAnalyzers.
+					forEach(sa -> {
+						sa.candidateSequences.remove(packedLocation);
+						sa.stats.nPosExcluded.add(location, 1);
+					});
+			}
+		}
+
+		final ExaminedLocation[] examined = new ExaminedLocation[nPositions];
+		for (int parity = 0; parity < 2; parity++) {
+			final int finalParity = parity;
+			IntStream.range(0, nBlocks).filter(block -> (block & 1) == finalParity).parallel().
+				forEach(block -> {
+					final int blockEnd = Math.min(nPositions, (block + 1) * blockLength);
+					for (int i = block * blockLength; i < blockEnd && !groupSettings.terminateAnalysis; i++) {
+						if (!excluded.get(i)) {
+							examined[i] = examineConcurrently(new SequenceLocation(param.referenceGenomeShortName,
+								contigIndex, contigName, from + i, insertion));
+						}
+					}
+				});
+		}
+
+		for (int i = 0; i < nPositions; i++) {
+			if (!excluded.get(i)) {
+				final ExaminedLocation e = examined[i];
+				if (e == null) {
+					Assert.isTrue(groupSettings.terminateAnalysis);
+					break;
+				}
+				examined[i] = null;
+				e.duplexStates.forEach(Duplex.LocationState::restore);
+				reportLocation(e.location, e.results);
+				analysisChunk.subAnalyzers.forEach(sa -> sa.stats.nPosExaminedConcurrently.increment(e.location));
+				if (writeReads) {
+					prepareReadsToWrite(new SequenceLocation(param.referenceGenomeShortName, contigIndex,
+						contigName, from + i, false));
+				}
+			}
+			analysisChunk.lastProcessedPosition = from + i;
+		}
+		return true;
+	}
+
+	private @NonNull ExaminedLocation examineConcurrently(final @NonNull SequenceLocation location) {
+		final @NonNull MutableMap<SubAnalyzer, LocationExaminationResults> results = new UnifiedMap<>();
+		final ExaminedLocation result = new ExaminedLocation(location, results);
+		for (SubAnalyzer sa: analysisChunk.subAnalyzers) {
+			final LocationExaminationResults ler = sa.examineLocationConcurrently(location, result.duplexStates);
+			if (NONTRIVIAL_ASSERTIONS) {
+				for (CandidateSequence c: ler.analyzedCandidateSequences) {
+					//noinspection ObjectEquality
+					Assert.isTrue(c.getOwningAnalyzer() == sa.analyzer);
+				}
+			}
+			results.put(sa, ler);
+		}
+		return result;
+	}
+
+	private void reportLocation(
+			final @NonNull SequenceLocation location,
+			final @NonNull MutableMap<SubAnalyzer, LocationExaminationResults> locationExamResultsMap0
+		) {
+
 		@SuppressWarnings("null")
 		final @NonNull MutableMap<SubAnalyzer, @NonNull LocationExaminationResults> locationExamResultsMap =
 			param.enableCostlyAssertions ?
@@ -374,6 +604,7 @@ public class SubAnalyzerPhaser extends Phaser {
 			ler.analyzedCandidateSequences.each(c -> c.setnDuplexesSisterSamples(sum.get()));
 		});
 
+		final @Nullable Boolean repetitive = isRepetitive(location);
 		analysisChunk.subAnalyzers.forEach(
 			sa -> {
 				sa.incrementednPosDuplexQualityQ2OthersQ1Q2 = false;
@@ -391,7 +622,7 @@ public class SubAnalyzerPhaser extends Phaser {
 					sa.analyzer,
 					groupSettings.mutationsToAnnotate,
 					sa.analyzer.codingStrandTester,
-					repetitiveBEDs,
+					repetitive,
 					param.minTopAlleleFrequencyForDisagreement);
 			}
 		);
@@ -448,7 +679,7 @@ public class SubAnalyzerPhaser extends Phaser {
 			processAndReportCandidates(analysisChunk.subAnalyzers.get(0).stats.analysisParameters,
 				locationExamResults, locationExamResultsMap,
 				location, randomlySelected, lowTopAlleleFreq, true,
-				repetitiveBEDs, analysisChunk, groupSettings.mutationsToAnnotate);
+				repetitive, analysisChunk, groupSettings.mutationsToAnnotate);
 		}
 	}
 
@@ -463,7 +694,7 @@ public class SubAnalyzerPhaser extends Phaser {
 			final boolean randomlySelected,
 			final boolean lowTopAlleleFreq,
 			final boolean doOutput,
-			final @NonNull List<@NonNull BedReader> repetitiveBEDs,
+			final @Nullable Boolean repetitive,
 			final @NonNull AnalysisChunk analysisChunk,
 			final @NonNull ConcurrentMap<Pair<SequenceLocation, String>,
 			@NonNull List<@NonNull Pair<@NonNull Mutation, @NonNull String>>> mutationsToAnnotate
@@ -573,14 +804,7 @@ public class SubAnalyzerPhaser extends Phaser {
 
 				stats.nPosCandidatesForUniqueMutation.accept(location, candidate.getnGoodDuplexes());
 				stats.uniqueMutantQ2CandidateQ1Q2DCoverage.insert(candidate.getTotalGoodOrDubiousDuplexes());
-				if (!repetitiveBEDs.isEmpty()) {
-					boolean repetitive = false;
-					for (GenomeFeatureTester t: repetitiveBEDs) {
-						if (t.test(location)) {
-							repetitive = true;
-							break;
-						}
-					}
+				if (repetitive != null) {
 					if (repetitive) {
 						stats.uniqueMutantQ2CandidateQ1Q2DCoverageRepetitive.insert(candidate.getTotalGoodOrDubiousDuplexes());
 					} else {
@@ -724,7 +948,7 @@ public class SubAnalyzerPhaser extends Phaser {
 			final @NonNull ConcurrentMap<Pair<SequenceLocation, String>,
 				@NonNull List<@NonNull Pair<@NonNull Mutation, @NonNull String>>> mutationsToAnnotate,
 			final @Nullable GenomeFeatureTester codingStrandTester,
-			final @NonNull List<BedReader> repetitiveBEDs,
+			final @Nullable Boolean repetitive,
 			final float minTopAlleleFrequencyForDisagreement
 		) {
 
@@ -744,16 +968,9 @@ public class SubAnalyzerPhaser extends Phaser {
 			}
 		}
 
-		if (stats.positionByPositionCoverage != null) {
-			int[] array = requireNonNull(stats.positionByPositionCoverage.get(
-					location.getContigName()));
-			if (array.length <= location.position) {
-				throw new IllegalArgumentException("Position goes beyond end of contig " +
-						location.getContigName() + ": " + location.position +
-						" vs " + array.length);
-			} else {
-				array[location.position] += examResults.nGoodOrDubiousDuplexes;
-			}
+		final @Nullable RunLengthCoverageWriter coverageRunWriter = stats.coverageRunWriter;
+		if (coverageRunWriter != null) {
+			coverageRunWriter.add(location.contigIndex, location.position, examResults.nGoodOrDubiousDuplexes);
 		}
 
 		stats.alleleFrequencies.accept(location, examResults.getTopTwoAlleleFreqList());
@@ -762,14 +979,7 @@ public class SubAnalyzerPhaser extends Phaser {
 			if (c.getQuality().getNonNullValue().atLeast(GOOD)) {
 				if (c.getMutationType().isWildtype()) {
 					stats.wtQ2CandidateQ1Q2Coverage.insert(examResults.nGoodOrDubiousDuplexes);
-					if (!repetitiveBEDs.isEmpty()) {
-						boolean repetitive = false;
-						for (GenomeFeatureTester t: repetitiveBEDs) {
-							if (t.test(location)) {
-								repetitive = true;
-								break;
-							}
-						}
+					if (repetitive != null) {
 						if (repetitive) {
 							stats.wtQ2CandidateQ1Q2CoverageRepetitive.insert(examResults.nGoodOrDubiousDuplexes);
 						} else {
@@ -778,14 +988,7 @@ public class SubAnalyzerPhaser extends Phaser {
 					}
 				} else {
 					stats.mutantQ2CandidateQ1Q2Coverage.insert(examResults.nGoodOrDubiousDuplexes);
-					if (!repetitiveBEDs.isEmpty()) {
-						boolean repetitive = false;
-						for (GenomeFeatureTester t: repetitiveBEDs) {
-							if (t.test(location)) {
-								repetitive = true;
-								break;
-							}
-						}
+					if (repetitive != null) {
 						if (repetitive) {
 							stats.mutantQ2CandidateQ1Q2DCoverageRepetitive.insert(examResults.nGoodOrDubiousDuplexes);
 						} else {
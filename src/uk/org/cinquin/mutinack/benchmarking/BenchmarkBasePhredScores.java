@@ -0,0 +1,111 @@
+package uk.org.cinquin.mutinack.benchmarking;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gnu.trove.map.hash.TLongByteHashMap;
+import gnu.trove.map.hash.TObjectByteHashMap;
+import uk.org.cinquin.mutinack.BasePhredScores;
+import uk.org.cinquin.mutinack.SequenceLocation;
+
+/*
+Benchmark	(readLength)	Mode	Cnt	Score	Units	gc.alloc.rate.norm (B/op)
+Array	100	avgt	3	385.319	ns/op	120
+Array	150	avgt	3	480.923	ns/op	168
+Array	250	avgt	3	871.263	ns/op	272
+LongMap	100	avgt	3	2096.716	ns/op	3162
+LongMap	150	avgt	3	3112.311	ns/op	3162
+LongMap	250	avgt	3	8952.228	ns/op	9527
+ObjectMap	100	avgt	3	1979.705	ns/op	1681
+ObjectMap	150	avgt	3	3317.724	ns/op	1681
+ObjectMap	250	avgt	3	9385.121	ns/op	4874
+ */
+
+/**
+ * Fills in and reads back base qualities for one read, as done by SubAnalyzer
+ * and CandidateCounter. Run with -prof gc to compare gc.alloc.rate.norm, which
+ * is what matters most here since one such structure is allocated per read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5)
+public class BenchmarkBasePhredScores {
+
+	private final String MAX_MEM = "-Xmx300M";
+	private final String PARALLEL_GC_1 = "-XX:+UseParallelGC";
+
+	@Benchmark
+	@Fork(jvmArgsAppend = {MAX_MEM, PARALLEL_GC_1}, value = 3)
+	public int benchmarkObjectMap(Data d) {
+		TObjectByteHashMap<SequenceLocation> map = new TObjectByteHashMap<>(150, 0.5f, (byte) -1);
+		for (SequenceLocation l: d.locations) {
+			map.put(l, (byte) (l.position & 63));
+		}
+		int sum = 0;
+		for (SequenceLocation l: d.locations) {
+			sum += map.get(l);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@Fork(jvmArgsAppend = {MAX_MEM, PARALLEL_GC_1}, value = 3)
+	public int benchmarkLongMap(Data d) {
+		TLongByteHashMap map = new TLongByteHashMap(150, 0.5f, -1L, (byte) -1);
+		for (SequenceLocation l: d.locations) {
+			map.put(l.toLong(), (byte) (l.position & 63));
+		}
+		int sum = 0;
+		for (SequenceLocation l: d.locations) {
+			sum += map.get(l.toLong());
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@Fork(jvmArgsAppend = {MAX_MEM, PARALLEL_GC_1}, value = 3)
+	public int benchmarkArray(Data d) {
+		BasePhredScores scores = new BasePhredScores(0, d.start, d.start + d.readLength - 1);
+		for (SequenceLocation l: d.locations) {
+			scores.put(l, (byte) (l.position & 63));
+		}
+		int sum = 0;
+		for (SequenceLocation l: d.locations) {
+			sum += scores.get(l);
+		}
+		return sum;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({"100", "150", "250"})
+		int readLength;
+
+		final int start = 15_072_434;
+
+		SequenceLocation[] locations;
+
+		@Setup
+		public void setup() {
+			locations = new SequenceLocation[readLength];
+			for (int i = 0; i < readLength; i++) {
+				locations[i] = new SequenceLocation("ref", 0, "chrI", start + i);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package uk.org.cinquin.mutinack.benchmarking;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.org.cinquin.mutinack.sequence_IO.BatchedIteratorPrefetcher;
+import uk.org.cinquin.mutinack.sequence_IO.IteratorPrefetcher;
+import uk.org.cinquin.mutinack.statistics.Histogram;
+
+/*
+Single-CPU machine; 1,000,000 elements per op
+Benchmark	(batchSize)	Mode	Cnt	Score	Units
+BatchedIteratorPrefetcher	16	avgt	5	57924104	ns/op
+BatchedIteratorPrefetcher	64	avgt	5	55657822	ns/op
+BatchedIteratorPrefetcher	256	avgt	5	31171411	ns/op
+IteratorPrefetcher	(n/a)	avgt	5	310676351	ns/op
+ */
+
+/**
+ * Pushes nElements through each prefetcher, with the same read-ahead of 100 as used by
+ * ReadLoader and with the nReadsInPrefetchQueue histogram enabled. Score is per op (all elements).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5)
+public class BenchmarkIteratorPrefetcher {
+
+	private final String MAX_MEM = "-Xmx300M";
+	private final String PARALLEL_GC_1 = "-XX:+UseParallelGC";
+
+	private static final int N_READ_AHEAD = 100;
+
+	@Benchmark
+	@Fork(jvmArgsAppend = {MAX_MEM, PARALLEL_GC_1}, value = 3)
+	public long benchmarkIteratorPrefetcher(Data d) throws IOException {
+		try (IteratorPrefetcher<Integer> it = new IteratorPrefetcher<>(
+				Arrays.asList(d.elements).iterator(), N_READ_AHEAD, null, e -> {}, d.histogram)) {
+			return consume(it);
+		}
+	}
+
+	@Benchmark
+	@Fork(jvmArgsAppend = {MAX_MEM, PARALLEL_GC_1}, value = 3)
+	public long benchmarkBatchedIteratorPrefetcher(Data d) throws IOException {
+		try (BatchedIteratorPrefetcher<Integer> it = new BatchedIteratorPrefetcher<>(
+				Arrays.asList(d.elements).iterator(), N_READ_AHEAD, null, e -> {}, d.histogram,
+				d.batchSize)) {
+			return consume(it);
+		}
+	}
+
+	private static long consume(Iterator<Integer> it) {
+		long sum = 0;
+		while (it.hasNext()) {
+			sum += it.next();
+		}
+		return sum;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({"16", "64", "256"})
+		int batchSize;
+
+		final int nElements = 1_000_000;
+
+		Integer[] elements;
+
+		final Histogram histogram = new Histogram(500);
+
+		@Setup
+		public void setup() {
+			elements = new Integer[nElements];
+			for (int i = 0; i < nElements; i++) {
+				elements[i] = i;
+			}
+		}
+	}
+
+}
@@ -71,7 +71,7 @@ public final class CandidateCounter {
 				}
 				final int ligSiteDistance = candidate.getNonMutableConcurringReads().get(r);
 				if (ligSiteDistance != SingletonObjectIntMap.NO_ENTRY_VALUE) {
-					byte phredScore = r.basePhredScores.get(location);
+					byte phredScore = r.getBasePhredScore(location);
 					if (phredScore != ExtendedSAMRecord.PHRED_NO_ENTRY) {
 						sumPhreds += phredScore;
 						nPhreds++;
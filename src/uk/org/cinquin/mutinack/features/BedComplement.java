@@ -34,6 +34,10 @@ public class BedComplement implements GenomeFeatureTester, Serializable {
 		this.featureSet = featureSet;
 	}
 
+	public GenomeFeatureTester getFeatureSet() {
+		return featureSet;
+	}
+
 	@Override
 	public boolean test(SequenceLocation t) {
 		return !featureSet.test(t);
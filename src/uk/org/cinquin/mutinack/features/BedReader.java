@@ -34,7 +34,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
@@ -52,10 +51,12 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.jwetherell.algorithms.data_structures.IntervalData;
-import com.jwetherell.algorithms.data_structures.IntervalTree;
 
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
 import uk.org.cinquin.mutinack.Parameters;
 import uk.org.cinquin.mutinack.SequenceLocation;
+import uk.org.cinquin.mutinack.features.SortedIntervalIndex.IntervalConsumer;
 import uk.org.cinquin.mutinack.misc_util.Assert;
 import uk.org.cinquin.mutinack.misc_util.FileCache;
 import uk.org.cinquin.mutinack.misc_util.Handle;
@@ -75,11 +76,12 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 	private final static @NonNull Optional<Boolean> TRUE_OPTIONAL = Optional.of(true);
 	private final static @NonNull Optional<Boolean> FALSE_OPTIONAL = Optional.of(false);
 	private static final Set<@NonNull String> missingContigNames = new HashSet<>();
+	private static final Logger logger = LoggerFactory.getLogger(BedReader.class);
 
 	@JsonIgnore
 	public final transient MapOfLists<String, IntervalData<GenomeInterval>> bedFileIntervals;
 	@JsonIgnore
-	private final transient List<IntervalTree<@NonNull GenomeInterval>> contigTrees = new ArrayList<>();
+	private final transient List<SortedIntervalIndex<@NonNull GenomeInterval>> contigIndices;
 	@JsonIgnore
 	private final transient @NonNull Map<@NonNull String, @NonNull String> suppInfo;
 	private final String readerName;
@@ -89,21 +91,67 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 		return readerName + " BED file tester";
 	}
 
+	/**
+	 * Retrieve a reader from memory, or from a flat cache file next to the BED file
+	 * (see {@link FlatBedFile}), which is memory-mapped and queried in place. If the
+	 * cache file does not exist, is older than the BED file, or was built for
+	 * different contigs, the BED file is parsed and the cache file is rewritten.
+	 */
 	@SuppressWarnings("resource")
 	public static @NonNull BedReader getCachedBedFileReader(String path0, String cacheExtension,
 			List<@NonNull String> contigNames, @NonNull String readerName, @NonNull String referenceGenomeName,
 			@NonNull Map<@NonNull String, @NonNull String> transcriptToGeneNameMap, Parameters param) {
-		@NonNull BedReader result = FileCache.getCached(path0, cacheExtension, path -> {
+		return FileCache.getMemoryCached(path0, cacheExtension, path -> {
+			final BedReader mapped = mapCachedBedFileReader(path, cacheExtension, contigNames, readerName,
+				referenceGenomeName);
+			if (mapped != null) {
+				return mapped;
+			}
+			final BedReader result;
 			try {
-				return new BedReader(contigNames,
+				result = new BedReader(contigNames,
 					new BufferedReader(new FileReader(new File(path))), readerName, referenceGenomeName, null,
 						transcriptToGeneNameMap, false, param, null);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
-		}, r -> r.contigTrees == null);
-		Objects.requireNonNull(result.contigTrees);
-		return result;
+			final File cacheFile = new File(path + cacheExtension);
+			try {
+				FlatBedFile.write(cacheFile, contigNames, result.contigIndices);
+			} catch (IOException e) {
+				logger.debug("Could not save cached data to "
+					+ cacheFile.getAbsolutePath() + "; continuing anyway", e);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * @return A reader backed by the memory-mapped cache file of the BED file at path,
+	 * or null if that file does not exist, is older than the BED file, or cannot be used
+	 */
+	public static @Nullable BedReader mapCachedBedFileReader(String path, String cacheExtension,
+			List<@NonNull String> contigNames, @NonNull String readerName, @NonNull String referenceGenomeName) {
+		final File cacheFile = new File(path + cacheExtension);
+		if (!cacheFile.exists() || cacheFile.lastModified() <= new File(path).lastModified()) {
+			return null;
+		}
+		try {
+			final List<SortedIntervalIndex<@NonNull GenomeInterval>> indices =
+				FlatBedFile.map(cacheFile, contigNames, referenceGenomeName);
+			return indices == null ? null : new BedReader(readerName, indices);
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Problem reading cache from " + cacheFile.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	private BedReader(@NonNull String readerName,
+			@NonNull List<SortedIntervalIndex<@NonNull GenomeInterval>> contigIndices) {
+		this.readerName = readerName;
+		this.contigIndices = contigIndices;
+		bedFileIntervals = new MapOfLists<>();
+		suppInfo = Collections.emptyMap();
 	}
 
 	public static @NonNull BedReader getCachedBedFileReader(String path0, String cacheExtension,
@@ -349,6 +397,7 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 
 		this.readerName = readerName;
 		bedFileIntervals = new MapOfLists<>();
+		contigIndices = new ArrayList<>();
 
 		final List<@NonNull String> contigNameIgnorePatternsUC = param == null ? Collections.emptyList() :
 			param.ignoreContigsContaining;
@@ -379,7 +428,7 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 		int entryCount = 0;
 		for (Entry<String, @NonNull List<IntervalData<@NonNull GenomeInterval>>> sortedContig: sortedContigs) {
 			entryCount += sortedContig.getValue().size();
-			contigTrees.add(new IntervalTree<>(sortedContig.getValue()));
+			contigIndices.add(new SortedIntervalIndex<>(sortedContig.getValue()));
 		}
 
 		Assert.isFalse(entryCount != (counts.fst + lineCountSupp) - counts.snd,
@@ -424,7 +473,7 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 	 */
 	@Override
 	public boolean test(SequenceLocation loc) {
-		return contigTrees.get(loc.contigIndex).contains(loc.position);
+		return contigIndices.get(loc.contigIndex).contains(loc.position);
 	}
 
 	public static boolean anyMatch(Collection<GenomeFeatureTester> testers,
@@ -439,7 +488,7 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 
 	public SerializablePredicate<SequenceLocation> getStrandSpecificTester(final boolean negativeStrand) {
 		return loc -> {
-			Collection<GenomeInterval> matches = contigTrees.get(loc.contigIndex).query(loc.position).getUnprotectedData();
+			Collection<GenomeInterval> matches = contigIndices.get(loc.contigIndex).query(loc.position);
 			if (matches.isEmpty()) {
 				return false;
 			}
@@ -456,21 +505,39 @@ public class BedReader implements GenomeFeatureTester, Serializable {
 	 */
 	@Override
 	public @NonNull Collection<@NonNull GenomeInterval> apply(SequenceLocation loc) {
-		return contigTrees.get(loc.contigIndex).query(loc.position).getUnprotectedData();
+		return contigIndices.get(loc.contigIndex).query(loc.position);
 	}
 
 	public void forEach(SequenceLocation loc, Predicate<@NonNull GenomeInterval> keepGoingPredicate) {
-		contigTrees.get(loc.contigIndex).forEach(loc.position, keepGoingPredicate);
+		contigIndices.get(loc.contigIndex).forEach(loc.position, keepGoingPredicate);
+	}
+
+	/**
+	 * Call consumer on intervals that overlap [start, end] (inclusive) in the given
+	 * contig, in order of start.
+	 */
+	public void forEachOverlapping(int contigIndex, int start, int end,
+			IntervalConsumer<@NonNull GenomeInterval> consumer) {
+		contigIndices.get(contigIndex).forEachOverlapping(start, end, consumer);
+	}
+
+	/**
+	 * @param contigIndex
+	 * @return A cursor for lookups at increasing positions in the given contig, to be
+	 * used from a single thread
+	 */
+	public SortedIntervalIndex<@NonNull GenomeInterval>.Cursor cursor(int contigIndex) {
+		return contigIndices.get(contigIndex).cursor();
 	}
 
 	public void forEach(Consumer<@NonNull GenomeInterval> action) {
-		contigTrees.forEach(tree -> tree.forEach(action));
+		contigIndices.forEach(index -> index.forEach(action));
 	}
 
 	@Override
 	public @NonNull Optional<Boolean> getNegativeStrand(SequenceLocation loc) {
 		Handle<Boolean> positiveStrand = new Handle<>();
-		contigTrees.get(loc.contigIndex).forEach(loc.position, interval -> {
+		contigIndices.get(loc.contigIndex).forEach(loc.position, interval -> {
 				return interval.isNegativeStrand().map(b -> {
 					Boolean ps = positiveStrand.get();
 					if (ps == null) {
@@ -0,0 +1,313 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import uk.org.cinquin.mutinack.misc_util.Util;
+
+/**
+ * Flat on-disk format for the intervals of a parsed BED file, laid out so that it
+ * can be memory-mapped and queried in place instead of being deserialized. For each
+ * contig, the file holds the start, end and max-end arrays of a
+ * {@link SortedIntervalIndex}, followed by one fixed-size record per interval that
+ * points into a shared string table for names, gene names and annotations.
+ * {@link GenomeInterval}s are only created when query results are requested.
+ */
+final class FlatBedFile {
+
+	private static final Logger logger = LoggerFactory.getLogger(FlatBedFile.class);
+
+	private static final long MAGIC = 0x4D75744265644631L;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8 + 4 + 8;
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/**
+	 * Name, length, strand, score, gene name, annotations
+	 */
+	private static final int RECORD_INTS = 6;
+	/**
+	 * starts, ends, and maxEnds, plus record
+	 */
+	private static final int BYTES_PER_INTERVAL = 4 * (3 + RECORD_INTS);
+	private static final int NO_STRING = -1;
+
+	private FlatBedFile() {
+	}
+
+	/**
+	 * Write to a temporary file that is then moved into place, so that concurrent
+	 * readers never see partial output.
+	 * @param file
+	 * @param contigNames Contig names the reader was built for, checked when mapping
+	 * @param contigIndices
+	 * @throws IOException
+	 */
+	static void write(@NonNull File file, @NonNull List<@NonNull String> contigNames,
+			@NonNull List<SortedIntervalIndex<@NonNull GenomeInterval>> contigIndices) throws IOException {
+		final File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			final DataOutputStream index = new DataOutputStream(indexBytes);
+			index.writeInt(contigNames.size());
+			for (String contigName: contigNames) {
+				index.writeUTF(contigName);
+			}
+			index.writeInt(contigIndices.size());
+			final StringTable strings = new StringTable();
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.position(HEADER_LENGTH);
+				for (SortedIntervalIndex<@NonNull GenomeInterval> contigIndex: contigIndices) {
+					writeContig(channel, index, strings, contigIndex);
+				}
+				index.writeLong(channel.position());
+				index.writeInt(strings.offsets.size());
+				final ByteBuffer offsets = ByteBuffer.allocate(4 * (strings.offsets.size() + 1)).order(ORDER);
+				for (int i = 0; i < strings.offsets.size(); i++) {
+					offsets.putInt(strings.offsets.get(i));
+				}
+				offsets.putInt(strings.bytes.size()).flip();
+				writeFully(channel, offsets);
+				writeFully(channel, ByteBuffer.wrap(strings.bytes.toByteArray()));
+
+				final long indexOffset = channel.position();
+				index.flush();
+				writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+				header.putLong(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+				channel.position(0);
+				writeFully(channel, header);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (temp.exists() && !temp.delete()) {
+				logger.warn("Could not delete " + temp.getAbsolutePath());
+			}
+		}
+	}
+
+	private static void writeContig(FileChannel channel, DataOutputStream index, StringTable strings,
+			SortedIntervalIndex<@NonNull GenomeInterval> contigIndex) throws IOException {
+		final int n = contigIndex.size();
+		if ((long) n * BYTES_PER_INTERVAL > Integer.MAX_VALUE) {
+			throw new IOException("Too many intervals in contig: " + n);
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(n * BYTES_PER_INTERVAL).order(ORDER);
+		final IntBuffer ints = buffer.asIntBuffer();
+		final String[] contigName = {""};
+		final int[] contigIndexOfIntervals = {-1};
+		contigIndex.forEachIndexed((i, start, end, maxEnd, interval) -> {
+			contigName[0] = interval.contigName;
+			contigIndexOfIntervals[0] = interval.contigIndex;
+			ints.put(i, start);
+			ints.put(n + i, end);
+			ints.put(2 * n + i, maxEnd);
+			final int record = 3 * n + i * RECORD_INTS;
+			ints.put(record, strings.getId(interval.name));
+			ints.put(record + 1, (int) interval.getLength());
+			ints.put(record + 2, interval.isNegativeStrand().map(b -> b ? 1 : 0).orElse(-1));
+			ints.put(record + 3, Float.floatToRawIntBits(interval.getScore()));
+			ints.put(record + 4, strings.getId(interval.geneName));
+			ints.put(record + 5, strings.getId(interval.getAnnotations()));
+		});
+		index.writeUTF(contigName[0]);
+		index.writeInt(contigIndexOfIntervals[0]);
+		index.writeInt(n);
+		index.writeLong(channel.position());
+		writeFully(channel, buffer);
+	}
+
+	private static final class StringTable {
+		final TObjectIntHashMap<String> ids = new TObjectIntHashMap<>(1_000, 0.5f, NO_STRING);
+		final List<Integer> offsets = new ArrayList<>();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		int getId(@Nullable String s) {
+			if (s == null) {
+				return NO_STRING;
+			}
+			int id = ids.get(s);
+			if (id == NO_STRING) {
+				id = offsets.size();
+				ids.put(s, id);
+				offsets.add(bytes.size());
+				final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+				bytes.write(b, 0, b.length);
+			}
+			return id;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @param file
+	 * @param contigNames
+	 * @param referenceGenomeName
+	 * @return Per-contig indices backed by the mapped file, or null if the file was
+	 * written for different contig names
+	 * @throws IOException If the file is not in the expected format
+	 */
+	static @Nullable List<SortedIntervalIndex<@NonNull GenomeInterval>> map(@NonNull File file,
+			@NonNull List<@NonNull String> contigNames, @NonNull String referenceGenomeName)
+				throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("Truncated header");
+				}
+			}
+			header.flip();
+			if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Unrecognized format");
+			}
+			final long indexOffset = header.getLong();
+			final MappedByteBuffer indexBuffer = channel.map(MapMode.READ_ONLY, indexOffset,
+				channel.size() - indexOffset);
+			final byte[] indexBytes = new byte[indexBuffer.remaining()];
+			indexBuffer.get(indexBytes);
+			final DataInputStream index = new DataInputStream(new ByteArrayInputStream(indexBytes));
+
+			final int nContigNames = index.readInt();
+			if (nContigNames != contigNames.size()) {
+				return null;
+			}
+			for (String contigName: contigNames) {
+				if (!index.readUTF().equals(contigName)) {
+					return null;
+				}
+			}
+
+			final int nContigs = index.readInt();
+			final List<String> names = new ArrayList<>(nContigs);
+			final List<Integer> indices = new ArrayList<>(nContigs);
+			final List<ByteBuffer> buffers = new ArrayList<>(nContigs);
+			for (int i = 0; i < nContigs; i++) {
+				names.add(index.readUTF());
+				indices.add(index.readInt());
+				final int n = index.readInt();
+				buffers.add(channel.map(MapMode.READ_ONLY, index.readLong(), (long) n * BYTES_PER_INTERVAL).
+					order(ORDER));
+			}
+			final long stringsOffset = index.readLong();
+			final int nStrings = index.readInt();
+			final IntBuffer stringOffsets = channel.map(MapMode.READ_ONLY, stringsOffset, 4L * (nStrings + 1)).
+				order(ORDER).asIntBuffer();
+			final ByteBuffer stringBytes = channel.map(MapMode.READ_ONLY, stringsOffset + 4L * (nStrings + 1),
+				stringOffsets.get(nStrings));
+			final MappedStrings strings = new MappedStrings(stringOffsets, stringBytes, nStrings);
+
+			final List<SortedIntervalIndex<@NonNull GenomeInterval>> result = new ArrayList<>(nContigs);
+			for (int i = 0; i < nContigs; i++) {
+				result.add(wrapContig(buffers.get(i), strings, referenceGenomeName, names.get(i), indices.get(i)));
+			}
+			return result;
+		}
+	}
+
+	private static SortedIntervalIndex<@NonNull GenomeInterval> wrapContig(ByteBuffer buffer,
+			MappedStrings strings, @NonNull String referenceGenomeName, @NonNull String contigName,
+			int contigIndex) {
+		final int n = buffer.capacity() / BYTES_PER_INTERVAL;
+		final IntBuffer ints = buffer.asIntBuffer();
+		final IntBuffer starts = slice(ints, 0, n);
+		final IntBuffer ends = slice(ints, n, n);
+		final IntBuffer maxEnds = slice(ints, 2 * n, n);
+		final IntBuffer records = slice(ints, 3 * n, n * RECORD_INTS);
+		return new SortedIntervalIndex<>(starts, ends, maxEnds, i -> {
+			final int record = i * RECORD_INTS;
+			final int strand = records.get(record + 2);
+			final @NonNull Optional<Boolean> negativeStrand = strand < 0 ? Util.emptyOptional() :
+				Optional.of(strand == 1);
+			return new GenomeInterval(strings.get(records.get(record)), contigIndex, referenceGenomeName,
+				contigName, starts.get(i), ends.get(i), records.get(record + 1), negativeStrand,
+				Float.intBitsToFloat(records.get(record + 3)), strings.get(records.get(record + 4)),
+				strings.get(records.get(record + 5)));
+		});
+	}
+
+	private static IntBuffer slice(IntBuffer buffer, int from, int length) {
+		final IntBuffer duplicate = buffer.duplicate();
+		duplicate.position(from).limit(from + length);
+		return duplicate.slice();
+	}
+
+	/**
+	 * Strings are decoded the first time they are requested and then kept; racy
+	 * publication is fine since Strings are immutable.
+	 */
+	private static final class MappedStrings {
+		private final IntBuffer offsets;
+		private final ByteBuffer bytes;
+		private final String[] decoded;
+
+		MappedStrings(IntBuffer offsets, ByteBuffer bytes, int nStrings) {
+			this.offsets = offsets;
+			this.bytes = bytes;
+			this.decoded = new String[nStrings];
+		}
+
+		@Nullable String get(int id) {
+			if (id == NO_STRING) {
+				return null;
+			}
+			String result = decoded[id];
+			if (result == null) {
+				final int from = offsets.get(id);
+				final byte[] b = new byte[offsets.get(id + 1) - from];
+				final ByteBuffer duplicate = bytes.duplicate();
+				duplicate.position(from);
+				duplicate.get(b);
+				result = new String(b, StandardCharsets.UTF_8);
+				decoded[id] = result;
+			}
+			return result;
+		}
+	}
+}
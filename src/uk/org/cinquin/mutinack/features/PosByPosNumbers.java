@@ -0,0 +1,202 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+
+/**
+ * Read access to per-position numbers (such as coverage) over the contigs of a
+ * genome, in ranges rather than one position at a time, so that numbers can be
+ * streamed without materializing whole contigs or allocating per position.
+ * Implementations are safe for concurrent use by multiple threads.
+ * See {@link PosByPosNumbersIndexedFile} and {@link #of(GenomeNumbers)}.
+ */
+public interface PosByPosNumbers extends Closeable {
+
+	@NonNull String getSampleName();
+
+	@NonNull String getGeneratingProgramVersion();
+
+	@NonNull String getGeneratingProgramArgs();
+
+	/**
+	 * @return Contig names in storage order
+	 */
+	@NonNull List<@NonNull String> getContigNames();
+
+	/**
+	 * @throws IllegalArgumentException if there is no contig with that name
+	 */
+	int getContigLength(@NonNull String contigName);
+
+	@FunctionalInterface
+	interface ChunkConsumer {
+		/**
+		 * @param firstPosition Position of values[offset]
+		 * @param values Only valid for the duration of the call
+		 * @param offset
+		 * @param length
+		 */
+		void accept(int firstPosition, int @NonNull[] values, int offset, int length);
+	}
+
+	/**
+	 * Call consumer on consecutive, non-empty chunks of the numbers from position
+	 * from to position to (inclusive), in order of position.
+	 */
+	void forEachChunk(@NonNull String contigName, int from, int to, @NonNull ChunkConsumer consumer);
+
+	/**
+	 * Summary statistics of the numbers from position from to position to
+	 * (inclusive); may be computed without reading individual positions.
+	 */
+	default @NonNull Summary summarize(@NonNull String contigName, int from, int to) {
+		final Summary summary = new Summary();
+		forEachChunk(contigName, from, to, (firstPosition, values, offset, length) -> {
+			for (int i = offset; i < offset + length; i++) {
+				summary.add(values[i]);
+			}
+		});
+		return summary;
+	}
+
+	@Override
+	default void close() {
+	}
+
+	final class Summary {
+		private long n, sum;
+		private int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+		void add(int value) {
+			n++;
+			sum += value;
+			if (value < min) {
+				min = value;
+			}
+			if (value > max) {
+				max = value;
+			}
+		}
+
+		void add(long n1, long sum1, int min1, int max1) {
+			n += n1;
+			sum += sum1;
+			min = Math.min(min, min1);
+			max = Math.max(max, max1);
+		}
+
+		public long getN() {
+			return n;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return Integer.MAX_VALUE if no position was summarized
+		 */
+		public int getMin() {
+			return min;
+		}
+
+		/**
+		 * @return Integer.MIN_VALUE if no position was summarized
+		 */
+		public int getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return (double) sum / n;
+		}
+
+		@Override
+		public String toString() {
+			return "n=" + n + " sum=" + sum + " min=" + min + " max=" + max;
+		}
+	}
+
+	/**
+	 * Wrap a parsed protobuf; contigs without numbers are treated as empty.
+	 */
+	static @NonNull PosByPosNumbers of(@NonNull GenomeNumbers genomeNumbers) {
+		return new PosByPosNumbers() {
+			private final List<@NonNull String> contigNames;
+			{
+				final List<@NonNull String> names = new ArrayList<>();
+				for (ContigNumbers contigNumbers: genomeNumbers.getContigNumbersList()) {
+					names.add(contigNumbers.getContigName());
+				}
+				contigNames = Collections.unmodifiableList(names);
+			}
+
+			private ContigNumbers getContig(String contigName) {
+				for (ContigNumbers contigNumbers: genomeNumbers.getContigNumbersList()) {
+					if (contigNumbers.getContigName().equals(contigName)) {
+						return contigNumbers;
+					}
+				}
+				throw new IllegalArgumentException("Unknown contig " + contigName);
+			}
+
+			@Override
+			public @NonNull String getSampleName() {
+				return genomeNumbers.getSampleName();
+			}
+
+			@Override
+			public @NonNull String getGeneratingProgramVersion() {
+				return genomeNumbers.getGeneratingProgramVersion();
+			}
+
+			@Override
+			public @NonNull String getGeneratingProgramArgs() {
+				return genomeNumbers.getGeneratingProgramArgs();
+			}
+
+			@Override
+			public @NonNull List<@NonNull String> getContigNames() {
+				return contigNames;
+			}
+
+			@Override
+			public int getContigLength(@NonNull String contigName) {
+				return getContig(contigName).getNumbersCount();
+			}
+
+			@Override
+			public void forEachChunk(@NonNull String contigName, int from, int to,
+					@NonNull ChunkConsumer consumer) {
+				final ContigNumbers contigNumbers = getContig(contigName);
+				PosByPosNumbersIndexedFile.checkRange(contigName, contigNumbers.getNumbersCount(), from, to);
+				if (from <= to) {
+					consumer.accept(from, contigNumbers.getNumbersArray(), from, to - from + 1);
+				}
+			}
+		};
+	}
+}
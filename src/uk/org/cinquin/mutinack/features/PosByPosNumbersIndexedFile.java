@@ -0,0 +1,644 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+
+/**
+ * Indexed on-disk container for per-position numbers, as an alternative to
+ * {@link GenomeNumbers} protobufs that have to be parsed in full. Each contig is
+ * stored as chunks of {@link #CHUNK_SIZE} positions, delta-encoded and deflated
+ * independently so that any range can be read by inflating only the chunks it
+ * overlaps. Chunks are followed by zoom levels that hold the sum, min and max of
+ * bins of increasing size; they are memory-mapped and used by
+ * {@link #summarize} to avoid reading chunks that are entirely covered by a
+ * bin. The index at the end of the file gives contig names and lengths, and
+ * chunk and zoom level offsets. Instances are safe for concurrent use.
+ */
+public final class PosByPosNumbersIndexedFile implements PosByPosNumbers {
+
+	private static final Logger logger = LoggerFactory.getLogger(PosByPosNumbersIndexedFile.class);
+
+	public static final @NonNull String EXTENSION = ".pbn";
+
+	private static final long MAGIC = 0x4D75745062704E31L;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8 + 4 + 8;
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final int CHUNK_SHIFT = 16;
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	/**
+	 * Bins of the first level must not straddle chunks; each level is computed
+	 * from the previous one
+	 */
+	private static final int[] ZOOM_SHIFTS = {10, 13, 16, 19, 22};
+	/**
+	 * Sum, min, max
+	 */
+	private static final int BYTES_PER_BIN = 8 + 4 + 4;
+
+	private final @NonNull Path path;
+	private final @NonNull FileChannel channel;
+	private final @NonNull String sampleName, generatingProgramVersion, generatingProgramArgs;
+	private final int chunkShift;
+	private final int @NonNull[] zoomShifts;
+	private final @NonNull List<@NonNull String> contigNames;
+	private final @NonNull Map<String, Contig> contigs = new HashMap<>();
+
+	private static final class Contig {
+		final int length;
+		/**
+		 * One more than the number of chunks, so that chunk i spans
+		 * [chunkOffsets[i], chunkOffsets[i + 1])
+		 */
+		final long @NonNull[] chunkOffsets;
+		final @NonNull ByteBuffer @NonNull[] zoomLevels;
+
+		Contig(int length, long @NonNull[] chunkOffsets, @NonNull ByteBuffer @NonNull[] zoomLevels) {
+			this.length = length;
+			this.chunkOffsets = chunkOffsets;
+			this.zoomLevels = zoomLevels;
+		}
+	}
+
+	private PosByPosNumbersIndexedFile(@NonNull Path path) throws IOException {
+		this.path = path;
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		boolean success = false;
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			readFully(channel, header, 0);
+			if (header.getLong() != MAGIC) {
+				throw new IOException(path + " is not an indexed position-by-position file");
+			}
+			final int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of " + path);
+			}
+			final long indexOffset = header.getLong();
+			final ByteBuffer indexBuffer = ByteBuffer.allocate(Math.toIntExact(channel.size() - indexOffset));
+			readFully(channel, indexBuffer, indexOffset);
+			final DataInputStream index = new DataInputStream(new ByteArrayInputStream(
+				indexBuffer.array(), 0, indexBuffer.limit()));
+			sampleName = readString(index);
+			generatingProgramVersion = readString(index);
+			generatingProgramArgs = readString(index);
+			chunkShift = index.readInt();
+			zoomShifts = new int[index.readInt()];
+			for (int i = 0; i < zoomShifts.length; i++) {
+				zoomShifts[i] = index.readInt();
+			}
+			final int nContigs = index.readInt();
+			final List<@NonNull String> names = new ArrayList<>(nContigs);
+			for (int i = 0; i < nContigs; i++) {
+				final @NonNull String name = index.readUTF();
+				final int length = index.readInt();
+				final long[] chunkOffsets = new long[index.readInt() + 1];
+				for (int j = 0; j < chunkOffsets.length; j++) {
+					chunkOffsets[j] = index.readLong();
+				}
+				final @NonNull ByteBuffer[] zoomLevels = new ByteBuffer[zoomShifts.length];
+				for (int level = 0; level < zoomShifts.length; level++) {
+					final long nBins = ((long) length + (1 << zoomShifts[level]) - 1) >> zoomShifts[level];
+					zoomLevels[level] = channel.map(MapMode.READ_ONLY, index.readLong(),
+						nBins * BYTES_PER_BIN).order(ORDER);
+				}
+				names.add(name);
+				contigs.put(name, new Contig(length, chunkOffsets, zoomLevels));
+			}
+			contigNames = Collections.unmodifiableList(names);
+			success = true;
+		} finally {
+			if (!success) {
+				channel.close();
+			}
+		}
+	}
+
+	public static @NonNull PosByPosNumbersIndexedFile open(@NonNull Path path) throws IOException {
+		return new PosByPosNumbersIndexedFile(path);
+	}
+
+	/**
+	 * @return True if the file starts with the header of an indexed file, as opposed
+	 * to e.g. a protobuf
+	 */
+	public static boolean isIndexedFile(@NonNull Path path) throws IOException {
+		if (Files.size(path) < HEADER_LENGTH) {
+			return false;
+		}
+		try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final ByteBuffer magic = ByteBuffer.allocate(8);
+			readFully(fileChannel, magic, 0);
+			return magic.getLong() == MAGIC;
+		}
+	}
+
+	@Override
+	public @NonNull String getSampleName() {
+		return sampleName;
+	}
+
+	@Override
+	public @NonNull String getGeneratingProgramVersion() {
+		return generatingProgramVersion;
+	}
+
+	@Override
+	public @NonNull String getGeneratingProgramArgs() {
+		return generatingProgramArgs;
+	}
+
+	@Override
+	public @NonNull List<@NonNull String> getContigNames() {
+		return contigNames;
+	}
+
+	private @NonNull Contig getContig(@NonNull String contigName) {
+		final Contig contig = contigs.get(contigName);
+		if (contig == null) {
+			throw new IllegalArgumentException("Unknown contig " + contigName + " in " + path);
+		}
+		return contig;
+	}
+
+	@Override
+	public int getContigLength(@NonNull String contigName) {
+		return getContig(contigName).length;
+	}
+
+	static void checkRange(@NonNull String contigName, int length, int from, int to) {
+		if (from < 0 || to >= length || from > to + 1) {
+			throw new IllegalArgumentException("Invalid range " + contigName + ':' + from + '-' + to +
+				" for contig of length " + length);
+		}
+	}
+
+	@Override
+	public void forEachChunk(@NonNull String contigName, int from, int to, @NonNull ChunkConsumer consumer) {
+		final Contig contig = getContig(contigName);
+		checkRange(contigName, contig.length, from, to);
+		if (from > to) {
+			return;
+		}
+		final int[] values = new int[1 << chunkShift];
+		final ChunkReader reader = new ChunkReader();
+		try {
+			for (int chunk = from >> chunkShift; chunk <= to >> chunkShift; chunk++) {
+				final int chunkStart = chunk << chunkShift;
+				final int n = reader.read(contig, chunk, values);
+				final int first = Math.max(from, chunkStart) - chunkStart;
+				final int last = Math.min(to, chunkStart + n - 1) - chunkStart;
+				consumer.accept(chunkStart + first, values, first, last - first + 1);
+			}
+		} finally {
+			reader.inflater.end();
+		}
+	}
+
+	private final class ChunkReader {
+		final Inflater inflater = new Inflater();
+		final byte[] inflated = new byte[4 << chunkShift];
+		ByteBuffer compressed = ByteBuffer.allocate(0);
+
+		/**
+		 * @return Number of positions in the chunk
+		 */
+		int read(Contig contig, int chunk, int[] values) {
+			final long start = contig.chunkOffsets[chunk];
+			final int compressedLength = (int) (contig.chunkOffsets[chunk + 1] - start);
+			if (compressed.capacity() < compressedLength) {
+				compressed = ByteBuffer.allocate(compressedLength);
+			}
+			compressed.limit(compressedLength);
+			final int expected = Math.min(1 << chunkShift, contig.length - (chunk << chunkShift));
+			try {
+				readFully(channel, compressed, start);
+				inflater.reset();
+				inflater.setInput(compressed.array(), 0, compressedLength);
+				final int nBytes = inflater.inflate(inflated, 0, 4 * expected);
+				if (nBytes != 4 * expected || !inflater.finished()) {
+					throw new IOException("Corrupted chunk " + chunk + " at offset " + start + " in " + path);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (DataFormatException e) {
+				throw new UncheckedIOException(new IOException("Corrupted chunk " + chunk +
+					" at offset " + start + " in " + path, e));
+			}
+			final ByteBuffer deltas = ByteBuffer.wrap(inflated).order(ORDER);
+			int value = 0;
+			for (int i = 0; i < expected; i++) {
+				value += deltas.getInt(4 * i);
+				values[i] = value;
+			}
+			return expected;
+		}
+	}
+
+	/**
+	 * Sum full bins of the coarsest zoom level that has any within the range, and
+	 * recursively summarize the remainders on either side with finer levels, down
+	 * to individual positions.
+	 */
+	@Override
+	public @NonNull Summary summarize(@NonNull String contigName, int from, int to) {
+		final Contig contig = getContig(contigName);
+		checkRange(contigName, contig.length, from, to);
+		final Summary summary = new Summary();
+		summarize(contigName, contig, zoomShifts.length - 1, from, to, summary);
+		return summary;
+	}
+
+	private void summarize(@NonNull String contigName, Contig contig, int level, int from, int to,
+			Summary summary) {
+		if (from > to) {
+			return;
+		}
+		if (level < 0) {
+			forEachChunk(contigName, from, to, (firstPosition, values, offset, length) -> {
+				for (int i = offset; i < offset + length; i++) {
+					summary.add(values[i]);
+				}
+			});
+			return;
+		}
+		final int shift = zoomShifts[level];
+		final long firstBin = (from + (1L << shift) - 1) >> shift;
+		final long lastBin = to == contig.length - 1 ? (long) to >> shift : ((to + 1L) >> shift) - 1;
+		if (firstBin > lastBin) {
+			summarize(contigName, contig, level - 1, from, to, summary);
+			return;
+		}
+		final ByteBuffer bins = contig.zoomLevels[level];
+		for (long bin = firstBin; bin <= lastBin; bin++) {
+			final int offset = (int) (bin * BYTES_PER_BIN);
+			final long n = Math.min((bin + 1) << shift, contig.length) - (bin << shift);
+			summary.add(n, bins.getLong(offset), bins.getInt(offset + 8), bins.getInt(offset + 12));
+		}
+		summarize(contigName, contig, level - 1, from, (int) ((firstBin << shift) - 1), summary);
+		summarize(contigName, contig, level - 1, (int) Math.min((lastBin + 1) << shift, contig.length),
+			to, summary);
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Indexed position-by-position numbers " + sampleName + " in " + path;
+	}
+
+	/**
+	 * Write the numbers of all contigs of source, in the same order, along with its
+	 * sample name and generating program information.
+	 */
+	public static void write(@NonNull PosByPosNumbers source, @NonNull Path path) throws IOException {
+		try (Writer writer = new Writer(path, source.getSampleName(),
+				source.getGeneratingProgramVersion(), source.getGeneratingProgramArgs())) {
+			for (@NonNull String contigName: source.getContigNames()) {
+				final int length = source.getContigLength(contigName);
+				writer.startContig(contigName, length);
+				source.forEachChunk(contigName, 0, length - 1, (firstPosition, values, offset, n) -> {
+					try {
+						writer.append(values, offset, n);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				writer.endContig();
+			}
+		}
+	}
+
+	public static void fromProto(@NonNull GenomeNumbers genomeNumbers, @NonNull Path path) throws IOException {
+		write(PosByPosNumbers.of(genomeNumbers), path);
+	}
+
+	public static @NonNull GenomeNumbers toProto(@NonNull PosByPosNumbers numbers) {
+		final GenomeNumbers.Builder builder = GenomeNumbers.newBuilder();
+		builder.setSampleName(numbers.getSampleName());
+		builder.setGeneratingProgramVersion(numbers.getGeneratingProgramVersion());
+		builder.setGeneratingProgramArgs(numbers.getGeneratingProgramArgs());
+		for (@NonNull String contigName: numbers.getContigNames()) {
+			final PosByPosNumbersPB.ContigNumbers.Builder contigBuilder =
+				PosByPosNumbersPB.ContigNumbers.newBuilder();
+			contigBuilder.setContigName(contigName);
+			final int length = numbers.getContigLength(contigName);
+			contigBuilder.ensureNumbersIsMutable(length);
+			contigBuilder.numUsedInNumbers_ = length;
+			final int[] target = contigBuilder.getNumbersArray();
+			numbers.forEachChunk(contigName, 0, length - 1, (firstPosition, values, offset, n) ->
+				System.arraycopy(values, offset, target, firstPosition, n));
+			builder.addContigNumbers(contigBuilder);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Streams contigs one after the other to a temporary file, which is moved into
+	 * place when the writer is closed so that readers never see partial output.
+	 * Not thread-safe.
+	 */
+	public static final class Writer implements Closeable {
+		private final @NonNull Path path, temp;
+		private final @NonNull FileChannel channel;
+		private final @NonNull String sampleName, generatingProgramVersion, generatingProgramArgs;
+		private final ByteArrayOutputStream contigIndexBytes = new ByteArrayOutputStream();
+		private final DataOutputStream contigIndex = new DataOutputStream(contigIndexBytes);
+		private final List<String> writtenContigs = new ArrayList<>();
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		private final int[] chunk = new int[CHUNK_SIZE];
+		private final ByteBuffer deltas = ByteBuffer.allocate(4 * CHUNK_SIZE).order(ORDER);
+		private final byte[] deflated = new byte[4 * CHUNK_SIZE];
+		private final TLongArrayList chunkOffsets = new TLongArrayList();
+		/**
+		 * Bins of the finest zoom level, for the contig being written
+		 */
+		private final TLongArrayList binSums = new TLongArrayList();
+		private final TIntArrayList binMins = new TIntArrayList(), binMaxs = new TIntArrayList();
+		private @Nullable String contigName;
+		private int contigLength, nAppended, nInChunk;
+		private boolean closed;
+
+		public Writer(@NonNull Path path, @NonNull String sampleName, @NonNull String generatingProgramVersion,
+				@NonNull String generatingProgramArgs) throws IOException {
+			this.path = path;
+			this.sampleName = sampleName;
+			this.generatingProgramVersion = generatingProgramVersion;
+			this.generatingProgramArgs = generatingProgramArgs;
+			temp = path.resolveSibling(path.getFileName() + ".tmp");
+			channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+			channel.position(HEADER_LENGTH);
+		}
+
+		public void startContig(@NonNull String name, int length) {
+			if (contigName != null) {
+				throw new IllegalStateException("Contig " + contigName + " not finished");
+			}
+			if (writtenContigs.contains(name)) {
+				throw new IllegalArgumentException("Duplicate contig " + name);
+			}
+			if (length < 0) {
+				throw new IllegalArgumentException("Negative length " + length + " for contig " + name);
+			}
+			contigName = name;
+			contigLength = length;
+			nAppended = 0;
+			nInChunk = 0;
+			chunkOffsets.clearQuick();
+			binSums.clearQuick();
+			binMins.clearQuick();
+			binMaxs.clearQuick();
+		}
+
+		public void append(int @NonNull[] values, int offset, int length) throws IOException {
+			if (contigName == null) {
+				throw new IllegalStateException("No contig started");
+			}
+			if (nAppended + (long) length > contigLength) {
+				throw new IllegalArgumentException("More than " + contigLength +
+					" values appended to contig " + contigName);
+			}
+			nAppended += length;
+			while (length > 0) {
+				final int n = Math.min(length, CHUNK_SIZE - nInChunk);
+				System.arraycopy(values, offset, chunk, nInChunk, n);
+				nInChunk += n;
+				offset += n;
+				length -= n;
+				if (nInChunk == CHUNK_SIZE) {
+					flushChunk();
+				}
+			}
+		}
+
+		private void flushChunk() throws IOException {
+			final int binSize = 1 << ZOOM_SHIFTS[0];
+			for (int binStart = 0; binStart < nInChunk; binStart += binSize) {
+				long sum = 0;
+				int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+				for (int i = binStart; i < Math.min(binStart + binSize, nInChunk); i++) {
+					final int value = chunk[i];
+					sum += value;
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+				binSums.add(sum);
+				binMins.add(min);
+				binMaxs.add(max);
+			}
+
+			deltas.clear();
+			int previous = 0;
+			for (int i = 0; i < nInChunk; i++) {
+				deltas.putInt(chunk[i] - previous);
+				previous = chunk[i];
+			}
+			chunkOffsets.add(channel.position());
+			deflater.reset();
+			deflater.setInput(deltas.array(), 0, deltas.position());
+			deflater.finish();
+			while (!deflater.finished()) {
+				final int n = deflater.deflate(deflated);
+				writeFully(channel, ByteBuffer.wrap(deflated, 0, n));
+			}
+			nInChunk = 0;
+		}
+
+		public void endContig() throws IOException {
+			final String name = contigName;
+			if (name == null) {
+				throw new IllegalStateException("No contig started");
+			}
+			if (nAppended != contigLength) {
+				throw new IllegalStateException("Only " + nAppended + " of " + contigLength +
+					" values appended to contig " + name);
+			}
+			if (nInChunk > 0) {
+				flushChunk();
+			}
+			chunkOffsets.add(channel.position());
+
+			final long[] zoomOffsets = new long[ZOOM_SHIFTS.length];
+			long[] sums = binSums.toArray();
+			int[] mins = binMins.toArray(), maxs = binMaxs.toArray();
+			for (int level = 0; level < ZOOM_SHIFTS.length; level++) {
+				if (level > 0) {
+					final int factor = 1 << (ZOOM_SHIFTS[level] - ZOOM_SHIFTS[level - 1]);
+					final int nBins = (sums.length + factor - 1) / factor;
+					final long[] sums1 = new long[nBins];
+					final int[] mins1 = new int[nBins], maxs1 = new int[nBins];
+					for (int bin = 0; bin < nBins; bin++) {
+						mins1[bin] = Integer.MAX_VALUE;
+						maxs1[bin] = Integer.MIN_VALUE;
+						for (int i = bin * factor; i < Math.min((bin + 1) * factor, sums.length); i++) {
+							sums1[bin] += sums[i];
+							mins1[bin] = Math.min(mins1[bin], mins[i]);
+							maxs1[bin] = Math.max(maxs1[bin], maxs[i]);
+						}
+					}
+					sums = sums1;
+					mins = mins1;
+					maxs = maxs1;
+				}
+				final ByteBuffer bins = ByteBuffer.allocate(sums.length * BYTES_PER_BIN).order(ORDER);
+				for (int bin = 0; bin < sums.length; bin++) {
+					bins.putLong(sums[bin]).putInt(mins[bin]).putInt(maxs[bin]);
+				}
+				bins.flip();
+				zoomOffsets[level] = channel.position();
+				writeFully(channel, bins);
+			}
+
+			contigIndex.writeUTF(name);
+			contigIndex.writeInt(contigLength);
+			contigIndex.writeInt(chunkOffsets.size() - 1);
+			for (int i = 0; i < chunkOffsets.size(); i++) {
+				contigIndex.writeLong(chunkOffsets.getQuick(i));
+			}
+			for (long zoomOffset: zoomOffsets) {
+				contigIndex.writeLong(zoomOffset);
+			}
+			writtenContigs.add(name);
+			contigName = null;
+		}
+
+		/**
+		 * @throws IllegalStateException if a contig was started but not finished, in
+		 * which case no output is produced
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			deflater.end();
+			try {
+				if (contigName != null) {
+					throw new IllegalStateException("Contig " + contigName + " not finished; discarding " +
+						path);
+				}
+				final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+				final DataOutputStream index = new DataOutputStream(indexBytes);
+				writeString(index, sampleName);
+				writeString(index, generatingProgramVersion);
+				writeString(index, generatingProgramArgs);
+				index.writeInt(CHUNK_SHIFT);
+				index.writeInt(ZOOM_SHIFTS.length);
+				for (int shift: ZOOM_SHIFTS) {
+					index.writeInt(shift);
+				}
+				index.writeInt(writtenContigs.size());
+				contigIndex.flush();
+				contigIndexBytes.writeTo(index);
+				index.flush();
+
+				final long indexOffset = channel.position();
+				writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+				header.putLong(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+				channel.position(0);
+				writeFully(channel, header);
+				channel.close();
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				channel.close();
+				if (Files.exists(temp)) {
+					try {
+						Files.delete(temp);
+					} catch (IOException e) {
+						logger.warn("Could not delete " + temp, e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Length-prefixed UTF-8, as program arguments can exceed the length limit of
+	 * {@link DataOutputStream#writeUTF}
+	 */
+	private static void writeString(DataOutputStream stream, String s) throws IOException {
+		final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		stream.writeInt(bytes.length);
+		stream.write(bytes);
+	}
+
+	private static @NonNull String readString(DataInputStream stream) throws IOException {
+		final byte[] bytes = new byte[stream.readInt()];
+		stream.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.position(0);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at offset " + position);
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
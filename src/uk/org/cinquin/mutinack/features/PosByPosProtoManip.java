@@ -23,6 +23,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
@@ -33,41 +34,36 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiConsumer;
-import java.util.stream.Collector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.jwetherell.algorithms.data_structures.IntervalData;
-import com.jwetherell.algorithms.data_structures.IntervalTree;
 
-import uk.org.cinquin.mutinack.MutinackGroup;
+import gnu.trove.map.hash.TIntLongHashMap;
 import uk.org.cinquin.mutinack.Parameters.HideInToString;
 import uk.org.cinquin.mutinack.Parameters.SwallowCommasConverter;
 import uk.org.cinquin.mutinack.SequenceLocation;
+import uk.org.cinquin.mutinack.features.PosByPosNumbers.ChunkConsumer;
 import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
 import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
 import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers.Builder;
 import uk.org.cinquin.mutinack.misc_util.GitCommitInfo;
 import uk.org.cinquin.mutinack.misc_util.Pair;
-import uk.org.cinquin.mutinack.misc_util.SettableInteger;
 import uk.org.cinquin.mutinack.misc_util.Util;
 import uk.org.cinquin.mutinack.misc_util.collections.MapOfLists;
 import uk.org.cinquin.mutinack.misc_util.exceptions.AssertionFailedException;
-import uk.org.cinquin.mutinack.statistics.Counter;
-import uk.org.cinquin.mutinack.statistics.DoubleAdderFormatter;
 import uk.org.cinquin.parfor.ParFor;
 
 public class PosByPosProtoManip {
@@ -87,7 +83,7 @@ public class PosByPosProtoManip {
 		@Parameter(names = "-threshold", description = "Only positions with counts greater than or equal to this value will be reported", required = true)
 		public int threshold = 1;
 
-		@Parameter(names = "-input", description = "Protobuf file name or - for stdin", required = true, variableArity = true)
+		@Parameter(names = "-input", description = "Protobuf or indexed (" + PosByPosNumbersIndexedFile.EXTENSION + ") file name, or - for protobuf from stdin", required = true, variableArity = true)
 		public List<String> inputs;
 
 		@Parameter(names = "-invertInputs", description = "Protobuf file name or - for stdin", required = false)
@@ -96,7 +92,7 @@ public class PosByPosProtoManip {
 		@Parameter(names = "-domainBedFile", description = "Only domains defined in following bed file will be used for histogram computation", required = false)
 		public @NonNull String domainBedFile = "";
 
-		@Parameter(names = "-output", description = "File name or - for stdout", required = true)
+		@Parameter(names = "-output", description = "File name or - for stdout; sum and toIndexed produce an indexed file if the name ends with " + PosByPosNumbersIndexedFile.EXTENSION, required = true)
 		public String output;
 
 		@Parameter(names = "-expMovAverage", description = "For thresholdToBed, compute exponential moving average", required = false)
@@ -149,6 +145,19 @@ public class PosByPosProtoManip {
 	}
 
 	public static void main(String [] args) throws IOException, InterruptedException {
+		execute(args);
+		if (ParFor.defaultThreadPool != null) {
+			ParFor.defaultThreadPool.shutdown();
+		}
+	}
+
+	/**
+	 * Same as {@link #main} but leaves the default thread pool running, so that it
+	 * can be called several times from the same JVM
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void execute(String... args) throws IOException {
 
 		final Params argValues = new Params();
 		JCommander commander = new JCommander();
@@ -178,11 +187,12 @@ public class PosByPosProtoManip {
 			break;
 			case "selectBedIntervals": selectBedIntervals(argValues);
 			break;
+			case "toIndexed": convert(argValues, true);
+			break;
+			case "toProto": convert(argValues, false);
+			break;
 			default: throw new IllegalArgumentException("Unknown command " + args[0]);
 		}
-		if (ParFor.defaultThreadPool != null) {
-			ParFor.defaultThreadPool.shutdown();
-		}
 	}
 
 	private static void checkArgumentLength(int length, List<?> list, String errorMessage) {
@@ -192,11 +202,44 @@ public class PosByPosProtoManip {
 		}
 	}
 
-	private static void iterateGenomeNumbers(Params argValues, GenomeNumbers gn1,
-			BiConsumer<SequenceLocation, Integer> processor) {
-		List<@NonNull String> contigNames0 = gn1.getContigNumbersList().stream().map(ContigNumbers::getContigName).
-				collect(Collectors.toList());
+	private static @NonNull PosByPosNumbers openInput(String path) throws IOException {
+		if (!path.equals("-") && PosByPosNumbersIndexedFile.isIndexedFile(Paths.get(path))) {
+			return PosByPosNumbersIndexedFile.open(Paths.get(path));
+		}
+		return PosByPosNumbers.of(getFromFile(path));
+	}
+
+	/**
+	 * Contig indices used with BED files follow alphabetical order of contig names
+	 */
+	private static @NonNull List<@NonNull String> getSortedContigNames(PosByPosNumbers numbers) {
+		final List<@NonNull String> contigNames0 = new ArrayList<>(numbers.getContigNames());
 		contigNames0.sort(null);
+		return contigNames0;
+	}
+
+	private static final class ContigRange {
+		final @NonNull String contigName;
+		final int contigIndex;
+		/**
+		 * Inclusive
+		 */
+		final int from, to;
+
+		ContigRange(@NonNull String contigName, int contigIndex, int from, int to) {
+			this.contigName = contigName;
+			this.contigIndex = contigIndex;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/**
+	 * @return Ranges of positions to process, selected by startAtPositions and
+	 * stopAtPositions, in storage order; contigs without numbers are skipped
+	 */
+	private static List<ContigRange> getContigRanges(Params argValues, PosByPosNumbers numbers) {
+		List<@NonNull String> contigNames0 = getSortedContigNames(numbers);
 		Map<String, Integer> contigIndices = new HashMap<>();
 		for (int i = 0; i < contigNames0.size(); i++) {
 			contigIndices.put(contigNames0.get(i), i);
@@ -213,10 +256,10 @@ public class PosByPosProtoManip {
 
 		Util.checkPositionsOrdering(p, p2);
 
-		for (ContigNumbers cnl: gn1.getContigNumbersList()) {
-			final @NonNull String contigName = cnl.getContigName();
-			final int[] numbers1 = cnl.getNumbersArray();
-			if (numbers1 == null) {
+		final List<ContigRange> result = new ArrayList<>();
+		for (@NonNull String contigName: numbers.getContigNames()) {
+			final int length = numbers.getContigLength(contigName);
+			if (length == 0) {
 				continue;
 			}
 			final int initialI;
@@ -230,19 +273,34 @@ public class PosByPosProtoManip {
 			}
 			final int finalI;
 			if (!stopAtContigs.contains(contigName)) {
-				finalI = numbers1.length - 1;
+				finalI = length - 1;
 			} else {
 				finalI = stopAtPositions.get(stopAtContigs.indexOf(contigName));
 			}
 
 			final int contigId = Objects.requireNonNull(contigIndices.get(contigName));
+			result.add(new ContigRange(contigName, contigId, initialI, finalI));
+		}
+		return result;
+	}
 
-			for (int i = initialI; i <= finalI; i++) {
-				processor.accept(new SequenceLocation("", contigId, contigName, i), numbers1[i]);
+	private static @NonNull BedReader readDomainBedFile(Params argValues,
+			List<@NonNull String> contigNames0) throws IOException {
+		try (FileReader fileReader = new FileReader(new File(argValues.domainBedFile))) {
+			if (argValues.invertInputs) {
+				System.err.println("Inverting input bed " + argValues.domainBedFile);
 			}
+			return new BedReader(contigNames0,
+					new BufferedReader(fileReader), "",
+					argValues.domainBedFile, null, null);
 		}
 	}
 
+	private static @NonNull RegionMask getMask(@NonNull BedReader bedReader, ContigRange range) {
+		return Objects.requireNonNull(RegionMask.build(Collections.singletonList(bedReader),
+			range.contigIndex, range.from, range.to));
+	}
+
 	/**
 	 * Given a proto input and a BED file, computes intervals within the bed file
 	 * that have at least one count in the proto input
@@ -256,174 +314,107 @@ public class PosByPosProtoManip {
 			throw new IllegalArgumentException("Must specify input bed file");
 		}
 
-		Set<GenomeInterval> resultIntervals = new HashSet<>();
-		SettableInteger nPos = new SettableInteger(0);
-
-		GenomeNumbers gn1 = getFromFile(argValues.inputs.get(0));
-		List<@NonNull String> contigNames0 = gn1.getContigNumbersList().stream().
-				map(ContigNumbers::getContigName).collect(Collectors.toList());
-		contigNames0.sort(null);
-		GenomeFeatureTester reader;
-		try (FileReader fileReader = new FileReader(new File(argValues.domainBedFile))) {
-			GenomeFeatureTester reader0 = new BedReader(contigNames0,
-					new BufferedReader(fileReader), "",
-					argValues.domainBedFile, null, null);
-			if (argValues.invertInputs) {
-				System.err.println("Inverting input bed " + argValues.domainBedFile);
-				reader = new BedComplement(reader0);
+		try (PosByPosNumbers numbers = openInput(argValues.inputs.get(0))) {
+			final List<@NonNull String> contigNames0 = getSortedContigNames(numbers);
+			final BedReader bedReader = readDomainBedFile(argValues, contigNames0);
+			final GenomeFeatureTester reader = argValues.invertInputs ?
+				new BedComplement(bedReader)
+				:
+				bedReader;
+			final List<ContigRange> ranges = getContigRanges(argValues, numbers);
+
+			//Do a first pass to identify BED intervals that have at least 1 non-zero count
+			//in the protobuf file
+			final Set<GenomeInterval> resultIntervals = ConcurrentHashMap.newKeySet();
+			ranges.parallelStream().forEach(range ->
+				numbers.forEachChunk(range.contigName, range.from, range.to, (firstPosition, values, offset, length) -> {
+					for (int i = 0; i < length; i++) {
+						if (values[offset + i] > 0) {
+							resultIntervals.addAll(reader.apply(new SequenceLocation("", range.contigIndex,
+								range.contigName, firstPosition + i)));
+						}
+					}
+				}));
+			final long nPos = ranges.stream().mapToLong(range -> range.to - range.from + 1L).sum();
+			System.err.print("Iterated over " + nPos + " positions");
+			Pair<List<String>, List<Integer>> p = 
+					Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions");	
+			final List<String> startAtContigs = p.fst;
+			if (startAtContigs.size() > 1) {
+				System.err.println(" in contigs " + startAtContigs);
 			} else {
-				reader = reader0;
-			}
-		}
-		//Do a first pass to identify BED intervals that have at least 1 non-zero count
-		//in the protobuf file
-		iterateGenomeNumbers(argValues, gn1, (location, n) -> {
-			if (n > 0) {
-				resultIntervals.addAll(reader.apply(location));
+				System.err.println();
 			}
-			nPos.incrementAndGet();			
-		});
-		System.err.print("Iterated over " + nPos + " positions");
-		Pair<List<String>, List<Integer>> p = 
-				Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions");	
-		final List<String> startAtContigs = p.fst;
-		if (startAtContigs.size() > 1) {
-			System.err.println(" in contigs " + startAtContigs);
-		} else {
-			System.err.println();
-		}
 
-		//Second pass to compute overall coverage of selected intervals
-		//Note we can't just sum sizes of selected intervals since they
-		//may overlap
-
-		final MapOfLists<String, IntervalData<GenomeInterval>>
-			bedFileIntervals = new MapOfLists<>();		
-		AtomicInteger lineCount = new AtomicInteger(0);
-		int contigIndex = 0;
-		for (String s: contigNames0) {
-			lineCount.incrementAndGet();
-			bedFileIntervals.addAt(s, new IntervalData<>(-1, -1,
-					new GenomeInterval("", contigIndex++, "", s, -1, -1, null, Util.emptyOptional(), 0, null, null)));
-		}
+			//Second pass to compute overall coverage of selected intervals
+			//Note we can't just sum sizes of selected intervals since they
+			//may overlap; values do not need to be read again
 
-		for (GenomeInterval interval: resultIntervals) {
-			bedFileIntervals.addAt(interval.contigName, 
-					new IntervalData<>(interval.getStart(), interval.getEnd(), interval));
-		}
+			final MapOfLists<String, IntervalData<GenomeInterval>>
+				selectedIntervals = new MapOfLists<>();
+			for (GenomeInterval interval: resultIntervals) {
+				selectedIntervals.addAt(interval.contigName, 
+						new IntervalData<>(interval.getStart(), interval.getEnd(), interval));
+			}
 
-		List<Entry<String, List<IntervalData<GenomeInterval>>>> sortedContigs = 
-				bedFileIntervals.entrySet().stream().sorted(
-					Comparator.comparing(Entry::getKey)).collect(Collectors.toList());
+			final long[] counts = ranges.parallelStream().map(range -> {
+				final RegionMask domainMask = getMask(bedReader, range);
+				final SortedIntervalIndex<GenomeInterval>.Cursor cursor =
+					new SortedIntervalIndex<>(selectedIntervals.get(range.contigName)).cursor();
+				final long[] contigCounts = new long[2];
+				for (int i = range.from; i <= range.to; i++) {
+					if (domainMask.contains(range.contigIndex, i) != argValues.invertInputs) {
+						contigCounts[0]++;
+					}
+					if (cursor.contains(i)) {
+						contigCounts[1]++;
+					}
+				}
+				return contigCounts;
+			}).reduce(new long[2], (a, b) -> new long[] {a[0] + b[0], a[1] + b[1]});
+			final long withinBedPositions = counts[0];
+			final long positivePositions = counts[1];
 
-		final List<IntervalTree<GenomeInterval>> contigTrees = new ArrayList<>();
-		//NB For this to work the contig IDs used in the test function must match
-		//alphabetical order of contig names
-		for (Entry<String, List<IntervalData<GenomeInterval>>> sortedContig: sortedContigs) {
-			contigTrees.add(new IntervalTree<>(sortedContig.getValue()));
+			System.out.println(positivePositions + " of " + withinBedPositions + " positions in BED file " + 
+					"belong to interval with at least one hit (total of " + nPos + " genome positions scanned)");
 		}
-
-		SettableInteger positivePositions = new SettableInteger(0);
-		SettableInteger withinBedPositions = new SettableInteger(0);
-		SettableInteger testedPositions = new SettableInteger(0);
-
-		iterateGenomeNumbers(argValues, gn1, (location, n) -> {
-			testedPositions.incrementAndGet();
-			if (reader.test(location)) {
-				withinBedPositions.getAndIncrement();
-			}
-			if (!contigTrees.get(location.contigIndex).query(location.position).getUnprotectedData().isEmpty()) {
-				positivePositions.incrementAndGet();
-			}
-		});
-
-		System.out.println(positivePositions + " of " + withinBedPositions + " positions in BED file " + 
-				"belong to interval with at least one hit (total of " + testedPositions + " genome positions scanned)");
 	}
 
-	//TODO Use iterateGenomeNumbers instead of duplicating code
 	private static void histogram(Params argValues) throws IOException {
 		checkArgumentLength(1, argValues.inputs, "Exactly 1 input expected for histogram command");
-		GenomeNumbers gn1 = getFromFile(argValues.inputs.get(0));
-		List<@NonNull String> contigNames0 = gn1.getContigNumbersList().stream().map(ContigNumbers::getContigName).
-				collect(Collectors.toList());
-		contigNames0.sort(null);
-		Map<String, Integer> contigIndices = new HashMap<>();
-		for (int i = 0; i < contigNames0.size(); i++) {
-			contigIndices.put(contigNames0.get(i), i);
-		}
-
-		Pair<List<String>, List<Integer>> p = 
-				Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions");	
-		final List<String> startAtContigs = p.fst;
-		final List<Integer> startAtPositions = p.snd;
-
-		Pair<List<String>, List<Integer>> p2 = Util.parseListPositions(argValues.stopAtPositions, true, "stopAtPositions");	
-		final List<String> stopAtContigs = p2.fst;
-		final List<Integer> stopAtPositions = p2.snd;
-
-		Util.checkPositionsOrdering(p, p2);
-
-		String output = argValues.output;
-
-		@SuppressWarnings("resource")
-		Counter<Integer> counter = new Counter<>(false, new MutinackGroup(false));
-
-		int nPos = 0;
-
-		final GenomeFeatureTester reader;
-		if (!argValues.domainBedFile.isEmpty()) {
-			try (FileReader fileReader = new FileReader(new File(argValues.domainBedFile))) {
-				GenomeFeatureTester reader0 = new BedReader(contigNames0,
-						new BufferedReader(fileReader), "",
-						argValues.domainBedFile, null, null);
-				if (argValues.invertInputs) {
-					System.err.println("Inverting input bed " + argValues.domainBedFile);
-					reader = new BedComplement(reader0);
-				} else {
-					reader = reader0;
-				}
-			}
-		} else {
-			reader = null;
-		}
-
-		try (PrintStream writer = output.equals("-") ?
-							System.out :
-							new PrintStream(new FileOutputStream(output))) {
-			for (ContigNumbers cnl: gn1.getContigNumbersList()) {
-				final @NonNull String contigName = cnl.getContigName();
-				final int[] numbers1 = cnl.getNumbersArray();
-				if (numbers1 == null) {
-					continue;
-				}
-				final int initialI;
-				if (!startAtContigs.contains(contigName)) {
-					if (!startAtContigs.isEmpty()) {
-						continue;
-					}
-					initialI = 0;
-				} else {
-					initialI = startAtPositions.get(startAtContigs.indexOf(contigName));
-				}
-				final int finalI;
-				if (!stopAtContigs.contains(contigName)) {
-					finalI = numbers1.length - 1;
-				} else {
-					finalI = stopAtPositions.get(stopAtContigs.indexOf(contigName));
-				}
-
-				final int contigId = Objects.requireNonNull(contigIndices.get(contigName));
-
-				for (int i = initialI; i <= finalI; i++) {
-					if (reader != null) {
-						if (!reader.test(new SequenceLocation("", contigId, contigName, i))) {
-							continue;
+		try (PosByPosNumbers numbers = openInput(argValues.inputs.get(0))) {
+			final List<ContigRange> ranges = getContigRanges(argValues, numbers);
+			final List<String> startAtContigs =
+				Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions").fst;
+
+			final @Nullable BedReader bedReader = argValues.domainBedFile.isEmpty() ?
+				null
+				:
+				readDomainBedFile(argValues, getSortedContigNames(numbers));
+
+			//Contigs are processed in parallel, each positions being tested against
+			//a mask of the BED file rather than queried individually
+			final TIntLongHashMap counts = ranges.parallelStream().collect(TIntLongHashMap::new,
+				(contigCounts, range) -> {
+					final @Nullable RegionMask mask = bedReader == null ? null : getMask(bedReader, range);
+					numbers.forEachChunk(range.contigName, range.from, range.to, (firstPosition, values, offset, length) -> {
+						for (int i = 0; i < length; i++) {
+							if (mask != null &&
+									mask.contains(range.contigIndex, firstPosition + i) == argValues.invertInputs) {
+								continue;
+							}
+							contigCounts.adjustOrPutValue(values[offset + i], 1, 1);
 						}
-					}
-					counter.accept(numbers1[i]);
-					nPos++;
-				}
+					});
+				},
+				(counts1, counts2) -> counts2.forEachEntry((value, count) -> {
+					counts1.adjustOrPutValue(value, count, count);
+					return true;
+				}));
+
+			long nPos = 0;
+			for (long count: counts.values()) {
+				nPos += count;
 			}
 			System.err.print("Iterated over " + nPos + " positions");
 			if (!startAtContigs.isEmpty()) {
@@ -432,223 +423,246 @@ public class PosByPosProtoManip {
 				System.err.println();
 			}
 
-			@NonNull Map<Object, @NonNull Object> counts = counter.getCounts();
-			int max = counts.keySet().stream().mapToInt(i -> ((Integer) i)).
-					max().getAsInt();
-
-			for (int i = 0; i <= max; i++) {
-				Object o = counts.get(i);
-				final int value;
-				if (o == null) {
-					value = 0;
-				} else {
-					value = (int) ((DoubleAdderFormatter) o).sum();
+			String output = argValues.output;
+			try (PrintStream writer = output.equals("-") ?
+								System.out :
+								new PrintStream(new FileOutputStream(output))) {
+				final int max = counts.isEmpty() ? -1 : Arrays.stream(counts.keys()).max().getAsInt();
+				for (int i = 0; i <= max; i++) {
+					writer.println(i + "\t" + counts.get(i));
 				}
-				writer.println(i + "\t" + value);
 			}
 		}
 	}
 
-	//Adapted from http://stackoverflow.com/questions/22694884/filter-java-stream-to-1-and-only-1-element
-	private static Collector<Pair<String, ContigNumbers>, List<ContigNumbers>, ContigNumbers> singletonCollector() {
-	    return Collector.of(
-	            ArrayList<ContigNumbers>::new,
-	            (list, pair) -> list.add(pair.snd),
-	            (left, right) -> { left.addAll(right); return left; },
-	            list -> {
-	                if (list.size() != 1) {
-	                    throw new IllegalStateException("Multiple samples with same name");
-	                }
-	                return list.get(0);
-	            }
-	    );
+	/**
+	 * Sum numbers of all inputs, one chunk of positions at a time, and pass the
+	 * results to consumer
+	 */
+	private static void sumChunks(List<PosByPosNumbers> inputs, @NonNull String contigName, int length,
+			ChunkConsumer consumer) {
+		final int[] sums = new int[PosByPosNumbersIndexedFile.CHUNK_SIZE];
+		for (int blockStart = 0; blockStart < length; blockStart += PosByPosNumbersIndexedFile.CHUNK_SIZE) {
+			final int start = blockStart;
+			final int end = Math.min(length, blockStart + PosByPosNumbersIndexedFile.CHUNK_SIZE) - 1;
+			Arrays.fill(sums, 0);
+			for (PosByPosNumbers input: inputs) {
+				input.forEachChunk(contigName, start, end, (firstPosition, values, offset, n) -> {
+					for (int i = 0; i < n; i++) {
+						sums[firstPosition - start + i] += values[offset + i];
+					}
+				});
+			}
+			consumer.accept(start, sums, 0, end - start + 1);
+		}
 	}
 
-	private static void mathOp(Params argValues) throws IOException, InterruptedException {
-		Builder builder = PosByPosNumbersPB.GenomeNumbers.newBuilder();
-		builder.setGeneratingProgramVersion(GitCommitInfo.getGitCommit());
-		builder.setGeneratingProgramArgs(argValues.toString());
-		builder.setSampleName(argValues.output);
-
-		final List<GenomeNumbers> inputs = new ArrayList<>();
-		ParFor parFor = new ParFor("Parse protobuf", 0, argValues.inputs.size() - 1, null, true);
-		for (int thread = 0; thread < parFor.getNThreads(); thread++) {
-			parFor.addLoopWorker((i, j) -> {
-				GenomeNumbers gn;
-				try {
-					gn = getFromFile(argValues.inputs.get(i));
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-				inputs.add(gn);
-				return null;
-			});
+	/**
+	 * Output is written as an indexed file if its name ends with
+	 * {@link PosByPosNumbersIndexedFile#EXTENSION}, and as a protobuf otherwise
+	 */
+	private static void mathOp(Params argValues) throws IOException {
+		switch (argValues.mainParam.get(0)) {
+			case "sum":
+			break;
+			default: 
+				throw new AssertionFailedException(
+						"Unknown operation " + argValues.mainParam.get(0));
 		}
-		parFor.run(true);
 
-		Set<String> sampleNames = new HashSet<>();
-		for (GenomeNumbers g: inputs) {
-			int increment = 0;
-			while (!sampleNames.add(g.getSampleName())) {
-				g.setSampleName(g.getSampleName() + (increment++));
+		final List<PosByPosNumbers> inputs = argValues.inputs.parallelStream().map(path -> {
+			try {
+				return openInput(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-		}
-
-		Set<String> contigNames0 = inputs.get(0).getContigNumbersList().stream().map(ContigNumbers::getContigName).
-			collect(Collectors.toSet());
-		for (int i = 1; i < inputs.size(); i++) {
-			Set<String> contigNames1 = inputs.get(i).getContigNumbersList().stream().map(ContigNumbers::getContigName).
-					collect(Collectors.toSet());
-			if (!contigNames0.equals(contigNames1)) {
-				throw new IllegalArgumentException("Contig name sets not equal: " +
-						contigNames0 + " vs " + contigNames1);
+		}).collect(Collectors.toList());
+
+		try {
+			final List<@NonNull String> contigNames = inputs.get(0).getContigNames();
+			Set<String> contigNames0 = new HashSet<>(contigNames);
+			for (int i = 1; i < inputs.size(); i++) {
+				Set<String> contigNames1 = new HashSet<>(inputs.get(i).getContigNames());
+				if (!contigNames0.equals(contigNames1)) {
+					throw new IllegalArgumentException("Contig name sets not equal: " +
+							contigNames0 + " vs " + contigNames1);
+				}
 			}
-		}
-
-		for (ContigNumbers cnl: inputs.get(0).getContigNumbersList()) {
-			PosByPosNumbersPB.ContigNumbers.Builder builder2 =
-					PosByPosNumbersPB.ContigNumbers.newBuilder();
-			builder2.setContigName(cnl.getContigName());
-
-			Map<String, ContigNumbers> mapArrays = inputs.stream().flatMap(c -> 
-					c.getContigNumbersList().stream().map(cnl2 -> new Pair<>(c.getSampleName(), Objects.requireNonNull(cnl2)))).
-				filter(cn -> cn.snd.getContigName().equals(cnl.getContigName())).
-				collect(Collectors.groupingBy(p -> p.fst, singletonCollector()));
-
-			SettableInteger length = new SettableInteger(-1);
-			List<int[]> allNumbers = mapArrays.entrySet().stream().map(entry -> {
-				String sampleName = entry.getKey();
-				ContigNumbers contigNumbers = entry.getValue();
-				int [] numbers = contigNumbers.getNumbersArray();
-				if (numbers == null) {
-					throw new IllegalArgumentException("No numbers for contig " + cnl.getContigName() +
-							" in sample " + sampleName);
+			for (@NonNull String contigName: contigNames) {
+				final int length = inputs.get(0).getContigLength(contigName);
+				for (PosByPosNumbers input: inputs) {
+					if (input.getContigLength(contigName) != length) {
+						throw new IllegalArgumentException("Contig " + contigName +
+								" in sample " + input.getSampleName() + " has a different length than same contig from " +
+								" another sample: " + input.getContigLength(contigName) + " vs " + length);
+					}
 				}
-				if (length.get() > -1 && numbers.length != length.get()) {
-					throw new IllegalArgumentException("Contig " + cnl.getContigName() +
-							" in sample " + sampleName + " has a different length than same contig from " +
-							" another sample: " + numbers.length + " vs " + length.get());
+			}
+
+			final String output = argValues.output;
+			if (output.endsWith(PosByPosNumbersIndexedFile.EXTENSION) && !output.startsWith("-")) {
+				try (PosByPosNumbersIndexedFile.Writer writer = new PosByPosNumbersIndexedFile.Writer(
+						Paths.get(output), output, GitCommitInfo.getGitCommit(), argValues.toString())) {
+					for (@NonNull String contigName: contigNames) {
+						final int length = inputs.get(0).getContigLength(contigName);
+						writer.startContig(contigName, length);
+						sumChunks(inputs, contigName, length, (firstPosition, values, offset, n) -> {
+							try {
+								writer.append(values, offset, n);
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						});
+						writer.endContig();
+					}
 				}
-				length.set(numbers.length);
-				return numbers;
-			}).collect(Collectors.toList());
-
-
-			builder2.ensureNumbersIsMutable(length.get());
-			builder2.numUsedInNumbers_ = length.get();
-			final int[] resultNumbers = builder2.getNumbersArray();
-
-			SettableInteger index = new SettableInteger(0);
-			final Runnable operation;
-			switch (argValues.mainParam.get(0)) {
-				case "sum": operation = () -> {
-						int i = index.get();
-						for (int[] a: allNumbers) {
-							resultNumbers[i] += a[i];
-						}
-					};
-				break;
-				default: 
-					throw new AssertionFailedException(
-							"Unknown operation " + argValues.mainParam.get(0));
+				return;
 			}
 
-			for (int i = 0; i < length.get(); i++) {
-				index.set(i);
-				operation.run();
+			Builder builder = PosByPosNumbersPB.GenomeNumbers.newBuilder();
+			builder.setGeneratingProgramVersion(GitCommitInfo.getGitCommit());
+			builder.setGeneratingProgramArgs(argValues.toString());
+			builder.setSampleName(output);
+
+			final List<PosByPosNumbersPB.ContigNumbers.Builder> contigBuilders =
+				contigNames.parallelStream().map(contigName -> {
+					PosByPosNumbersPB.ContigNumbers.Builder builder2 =
+							PosByPosNumbersPB.ContigNumbers.newBuilder();
+					builder2.setContigName(contigName);
+					final int length = inputs.get(0).getContigLength(contigName);
+					builder2.ensureNumbersIsMutable(length);
+					builder2.numUsedInNumbers_ = length;
+					final int[] resultNumbers = builder2.getNumbersArray();
+					sumChunks(inputs, contigName, length, (firstPosition, values, offset, n) ->
+						System.arraycopy(values, offset, resultNumbers, firstPosition, n));
+					return builder2;
+				}).collect(Collectors.toList());
+			for (PosByPosNumbersPB.ContigNumbers.Builder builder2: contigBuilders) {
+				builder.addContigNumbers(builder2);
 			}
-			builder.addContigNumbers(builder2);
-		}
 
-		if (builder.getSampleName().startsWith("-")) {
-			builder.setSampleName(builder.getSampleName().substring(1));
-			System.out.write(builder.build().toByteArray());
-		} else {
-			Path path = Paths.get(builder.getSampleName() + (
-					builder.getSampleName().endsWith(".proto") ? "" : ".proto"));
-			Files.write(path, builder.build().toByteArray());
+			if (builder.getSampleName().startsWith("-")) {
+				builder.setSampleName(builder.getSampleName().substring(1));
+				System.out.write(builder.build().toByteArray());
+			} else {
+				Path path = Paths.get(builder.getSampleName() + (
+						builder.getSampleName().endsWith(".proto") ? "" : ".proto"));
+				Files.write(path, builder.build().toByteArray());
+			}
+		} finally {
+			for (PosByPosNumbers input: inputs) {
+				input.close();
+			}
 		}
 	}
 
-	private static void thresholdToBed(Params argValues) throws IOException {
-		checkArgumentLength(1, argValues.inputs, "Exactly 1 input expected for thresholdToBed");
-
-		final int threshold = argValues.threshold;
-		final boolean outputAll = argValues.outputAll;
-
-		Pair<List<String>, List<Integer>> p = 
-				Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions");	
-		final List<String> startAtContigs = p.fst;
-		final List<Integer> startAtPositions = p.snd;
-
-		Pair<List<String>, List<Integer>> p2 = Util.parseListPositions(argValues.stopAtPositions, true, "stopAtPositions");	
-		final List<String> stopAtContigs = p2.fst;
-		final List<Integer> stopAtPositions = p2.snd;
+	/**
+	 * Streams positions of a contig range, keeping track of runs above threshold
+	 */
+	private static final class ThresholdToBed implements ChunkConsumer {
+		private final Params argValues;
+		private final PrintStream writer;
+		private final ContigRange range;
+		private final int threshold;
+		private boolean started;
+		private boolean aboveThreshold;
+		private int indexLastChange, previousValue, nInBin;
+		private double averaged;
+		long nPos;
+
+		ThresholdToBed(Params argValues, PrintStream writer, ContigRange range) {
+			this.argValues = argValues;
+			this.writer = writer;
+			this.range = range;
+			this.threshold = argValues.threshold;
+		}
 
-		Util.checkPositionsOrdering(p, p2);
+		/**
+		 * Skip positions that are all below threshold while the current run is also
+		 * below threshold, which has no effect on output except in moving average or
+		 * outputAll modes
+		 */
+		boolean canSkip() {
+			return started && !aboveThreshold && !argValues.expMovAverage && !argValues.outputAll;
+		}
 
-		GenomeNumbers gn1 = getFromFile(argValues.inputs.get(0));
+		void skip(int nPositions) {
+			nPos += nPositions;
+		}
 
-		final boolean movingAverage = argValues.expMovAverage;
+		@Override
+		public void accept(int firstPosition, int @NonNull[] values, int offset, int length) {
+			final double alpha = argValues.alpha;
+			for (int k = 0; k < length; k++) {
+				final int i = firstPosition + k;
+				final int localValue = values[offset + k];
+				if (!started) {
+					started = true;
+					indexLastChange = i;
+					aboveThreshold = localValue >= threshold;
+					averaged = localValue;
+				}
+				nPos++;
+				final boolean newAboveThreshold = localValue >= threshold;
 
-		try (PrintStream writer = argValues.output.equals("-") ?
-									System.out :
-									new PrintStream(new FileOutputStream(argValues.output))) {
-			int nPos = 0;
-			for (ContigNumbers cnl: gn1.getContigNumbersList()) {
-				final int[] numbers1 = cnl.getNumbersArray();
-				if (numbers1 == null) {
-					continue;
+				if (newAboveThreshold && argValues.expMovAverage) {
+					averaged = alpha * localValue + (1 - alpha) * averaged;
 				}
-				final String contigName = cnl.getContigName();
-				final int initialI;
-				if (!startAtContigs.contains(contigName)) {
-					if (!startAtContigs.isEmpty()) {
-						continue;
+
+				if (argValues.expMovAverage) {
+					if (nInBin++ == argValues.binSize) {
+						nInBin = 0;
+						writer.append(range.contigName + '\t' +
+								i + '\t' +
+								averaged + '\n');
 					}
-					initialI = 0;
-				} else {
-					initialI = startAtPositions.get(startAtContigs.indexOf(contigName));
-				}
-				final int finalI;
-				if (!stopAtContigs.contains(contigName)) {
-					finalI = numbers1.length - 1;
-				} else {
-					finalI = stopAtPositions.get(stopAtContigs.indexOf(contigName));
-				}
-				int indexLastChange = initialI;
-				boolean aboveThreshold = numbers1[initialI] >= threshold;
-				double averaged = numbers1[initialI];
-				final double alpha = argValues.alpha;
-				int nInBin = 0;
-				for (int i = initialI; i <= finalI; i++) {
-					nPos++;
-					final int localValue = numbers1[i];
-					final boolean newAboveThreshold = localValue >= threshold;
-
-					if (newAboveThreshold && movingAverage) {
-						averaged = alpha * localValue + (1 - alpha) * averaged;
+				} else if ((aboveThreshold ^ newAboveThreshold) || i == range.to
+						|| (argValues.outputAll && i > range.from)) {
+					if (aboveThreshold) {
+						writer.append(	range.contigName + '\t' +
+								(indexLastChange + 1)  + '\t' +
+								((i - 1) + 1) + '\t' +
+								previousValue /* Need other stuff?*/ + '\n');
 					}
+					indexLastChange = i;
+				}
+				aboveThreshold = newAboveThreshold;
+				previousValue = localValue;
+			}
+		}
+	}
 
-					if (movingAverage) {
-						if (nInBin++ == argValues.binSize) {
-							nInBin = 0;
-							writer.append(contigName + '\t' +
-									i + '\t' +
-									averaged + '\n');
-						}
-					} else if ((aboveThreshold ^ newAboveThreshold) || i == finalI
-							|| (outputAll && i > initialI)) {
-						if (aboveThreshold) {
-							writer.append(	contigName + '\t' +
-									(indexLastChange + 1)  + '\t' +
-									((i - 1) + 1) + '\t' +
-									numbers1[i - 1] /* Need other stuff?*/ + '\n');
-						}
-						indexLastChange = i;
+	/**
+	 * With indexed input, chunks whose maximum (read from zoom levels) is below
+	 * threshold are skipped without being decompressed when possible
+	 * @param argValues
+	 * @throws IOException
+	 */
+	private static void thresholdToBed(Params argValues) throws IOException {
+		checkArgumentLength(1, argValues.inputs, "Exactly 1 input expected for thresholdToBed");
+
+		final List<String> startAtContigs =
+			Util.parseListPositions(argValues.startAtPositions, true, "startAtPositions").fst;
+
+		try (PosByPosNumbers numbers = openInput(argValues.inputs.get(0));
+				PrintStream writer = argValues.output.equals("-") ?
+										System.out :
+										new PrintStream(new FileOutputStream(argValues.output))) {
+			final boolean indexed = numbers instanceof PosByPosNumbersIndexedFile;
+			long nPos = 0;
+			for (ContigRange range: getContigRanges(argValues, numbers)) {
+				final ThresholdToBed state = new ThresholdToBed(argValues, writer, range);
+				int blockEnd;
+				for (int blockStart = range.from; blockStart <= range.to; blockStart = blockEnd + 1) {
+					blockEnd = Math.min(range.to, blockStart | (PosByPosNumbersIndexedFile.CHUNK_SIZE - 1));
+					if (indexed && state.canSkip() &&
+							numbers.summarize(range.contigName, blockStart, blockEnd).getMax() < argValues.threshold) {
+						state.skip(blockEnd - blockStart + 1);
+						continue;
 					}
-					aboveThreshold = newAboveThreshold;
+					numbers.forEachChunk(range.contigName, blockStart, blockEnd, state);
 				}
+				nPos += state.nPos;
 			}
 			System.err.print("Iterated over " + nPos + " positions");
 			if (startAtContigs.size() > 1) {
@@ -659,6 +673,28 @@ public class PosByPosProtoManip {
 		}	
 	}
 
+	/**
+	 * Convert between protobuf and indexed formats
+	 * @param argValues
+	 * @param toIndexed
+	 * @throws IOException
+	 */
+	private static void convert(Params argValues, boolean toIndexed) throws IOException {
+		checkArgumentLength(1, argValues.inputs, "Exactly 1 input expected for conversion");
+		try (PosByPosNumbers numbers = openInput(argValues.inputs.get(0))) {
+			if (toIndexed) {
+				PosByPosNumbersIndexedFile.write(numbers, Paths.get(argValues.output));
+			} else {
+				final byte[] bytes = PosByPosNumbersIndexedFile.toProto(numbers).toByteArray();
+				if (argValues.output.equals("-")) {
+					System.out.write(bytes);
+				} else {
+					Files.write(Paths.get(argValues.output), bytes);
+				}
+			}
+		}
+	}
+
 	private static GenomeNumbers getFromFile(String path) throws IOException {
 		final byte[] bytes;
 		if (path.equals("-")) {
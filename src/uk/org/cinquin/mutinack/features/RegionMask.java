@@ -0,0 +1,144 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Union of the intervals of one or more BED files over a range of a contig,
+ * stored as a sorted list of disjoint runs, so that positions can be tested
+ * without interval tree queries. Only positions within the range the mask was
+ * built for can be tested.
+ */
+public final class RegionMask {
+
+	private final int contigIndex;
+	private final int from, to;
+	/**
+	 * Inclusive bounds of disjoint, non-adjacent runs, sorted by position
+	 */
+	private final int @NonNull[] starts, ends;
+
+	private RegionMask(int contigIndex, int from, int to, int @NonNull[] starts, int @NonNull[] ends) {
+		this.contigIndex = contigIndex;
+		this.from = from;
+		this.to = to;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * @param testers
+	 * @param contigIndex
+	 * @param from First position covered by the mask
+	 * @param to Last position covered by the mask (inclusive)
+	 * @return null if one of the testers is not a {@link BedReader}
+	 */
+	public static @Nullable RegionMask build(@NonNull Collection<? extends GenomeFeatureTester> testers,
+			int contigIndex, int from, int to) {
+		if (from > to) {
+			throw new IllegalArgumentException(from + " > " + to);
+		}
+		final TLongArrayList runs = new TLongArrayList();
+		for (GenomeFeatureTester tester: testers) {
+			if (!(tester instanceof BedReader)) {
+				return null;
+			}
+			((BedReader) tester).forEachOverlapping(contigIndex, from, to, (runStart, runEnd, data) -> {
+				final long start = Math.max(from, runStart);
+				final long end = Math.min(to, runEnd);
+				runs.add(start << 32 | end - from);
+			});
+		}
+		runs.sort();
+
+		final int[] starts = new int[runs.size()];
+		final int[] ends = new int[runs.size()];
+		int n = 0;
+		for (int i = 0; i < runs.size(); i++) {
+			final long run = runs.getQuick(i);
+			final int start = (int) (run >>> 32);
+			final int end = (int) (run & 0xFFFF_FFFFL) + from;
+			if (n > 0 && start <= ends[n - 1] + 1) {
+				ends[n - 1] = Math.max(ends[n - 1], end);
+			} else {
+				starts[n] = start;
+				ends[n] = end;
+				n++;
+			}
+		}
+		return new RegionMask(contigIndex, from, to, Arrays.copyOf(starts, n), Arrays.copyOf(ends, n));
+	}
+
+	/**
+	 * @return Index of the run that starts at or before position, or -1
+	 */
+	private int runAtOrBefore(int position) {
+		final int index = Arrays.binarySearch(starts, position);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	private void checkCovered(int contig, int position) {
+		if (contig != contigIndex || position < from || position > to) {
+			throw new IllegalArgumentException("Position " + contig + ':' + position +
+				" outside of mask range " + contigIndex + ':' + from + '-' + to);
+		}
+	}
+
+	public boolean contains(int contig, int position) {
+		checkCovered(contig, position);
+		final int run = runAtOrBefore(position);
+		return run >= 0 && ends[run] >= position;
+	}
+
+	/**
+	 * @return Last position of the run that contains position, or position - 1 if
+	 * position is not masked; allows callers to jump over masked positions
+	 */
+	public int getRunEnd(int contig, int position) {
+		checkCovered(contig, position);
+		final int run = runAtOrBefore(position);
+		return run >= 0 && ends[run] >= position ? ends[run] : position - 1;
+	}
+
+	/**
+	 * @return True if all positions from start to end (inclusive) are masked;
+	 * false if some are not, or if some are outside of the range covered by the mask
+	 */
+	public boolean containsRange(int contig, int start, int end) {
+		if (contig != contigIndex || start < from || end > to) {
+			return false;
+		}
+		final int run = runAtOrBefore(start);
+		return run >= 0 && ends[run] >= end;
+	}
+
+	public int getNRuns() {
+		return starts.length;
+	}
+
+	@Override
+	public String toString() {
+		return "Mask of " + starts.length + " runs over " + contigIndex + ':' + from + '-' + to;
+	}
+}
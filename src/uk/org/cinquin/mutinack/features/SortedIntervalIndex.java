@@ -0,0 +1,391 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import com.jwetherell.algorithms.data_structures.IntervalData;
+
+/**
+ * Stabbing and overlap queries over a static set of intervals, stored as primitive
+ * arrays sorted by start. The arrays are augmented with the maximum end of the
+ * implicit binary tree rooted at each element (as in Heng Li's cgranges), so that
+ * queries take logarithmic time plus the number of results and do not allocate.
+ * {@link Cursor}s answer queries at increasing positions in amortized constant
+ * time. Interval ends are inclusive. Equal data associated with identical bounds
+ * are only stored once. The arrays can be backed by a memory-mapped file (see
+ * {@link FlatBedFile}), in which case data are decoded on demand. Instances are
+ * immutable and safe for concurrent use; each cursor must be confined to a single
+ * thread.
+ */
+public final class SortedIntervalIndex<T> {
+
+	/**
+	 * Subtrees with at most 2^(LINEAR_SCAN_LEVEL + 1) - 1 elements are scanned linearly
+	 */
+	private static final int LINEAR_SCAN_LEVEL = 3;
+	/**
+	 * Cursors jump with a tree query rather than scan when this many intervals start
+	 * between two consecutive positions
+	 */
+	private static final int CURSOR_MAX_SCAN = 64;
+
+	private final int n;
+	private final @NonNull IntBuffer starts, ends, maxEnds;
+	/**
+	 * Maximum end of elements 0 to i, which answers stabbing queries that do not need
+	 * the intervals themselves with a single binary search
+	 */
+	private final int @NonNull[] prefixMaxEnds;
+	private final @NonNull IntFunction<T> data;
+	private final int maxLevel;
+
+	@FunctionalInterface
+	public interface IntervalConsumer<T> {
+		void accept(int start, int end, T data);
+	}
+
+	@FunctionalInterface
+	private interface IndexVisitor {
+		/**
+		 * @return false to stop the query
+		 */
+		boolean visit(int index);
+	}
+
+	private static final class Entry<T> {
+		final int start, end;
+		final T data;
+
+		Entry(int start, int end, T data) {
+			this.start = start;
+			this.end = end;
+			this.data = data;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public SortedIntervalIndex(@NonNull Collection<IntervalData<T>> intervals) {
+		final List<Entry<T>> entries = new ArrayList<>();
+		for (IntervalData<T> interval: intervals) {
+			final int start = Math.toIntExact(interval.getStart());
+			final int end = Math.toIntExact(interval.getEnd());
+			for (T t: interval.getUnprotectedData()) {
+				entries.add(new Entry<>(start, end, t));
+			}
+		}
+		entries.sort(Comparator.<Entry<T>>comparingInt(e -> e.start).thenComparingInt(e -> e.end));
+
+		final int[] starts0 = new int[entries.size()];
+		final int[] ends0 = new int[entries.size()];
+		final Object[] data0 = new Object[entries.size()];
+		int n0 = 0;
+		int sameBoundsStart = 0;
+		for (Entry<T> e: entries) {
+			if (n0 == 0 || starts0[n0 - 1] != e.start || ends0[n0 - 1] != e.end) {
+				sameBoundsStart = n0;
+			} else if (containsEqual(data0, sameBoundsStart, n0, e.data)) {
+				continue;
+			}
+			starts0[n0] = e.start;
+			ends0[n0] = e.end;
+			data0[n0] = e.data;
+			n0++;
+		}
+		n = n0;
+		final int[] ends1 = Arrays.copyOf(ends0, n);
+		final int[] maxEnds1 = new int[n];
+		final Object[] data1 = Arrays.copyOf(data0, n);
+		computeMaxEnds(ends1, maxEnds1);
+		starts = IntBuffer.wrap(Arrays.copyOf(starts0, n));
+		ends = IntBuffer.wrap(ends1);
+		maxEnds = IntBuffer.wrap(maxEnds1);
+		data = i -> (T) data1[i];
+		maxLevel = getMaxLevel(n);
+		prefixMaxEnds = computePrefixMaxEnds(ends, n);
+	}
+
+	/**
+	 * Wrap arrays laid out as by the other constructor, with maxEnds as computed by
+	 * {@link #computeMaxEnds}, and with data retrieved by index.
+	 */
+	SortedIntervalIndex(@NonNull IntBuffer starts, @NonNull IntBuffer ends,
+			@NonNull IntBuffer maxEnds, @NonNull IntFunction<T> data) {
+		n = starts.limit();
+		if (ends.limit() != n || maxEnds.limit() != n) {
+			throw new IllegalArgumentException("Inconsistent array lengths");
+		}
+		this.starts = starts;
+		this.ends = ends;
+		this.maxEnds = maxEnds;
+		this.data = data;
+		maxLevel = getMaxLevel(n);
+		prefixMaxEnds = computePrefixMaxEnds(ends, n);
+	}
+
+	private static int @NonNull[] computePrefixMaxEnds(@NonNull IntBuffer ends, int n) {
+		final int[] result = new int[n];
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, ends.get(i));
+			result[i] = max;
+		}
+		return result;
+	}
+
+	private static int getMaxLevel(int n) {
+		return 31 - Integer.numberOfLeadingZeros(n);
+	}
+
+	private static boolean containsEqual(Object[] array, int from, int to, Object o) {
+		for (int i = from; i < to; i++) {
+			if (array[i].equals(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Element i is at level k of the implicit tree if its k lowest bits are 1 and bit
+	 * k is 0; set maxEnds of each element to the maximum end of its subtree, counting
+	 * missing nodes at the right edge of the tree.
+	 */
+	private static void computeMaxEnds(int @NonNull[] ends, int @NonNull[] maxEnds) {
+		final int n = ends.length;
+		if (n == 0) {
+			return;
+		}
+		int lastIndex = 0, last = 0;
+		for (int i = 0; i < n; i += 2) {
+			lastIndex = i;
+			last = maxEnds[i] = ends[i];
+		}
+		for (int k = 1; (1L << k) <= n; k++) {
+			final int x = 1 << (k - 1), i0 = (x << 1) - 1, step = x << 2;
+			for (int i = i0; i < n; i += step) {
+				final int endLeft = maxEnds[i - x];
+				final int endRight = i + x < n ? maxEnds[i + x] : last;
+				maxEnds[i] = Math.max(ends[i], Math.max(endLeft, endRight));
+			}
+			lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+			if (lastIndex < n && maxEnds[lastIndex] > last) {
+				last = maxEnds[lastIndex];
+			}
+		}
+	}
+
+	/**
+	 * Visit, in order of start, elements that overlap [from, to].
+	 * @return false if visitor stopped the query
+	 */
+	private boolean visitOverlapping(int from, int to, IndexVisitor visitor) {
+		return n == 0 || visit(maxLevel, (1 << maxLevel) - 1, from, to, visitor);
+	}
+
+	private boolean visit(int k, int x, int from, int to, IndexVisitor visitor) {
+		if (k <= LINEAR_SCAN_LEVEL) {
+			final int i0 = x >> k << k;
+			final int i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+			for (int i = i0; i < i1 && starts.get(i) <= to; i++) {
+				if (ends.get(i) >= from && !visitor.visit(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		final int half = 1 << (k - 1);
+		final int left = x - half;
+		if ((left >= n || maxEnds.get(left) >= from) && !visit(k - 1, left, from, to, visitor)) {
+			return false;
+		}
+		if (x < n && starts.get(x) <= to) {
+			if (ends.get(x) >= from && !visitor.visit(x)) {
+				return false;
+			}
+			return visit(k - 1, x + half, from, to, visitor);
+		}
+		return true;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public boolean contains(int position) {
+		//Intervals that start at or before position are those before upperBound
+		final int last = upperBound(position) - 1;
+		return last >= 0 && prefixMaxEnds[last] >= position;
+	}
+
+	/**
+	 * @return Data of all intervals that contain position, in order of start
+	 */
+	public @NonNull Collection<T> query(int position) {
+		if (!contains(position)) {
+			return Collections.emptyList();
+		}
+		final List<T> result = new ArrayList<>(2);
+		visitOverlapping(position, position, i -> {
+			result.add(data.apply(i));
+			return true;
+		});
+		return result;
+	}
+
+	/**
+	 * Call predicate on data of intervals that contain position, in order of start,
+	 * until predicate returns false
+	 */
+	public void forEach(int position, Predicate<T> keepGoingPredicate) {
+		visitOverlapping(position, position, i -> keepGoingPredicate.test(data.apply(i)));
+	}
+
+	/**
+	 * Call consumer on intervals that overlap [start, end] (inclusive), in order of start
+	 */
+	public void forEachOverlapping(int start, int end, IntervalConsumer<T> consumer) {
+		visitOverlapping(start, end, i -> {
+			consumer.accept(starts.get(i), ends.get(i), data.apply(i));
+			return true;
+		});
+	}
+
+	public void forEach(Consumer<T> consumer) {
+		for (int i = 0; i < n; i++) {
+			consumer.accept(data.apply(i));
+		}
+	}
+
+	/**
+	 * Call consumer on all intervals, in storage order
+	 */
+	void forEachIndexed(IndexedIntervalConsumer<T> consumer) {
+		for (int i = 0; i < n; i++) {
+			consumer.accept(i, starts.get(i), ends.get(i), maxEnds.get(i), data.apply(i));
+		}
+	}
+
+	@FunctionalInterface
+	interface IndexedIntervalConsumer<T> {
+		void accept(int index, int start, int end, int maxEnd, T data);
+	}
+
+	/**
+	 * @return Index of first interval that starts after position
+	 */
+	private int upperBound(int position) {
+		int low = 0, high = n;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (starts.get(mid) <= position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public @NonNull Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Answers queries at increasing positions by keeping track of the intervals that
+	 * contain the current position; queries at decreasing positions are also
+	 * answered correctly, but not faster than direct queries. Not thread-safe.
+	 */
+	public final class Cursor implements IndexVisitor {
+		private boolean positioned = false;
+		private int position;
+		/**
+		 * Index of first interval that starts after position
+		 */
+		private int next;
+		private int[] active = new int[16];
+		private int nActive;
+
+		private Cursor() {
+		}
+
+		@Override
+		public boolean visit(int index) {
+			if (nActive == active.length) {
+				active = Arrays.copyOf(active, 2 * nActive);
+			}
+			active[nActive++] = index;
+			return true;
+		}
+
+		private void moveTo(int newPosition) {
+			if (positioned && newPosition == position) {
+				return;
+			}
+			if (!positioned || newPosition < position ||
+					(next + CURSOR_MAX_SCAN < n && starts.get(next + CURSOR_MAX_SCAN) <= newPosition)) {
+				nActive = 0;
+				next = upperBound(newPosition);
+				visitOverlapping(newPosition, newPosition, this);
+			} else {
+				int kept = 0;
+				for (int i = 0; i < nActive; i++) {
+					if (ends.get(active[i]) >= newPosition) {
+						active[kept++] = active[i];
+					}
+				}
+				nActive = kept;
+				for (; next < n && starts.get(next) <= newPosition; next++) {
+					if (ends.get(next) >= newPosition) {
+						visit(next);
+					}
+				}
+			}
+			positioned = true;
+			position = newPosition;
+		}
+
+		public boolean contains(int newPosition) {
+			moveTo(newPosition);
+			return nActive > 0;
+		}
+
+		/**
+		 * Call predicate on data of intervals that contain position, in no particular
+		 * order, until predicate returns false
+		 */
+		public void forEach(int newPosition, Predicate<T> keepGoingPredicate) {
+			moveTo(newPosition);
+			for (int i = 0; i < nActive; i++) {
+				if (!keepGoingPredicate.test(data.apply(active[i]))) {
+					return;
+				}
+			}
+		}
+	}
+}
@@ -17,15 +17,24 @@
 
 package uk.org.cinquin.mutinack.features.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.junit.Ignore;
@@ -33,6 +42,9 @@ import org.junit.Test;
 
 import uk.org.cinquin.mutinack.SequenceLocation;
 import uk.org.cinquin.mutinack.features.BedReader;
+import uk.org.cinquin.mutinack.features.GenomeInterval;
+import uk.org.cinquin.mutinack.features.RegionMask;
+import uk.org.cinquin.mutinack.features.SortedIntervalIndex;
 import uk.org.cinquin.mutinack.misc_util.exceptions.ParseRTException;
 
 public class BedReaderTest {
@@ -70,6 +82,98 @@ public class BedReaderTest {
 		assertFalse(bc.test(new SequenceLocation("", 0, contigNames1, 0)));
 	}
 
+	@Test
+	public void testRegionMask() {
+		for (int contig: new int[] {0, 1, 6}) {
+			final int from = 4_600_000, to = 7_900_000;
+			final RegionMask mask = RegionMask.build(Collections.singletonList(bc), contig, from, to);
+			Objects.requireNonNull(mask);
+			for (int position = from; position <= to; position++) {
+				final boolean expected = bc.test(new SequenceLocation("", contig, contigNames1, position));
+				assertEquals(expected, mask.contains(contig, position));
+				if (expected) {
+					final int runEnd = mask.getRunEnd(contig, position);
+					assertTrue(mask.containsRange(contig, position, runEnd));
+					assertFalse(runEnd < to && bc.test(new SequenceLocation("", contig, contigNames1, runEnd + 1)));
+				}
+			}
+		}
+		final RegionMask mask = Objects.requireNonNull(
+			RegionMask.build(Collections.singletonList(bc), 0, 6_029_000, 6_030_000));
+		assertTrue(mask.containsRange(0, 6_029_000, 6_030_000));
+		assertFalse(mask.containsRange(0, 6_028_999, 6_030_000));
+		assertEquals(1, mask.getNRuns());
+	}
+
+	@Test
+	public void testCursor() {
+		for (int contig: new int[] {0, 1, 6}) {
+			final SortedIntervalIndex<@NonNull GenomeInterval>.Cursor cursor = bc.cursor(contig);
+			for (int position = 4_600_000; position <= 7_900_000; position++) {
+				final SequenceLocation location = new SequenceLocation("", contig, contigNames1, position);
+				assertEquals(bc.test(location), cursor.contains(position));
+				final List<GenomeInterval> fromCursor = new ArrayList<>();
+				cursor.forEach(position, fromCursor::add);
+				final List<GenomeInterval> fromReader = new ArrayList<>();
+				bc.forEach(location, fromReader::add);
+				assertEquals(new HashSet<>(fromReader), new HashSet<>(fromCursor));
+			}
+			//Move backwards
+			assertEquals(bc.test(new SequenceLocation("", contig, contigNames1, 6_030_000)),
+				cursor.contains(6_030_000));
+		}
+	}
+
+	@Test
+	public void testFlatCache() throws IOException {
+		final File bedFile = File.createTempFile("bedReaderTest", ".bed");
+		final File cacheFile = new File(bedFile.getPath() + ".flatCache");
+		try {
+			Files.write(bedFile.toPath(), bed.getBytes(StandardCharsets.UTF_8));
+			assertTrue(bedFile.setLastModified(System.currentTimeMillis() - 10_000));
+			assertNull(BedReader.mapCachedBedFileReader(bedFile.getPath(), ".flatCache", contigNames1,
+				"test reader", ""));
+			BedReader.getCachedBedFileReader(bedFile.getPath(), ".flatCache", contigNames1, "test reader", "",
+				null);
+			assertTrue(cacheFile.exists());
+			final BedReader mapped = Objects.requireNonNull(BedReader.mapCachedBedFileReader(bedFile.getPath(),
+				".flatCache", contigNames1, "test reader", ""));
+			assertNull(BedReader.mapCachedBedFileReader(bedFile.getPath(), ".flatCache",
+				contigNames1.subList(1, contigNames1.size()), "test reader", ""));
+
+			for (int contig: new int[] {0, 1, 6}) {
+				for (int position = 4_600_000; position <= 7_900_000; position += 7) {
+					final SequenceLocation location = new SequenceLocation("", contig, contigNames1, position);
+					assertEquals(bc.test(location), mapped.test(location));
+					assertEquals(bc.getNegativeStrand(location), mapped.getNegativeStrand(location));
+					final Collection<GenomeInterval> expected = bc.apply(location);
+					final Collection<GenomeInterval> actual = mapped.apply(location);
+					assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+					for (GenomeInterval interval: actual) {
+						final GenomeInterval original = expected.stream().filter(interval::equals).findAny().get();
+						assertEquals(original.getLength(), interval.getLength(), 0);
+						assertEquals(original.getScore(), interval.getScore(), 0);
+						assertEquals(original.contigIndex, interval.contigIndex);
+						assertEquals(original.geneName, interval.geneName);
+						assertEquals(original.getAnnotations(), interval.getAnnotations());
+					}
+				}
+			}
+
+			assertTrue(bedFile.setLastModified(System.currentTimeMillis() + 10_000));
+			assertNull(BedReader.mapCachedBedFileReader(bedFile.getPath(), ".flatCache", contigNames1,
+				"test reader", ""));
+		} finally {
+			Files.deleteIfExists(bedFile.toPath());
+			Files.deleteIfExists(cacheFile.toPath());
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRegionMaskOutOfRange() {
+		Objects.requireNonNull(RegionMask.build(Collections.singletonList(bc), 0, 10, 20)).contains(0, 21);
+	}
+
 	@Test(expected=IndexOutOfBoundsException.class)
 	public void testOutOfBounds() {
 		assertFalse(bc.test(new SequenceLocation("", 7, "", 7)));
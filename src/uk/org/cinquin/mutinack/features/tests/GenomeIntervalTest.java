@@ -17,6 +17,7 @@
 
 package uk.org.cinquin.mutinack.features.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.security.SecureRandom;
@@ -26,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -38,6 +40,7 @@ import com.jwetherell.algorithms.data_structures.IntervalTree;
 
 import gnu.trove.set.hash.THashSet;
 import uk.org.cinquin.mutinack.features.GenomeInterval;
+import uk.org.cinquin.mutinack.features.SortedIntervalIndex;
 import uk.org.cinquin.mutinack.misc_util.Util;
 import uk.org.cinquin.mutinack.misc_util.collections.TroveSetCollector;
 
@@ -96,6 +99,82 @@ public class GenomeIntervalTest {
 		}
 	}
 
+	@Test
+	public void testSortedIndexSameAsTree() {
+		final Random random = new Random(0);
+		for (int nIntervals: new int[] {0, 1, 2, 7, 8, 9, 100, 1_000, 5_000}) {
+			final List<IntervalData<GenomeInterval>> intervalDataList = new ArrayList<>();
+			for (int i = 0; i < nIntervals; i++) {
+				final int start = random.nextInt(1_000);
+				//Mostly short intervals, with a few that span many others
+				final int end = start + (random.nextInt(20) == 0 ? random.nextInt(500) : random.nextInt(20));
+				final GenomeInterval interval = new GenomeInterval("interval_" + (i % 50), -1, "", "",
+					start, end, null, Util.emptyOptional(), 0, null, null);
+				intervalDataList.add(new IntervalData<>(interval.getStart(), interval.getEnd(), interval));
+			}
+			final IntervalTree<GenomeInterval> tree = new IntervalTree<>(deepClone(intervalDataList));
+			final SortedIntervalIndex<GenomeInterval> index = new SortedIntervalIndex<>(intervalDataList);
+			final SortedIntervalIndex<GenomeInterval>.Cursor cursor = index.cursor();
+			final SortedIntervalIndex<GenomeInterval>.Cursor randomCursor = index.cursor();
+
+			for (int position = -10; position < 1_600; position += 1 + random.nextInt(3)) {
+				final Set<GenomeInterval> expected = tree.query(position).getData();
+				assertEquals(expected.size(), index.query(position).size());
+				assertEquals(expected, new HashSet<>(index.query(position)));
+				assertEquals(!expected.isEmpty(), index.contains(position));
+				assertEquals(!expected.isEmpty(), cursor.contains(position));
+				final Set<GenomeInterval> fromCursor = new HashSet<>();
+				cursor.forEach(position, fromCursor::add);
+				assertEquals(expected, fromCursor);
+
+				final int randomPosition = random.nextInt(1_600) - 10;
+				assertEquals(tree.contains(randomPosition), randomCursor.contains(randomPosition));
+
+				final int start = position, end = position + random.nextInt(100);
+				final Set<GenomeInterval> expectedOverlapping = intervalDataList.stream().filter(id ->
+					id.getStart() <= end && id.getEnd() >= start).
+					flatMap(id -> id.getData().stream()).collect(Collectors.toSet());
+				final Set<GenomeInterval> overlapping = new HashSet<>();
+				final int[] previousStart = {Integer.MIN_VALUE};
+				index.forEachOverlapping(start, end, (intervalStart, intervalEnd, gi) -> {
+					assertTrue(intervalStart >= previousStart[0]);
+					previousStart[0] = intervalStart;
+					assertEquals(gi.getStart(), intervalStart);
+					assertEquals(gi.getEnd(), intervalEnd);
+					assertTrue(overlapping.add(gi));
+				});
+				assertEquals(expectedOverlapping, overlapping);
+			}
+		}
+	}
+
+	/**
+	 * Stabbing queries at every position of a contig, both direct and through a cursor,
+	 * should agree with the interval tree; see BenchmarkIntervalLookup for timings
+	 */
+	@Test
+	public void testSortedIndexContainsEveryPosition() {
+		final Random random = new Random(0);
+		final List<IntervalData<GenomeInterval>> intervalDataList = new ArrayList<>();
+		final int contigLength = 200_000;
+		for (int i = 0; i < 2_000; i++) {
+			final int start = random.nextInt(contigLength);
+			//A few long intervals that span many short ones
+			final int length = i % 100 == 0 ? random.nextInt(20_000) : random.nextInt(200);
+			final GenomeInterval interval = new GenomeInterval("interval_" + i, -1, "", "",
+				start, start + length, null, Util.emptyOptional(), 0, null, null);
+			intervalDataList.add(new IntervalData<>(interval.getStart(), interval.getEnd(), interval));
+		}
+		final IntervalTree<GenomeInterval> tree = new IntervalTree<>(intervalDataList);
+		final SortedIntervalIndex<GenomeInterval> index = new SortedIntervalIndex<>(intervalDataList);
+		final SortedIntervalIndex<GenomeInterval>.Cursor cursor = index.cursor();
+		for (int position = -10; position < contigLength + 25_000; position++) {
+			final boolean expected = tree.contains(position);
+			assertEquals(expected, index.contains(position));
+			assertEquals(expected, cursor.contains(position));
+		}
+	}
+
 	@Test(expected = UnsupportedOperationException.class)
 	public void testUnmodifiableQueryResultSet() {
 		new IntervalTree<>(getTestIntervalDataList()).
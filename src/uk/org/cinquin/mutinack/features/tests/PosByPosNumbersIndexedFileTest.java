@@ -0,0 +1,193 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.features.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.junit.Test;
+
+import uk.org.cinquin.mutinack.features.PosByPosNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbers.Summary;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersIndexedFile;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+
+public class PosByPosNumbersIndexedFileTest {
+
+	private static final List<@NonNull String> contigNames = Arrays.asList(
+		"chrI", "chrII", "chrIII", "chrIV", "chrV", "chrX");
+	private static final int[] contigLengths = {0, 1, PosByPosNumbersIndexedFile.CHUNK_SIZE, 200_017,
+		1_300_001, 4_500_000};
+
+	/**
+	 * Runs of random lengths and values, as for coverage
+	 */
+	private static @NonNull GenomeNumbers randomNumbers(Random random) {
+		final GenomeNumbers.Builder builder = GenomeNumbers.newBuilder();
+		builder.setSampleName("sample");
+		builder.setGeneratingProgramVersion("version");
+		builder.setGeneratingProgramArgs("args");
+		for (int contig = 0; contig < contigNames.size(); contig++) {
+			final ContigNumbers.Builder contigBuilder = ContigNumbers.newBuilder();
+			contigBuilder.setContigName(contigNames.get(contig));
+			final int length = contigLengths[contig];
+			contigBuilder.ensureNumbersIsMutable(length);
+			contigBuilder.numUsedInNumbers_ = length;
+			final int[] numbers = contigBuilder.getNumbersArray();
+			for (int i = 0; i < length;) {
+				final int runLength = 1 + random.nextInt(random.nextBoolean() ? 20 : 5_000);
+				final int value = random.nextInt(10) == 0 ? 0 : random.nextInt(200) - 10;
+				Arrays.fill(numbers, i, Math.min(length, i + runLength), value);
+				i += runLength;
+			}
+			builder.addContigNumbers(contigBuilder);
+		}
+		return builder.build();
+	}
+
+	private static int[] read(PosByPosNumbers numbers, String contigName, int from, int to) {
+		final int[] result = new int[to - from + 1];
+		final int[] nextPosition = {from};
+		numbers.forEachChunk(contigName, from, to, (firstPosition, values, offset, length) -> {
+			assertEquals(nextPosition[0], firstPosition);
+			assertTrue(length > 0);
+			System.arraycopy(values, offset, result, firstPosition - from, length);
+			nextPosition[0] += length;
+		});
+		assertEquals(to + 1, nextPosition[0]);
+		return result;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final Random random = new Random(0);
+		final GenomeNumbers original = randomNumbers(random);
+		final Path path = Files.createTempFile("posByPos", PosByPosNumbersIndexedFile.EXTENSION);
+		try {
+			PosByPosNumbersIndexedFile.fromProto(original, path);
+			assertTrue(PosByPosNumbersIndexedFile.isIndexedFile(path));
+			try (PosByPosNumbersIndexedFile indexed = PosByPosNumbersIndexedFile.open(path)) {
+				assertEquals(contigNames, indexed.getContigNames());
+				assertEquals("sample", indexed.getSampleName());
+				assertEquals("version", indexed.getGeneratingProgramVersion());
+				assertEquals("args", indexed.getGeneratingProgramArgs());
+
+				for (ContigNumbers contigNumbers: original.getContigNumbersList()) {
+					final String contigName = contigNumbers.getContigName();
+					final int length = contigNumbers.getNumbersCount();
+					assertEquals(length, indexed.getContigLength(contigName));
+					if (length == 0) {
+						continue;
+					}
+					final int[] expected = contigNumbers.getNumbersArray();
+					assertArrayEquals(expected, read(indexed, contigName, 0, length - 1));
+					for (int repeat = 0; repeat < 50; repeat++) {
+						final int from = random.nextInt(length);
+						final int to = repeat % 5 == 0 ? length - 1 :
+							from + random.nextInt(Math.min(length - from, 1 << (2 + random.nextInt(22))));
+						assertArrayEquals(Arrays.copyOfRange(expected, from, to + 1),
+							read(indexed, contigName, from, to));
+
+						final Summary summary = indexed.summarize(contigName, from, to);
+						long sum = 0;
+						int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+						for (int i = from; i <= to; i++) {
+							sum += expected[i];
+							min = Math.min(min, expected[i]);
+							max = Math.max(max, expected[i]);
+						}
+						assertEquals(to - from + 1, summary.getN());
+						assertEquals(sum, summary.getSum());
+						assertEquals(min, summary.getMin());
+						assertEquals(max, summary.getMax());
+					}
+				}
+
+				final GenomeNumbers converted = PosByPosNumbersIndexedFile.toProto(indexed);
+				assertEquals(original.getSampleName(), converted.getSampleName());
+				for (int i = 0; i < original.getContigNumbersCount(); i++) {
+					assertEquals(original.getContigNumbers(i).getContigName(),
+						converted.getContigNumbers(i).getContigName());
+					assertEquals(original.getContigNumbers(i).getNumbersCount(),
+						converted.getContigNumbers(i).getNumbersCount());
+					if (original.getContigNumbers(i).getNumbersCount() > 0) {
+						assertArrayEquals(original.getContigNumbers(i).getNumbersArray(),
+							converted.getContigNumbers(i).getNumbersArray());
+					}
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testWriterChecks() throws IOException {
+		final Path path = Files.createTempFile("posByPos", PosByPosNumbersIndexedFile.EXTENSION);
+		try {
+			assertFalse(PosByPosNumbersIndexedFile.isIndexedFile(path));
+			try (PosByPosNumbersIndexedFile.Writer writer =
+					new PosByPosNumbersIndexedFile.Writer(path, "", "", "")) {
+				writer.startContig("chrI", 3);
+				try {
+					writer.append(new int[4], 0, 4);
+					throw new AssertionError();
+				} catch (IllegalArgumentException e) {
+					//Expected
+				}
+				writer.append(new int[] {1, 2}, 0, 2);
+				try {
+					writer.endContig();
+					throw new AssertionError();
+				} catch (IllegalStateException e) {
+					//Expected
+				}
+				writer.append(new int[] {3}, 0, 1);
+				writer.endContig();
+				try {
+					writer.startContig("chrI", 1);
+					throw new AssertionError();
+				} catch (IllegalArgumentException e) {
+					//Expected
+				}
+			}
+			try (PosByPosNumbersIndexedFile indexed = PosByPosNumbersIndexedFile.open(path)) {
+				assertArrayEquals(new int[] {1, 2, 3}, read(indexed, "chrI", 0, 2));
+				assertEquals(6, indexed.summarize("chrI", 0, 2).getSum());
+				try {
+					indexed.forEachChunk("chrI", 1, 3, (firstPosition, values, offset, length) -> {});
+					throw new AssertionError();
+				} catch (IllegalArgumentException e) {
+					//Expected
+				}
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
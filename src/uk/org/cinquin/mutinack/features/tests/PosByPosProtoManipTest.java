@@ -0,0 +1,295 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.features.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import uk.org.cinquin.mutinack.features.PosByPosNumbersIndexedFile;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosProtoManip;
+
+/**
+ * Runs each command on small inputs, both as protobuf and indexed files, and
+ * compares the output to that recorded in {@link #EXPECTED_OUTPUT_DIR}, which was
+ * produced by the implementation that predates indexed files (that implementation
+ * read whole contigs into arrays and queried BED files one position at a time).
+ */
+@RunWith(Parameterized.class)
+public class PosByPosProtoManipTest {
+
+	static final String EXPECTED_OUTPUT_DIR = "functional_tests/pos_by_pos_proto_manip/";
+
+	private static final String[] CONTIG_NAMES = {"chrII", "chrI", "chrM"};
+	//chrII spans several chunks of indexed files
+	private static final int[] CONTIG_LENGTHS = {150_000, 1_000, 3};
+
+	private static final List<String> BED = Arrays.asList(
+		"chrII\t100\t5000",
+		"chrII\t4000\t9000",
+		"chrII\t64000\t70000",
+		"chrII\t140000\t150000",
+		"chrI\t10\t20",
+		"chrI\t500\t501");
+
+	private static final String
+		RANGE_START = "chrII:60,000",
+		RANGE_STOP = "chrII:140,000";
+
+	private static Path dir;
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> cases() {
+		final List<Object[]> result = new ArrayList<>();
+		result.add(new Object[] {"hist", new String[]
+			{"hist", "-input", "a"}, false});
+		result.add(new Object[] {"hist_bed", new String[]
+			{"hist", "-input", "a", "-domainBedFile", "bed"}, false});
+		result.add(new Object[] {"hist_bed_invert", new String[]
+			{"hist", "-input", "a", "-domainBedFile", "bed", "-invertInputs"}, false});
+		result.add(new Object[] {"hist_range", new String[]
+			{"hist", "-input", "a", "-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP}, false});
+		result.add(new Object[] {"hist_range_bed", new String[]
+			{"hist", "-input", "a", "-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP,
+				"-domainBedFile", "bed"}, false});
+		result.add(new Object[] {"hist_range_bed_invert", new String[]
+			{"hist", "-input", "a", "-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP,
+				"-domainBedFile", "bed", "-invertInputs"}, false});
+		result.add(new Object[] {"thresholdToBed", new String[]
+			{"thresholdToBed", "-input", "a"}, false});
+		result.add(new Object[] {"thresholdToBed_invert", new String[]
+			{"thresholdToBed", "-input", "a", "-invertInputs"}, false});
+		result.add(new Object[] {"thresholdToBed_range", new String[]
+			{"thresholdToBed", "-input", "a", "-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP,
+				"-startAtPosition", "chrI:100", "-stopAtPosition", "chrI:900"}, false});
+		result.add(new Object[] {"thresholdToBed_outputAll", new String[]
+			{"thresholdToBed", "-input", "a", "-startAtPosition", "chrI:100", "-stopAtPosition", "chrI:900",
+				"-outputAll"}, false});
+		result.add(new Object[] {"thresholdToBed_expMovAverage", new String[]
+			{"thresholdToBed", "-input", "a", "-expMovAverage", "-binSize", "1000", "-alpha", "0.1"}, false});
+		result.add(new Object[] {"selectBedIntervals", new String[]
+			{"selectBedIntervals", "-input", "a", "-domainBedFile", "bed"}, false});
+		result.add(new Object[] {"selectBedIntervals_invert", new String[]
+			{"selectBedIntervals", "-input", "a", "-domainBedFile", "bed", "-invertInputs"}, true});
+		result.add(new Object[] {"selectBedIntervals_range", new String[]
+			{"selectBedIntervals", "-input", "a", "-domainBedFile", "bed",
+				"-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP}, false});
+		result.add(new Object[] {"selectBedIntervals_range_invert", new String[]
+			{"selectBedIntervals", "-input", "a", "-domainBedFile", "bed", "-invertInputs",
+				"-startAtPosition", RANGE_START, "-stopAtPosition", RANGE_STOP}, true});
+		result.add(new Object[] {"sum", new String[]
+			{"sum", "-input", "a", "b"}, false});
+		return result;
+	}
+
+	@Parameter(0)
+	public String name;
+
+	@Parameter(1)
+	public String[] args;
+
+	/**
+	 * True for commands that fail with an exception, as they did before
+	 * indexed files were introduced (BedComplement does not support retrieval
+	 * of intervals)
+	 */
+	@Parameter(2)
+	public boolean unsupported;
+
+	/**
+	 * Runs of random lengths and values, with many zeros
+	 */
+	static GenomeNumbers randomNumbers(Random random, String sampleName) {
+		final GenomeNumbers.Builder builder = GenomeNumbers.newBuilder();
+		builder.setSampleName(sampleName);
+		builder.setGeneratingProgramVersion("version");
+		builder.setGeneratingProgramArgs("args");
+		for (int contig = 0; contig < CONTIG_NAMES.length; contig++) {
+			final ContigNumbers.Builder contigBuilder = ContigNumbers.newBuilder();
+			contigBuilder.setContigName(CONTIG_NAMES[contig]);
+			final int length = CONTIG_LENGTHS[contig];
+			contigBuilder.ensureNumbersIsMutable(length);
+			contigBuilder.numUsedInNumbers_ = length;
+			final int[] numbers = contigBuilder.getNumbersArray();
+			for (int i = 0; i < length;) {
+				final int runLength = 1 + random.nextInt(random.nextBoolean() ? 20 : 3_000);
+				final int value = random.nextInt(3) == 0 ? 0 : random.nextInt(40);
+				Arrays.fill(numbers, i, Math.min(length, i + runLength), value);
+				i += runLength;
+			}
+			builder.addContigNumbers(contigBuilder);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Writes protobuf inputs a.proto and b.proto, and BED file domains.bed, to outputDir
+	 */
+	static void writeInputs(Path outputDir) throws IOException {
+		final Random random = new Random(0);
+		Files.write(outputDir.resolve("a.proto"), randomNumbers(random, "a").toByteArray());
+		Files.write(outputDir.resolve("b.proto"), randomNumbers(random, "b").toByteArray());
+		Files.write(outputDir.resolve("domains.bed"), BED);
+	}
+
+	/**
+	 * One line per contig with its name, length, sum of its numbers, and hash code of
+	 * its numbers
+	 */
+	static String summarize(GenomeNumbers numbers) {
+		final StringBuilder result = new StringBuilder();
+		for (ContigNumbers contigNumbers: numbers.getContigNumbersList()) {
+			final int[] values = contigNumbers.getNumbersCount() == 0 ? new int[0] :
+				Arrays.copyOf(contigNumbers.getNumbersArray(), contigNumbers.getNumbersCount());
+			result.append(contigNumbers.getContigName()).append('\t').
+				append(values.length).append('\t').
+				append(Arrays.stream(values).asLongStream().sum()).append('\t').
+				append(Arrays.hashCode(values)).append('\n');
+		}
+		return result.toString();
+	}
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		dir = Files.createTempDirectory("pos_by_pos_proto_manip_test_");
+		writeInputs(dir);
+		for (String input: new String[] {"a", "b"}) {
+			PosByPosProtoManip.execute("toIndexed", "-threshold", "1",
+				"-input", dir.resolve(input + ".proto").toString(),
+				"-output", dir.resolve(input + PosByPosNumbersIndexedFile.EXTENSION).toString());
+		}
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		for (File f: dir.toFile().listFiles()) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+	/**
+	 * @param inputExtension Extension of input files
+	 * @param outputName Name of the output file, for commands that write to a file
+	 * @return Output of the command, as recorded in expected output files
+	 */
+	private String run(String inputExtension, String outputName) throws IOException {
+		final List<String> fullArgs = new ArrayList<>();
+		boolean inputs = false;
+		for (String arg: args) {
+			if (arg.startsWith("-")) {
+				inputs = "-input".equals(arg);
+				fullArgs.add(arg);
+			} else if (inputs) {
+				fullArgs.add(dir.resolve(arg + inputExtension).toString());
+			} else if ("bed".equals(arg)) {
+				fullArgs.add(dir.resolve("domains.bed").toString());
+			} else {
+				fullArgs.add(arg);
+			}
+		}
+		fullArgs.add("-threshold");
+		fullArgs.add("10");
+		fullArgs.add("-output");
+		final Path output = dir.resolve(outputName);
+		switch (args[0]) {
+			case "selectBedIntervals":
+				fullArgs.add("-");
+				final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+				final PrintStream savedOut = System.out;
+				System.setOut(new PrintStream(stdout, true, "UTF-8"));
+				try {
+					PosByPosProtoManip.execute(fullArgs.toArray(new String[0]));
+				} finally {
+					System.setOut(savedOut);
+				}
+				return new String(stdout.toByteArray(), StandardCharsets.UTF_8);
+			case "sum":
+				fullArgs.add(output.toString());
+				PosByPosProtoManip.execute(fullArgs.toArray(new String[0]));
+				if (outputName.endsWith(PosByPosNumbersIndexedFile.EXTENSION)) {
+					try (PosByPosNumbersIndexedFile indexed = PosByPosNumbersIndexedFile.open(output)) {
+						return summarize(PosByPosNumbersIndexedFile.toProto(indexed));
+					}
+				}
+				return summarize(GenomeNumbers.parseFrom(Files.readAllBytes(
+					dir.resolve(outputName + ".proto"))));
+			default:
+				fullArgs.add(output.toString());
+				PosByPosProtoManip.execute(fullArgs.toArray(new String[0]));
+				return new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+		}
+	}
+
+	private String getExpectedOutput() throws IOException {
+		return new String(Files.readAllBytes(Paths.get(EXPECTED_OUTPUT_DIR + name + ".txt")),
+			StandardCharsets.UTF_8);
+	}
+
+	private void check(String inputExtension, String outputName) throws IOException {
+		if (unsupported) {
+			try {
+				run(inputExtension, outputName);
+				throw new AssertionError();
+			} catch (RuntimeException e) {
+				//Expected
+			}
+			return;
+		}
+		assertEquals(getExpectedOutput(), run(inputExtension, outputName));
+	}
+
+	@Test
+	public void testProtoInput() throws IOException {
+		check(".proto", name + "_proto_output");
+	}
+
+	@Test
+	public void testIndexedInput() throws IOException {
+		check(PosByPosNumbersIndexedFile.EXTENSION, name + "_indexed_output");
+	}
+
+	@Test
+	public void testIndexedOutput() throws IOException {
+		Assume.assumeTrue("sum".equals(args[0]));
+		check(PosByPosNumbersIndexedFile.EXTENSION, name + "_output" + PosByPosNumbersIndexedFile.EXTENSION);
+	}
+}
@@ -1,11 +1,23 @@
 package uk.org.cinquin.mutinack.misc_util;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.eclipse.jdt.annotation.NonNull;
 
 import contrib.net.sf.samtools.SAMFileReader;
 import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.net.sf.samtools.util.BlockCompressedStreamConstants;
 
 /**
  * Created by olivier on 12/29/16.
@@ -23,4 +35,185 @@ public class BAMUtil {
 		}
 		return String.valueOf(hash);
 	}
+
+	private static final Map<String, String> blockHashes = new ConcurrentHashMap<>();
+
+	private static final int MIN_RANGE_SIZE = 16 * 1024 * 1024;
+	private static final long HASH_MULTIPLIER = 0x100000001b3L;
+
+	/**
+	 * Fingerprint of a BGZF file computed from the CRC32, uncompressed size and
+	 * compressed size of each of its blocks, as found in block headers and trailers,
+	 * without decompressing anything. Different ranges of the file are processed in
+	 * parallel. Results are cached in memory by path, modification time, and length,
+	 * and on disk next to the file.
+	 * @param inputBam
+	 * @return
+	 */
+	public static @NonNull String getBlockHash(@NonNull File inputBam) {
+		final String key;
+		try {
+			key = inputBam.getCanonicalPath() + ':' + inputBam.lastModified() + ':' + inputBam.length();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return blockHashes.computeIfAbsent(key, k ->
+			FileCache.getCached0(inputBam.getPath(), ".bgzfHash",
+				path -> computeBlockHash(new File(path),
+					Runtime.getRuntime().availableProcessors() * 4, MIN_RANGE_SIZE), null));
+	}
+
+	static @NonNull String computeBlockHash(@NonNull File file, int maxRanges, long minRangeSize) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final int nRanges = (int) Math.max(1, Math.min(maxRanges, size / minRangeSize));
+			final List<BlockRange> ranges = IntStream.range(0, nRanges).parallel().mapToObj(i ->
+				hashRange(channel, size, i * size / nRanges, (i + 1) * size / nRanges)).
+				collect(Collectors.toList());
+			BlockRange result = new BlockRange(0, 0, 0, 0);
+			for (BlockRange range: ranges) {
+				if (range.nBlocks == 0) {
+					continue;
+				}
+				if (range.firstBlock != result.end) {
+					//A block start was wrongly identified; should be extremely rare
+					result = hashRange(channel, size, 0, size);
+					break;
+				}
+				result = result.append(range);
+			}
+			return "bgzf-" + result.nBlocks + '-' + Long.toHexString(result.hash);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem computing hash of " + file.getAbsolutePath(), e);
+		}
+	}
+
+	private static final class BlockRange {
+		final long firstBlock, end;
+		final long hash;
+		final long nBlocks;
+
+		BlockRange(long firstBlock, long end, long hash, long nBlocks) {
+			this.firstBlock = firstBlock;
+			this.end = end;
+			this.hash = hash;
+			this.nBlocks = nBlocks;
+		}
+
+		/**
+		 * The hash is a polynomial in HASH_MULTIPLIER, so that the hash of a
+		 * concatenation of ranges can be computed from the hashes of the ranges
+		 */
+		BlockRange append(BlockRange next) {
+			return new BlockRange(firstBlock, next.end,
+				hash * power(HASH_MULTIPLIER, next.nBlocks) + next.hash, nBlocks + next.nBlocks);
+		}
+
+		private static long power(long base, long exponent) {
+			long result = 1;
+			while (exponent > 0) {
+				if ((exponent & 1) != 0) {
+					result *= base;
+				}
+				base *= base;
+				exponent >>= 1;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Hash all blocks that start within [start, end)
+	 */
+	private static BlockRange hashRange(FileChannel channel, long size, long start, long end) {
+		try {
+			final long firstBlock = start == 0 ? 0 : findBlockStart(channel, size, start, end);
+			if (firstBlock < 0) {
+				return new BlockRange(-1, -1, 0, 0);
+			}
+			final ByteBuffer header = ByteBuffer.allocate(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH).
+				order(ByteOrder.LITTLE_ENDIAN);
+			final ByteBuffer footer = ByteBuffer.allocate(BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH).
+				order(ByteOrder.LITTLE_ENDIAN);
+			long hash = 0, nBlocks = 0;
+			long position = firstBlock;
+			while (position < end && position < size) {
+				readFully(channel, header, position);
+				final int blockSize = getBlockSize(header, 0);
+				if (blockSize < 0) {
+					throw new IOException("Invalid BGZF block header at offset " + position);
+				}
+				readFully(channel, footer, position + blockSize - BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH);
+				final long crc = footer.getInt(0) & 0xFFFF_FFFFL;
+				final long uncompressedSize = footer.getInt(4) & 0xFFFF_FFFFL;
+				hash = hash * HASH_MULTIPLIER +
+					((crc << 32 | uncompressedSize) * 0x9E3779B97F4A7C15L + blockSize);
+				nBlocks++;
+				position += blockSize;
+			}
+			return new BlockRange(firstBlock, position, hash, nBlocks);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return Total size of the block whose header starts at offset in buffer, or -1
+	 * if there is no valid BGZF header there
+	 */
+	private static int getBlockSize(ByteBuffer buffer, int offset) {
+		if (buffer.get(offset) != BlockCompressedStreamConstants.GZIP_ID1 ||
+				(buffer.get(offset + 1) & 0xFF) != BlockCompressedStreamConstants.GZIP_ID2 ||
+				buffer.get(offset + 2) != BlockCompressedStreamConstants.GZIP_CM_DEFLATE ||
+				buffer.get(offset + 3) != BlockCompressedStreamConstants.GZIP_FLG ||
+				buffer.getShort(offset + 10) != BlockCompressedStreamConstants.GZIP_XLEN ||
+				buffer.get(offset + 12) != BlockCompressedStreamConstants.BGZF_ID1 ||
+				buffer.get(offset + 13) != BlockCompressedStreamConstants.BGZF_ID2 ||
+				buffer.getShort(offset + 14) != BlockCompressedStreamConstants.BGZF_LEN) {
+			return -1;
+		}
+		return (buffer.getShort(offset + BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) & 0xFFFF) + 1;
+	}
+
+	/**
+	 * Find the first block that starts within [start, end), checking that the next
+	 * block header is where it should be to guard against spurious matches.
+	 * @return Block offset, or -1 if none
+	 */
+	private static long findBlockStart(FileChannel channel, long size, long start, long end)
+			throws IOException {
+		final int headerLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+		final long scanEnd = Math.min(end, start + BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+		final ByteBuffer buffer = ByteBuffer.allocate((int) (Math.min(size, scanEnd + headerLength) - start)).
+			order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, buffer, start);
+		final ByteBuffer nextHeader = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; start + i < scanEnd && i + headerLength <= buffer.limit(); i++) {
+			final int blockSize = getBlockSize(buffer, i);
+			if (blockSize < 0) {
+				continue;
+			}
+			final long next = start + i + blockSize;
+			if (next == size) {
+				return start + i;
+			}
+			if (next + headerLength <= size) {
+				readFully(channel, nextHeader, next);
+				if (getBlockSize(nextHeader, 0) >= 0) {
+					return start + i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at offset " + position);
+			}
+		}
+		buffer.flip();
+	}
 }
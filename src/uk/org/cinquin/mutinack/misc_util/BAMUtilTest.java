@@ -0,0 +1,63 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import contrib.net.sf.samtools.util.BlockCompressedOutputStream;
+
+@SuppressWarnings("static-method")
+public class BAMUtilTest {
+
+	private static File writeBGZF(long seed, int nBytes) throws IOException {
+		final File file = File.createTempFile("BAMUtilTest", ".bgzf");
+		file.deleteOnExit();
+		final Random random = new Random(seed);
+		final byte[] bytes = new byte[nBytes];
+		//Partly compressible data, so that blocks have different compressed sizes
+		for (int i = 0; i < nBytes; i++) {
+			bytes[i] = (byte) (random.nextInt(1 + (i / 10_000) % 64));
+		}
+		try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(file)) {
+			os.write(bytes);
+		}
+		return file;
+	}
+
+	@Test
+	public void testBlockHashIndependentOfSplitting() throws IOException {
+		final File file = writeBGZF(0, 3_000_000);
+		final String reference = BAMUtil.computeBlockHash(file, 1, Long.MAX_VALUE);
+		for (int nRanges: new int[] {2, 3, 7, 50, 500}) {
+			assertEquals(reference, BAMUtil.computeBlockHash(file, nRanges, 1));
+		}
+	}
+
+	@Test
+	public void testBlockHashDependsOnContents() throws IOException {
+		assertNotEquals(BAMUtil.computeBlockHash(writeBGZF(0, 1_000_000), 1, 1),
+			BAMUtil.computeBlockHash(writeBGZF(1, 1_000_000), 1, 1));
+	}
+}
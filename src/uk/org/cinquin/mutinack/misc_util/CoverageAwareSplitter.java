@@ -0,0 +1,201 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.net.sf.samtools.AbstractBAMFileIndex;
+import contrib.net.sf.samtools.BAMIndex;
+import contrib.net.sf.samtools.BAMIndexMetaData;
+import contrib.net.sf.samtools.LinearIndex;
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+
+/**
+ * Chooses contig chunk boundaries so that each chunk holds roughly the same number
+ * of reads, as estimated from the BAM index. The linear index records, for each
+ * 16 kb window, the file offset of the first read overlapping the window; the
+ * difference in compressed offsets between successive windows is used as an
+ * estimate of the amount of data (and therefore of work) in each window. Weights
+ * are summed across all input files, and split points that fall within a window
+ * are interpolated assuming uniform density within the window.
+ */
+public class CoverageAwareSplitter {
+
+	private static final Logger logger = LoggerFactory.getLogger(CoverageAwareSplitter.class);
+
+	static final int WINDOW_SHIFT = LinearIndex.BAM_LIDX_SHIFT;
+	static final int WINDOW_SIZE = 1 << WINDOW_SHIFT;
+
+	/**
+	 * Fraction of the total weight that is spread uniformly across windows, to account
+	 * for the per-position cost of processing regions with little or no coverage
+	 */
+	static final double UNIFORM_WEIGHT_FRACTION = 0.05;
+
+	/**
+	 * @param bamFiles Indexed BAM files whose reads will be analyzed
+	 * @param contigName
+	 * @param startAt First position (0-based) to be analyzed
+	 * @param terminateAt Last position (0-based) to be analyzed
+	 * @param nChunks
+	 * @return Array of nChunks + 1 elements, such that chunk p goes from element p
+	 * to element p + 1 minus 1; null if no usable index information could be found
+	 */
+	public static int @Nullable[] computeChunkBoundaries(@NonNull Collection<@NonNull File> bamFiles,
+			@NonNull String contigName, int startAt, int terminateAt, int nChunks) {
+		final int nWindows = (terminateAt >> WINDOW_SHIFT) + 1;
+		final double[] weights = new double[nWindows];
+		boolean foundIndex = false;
+		for (File bamFile: bamFiles) {
+			foundIndex |= addWeights(bamFile, contigName, weights);
+		}
+		if (!foundIndex) {
+			logger.warn("No usable index information for contig " + contigName +
+				"; using chunks of equal widths");
+			return null;
+		}
+		return split(weights, startAt, terminateAt, nChunks);
+	}
+
+	private static boolean addWeights(@NonNull File bamFile, @NonNull String contigName,
+			double @NonNull[] weights) {
+		try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+			if (!reader.hasIndex()) {
+				return false;
+			}
+			final BAMIndex index = reader.getIndex();
+			if (!(index instanceof AbstractBAMFileIndex)) {
+				return false;
+			}
+			final int referenceIndex = reader.getFileHeader().getSequenceIndex(contigName);
+			if (referenceIndex < 0) {
+				return false;
+			}
+			final AbstractBAMFileIndex bamIndex = (AbstractBAMFileIndex) index;
+			final LinearIndex linearIndex = bamIndex.getLinearIndex(referenceIndex);
+			if (linearIndex == null) {
+				return false;
+			}
+			final BAMIndexMetaData metaData = bamIndex.getMetaData(referenceIndex);
+			addWeights(linearIndex.getIndexEntries(), linearIndex.getIndexStart(),
+				metaData == null ? 0 : metaData.getLastOffset(), weights);
+			return true;
+		} catch (RuntimeException e) {
+			logger.warn("Could not read index of " + bamFile.getAbsolutePath(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param entries Linear index entries (virtual file offsets)
+	 * @param indexStart Window corresponding to the first entry
+	 * @param lastOffset Virtual file offset of the end of the contig's records, or 0
+	 * if unknown
+	 * @param weights Array to which the estimated number of compressed bytes in each
+	 * window is added
+	 */
+	static void addWeights(long @NonNull[] entries, int indexStart, long lastOffset,
+			double @NonNull[] weights) {
+		for (int i = 0; i < entries.length; i++) {
+			final int window = indexStart + i;
+			if (window >= weights.length) {
+				break;
+			}
+			if (entries[i] == 0) {//No reads up to and including this window
+				continue;
+			}
+			final long next = i == entries.length - 1 ? lastOffset : entries[i + 1];
+			final long delta = (next >>> 16) - (entries[i] >>> 16);
+			if (delta > 0) {
+				weights[window] += delta;
+			}
+		}
+	}
+
+	/**
+	 * @param weights Estimated amount of work in each window
+	 * @param startAt First position (0-based) to be analyzed
+	 * @param terminateAt Last position (0-based) to be analyzed
+	 * @param nChunks
+	 * @return Array of nChunks + 1 elements, such that chunk p goes from element p
+	 * to element p + 1 minus 1
+	 */
+	static int @NonNull[] split(double @NonNull[] weights, int startAt, int terminateAt,
+			int nChunks) {
+		final int firstWindow = startAt >> WINDOW_SHIFT;
+		final int lastWindow = Math.min(terminateAt >> WINDOW_SHIFT, weights.length - 1);
+
+		double rawTotal = 0;
+		for (int w = firstWindow; w <= lastWindow; w++) {
+			rawTotal += weights[w] * overlap(w, startAt, terminateAt) / WINDOW_SIZE;
+		}
+		final long span = (long) terminateAt - startAt + 1;
+		//Weight per position added uniformly; if there is no data at all, this
+		//amounts to a split into chunks of equal widths
+		final double uniformWeight = rawTotal == 0 ? 1 :
+			rawTotal * UNIFORM_WEIGHT_FRACTION / (1 - UNIFORM_WEIGHT_FRACTION) / Math.max(1, span);
+
+		final double[] windowWeights = new double[Math.max(0, lastWindow - firstWindow + 1)];
+		double total = 0;
+		for (int w = firstWindow; w <= lastWindow; w++) {
+			final int overlap = overlap(w, startAt, terminateAt);
+			final double weight = weights[w] * overlap / WINDOW_SIZE + uniformWeight * overlap;
+			windowWeights[w - firstWindow] = weight;
+			total += weight;
+		}
+
+		final int[] result = new int[nChunks + 1];
+		result[0] = startAt;
+		result[nChunks] = terminateAt + 1;
+		int w = firstWindow;
+		double cumulative = 0;
+		for (int p = 1; p < nChunks; p++) {
+			final double target = total * p / nChunks;
+			while (w <= lastWindow && cumulative + windowWeights[w - firstWindow] < target) {
+				cumulative += windowWeights[w - firstWindow];
+				w++;
+			}
+			int boundary;
+			if (w > lastWindow) {
+				boundary = terminateAt + 1;
+			} else {
+				final int windowStart = Math.max(startAt, w << WINDOW_SHIFT);
+				final double windowWeight = windowWeights[w - firstWindow];
+				final double fraction = windowWeight == 0 ? 0 : (target - cumulative) / windowWeight;
+				boundary = windowStart + (int) (fraction * overlap(w, startAt, terminateAt));
+			}
+			//Avoid empty chunks whenever the range is wide enough
+			boundary = Math.max(boundary, result[p - 1] + 1);
+			boundary = (int) Math.min(boundary, (long) terminateAt + 1 - (nChunks - p));
+			result[p] = Math.max(boundary, result[p - 1]);
+		}
+		return result;
+	}
+
+	private static int overlap(int window, int startAt, int terminateAt) {
+		final long windowStart = (long) window << WINDOW_SHIFT;
+		final long windowEnd = windowStart + WINDOW_SIZE - 1;
+		return (int) Math.max(0, Math.min(windowEnd, terminateAt) - Math.max(windowStart, startAt) + 1);
+	}
+}
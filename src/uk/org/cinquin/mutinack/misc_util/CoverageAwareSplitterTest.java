@@ -0,0 +1,66 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class CoverageAwareSplitterTest {
+
+	private static final int W = CoverageAwareSplitter.WINDOW_SIZE;
+
+	@Test
+	public void testNoDataGivesEqualWidths() {
+		int[] boundaries = CoverageAwareSplitter.split(new double[10], 0, 10 * W - 1, 4);
+		assertArrayEquals(new int[] {0, 10 * W / 4, 10 * W / 2, 30 * W / 4, 10 * W}, boundaries);
+	}
+
+	@Test
+	public void testHotspot() {
+		double[] weights = new double[100];
+		weights[50] = 1_000_000;
+		int[] boundaries = CoverageAwareSplitter.split(weights, 0, 100 * W - 1, 4);
+		assertEquals(0, boundaries[0]);
+		assertEquals(100 * W, boundaries[4]);
+		for (int p = 1; p < 4; p++) {
+			assertTrue(boundaries[p] > boundaries[p - 1]);
+			//All internal boundaries fall within the hot window
+			assertTrue(boundaries[p] >= 50 * W && boundaries[p] < 51 * W);
+		}
+	}
+
+	@Test
+	public void testNoEmptyChunks() {
+		double[] weights = new double[1];
+		weights[0] = 1_000;
+		int[] boundaries = CoverageAwareSplitter.split(weights, 10, 13, 4);
+		assertArrayEquals(new int[] {10, 11, 12, 13, 14}, boundaries);
+	}
+
+	@Test
+	public void testAddWeights() {
+		double[] weights = new double[4];
+		long[] entries = {0, 100L << 16, (100L << 16) + 5, 300L << 16};
+		CoverageAwareSplitter.addWeights(entries, 0, 350L << 16, weights);
+		assertArrayEquals(new double[] {0, 0, 200, 50}, weights, 0);
+	}
+}
@@ -46,9 +46,19 @@ public class FileCache<T extends Serializable> {
 
 	private static final Map<String, SoftReference<Object>> cache = new ConcurrentHashMap<>();
 
-	@SuppressWarnings({"unchecked", "TypeParameterUnusedInFormals"})
+	@SuppressWarnings("TypeParameterUnusedInFormals")
 	public static <T> @NonNull T getCached(String path, String cacheExtension, Function<String, @NonNull T> processor,
 			Predicate<T> mustRecompute) {
+		return getMemoryCached(path, cacheExtension,
+			p -> getCached0(p, cacheExtension, processor, mustRecompute));
+	}
+
+	/**
+	 * Like {@link #getCached}, but leaves on-disk caching up to loader
+	 */
+	@SuppressWarnings({"unchecked", "TypeParameterUnusedInFormals"})
+	public static <T> @NonNull T getMemoryCached(String path, String cacheExtension,
+			Function<String, @NonNull T> loader) {
 		String canonicalPath;
 		try {
 			canonicalPath = new File(path + cacheExtension).getCanonicalPath();
@@ -60,7 +70,7 @@ public class FileCache<T extends Serializable> {
 		if (o != null) {
 			return (T) o;
 		}
-		@NonNull T result = getCached0(path, cacheExtension, processor, mustRecompute);
+		@NonNull T result = loader.apply(path);
 		cache.put(canonicalPath, new SoftReference<> (result));
 		return result;
 	}
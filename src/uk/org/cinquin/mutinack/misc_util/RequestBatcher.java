@@ -0,0 +1,85 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * Accumulates requests and hands them over in batches to a consumer, which runs
+ * on the given executor. A batch is handed over once the first request it contains
+ * has waited for the given delay, or as soon as maxBatchSize requests are pending,
+ * whichever comes first. Batches may be handed over concurrently.
+ */
+public class RequestBatcher<T> {
+
+	private final int maxBatchSize;
+	private final long delayMs;
+	private final @NonNull ScheduledExecutorService executor;
+	private final @NonNull Consumer<@NonNull List<@NonNull T>> consumer;
+
+	private final Queue<@NonNull T> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger nPending = new AtomicInteger();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final AtomicBoolean immediateDrainQueued = new AtomicBoolean();
+
+	public RequestBatcher(int maxBatchSize, long delayMs, @NonNull ScheduledExecutorService executor,
+			@NonNull Consumer<@NonNull List<@NonNull T>> consumer) {
+		this.maxBatchSize = maxBatchSize;
+		this.delayMs = delayMs;
+		this.executor = executor;
+		this.consumer = consumer;
+	}
+
+	public void add(@NonNull T request) {
+		pending.add(request);
+		if (nPending.incrementAndGet() >= maxBatchSize) {
+			//Do not wait for a delayed drain that may already be scheduled
+			if (immediateDrainQueued.compareAndSet(false, true)) {
+				executor.execute(this::drain);
+			}
+		} else if (drainScheduled.compareAndSet(false, true)) {
+			executor.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void drain() {
+		//Reset flags before polling, so that requests added after polling is done
+		//cause a new drain to be scheduled
+		drainScheduled.set(false);
+		immediateDrainQueued.set(false);
+		final List<@NonNull T> batch = new ArrayList<>();
+		T request;
+		while ((request = pending.poll()) != null) {
+			nPending.decrementAndGet();
+			batch.add(request);
+		}
+		if (!batch.isEmpty()) {
+			consumer.accept(batch);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestBatcherTest {
+
+	private ScheduledThreadPoolExecutor executor;
+	private final BlockingQueue<List<Integer>> batches = new LinkedBlockingQueue<>();
+
+	@Before
+	public void setUp() {
+		executor = new ScheduledThreadPoolExecutor(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testPartialBatchAfterDelay() throws InterruptedException {
+		final RequestBatcher<Integer> batcher = new RequestBatcher<>(100, 20, executor, batches::add);
+		batcher.add(1);
+		batcher.add(2);
+		batcher.add(3);
+		assertEquals(Arrays.asList(1, 2, 3), batches.poll(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A full batch should be handed over right away, even though a delayed drain
+	 * was scheduled by the first request
+	 */
+	@Test
+	public void testFullBatchNotDelayed() throws InterruptedException {
+		final RequestBatcher<Integer> batcher = new RequestBatcher<>(100, TimeUnit.HOURS.toMillis(1),
+			executor, batches::add);
+		final List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			batcher.add(i);
+			expected.add(i);
+		}
+		final List<Integer> batch = batches.poll(10, TimeUnit.SECONDS);
+		assertNotNull("Full batch was not drained", batch);
+		assertEquals(expected, batch);
+	}
+
+	@Test
+	public void testConcurrentRequestsAllHandedOver() throws InterruptedException {
+		final int nThreads = 4;
+		final int nPerThread = 20_000;
+		final RequestBatcher<Integer> batcher = new RequestBatcher<>(100, 5, executor, batches::add);
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < nThreads; t++) {
+			final int offset = t * nPerThread;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < nPerThread; i++) {
+					batcher.add(offset + i);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread t: threads) {
+			t.join();
+		}
+
+		final BitSet seen = new BitSet();
+		int nSeen = 0;
+		while (nSeen < nThreads * nPerThread) {
+			final List<Integer> batch = batches.poll(10, TimeUnit.SECONDS);
+			assertNotNull("Missing requests; only got " + nSeen, batch);
+			for (int i: batch) {
+				assertTrue("Request " + i + " handed over twice", !seen.get(i));
+				seen.set(i);
+				nSeen++;
+			}
+		}
+		assertEquals(nThreads * nPerThread, seen.cardinality());
+	}
+}
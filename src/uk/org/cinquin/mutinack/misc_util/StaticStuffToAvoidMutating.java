@@ -43,6 +43,8 @@ import contrib.net.sf.picard.reference.ReferenceSequenceFile;
 import contrib.net.sf.picard.reference.ReferenceSequenceFileFactory;
 import contrib.uk.org.lidalia.slf4jext.Logger;
 import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import uk.org.cinquin.mutinack.sequence_IO.PackedReference;
+import uk.org.cinquin.mutinack.sequence_IO.WindowedReference;
 import uk.org.cinquin.parfor.ParFor;
 
 public class StaticStuffToAvoidMutating {
@@ -52,6 +54,8 @@ public class StaticStuffToAvoidMutating {
 	private static final Map<String, Map<String, ReferenceSequence>> contigSequences =
 		new ConcurrentHashMap<>();
 	private static final Map<String, ReferenceSequenceFile> refFiles = new ConcurrentHashMap<>();
+	private static final Map<String, PackedReference> packedReferences = new ConcurrentHashMap<>();
+	private static final Map<String, WindowedReference> windowedReferences = new ConcurrentHashMap<>();
 
 	private static ExecutorService executorService;
 
@@ -102,11 +106,37 @@ public class StaticStuffToAvoidMutating {
 		StaticStuffToAvoidMutating.executorService = executorService;
 	}
 
-	@SuppressWarnings("null")
 	public static void loadContigs(
 			String referenceGenomeName,
 			String referenceGenomePath,
 			@Nullable Collection<@NonNull String> contigNames) {
+		loadContigs(referenceGenomeName, referenceGenomePath, contigNames, false, false);
+	}
+
+	/**
+	 * @param referenceGenomeName
+	 * @param referenceGenomePath
+	 * @param contigNames
+	 * @param packed If true, contigs are served from a memory-mapped {@link PackedReference}
+	 * instead of being loaded on the heap
+	 * @param windowed If true, contigs are read on demand by windows from the indexed
+	 * FASTA file, through a {@link WindowedReference}
+	 */
+	@SuppressWarnings("null")
+	public static void loadContigs(
+			String referenceGenomeName,
+			String referenceGenomePath,
+			@Nullable Collection<@NonNull String> contigNames,
+			boolean packed,
+			boolean windowed) {
+		if (packed) {
+			loadPackedContigs(referenceGenomeName, referenceGenomePath, contigNames);
+			return;
+		}
+		if (windowed) {
+			loadWindowedContigs(referenceGenomeName, referenceGenomePath, contigNames);
+			return;
+		}
 		ReferenceSequenceFile refFile = refFiles.computeIfAbsent(referenceGenomeName, name -> {
 			try {
 				return ReferenceSequenceFileFactory.getReferenceSequenceFile(
@@ -145,6 +175,61 @@ public class StaticStuffToAvoidMutating {
 		}
 	}
 
+	private static void loadPackedContigs(
+			String referenceGenomeName,
+			String referenceGenomePath,
+			@Nullable Collection<@NonNull String> contigNames) {
+		final PackedReference packedReference = packedReferences.computeIfAbsent(referenceGenomeName,
+			name -> PackedReference.open(referenceGenomePath));
+		final Map<String, ReferenceSequence> sequences = contigSequences.computeIfAbsent(referenceGenomeName,
+			name -> new ConcurrentHashMap<>());
+		final Collection<@NonNull String> names = contigNames != null ?
+			contigNames
+		:
+			packedReference.getSequences().keySet();
+		for (String contigName: names) {
+			sequences.computeIfAbsent(contigName, name -> {
+				final ReferenceSequence ref = packedReference.getSequence(contigName);
+				if (ref == null || ref.length() == 0) {
+					throw new RuntimeException("Could not find " + contigName +
+						" in reference file " + referenceGenomePath);
+				}
+				return ref;
+			});
+		}
+	}
+
+	private static void loadWindowedContigs(
+			String referenceGenomeName,
+			String referenceGenomePath,
+			@Nullable Collection<@NonNull String> contigNames) {
+		final WindowedReference windowedReference = windowedReferences.computeIfAbsent(referenceGenomeName,
+			name -> {
+				try {
+					return new WindowedReference(new File(referenceGenomePath),
+						WindowedReference.DEFAULT_WINDOW_SIZE, WindowedReference.DEFAULT_MAX_WINDOWS);
+				} catch (IOException e) {
+					throw new RuntimeException("Problem opening indexed reference file for genome " +
+						referenceGenomeName + " at " + referenceGenomePath, e);
+				}
+			});
+		final Map<String, ReferenceSequence> sequences = contigSequences.computeIfAbsent(referenceGenomeName,
+			name -> new ConcurrentHashMap<>());
+		if (contigNames == null) {
+			throw new IllegalArgumentException("Contig names must be specified for windowed access to genome "
+				+ referenceGenomePath);
+		}
+		for (String contigName: contigNames) {
+			sequences.computeIfAbsent(contigName, name -> {
+				if (!windowedReference.hasSequence(contigName)) {
+					throw new RuntimeException("Could not find " + contigName +
+						" in index of reference file " + referenceGenomePath);
+				}
+				return windowedReference.getSequence(contigName);
+			});
+		}
+	}
+
 	public static ReferenceSequence getContigSequence(String referenceGenomeName, String contigName) {
 		Map<String, ReferenceSequence> sequences = contigSequences.get(referenceGenomeName);
 		if (sequences == null) {
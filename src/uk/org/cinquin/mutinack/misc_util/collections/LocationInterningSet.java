@@ -0,0 +1,63 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.misc_util.collections;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import uk.org.cinquin.mutinack.SequenceLocation;
+
+/**
+ * Interns SequenceLocations keyed by their packed long representation, so that
+ * no temporary object needs to be allocated when the location is already present.
+ * All locations must be on the same reference genome.
+ */
+@NotThreadSafe
+public class LocationInterningSet extends TLongObjectHashMap<@NonNull SequenceLocation> {
+
+	private static final long serialVersionUID = 3141963372839425712L;
+
+	public LocationInterningSet(int i) {
+		super(i, 0.5f);
+	}
+
+	public LocationInterningSet() {
+		super();
+	}
+
+	public @NonNull SequenceLocation intern(@NonNull String referenceGenome, int contigIndex,
+			@NonNull String contigName, int position, boolean plusHalf) {
+		final long key = SequenceLocation.pack(contigIndex, position, plusHalf);
+		SequenceLocation previous = get(key);
+		if (previous != null) {
+			return previous;
+		}
+		final @NonNull SequenceLocation l =
+			new SequenceLocation(referenceGenome, contigIndex, contigName, position, plusHalf);
+		put(key, l);
+		return l;
+	}
+
+	public @NonNull SequenceLocation intern(@NonNull SequenceLocation location) {
+		final long key = SequenceLocation.pack(location.contigIndex, location.position, location.plusHalf);
+		final SequenceLocation previous = putIfAbsent(key, location);
+		return previous != null ? previous : location;
+	}
+}
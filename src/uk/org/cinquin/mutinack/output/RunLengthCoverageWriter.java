@@ -0,0 +1,501 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.output;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+
+/**
+ * Collects per-position coverage as runs of consecutive positions with the same
+ * value, instead of one array element per position of the genome. Each thread
+ * extends its own current run; completed runs are buffered per thread and, once
+ * the buffer is full, sorted and spilled as a block to a temporary file. Upon
+ * {@link #close}, blocks from all threads are merged, and coverage is written as a
+ * bedGraph file and/or as a {@link GenomeNumbers} protobuf identical in content to
+ * the one produced from per-position arrays; the protobuf is streamed one contig at
+ * a time without materializing per-position arrays. Nothing is written before
+ * {@link #close} is called.
+ * Positions that are not reported have coverage 0 and are omitted from the bedGraph
+ * output. Values reported more than once for the same position are summed.
+ */
+public final class RunLengthCoverageWriter implements Closeable {
+
+	private static final int DEFAULT_MAX_BUFFERED_RUNS = 1 << 16;
+	private static final int BYTES_PER_RUN = 16;
+	private static final int CURSOR_BUFFER_RUNS = 512;
+	/**
+	 * Field 4 of GenomeNumbers, length-delimited
+	 */
+	private static final int CONTIG_NUMBERS_TAG = (GenomeNumbers.CONTIGNUMBERS_FIELD_NUMBER << 3) | 2;
+	/**
+	 * Field 2 of ContigNumbers, packed
+	 */
+	private static final int NUMBERS_TAG = (ContigNumbers.NUMBERS_FIELD_NUMBER << 3) | 2;
+
+	private final @NonNull List<@NonNull String> contigNames;
+	private final int @NonNull[] contigSizes;
+	/**
+	 * Contigs that have a size but are not in contigNames; they are included in
+	 * protobuf output, with coverage 0
+	 */
+	private final @NonNull Map<@NonNull String, @NonNull Integer> otherContigSizes;
+	private final @Nullable String bedGraphPath;
+	private final @Nullable GenomeNumbers protoHeader;
+	private final @Nullable String protoPath;
+	private final int maxBufferedRuns;
+
+	private final @NonNull File spillFile;
+	private final @NonNull FileChannel spill;
+	/**
+	 * Offset and number of runs of each spilled block
+	 */
+	private final TLongArrayList blockOffsets = new TLongArrayList(), blockSizes = new TLongArrayList();
+
+	private final Queue<Shard> shards = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Shard> localShard = ThreadLocal.withInitial(() -> {
+		final Shard shard = new Shard();
+		shards.add(shard);
+		return shard;
+	});
+	private boolean closed = false;
+
+	/**
+	 * @param contigNames Names of contigs, indexed by contig index
+	 * @param contigSizes Sizes of contigs, used to check reported positions; the
+	 * protobuf output has one entry per contig in this map, first those in
+	 * contigNames in that order and then the others in map iteration order
+	 * @param bedGraphPath Path of bedGraph output, or null
+	 * @param protoHeader Sample name, program version and arguments for protobuf
+	 * output, or null
+	 * @param protoPath Path of protobuf output, or null
+	 */
+	public RunLengthCoverageWriter(@NonNull List<@NonNull String> contigNames,
+			@NonNull Map<@NonNull String, @NonNull Integer> contigSizes,
+			@Nullable String bedGraphPath, @Nullable GenomeNumbers protoHeader, @Nullable String protoPath)
+				throws IOException {
+		this(contigNames, contigSizes, bedGraphPath, protoHeader, protoPath, DEFAULT_MAX_BUFFERED_RUNS);
+	}
+
+	/**
+	 * @param maxBufferedRuns Number of runs each thread keeps in memory before
+	 * spilling them to disk
+	 */
+	public RunLengthCoverageWriter(@NonNull List<@NonNull String> contigNames,
+			@NonNull Map<@NonNull String, @NonNull Integer> contigSizes,
+			@Nullable String bedGraphPath, @Nullable GenomeNumbers protoHeader, @Nullable String protoPath,
+			int maxBufferedRuns) throws IOException {
+		if ((protoHeader == null) != (protoPath == null)) {
+			throw new IllegalArgumentException("Protobuf header and path must be specified together");
+		}
+		if (protoPath != null && contigSizes.isEmpty()) {
+			throw new IllegalArgumentException("Need contig sizes for protobuf coverage output");
+		}
+		this.contigNames = new ArrayList<>(contigNames);
+		this.contigSizes = new int[contigNames.size()];
+		for (int i = 0; i < contigNames.size(); i++) {
+			this.contigSizes[i] = contigSizes.getOrDefault(contigNames.get(i), -1);
+		}
+		otherContigSizes = new LinkedHashMap<>(contigSizes);
+		otherContigSizes.keySet().removeAll(contigNames);
+		this.bedGraphPath = bedGraphPath;
+		this.protoHeader = protoHeader;
+		this.protoPath = protoPath;
+		this.maxBufferedRuns = maxBufferedRuns;
+		spillFile = File.createTempFile("coverage_runs", ".tmp");
+		spillFile.deleteOnExit();
+		spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Record coverage at a position; positions reported by a given thread should
+	 * mostly be consecutive for runs to be long. Thread-safe.
+	 * @param contigIndex
+	 * @param position
+	 * @param value
+	 */
+	public void add(int contigIndex, int position, int value) {
+		final int size = contigSizes[contigIndex];
+		if (size < 0 && protoPath != null) {
+			throw new IllegalArgumentException("Unknown size for contig " + contigNames.get(contigIndex));
+		}
+		if (size >= 0 && position >= size) {
+			throw new IllegalArgumentException("Position goes beyond end of contig " +
+				contigNames.get(contigIndex) + ": " + position + " vs " + size);
+		}
+		localShard.get().add(contigIndex, position, value);
+	}
+
+	private static long encodeKey(int contig, int start) {
+		return ((long) contig << 32) | start;
+	}
+
+	private static long encodeValue(int end, int value) {
+		return ((long) end << 32) | (value & 0xFFFF_FFFFL);
+	}
+
+	private final class Shard {
+		private int contig = -1, start, end, value;
+		private final TLongArrayList keys = new TLongArrayList(), values = new TLongArrayList();
+
+		void add(int contigIndex, int position, int newValue) {
+			if (contigIndex == contig && position == end + 1 && newValue == value) {
+				end = position;
+				return;
+			}
+			flushRun();
+			contig = contigIndex;
+			start = end = position;
+			value = newValue;
+		}
+
+		void flushRun() {
+			if (contig >= 0 && value != 0) {
+				keys.add(encodeKey(contig, start));
+				values.add(encodeValue(end, value));
+				if (keys.size() >= maxBufferedRuns) {
+					spillRuns();
+				}
+			}
+			contig = -1;
+		}
+
+		/**
+		 * Values are put in place by binary search after sorting the keys; keys are
+		 * only repeated if a position is reported more than once, in which case the
+		 * corresponding values go to the first free slot for that key (encoded values
+		 * are never 0, since runs with value 0 are not stored)
+		 */
+		void spillRuns() {
+			final int n = keys.size();
+			if (n == 0) {
+				return;
+			}
+			final long[] unsortedKeys = keys.toArray();
+			final long[] sortedKeys = unsortedKeys.clone();
+			Arrays.sort(sortedKeys);
+			final long[] sortedValues = new long[n];
+			for (int i = 0; i < n; i++) {
+				final long key = unsortedKeys[i];
+				int index = Arrays.binarySearch(sortedKeys, key);
+				if (sortedValues[index] != 0 || (index > 0 && sortedKeys[index - 1] == key)) {
+					while (index > 0 && sortedKeys[index - 1] == key) {
+						index--;
+					}
+					while (sortedValues[index] != 0) {
+						index++;
+					}
+				}
+				sortedValues[index] = values.getQuick(i);
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate(n * BYTES_PER_RUN);
+			for (int i = 0; i < n; i++) {
+				buffer.putLong(sortedKeys[i]).putLong(sortedValues[i]);
+			}
+			buffer.flip();
+			writeBlock(buffer, n);
+			keys.clearQuick();
+			values.clearQuick();
+		}
+	}
+
+	private synchronized void writeBlock(ByteBuffer buffer, int nRuns) {
+		if (closed) {
+			throw new IllegalStateException("Coverage writer already closed");
+		}
+		try {
+			final long offset = spill.size();
+			long position = offset;
+			while (buffer.hasRemaining()) {
+				position += spill.write(buffer, position);
+			}
+			blockOffsets.add(offset);
+			blockSizes.add(nRuns);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem writing to " + spillFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Reads the runs of a spilled block in order
+	 */
+	private final class BlockCursor {
+		private long offset;
+		private long remaining;
+		private final ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BUFFER_RUNS * BYTES_PER_RUN);
+		long key, value;
+
+		BlockCursor(long offset, long nRuns) {
+			this.offset = offset;
+			this.remaining = nRuns;
+			buffer.limit(0);
+		}
+
+		/**
+		 * @return false if there are no more runs
+		 */
+		boolean next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				if (remaining == 0) {
+					return false;
+				}
+				final int nRuns = (int) Math.min(remaining, CURSOR_BUFFER_RUNS);
+				buffer.clear().limit(nRuns * BYTES_PER_RUN);
+				while (buffer.hasRemaining()) {
+					if (spill.read(buffer, offset + buffer.position()) < 0) {
+						throw new IOException("Truncated block in " + spillFile.getAbsolutePath());
+					}
+				}
+				buffer.flip();
+				offset += nRuns * BYTES_PER_RUN;
+				remaining -= nRuns;
+			}
+			key = buffer.getLong();
+			value = buffer.getLong();
+			return true;
+		}
+	}
+
+	/**
+	 * Flush runs of all threads, merge them, and write output files. Must only be
+	 * called once all calls to {@link #add} have completed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			for (Shard shard: shards) {
+				shard.flushRun();
+				shard.spillRuns();
+			}
+			closed = true;
+			writeOutput();
+		} finally {
+			closed = true;
+			spill.close();
+			if (!spillFile.delete()) {
+				spillFile.deleteOnExit();
+			}
+		}
+	}
+
+	private void writeOutput() throws IOException {
+		final PriorityQueue<BlockCursor> queue = new PriorityQueue<>(Math.max(1, blockOffsets.size()),
+			(c1, c2) -> Long.compare(c1.key, c2.key));
+		for (int i = 0; i < blockOffsets.size(); i++) {
+			final BlockCursor cursor = new BlockCursor(blockOffsets.get(i), blockSizes.get(i));
+			if (cursor.next()) {
+				queue.add(cursor);
+			}
+		}
+
+		final String bedGraph = bedGraphPath;
+		final String proto = protoPath;
+		try (Writer bedGraphWriter = bedGraph == null ? null :
+				new BufferedWriter(new FileWriter(bedGraph), 1 << 16);
+			OutputStream protoStream = proto == null ? null :
+				new BufferedOutputStream(new FileOutputStream(proto), 1 << 16)) {
+			final CodedOutputStream protoOutput = protoStream == null ? null :
+				CodedOutputStream.newInstance(protoStream);
+			if (protoOutput != null) {
+				protoHeader.writeTo(protoOutput);
+			}
+
+			final RunSummer runs = new RunSummer();
+			for (int contig = 0; contig < contigNames.size(); contig++) {
+				runs.clear();
+				while (!queue.isEmpty() && (int) (queue.peek().key >>> 32) == contig) {
+					final BlockCursor cursor = queue.poll();
+					runs.add((int) cursor.key, (int) (cursor.value >>> 32), (int) cursor.value);
+					if (cursor.next()) {
+						queue.add(cursor);
+					}
+				}
+				runs.finish();
+				if (bedGraphWriter != null) {
+					writeBedGraph(bedGraphWriter, contigNames.get(contig), runs.starts, runs.ends, runs.values);
+				}
+				if (protoOutput != null && contigSizes[contig] >= 0) {
+					writeContigNumbers(protoOutput, contigNames.get(contig), contigSizes[contig],
+						runs.starts, runs.ends, runs.values);
+				}
+			}
+			if (!queue.isEmpty()) {
+				throw new IllegalStateException("Unknown contig index " + (queue.peek().key >>> 32));
+			}
+			if (protoOutput != null) {
+				runs.clear();
+				for (Map.Entry<@NonNull String, @NonNull Integer> e: otherContigSizes.entrySet()) {
+					writeContigNumbers(protoOutput, e.getKey(), e.getValue(), runs.starts, runs.ends,
+						runs.values);
+				}
+				protoOutput.flush();
+			}
+		}
+	}
+
+	/**
+	 * Turns runs that arrive in order of start position, and that may overlap if a
+	 * position was reported more than once, into non-overlapping runs with summed
+	 * values; adjacent runs with the same value are coalesced, and runs with value 0
+	 * are dropped.
+	 */
+	private static final class RunSummer {
+		final TIntArrayList starts = new TIntArrayList(), ends = new TIntArrayList(),
+			values = new TIntArrayList();
+		/**
+		 * Runs that cover position next, as end and value, ordered by end
+		 */
+		private final PriorityQueue<int[]> active = new PriorityQueue<>((r1, r2) -> Integer.compare(r1[0], r2[0]));
+		private int activeSum;
+		/**
+		 * First position whose coverage has not been output yet
+		 */
+		private int next;
+
+		void clear() {
+			starts.clearQuick();
+			ends.clearQuick();
+			values.clearQuick();
+			active.clear();
+			activeSum = 0;
+			next = 0;
+		}
+
+		void add(int start, int end, int value) {
+			advanceTo(start);
+			active.add(new int[] {end, value});
+			activeSum += value;
+		}
+
+		void finish() {
+			advanceTo(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Output coverage up to limit (exclusive)
+		 */
+		private void advanceTo(int limit) {
+			while (!active.isEmpty() && next < limit) {
+				final int end = Math.min(active.peek()[0], limit - 1);
+				output(next, end, activeSum);
+				next = end + 1;
+				while (!active.isEmpty() && active.peek()[0] < next) {
+					activeSum -= active.poll()[1];
+				}
+			}
+			next = Math.max(next, limit);
+		}
+
+		private void output(int start, int end, int value) {
+			if (value == 0) {
+				return;
+			}
+			final int n = starts.size();
+			if (n > 0 && start == ends.getQuick(n - 1) + 1 && value == values.getQuick(n - 1)) {
+				ends.setQuick(n - 1, end);
+			} else {
+				starts.add(start);
+				ends.add(end);
+				values.add(value);
+			}
+		}
+	}
+
+	private static void writeBedGraph(Writer writer, String contigName, TIntArrayList starts,
+			TIntArrayList ends, TIntArrayList values) throws IOException {
+		for (int i = 0; i < starts.size(); i++) {
+			writer.append(contigName).append('\t').append(String.valueOf(starts.getQuick(i))).
+				append('\t').append(String.valueOf(ends.getQuick(i) + 1)).
+				append('\t').append(String.valueOf(values.getQuick(i))).append('\n');
+		}
+	}
+
+	/**
+	 * Write a ContigNumbers message as field of the enclosing GenomeNumbers message,
+	 * with the same encoding as ContigNumbers.writeTo, computing its size from runs
+	 */
+	private static void writeContigNumbers(CodedOutputStream output, String contigName, int contigSize,
+			TIntArrayList starts, TIntArrayList ends, TIntArrayList values) throws IOException {
+		final ByteString nameBytes = ByteString.copyFromUtf8(contigName);
+		long dataSize = contigSize;//One byte per 0
+		for (int i = 0; i < starts.size(); i++) {
+			dataSize += (CodedOutputStream.computeInt32SizeNoTag(values.getQuick(i)) - 1L) *
+				(ends.getQuick(i) - starts.getQuick(i) + 1);
+		}
+		long messageSize = CodedOutputStream.computeBytesSize(ContigNumbers.CONTIGNAME_FIELD_NUMBER, nameBytes);
+		if (contigSize > 0) {
+			messageSize += 1 + CodedOutputStream.computeRawVarint32Size((int) dataSize) + dataSize;
+		}
+		if (messageSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Contig " + contigName + " too large for protobuf output");
+		}
+		output.writeRawVarint32(CONTIG_NUMBERS_TAG);
+		output.writeRawVarint32((int) messageSize);
+		output.writeBytes(ContigNumbers.CONTIGNAME_FIELD_NUMBER, nameBytes);
+		if (contigSize == 0) {
+			return;
+		}
+		output.writeRawVarint32(NUMBERS_TAG);
+		output.writeRawVarint32((int) dataSize);
+		int position = 0;
+		for (int i = 0; i < starts.size(); i++) {
+			for (; position < starts.getQuick(i); position++) {
+				output.writeInt32NoTag(0);
+			}
+			final int value = values.getQuick(i);
+			for (final int end = ends.getQuick(i); position <= end; position++) {
+				output.writeInt32NoTag(value);
+			}
+		}
+		for (; position < contigSize; position++) {
+			output.writeInt32NoTag(0);
+		}
+	}
+}
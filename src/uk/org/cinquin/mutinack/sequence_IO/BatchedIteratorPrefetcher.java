@@ -0,0 +1,289 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.sequence_IO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import uk.org.cinquin.mutinack.statistics.Histogram;
+
+/**
+ * Same contract as {@link IteratorPrefetcher}, but elements are handed over from the
+ * fetching thread to the consuming thread in batches, through a bounded
+ * single-producer single-consumer ring. The only synchronization per batch is a
+ * couple of volatile reads and writes; threads park when the ring is full or empty,
+ * and are only unparked by the other side if they announced they were going to park.
+ * A partially-filled batch is handed over straight away if the consumer is waiting
+ * on an empty ring, so that batching does not add latency when the underlying
+ * iterator is slow. If elements are sorted by position, the fetching thread can
+ * record the position of the last element that was handed over, which tells the
+ * consumer how far ahead elements are ready without being fetched on its thread.
+ *
+ * Must only be consumed from one thread at a time.
+ *
+ * @param <T>
+ */
+public class BatchedIteratorPrefetcher<T> implements Iterator<T>, Closeable {
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final int batchSize;
+	private final Object @NonNull[][] ring;
+	private final int mask;
+
+	//Only written by the fetching thread
+	private volatile long tail;
+	//Only written by the consuming thread
+	private volatile long head;
+
+	private volatile boolean iteratorExhausted = false;
+	private volatile @Nullable RuntimeException exception = null;
+	private volatile int fetchedUpTo = Integer.MIN_VALUE;
+
+	private volatile boolean producerParked = false;
+	private volatile boolean consumerParked = false;
+	private volatile @Nullable Thread consumerThread;
+
+	private Object @Nullable[] currentBatch;
+	private int currentIndex;
+
+	final @NonNull Thread fetchingThread;
+
+	private volatile @Nullable Closeable closeWhenDone;
+
+	public BatchedIteratorPrefetcher(final Iterator<T> it, final int nReadAhead,
+			final @Nullable Closeable closeWhenDone,
+			final Consumer<T> preProcessor,
+			final @Nullable Histogram nReadsInPrefetchQueue) {
+		this(it, nReadAhead, closeWhenDone, preProcessor, nReadsInPrefetchQueue, DEFAULT_BATCH_SIZE, null);
+	}
+
+	public BatchedIteratorPrefetcher(final Iterator<T> it, final int nReadAhead,
+			final @Nullable Closeable closeWhenDone,
+			final Consumer<T> preProcessor,
+			final @Nullable Histogram nReadsInPrefetchQueue,
+			final int batchSize) {
+		this(it, nReadAhead, closeWhenDone, preProcessor, nReadsInPrefetchQueue, batchSize, null);
+	}
+
+	/**
+	 * @param it
+	 * @param nReadAhead Approximate number of elements to keep ready for consumption;
+	 * up to twice that number may be buffered
+	 * @param closeWhenDone
+	 * @param preProcessor Applied to each element by the fetching thread
+	 * @param nReadsInPrefetchQueue
+	 * @param batchSize
+	 * @param position If non-null, used to record the position of the last element
+	 * handed over to the consumer (or Integer.MAX_VALUE once the iterator has been
+	 * exhausted), as returned by {@link #getFetchedUpTo()}
+	 */
+	public BatchedIteratorPrefetcher(final Iterator<T> it, final int nReadAhead,
+			final @Nullable Closeable closeWhenDone,
+			final Consumer<T> preProcessor,
+			final @Nullable Histogram nReadsInPrefetchQueue,
+			final int batchSize,
+			final @Nullable ToIntFunction<T> position) {
+		if (nReadAhead < 1 || batchSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.closeWhenDone = closeWhenDone;
+		this.batchSize = batchSize;
+		final int nBatches = Math.max(2, (2 * nReadAhead + batchSize - 1) / batchSize);
+		ring = new Object[Integer.highestOneBit(nBatches - 1) << 1][];
+		mask = ring.length - 1;
+
+		Runnable r = () -> {
+			try {
+				Object[] batch = new Object[batchSize];
+				int n = 0;
+				while (it.hasNext()) {
+					final T t = it.next();
+					preProcessor.accept(t);
+					batch[n++] = t;
+					//Hand over a partial batch only if the consumer is starved; once it
+					//has been handed over, keep filling up the next batch until the
+					//consumer has caught up, even if it has not been scheduled yet
+					if (n == batchSize || (consumerParked && tail == head)) {
+						publish(n == batchSize ? batch : trim(batch, n), nReadsInPrefetchQueue,
+							position == null ? Integer.MIN_VALUE : position.applyAsInt(t));
+						batch = new Object[batchSize];
+						n = 0;
+					}
+				}
+				if (n > 0) {
+					@SuppressWarnings("unchecked")
+					final T last = (T) batch[n - 1];
+					publish(trim(batch, n), nReadsInPrefetchQueue,
+						position == null ? Integer.MIN_VALUE : position.applyAsInt(last));
+				}
+				if (position != null) {
+					//Everything there is to decode has been handed over
+					fetchedUpTo = Integer.MAX_VALUE;
+				}
+				iteratorExhausted = true;
+			} catch (InterruptedException e) {
+				//Do nothing; would be caused e.g. by closing of iterator
+				//before it has been exhausted
+			} catch (Throwable t) {
+				exception = new RuntimeException("Problem in iterator prefetcher", t);
+			} finally {
+				wakeUpConsumer();
+				closeCloseable();
+			}
+		};
+		fetchingThread = new Thread(r, "Batched iterator prefetch");
+		fetchingThread.setDaemon(true);
+		fetchingThread.start();
+	}
+
+	private static Object @NonNull[] trim(Object @NonNull[] batch, int n) {
+		final Object[] result = new Object[n];
+		System.arraycopy(batch, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * @param lastPosition Recorded as fetchedUpTo only once the batch is in the ring,
+	 * since publishing may block for an arbitrarily long time while the ring is full
+	 */
+	private void publish(Object @NonNull[] batch, @Nullable Histogram nReadsInPrefetchQueue,
+			int lastPosition) throws InterruptedException {
+		final long t = tail;
+		while (t - head == ring.length) {
+			producerParked = true;
+			if (t - head == ring.length) {
+				LockSupport.park(this);
+			}
+			producerParked = false;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		ring[(int) (t & mask)] = batch;
+		tail = t + 1;
+		fetchedUpTo = lastPosition;
+		if (nReadsInPrefetchQueue != null) {
+			nReadsInPrefetchQueue.insert((int) (t + 1 - head) * batchSize, batch.length);
+		}
+		wakeUpConsumer();
+	}
+
+	private void wakeUpConsumer() {
+		if (consumerParked) {
+			final Thread thread = consumerThread;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	private void checkException() {
+		final RuntimeException e = exception;
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		final Object[] batch = currentBatch;
+		if (batch != null && currentIndex < batch.length) {
+			return true;
+		}
+		checkException();
+		final long h = head;
+		while (tail == h) {
+			if (iteratorExhausted) {
+				//Check again since the last batch may have been published after
+				//the previous check
+				if (tail == h) {
+					checkException();
+					return false;
+				}
+				break;
+			}
+			checkException();
+			consumerThread = Thread.currentThread();
+			consumerParked = true;
+			if (tail == h && !iteratorExhausted && exception == null) {
+				LockSupport.park(this);
+			}
+			consumerParked = false;
+			if (Thread.interrupted()) {
+				throw new RuntimeException(new InterruptedException());
+			}
+		}
+		final int slot = (int) (h & mask);
+		currentBatch = ring[slot];
+		ring[slot] = null;
+		currentIndex = 0;
+		head = h + 1;
+		if (producerParked) {
+			LockSupport.unpark(fetchingThread);
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final Object[] batch = currentBatch;
+		final T result = (T) batch[currentIndex];
+		batch[currentIndex++] = null;
+		return result;
+	}
+
+	/**
+	 * @return Position of the last element that has been handed over (and that may or
+	 * may not have been consumed yet), Integer.MAX_VALUE if all elements have been
+	 * handed over, or Integer.MIN_VALUE if none or if no position function was specified
+	 */
+	public int getFetchedUpTo() {
+		return fetchedUpTo;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeCloseable();//See IteratorPrefetcher::close
+		fetchingThread.interrupt();
+	}
+
+	private void closeCloseable() {
+		Closeable toClose = closeWhenDone;
+		if (toClose != null) {
+			closeWhenDone = null;
+			try {
+				toClose.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,309 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.sequence_IO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.net.sf.picard.reference.ReferenceSequence;
+import contrib.net.sf.picard.reference.ReferenceSequenceFile;
+import contrib.net.sf.picard.reference.ReferenceSequenceFileFactory;
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Reference genome stored with 2 bits per base in a file that is memory-mapped,
+ * so that contigs do not need to be loaded on the heap and so that the pages are
+ * shared between JVMs that analyze the same genome. Lower-case bases are recorded
+ * in a bitmap, and bases other than A, C, G and T (such as N) in a bitmap and a
+ * side table of runs, so that the original FASTA bytes are returned unchanged.
+ * The file is built once from the FASTA file and cached next to it; it is rebuilt
+ * if it is older than the FASTA file.
+ */
+public final class PackedReference {
+
+	private static final Logger logger = LoggerFactory.getLogger(PackedReference.class);
+
+	public static final String CACHE_EXTENSION = ".packedRef";
+
+	private static final long MAGIC = 0x4D75745265663242L;
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 8 + 4 + 8;
+	private static final byte[] DECODE = {'A', 'C', 'G', 'T'};
+
+	private final @NonNull Map<@NonNull String, @NonNull PackedReferenceSequence> sequences;
+
+	private PackedReference(@NonNull Map<@NonNull String, @NonNull PackedReferenceSequence> sequences) {
+		this.sequences = sequences;
+	}
+
+	/**
+	 * @param fastaPath
+	 * @return The packed version of the reference, built and cached next to the FASTA
+	 * file if necessary
+	 */
+	public static @NonNull PackedReference open(@NonNull String fastaPath) {
+		final File fasta = new File(fastaPath);
+		final File packed = new File(fastaPath + CACHE_EXTENSION);
+		if (packed.exists() && packed.lastModified() > fasta.lastModified()) {
+			try {
+				return map(packed);
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Problem reading packed reference " + packed.getAbsolutePath() +
+					"; rebuilding it", e);
+			}
+		}
+		try {
+			build(fasta, packed);
+			return map(packed);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem building packed reference from " + fastaPath, e);
+		}
+	}
+
+	public @Nullable PackedReferenceSequence getSequence(@NonNull String contigName) {
+		return sequences.get(contigName);
+	}
+
+	public @NonNull Map<@NonNull String, @NonNull PackedReferenceSequence> getSequences() {
+		return Collections.unmodifiableMap(sequences);
+	}
+
+	/**
+	 * Write to a temporary file that is then moved into place, so that concurrent
+	 * builds do not see each other's partial output.
+	 */
+	static void build(@NonNull File fasta, @NonNull File packed) throws IOException {
+		logger.info("Building packed reference for " + fasta.getAbsolutePath());
+		final File temp = File.createTempFile(packed.getName(), ".tmp", packed.getAbsoluteFile().getParentFile());
+		try {
+			final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			final DataOutputStream index = new DataOutputStream(indexBytes);
+			final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta);
+			int nContigs = 0;
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.position(HEADER_LENGTH);
+				ReferenceSequence ref;
+				while ((ref = refFile.nextSequence()) != null) {
+					writeContig(channel, index, ref.getName(), ref.getBases());
+					nContigs++;
+				}
+				final long indexOffset = channel.position();
+				index.flush();
+				writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+				header.putLong(MAGIC).putInt(VERSION).putLong(indexOffset).flip();
+				channel.position(0);
+				writeFully(channel, header);
+			}
+			Files.move(temp.toPath(), packed.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			logger.info("Packed " + nContigs + " contigs from " + fasta.getAbsolutePath());
+		} finally {
+			if (temp.exists() && !temp.delete()) {
+				logger.warn("Could not delete " + temp.getAbsolutePath());
+			}
+		}
+	}
+
+	private static void writeContig(FileChannel channel, DataOutputStream index, String name,
+			byte[] bases) throws IOException {
+		final int length = bases.length;
+		final byte[] packedBases = new byte[(length + 3) >>> 2];
+		final byte[] lowerCase = new byte[(length + 7) >>> 3];
+		final byte[] exceptions = new byte[(length + 7) >>> 3];
+		final TIntArrayList runStarts = new TIntArrayList();
+		final TIntArrayList runEnds = new TIntArrayList();
+		final TByteArrayList runValues = new TByteArrayList();
+		for (int i = 0; i < length; i++) {
+			final byte b = bases[i];
+			final int code;
+			switch (b) {
+				case 'A': case 'a': code = 0; break;
+				case 'C': case 'c': code = 1; break;
+				case 'G': case 'g': code = 2; break;
+				case 'T': case 't': code = 3; break;
+				default: code = -1;
+			}
+			if (code < 0) {
+				exceptions[i >>> 3] |= 1 << (i & 7);
+				final int nRuns = runStarts.size();
+				if (nRuns > 0 && runEnds.getQuick(nRuns - 1) == i && runValues.getQuick(nRuns - 1) == b) {
+					runEnds.setQuick(nRuns - 1, i + 1);
+				} else {
+					runStarts.add(i);
+					runEnds.add(i + 1);
+					runValues.add(b);
+				}
+				continue;
+			}
+			packedBases[i >>> 2] |= code << ((i & 3) << 1);
+			if (b >= 'a') {
+				lowerCase[i >>> 3] |= 1 << (i & 7);
+			}
+		}
+		index.writeUTF(name);
+		index.writeInt(length);
+		index.writeLong(channel.position());
+		writeFully(channel, ByteBuffer.wrap(packedBases));
+		writeFully(channel, ByteBuffer.wrap(lowerCase));
+		writeFully(channel, ByteBuffer.wrap(exceptions));
+		index.writeInt(runStarts.size());
+		for (int i = 0; i < runStarts.size(); i++) {
+			index.writeInt(runStarts.getQuick(i));
+			index.writeInt(runEnds.getQuick(i));
+			index.writeByte(runValues.getQuick(i));
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static @NonNull PackedReference map(@NonNull File packed) throws IOException {
+		try (FileChannel channel = FileChannel.open(packed.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("Truncated header");
+				}
+			}
+			header.flip();
+			if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Unrecognized format");
+			}
+			final long indexOffset = header.getLong();
+			final MappedByteBuffer indexBuffer = channel.map(MapMode.READ_ONLY, indexOffset,
+				channel.size() - indexOffset);
+			final byte[] indexBytes = new byte[indexBuffer.remaining()];
+			indexBuffer.get(indexBytes);
+			final DataInputStream index = new DataInputStream(new ByteArrayInputStream(indexBytes));
+			final Map<@NonNull String, @NonNull PackedReferenceSequence> sequences = new LinkedHashMap<>();
+			int contigIndex = 0;
+			while (index.available() > 0) {
+				final String name = index.readUTF();
+				final int length = index.readInt();
+				final long offset = index.readLong();
+				final long bitmapLength = (length + 7) >>> 3;
+				final long packedLength = (length + 3) >>> 2;
+				final MappedByteBuffer data = channel.map(MapMode.READ_ONLY, offset,
+					packedLength + 2 * bitmapLength);
+				final int nRuns = index.readInt();
+				final int[] runStarts = new int[nRuns];
+				final int[] runEnds = new int[nRuns];
+				final byte[] runValues = new byte[nRuns];
+				for (int i = 0; i < nRuns; i++) {
+					runStarts[i] = index.readInt();
+					runEnds[i] = index.readInt();
+					runValues[i] = index.readByte();
+				}
+				sequences.put(name, new PackedReferenceSequence(name, contigIndex++, length, data,
+					(int) packedLength, (int) (packedLength + bitmapLength), runStarts, runEnds, runValues));
+			}
+			return new PackedReference(sequences);
+		}
+	}
+
+	/**
+	 * Read-only view of a contig backed by the mapped file; safe for concurrent use.
+	 */
+	public static final class PackedReferenceSequence extends ReferenceSequence {
+		private final ByteBuffer data;
+		private final int lowerCaseOffset, exceptionsOffset;
+		private final int @NonNull[] runStarts, runEnds;
+		private final byte @NonNull[] runValues;
+
+		PackedReferenceSequence(String name, int contigIndex, int length, ByteBuffer data,
+				int lowerCaseOffset, int exceptionsOffset, int @NonNull[] runStarts,
+				int @NonNull[] runEnds, byte @NonNull[] runValues) {
+			super(name, contigIndex, length);
+			this.data = data;
+			this.lowerCaseOffset = lowerCaseOffset;
+			this.exceptionsOffset = exceptionsOffset;
+			this.runStarts = runStarts;
+			this.runEnds = runEnds;
+			this.runValues = runValues;
+		}
+
+		@Override
+		public byte getBase(int position) {
+			if (position < 0 || position >= length()) {
+				throw new ArrayIndexOutOfBoundsException(position);
+			}
+			final int bit = 1 << (position & 7);
+			if ((data.get(exceptionsOffset + (position >>> 3)) & bit) != 0) {
+				int run = Arrays.binarySearch(runStarts, position);
+				if (run < 0) {
+					run = -run - 2;
+				}
+				if (run < 0 || position >= runEnds[run]) {
+					throw new IllegalStateException("Inconsistent packed reference for " + getName() +
+						" at " + position);
+				}
+				return runValues[run];
+			}
+			final byte b = DECODE[(data.get(position >>> 2) >>> ((position & 3) << 1)) & 3];
+			return (data.get(lowerCaseOffset + (position >>> 3)) & bit) != 0 ? (byte) (b + ('a' - 'A')) : b;
+		}
+
+		@Override
+		public byte[] getBases(int from, int to) {
+			if (from > to) {
+				throw new IllegalArgumentException(from + " > " + to);
+			}
+			final byte[] result = new byte[to - from];
+			for (int i = from; i < to; i++) {
+				result[i - from] = getBase(i);
+			}
+			return result;
+		}
+
+		/**
+		 * Decodes the whole contig onto the heap; prefer {@link #getBase} and
+		 * {@link #getBases(int, int)}
+		 */
+		@Override
+		public byte[] getBases() {
+			return getBases(0, length());
+		}
+	}
+}
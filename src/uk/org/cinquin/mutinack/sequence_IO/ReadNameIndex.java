@@ -0,0 +1,276 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.sequence_IO;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMRecord;
+import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+import uk.org.cinquin.mutinack.candidate_sequences.SAMTranslocationTagParser;
+import uk.org.cinquin.mutinack.misc_util.FileCache;
+
+/**
+ * Maps a hash of read name and first/second of pair flag to the virtual file
+ * offsets of the matching records of a BAM file, so that distant mates and
+ * alternative alignments can be retrieved with a single seek instead of a scan of
+ * all the reads around the expected position. Only reads that can be the target
+ * of such a lookup are indexed, i.e. reads with a record whose mate is on a different
+ * contig, unmapped, or further away than maxInsertSize, or with a record that has a
+ * rearrangement attribute; for those reads, all mapped records with the same name
+ * and first/second of pair flag are indexed (including e.g. secondary alignments),
+ * so that a lookup finds every record a scan would. The index is built in two
+ * passes over the BAM file and cached next to it.
+ */
+public final class ReadNameIndex implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	/**
+	 * Incremented when the set of indexed records changes, so that indexes cached
+	 * by earlier versions are rebuilt
+	 */
+	private static final int FORMAT_VERSION = 2;
+
+	private static final Logger logger = LoggerFactory.getLogger(ReadNameIndex.class);
+
+	public static final String CACHE_EXTENSION = ".readNameIndex";
+
+	/**
+	 * Records whose absolute inferred insert size is at most this are not indexed
+	 */
+	private final int maxInsertSize;
+	private final int formatVersion;
+	/**
+	 * Sorted, with ties ordered by offset
+	 */
+	private final long @NonNull[] keys;
+	private final long @NonNull[] offsets;
+
+	private ReadNameIndex(int maxInsertSize, long @NonNull[] keys, long @NonNull[] offsets) {
+		this.maxInsertSize = maxInsertSize;
+		this.formatVersion = FORMAT_VERSION;
+		this.keys = keys;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Retrieve the index from memory or disk cache, or build it if it does not
+	 * exist, is older than the BAM file, was built for a larger maxInsertSize, or was
+	 * built by a version that indexed a different set of records.
+	 * @param bamFile
+	 * @param maxInsertSize
+	 * @return
+	 */
+	public static @NonNull ReadNameIndex getIndex(@NonNull File bamFile, int maxInsertSize) {
+		final ReadNameIndex result = FileCache.getCached(bamFile.getAbsolutePath(), CACHE_EXTENSION,
+			path -> build(new File(path), maxInsertSize),
+			index -> index.mustRebuild(maxInsertSize));
+		if (result.mustRebuild(maxInsertSize)) {
+			//Index kept in memory was built for another analysis
+			return FileCache.getCached0(bamFile.getAbsolutePath(), CACHE_EXTENSION,
+				path -> build(new File(path), maxInsertSize),
+				index -> index.mustRebuild(maxInsertSize));
+		}
+		return result;
+	}
+
+	private boolean mustRebuild(int maxInsertSize0) {
+		return formatVersion != FORMAT_VERSION || maxInsertSize > maxInsertSize0;
+	}
+
+	static @NonNull ReadNameIndex build(@NonNull File bamFile, int maxInsertSize) {
+		logger.info("Building read name index for " + bamFile.getAbsolutePath());
+		//First pass: find the reads that can be looked up
+		final TLongHashSet targetKeys = new TLongHashSet();
+		try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+			try (SAMRecordIterator it = reader.iterator()) {
+				while (it.hasNext()) {
+					final SAMRecord record = it.next();
+					if (isLookupTarget(record, maxInsertSize)) {
+						targetKeys.add(key(record.getReadName(), record.getFirstOfPairFlag()));
+					}
+				}
+			}
+		}
+		//Second pass: record the offsets of all their mapped records
+		final TLongArrayList keys = new TLongArrayList();
+		final TLongArrayList offsets = new TLongArrayList();
+		try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+			reader.enableFileSource(true);
+			try (SAMRecordIterator it = reader.iterator()) {
+				while (it.hasNext()) {
+					final SAMRecord record = it.next();
+					if (!record.getReadPairedFlag() || record.getReferenceIndex() < 0) {
+						continue;
+					}
+					final long key = key(record.getReadName(), record.getFirstOfPairFlag());
+					if (!targetKeys.contains(key)) {
+						continue;
+					}
+					keys.add(key);
+					offsets.add(record.getFileSource().getVirtualFileOffset());
+				}
+			}
+		}
+		final long[] keyArray = keys.toArray();
+		final long[] offsetArray = offsets.toArray();
+		sort(keyArray, offsetArray, 0, keyArray.length - 1);
+		logger.info("Indexed " + keyArray.length + " reads from " + bamFile.getAbsolutePath());
+		return new ReadNameIndex(maxInsertSize, keyArray, offsetArray);
+	}
+
+	private static boolean isLookupTarget(SAMRecord record, int maxInsertSize) {
+		if (!record.getReadPairedFlag() || record.getReferenceIndex() < 0) {
+			return false;
+		}
+		final int insertSize = record.getInferredInsertSize();
+		return insertSize == 0 || Math.abs(insertSize) > maxInsertSize ||
+			record.getMateUnmappedFlag() ||
+			!record.getReferenceIndex().equals(record.getMateReferenceIndex()) ||
+			SAMTranslocationTagParser.hasRearrangementAttribute(record);
+	}
+
+	static long key(@NonNull String readName, boolean firstOfPair) {
+		//FNV-1a
+		long h = 0xcbf29ce484222325L;
+		final int n = readName.length();
+		for (int i = 0; i < n; i++) {
+			h ^= readName.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return (h << 1) | (firstOfPair ? 1 : 0);
+	}
+
+	/**
+	 * @param readName
+	 * @param firstOfPair
+	 * @return Virtual file offsets of all records that may match, in file order;
+	 * records need to be checked because of hash collisions. If empty, the read was
+	 * not indexed, and may still be present in the BAM file.
+	 */
+	public long @NonNull[] getCandidateOffsets(@NonNull String readName, boolean firstOfPair) {
+		final long key = key(readName, firstOfPair);
+		int index = Arrays.binarySearch(keys, key);
+		if (index < 0) {
+			return new long[0];
+		}
+		while (index > 0 && keys[index - 1] == key) {
+			index--;
+		}
+		int end = index + 1;
+		while (end < keys.length && keys[end] == key) {
+			end++;
+		}
+		return Arrays.copyOfRange(offsets, index, end);
+	}
+
+	/**
+	 * Among the records at the given offsets, find the first one that has the given
+	 * name and first/second of pair flag, is not aligned at avoidAlignmentStart0Based,
+	 * and overlaps positions windowStart to windowEnd (1-based, inclusive) of contig.
+	 * Since offsets are in file order, this is the record a query over that window
+	 * would find first.
+	 * @return null if there is no such record
+	 */
+	public static @Nullable SAMRecord getRecord(@NonNull SAMFileReader bamReader,
+			long @NonNull[] offsets, @NonNull String readName, boolean firstOfPair,
+			@NonNull String contigName, int windowStart, int windowEnd, int avoidAlignmentStart0Based) {
+		for (long offset: offsets) {
+			try (SAMRecordIterator it = bamReader.iterator(offset)) {
+				if (!it.hasNext()) {
+					continue;
+				}
+				final SAMRecord record = it.next();
+				if (record.getReadName().equals(readName) && record.getFirstOfPairFlag() == firstOfPair &&
+						record.getAlignmentStart() - 1 != avoidAlignmentStart0Based &&
+						contigName.equals(record.getReferenceName()) &&
+						record.getAlignmentStart() <= windowEnd &&
+						Math.max(record.getAlignmentStart(), record.getAlignmentEnd()) >= windowStart) {
+					return record;
+				}
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	private static int compare(long @NonNull[] keys, long @NonNull[] offsets, int i, int j) {
+		final int c = Long.compare(keys[i], keys[j]);
+		return c != 0 ? c : Long.compare(offsets[i], offsets[j]);
+	}
+
+	private static void swap(long @NonNull[] keys, long @NonNull[] offsets, int i, int j) {
+		long t = keys[i];
+		keys[i] = keys[j];
+		keys[j] = t;
+		t = offsets[i];
+		offsets[i] = offsets[j];
+		offsets[j] = t;
+	}
+
+	/**
+	 * Sort both arrays by key then offset (quicksort, recursing on smaller part).
+	 */
+	static void sort(long @NonNull[] keys, long @NonNull[] offsets, int from, int to) {
+		while (to - from > 16) {
+			final int mid = (from + to) >>> 1;
+			//Median of three, moved to to
+			if (compare(keys, offsets, mid, from) < 0) {
+				swap(keys, offsets, mid, from);
+			}
+			if (compare(keys, offsets, to, from) < 0) {
+				swap(keys, offsets, to, from);
+			}
+			if (compare(keys, offsets, mid, to) < 0) {
+				swap(keys, offsets, mid, to);
+			}
+			int store = from;
+			for (int i = from; i < to; i++) {
+				if (compare(keys, offsets, i, to) < 0) {
+					swap(keys, offsets, i, store++);
+				}
+			}
+			swap(keys, offsets, store, to);
+			if (store - from < to - store) {
+				sort(keys, offsets, from, store - 1);
+				from = store + 1;
+			} else {
+				sort(keys, offsets, store + 1, to);
+				to = store - 1;
+			}
+		}
+		for (int i = from + 1; i <= to; i++) {
+			for (int j = i; j > from && compare(keys, offsets, j, j - 1) < 0; j--) {
+				swap(keys, offsets, j, j - 1);
+			}
+		}
+	}
+}
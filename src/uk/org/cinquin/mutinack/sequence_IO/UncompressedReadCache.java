@@ -0,0 +1,544 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.sequence_IO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import contrib.net.sf.samtools.BAMRecordCodec;
+import contrib.net.sf.samtools.DefaultSAMRecordFactory;
+import contrib.net.sf.samtools.SAMFileHeader;
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMFileReader.ValidationStringency;
+import contrib.net.sf.samtools.SAMRecord;
+import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.net.sf.samtools.util.CloseableIterator;
+import contrib.uk.org.lidalia.slf4jext.Logger;
+import contrib.uk.org.lidalia.slf4jext.LoggerFactory;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import uk.org.cinquin.mutinack.misc_util.BAMUtil;
+
+/**
+ * Uncompressed copy of the mapped records of a coordinate-sorted BAM file, written
+ * next to it (with extension .uncompressedReads) in one sequential pass and reused by
+ * later runs on the same file, so that these runs do not pay again for BGZF
+ * inflation and BAM parsing. Records are stored in blocks of up to BLOCK_SIZE
+ * records from the same contig; in each block, fixed-size fields are stored column by
+ * column, followed by the concatenated variable-length parts (read name, cigar,
+ * bases, qualities and tags) in BAM binary format, from which records are
+ * reconstructed without any decoding. A directory at the end of the file records
+ * the contig and maximal alignment end of each block, so that blocks that do not
+ * overlap a query can be skipped without being read.
+ *
+ * The cache only contains data that do not depend on analysis parameters, and is
+ * rebuilt when the fingerprint of the BAM file (as computed by
+ * {@link BAMUtil#getBlockHash}) or the format version changes. Unmapped records that
+ * are not placed on a contig are not stored.
+ */
+public final class UncompressedReadCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(UncompressedReadCache.class);
+
+	public static final String CACHE_EXTENSION = ".uncompressedReads";
+
+	private static final long MAGIC = 0x4d_55_54_44_52_43_00_00L;//"MUTDRC"
+	private static final int FORMAT_VERSION = 1;
+	static final int BLOCK_SIZE = 4_096;
+
+	private static final int DIRECTORY_ENTRY_SIZE = 8 + 5 * 4;
+	/**
+	 * Bytes per record for fixed-size columns: coordinate, query end, read length,
+	 * mate reference index, mate coordinate, insert size, variable part length (ints),
+	 * indexing bin, cigar length, flags (shorts), read name length and mapping quality
+	 * (bytes)
+	 */
+	private static final int FIXED_COLUMNS_SIZE = 7 * 4 + 3 * 2 + 2;
+
+	private static final DefaultSAMRecordFactory recordFactory = new DefaultSAMRecordFactory();
+	private static final Map<String, UncompressedReadCache> openCaches = new ConcurrentHashMap<>();
+
+	private final @NonNull File cacheFile;
+	private final @NonNull SAMFileHeader header;
+	private final long @NonNull[] blockOffsets;
+	private final int @NonNull[] blockLengths;
+	private final int @NonNull[] blockContigs;
+	private final int @NonNull[] blockNRecords;
+	private final int @NonNull[] blockMaxQueryEnds;
+
+	private UncompressedReadCache(@NonNull File cacheFile, @NonNull SAMFileHeader header,
+			@NonNull ByteBuffer directory) {
+		this.cacheFile = cacheFile;
+		this.header = header;
+		final int nBlocks = directory.getInt();
+		blockOffsets = new long[nBlocks];
+		blockLengths = new int[nBlocks];
+		blockContigs = new int[nBlocks];
+		blockNRecords = new int[nBlocks];
+		blockMaxQueryEnds = new int[nBlocks];
+		for (int i = 0; i < nBlocks; i++) {
+			blockOffsets[i] = directory.getLong();
+			blockLengths[i] = directory.getInt();
+			blockContigs[i] = directory.getInt();
+			blockNRecords[i] = directory.getInt();
+			directory.getInt();//First alignment start, not used for now
+			blockMaxQueryEnds[i] = directory.getInt();
+		}
+	}
+
+	/**
+	 * Queries of the cache rely on records being sorted by coordinate; this is only
+	 * taken for granted if the header of the BAM file says so.
+	 * @param bamFile
+	 * @return
+	 */
+	public static boolean isCacheable(@NonNull File bamFile) {
+		try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+			return isCacheable(reader.getFileHeader());
+		}
+	}
+
+	private static boolean isCacheable(@NonNull SAMFileHeader header) {
+		return header.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+	}
+
+	/**
+	 * Open the cache for the given BAM file, first building it if it does not
+	 * exist or is stale.
+	 * @param bamFile Must be coordinate-sorted (see {@link #isCacheable})
+	 * @return
+	 */
+	public static @NonNull UncompressedReadCache getCache(@NonNull File bamFile) {
+		final String fingerprint = BAMUtil.getBlockHash(bamFile);
+		final String key;
+		try {
+			key = bamFile.getCanonicalPath() + ':' + fingerprint;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return openCaches.computeIfAbsent(key, k -> {
+			final File cacheFile = new File(bamFile.getPath() + CACHE_EXTENSION);
+			final SAMFileHeader header;
+			try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+				header = reader.getFileHeader();
+			}
+			if (!isCacheable(header)) {
+				throw new IllegalArgumentException("Cannot cache reads of " + bamFile.getAbsolutePath() +
+					", whose header does not declare coordinate sort order");
+			}
+			UncompressedReadCache result = open(cacheFile, fingerprint, header);
+			if (result == null) {
+				build(bamFile, cacheFile, fingerprint);
+				result = open(cacheFile, fingerprint, header);
+				if (result == null) {
+					throw new IllegalStateException("Could not read back " + cacheFile.getAbsolutePath());
+				}
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * @return null if the cache file does not exist, is not readable, or does not
+	 * match fingerprint
+	 */
+	private static @Nullable UncompressedReadCache open(@NonNull File cacheFile, @NonNull String fingerprint,
+			@NonNull SAMFileHeader header) {
+		if (!cacheFile.exists()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer preamble = read(channel, 0, (int) Math.min(channel.size(), 1024));
+			if (preamble.getLong() != MAGIC || preamble.getInt() != FORMAT_VERSION) {
+				logger.info("Ignoring cache file with unknown format " + cacheFile.getAbsolutePath());
+				return null;
+			}
+			final byte[] storedFingerprint = new byte[preamble.getShort()];
+			preamble.get(storedFingerprint);
+			if (!fingerprint.equals(new String(storedFingerprint, StandardCharsets.UTF_8))) {
+				logger.info("Ignoring stale cache file " + cacheFile.getAbsolutePath());
+				return null;
+			}
+			final long directoryOffset = read(channel, channel.size() - 8, 8).getLong();
+			final ByteBuffer directory = read(channel, directoryOffset,
+				(int) (channel.size() - 8 - directoryOffset));
+			return new UncompressedReadCache(cacheFile, header, directory);
+		} catch (IOException | RuntimeException e) {
+			logger.info("Could not read cache file " + cacheFile.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	private static void build(@NonNull File bamFile, @NonNull File cacheFile, @NonNull String fingerprint) {
+		logger.info("Building uncompressed read cache for " + bamFile.getAbsolutePath());
+		//Unique name so that concurrent builds, possibly by different JVMs, do not interfere
+		final File tempFile;
+		try {
+			tempFile = File.createTempFile(cacheFile.getName(), ".tmp",
+				cacheFile.getAbsoluteFile().getParentFile());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not create temporary file for " +
+				cacheFile.getAbsolutePath(), e);
+		}
+		try {
+			write(bamFile, tempFile, fingerprint);
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not create " + cacheFile.getAbsolutePath(), e);
+		} finally {
+			if (tempFile.exists() && !tempFile.delete()) {
+				logger.warn("Could not delete " + tempFile.getAbsolutePath());
+			}
+		}
+	}
+
+	private static void write(@NonNull File bamFile, @NonNull File tempFile, @NonNull String fingerprint)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				SAMFileReader reader = new SAMFileReader(bamFile);
+				SAMRecordIterator it = reader.iterator()) {
+			final byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+			final ByteBuffer preamble = ByteBuffer.allocate(8 + 4 + 2 + fingerprintBytes.length).
+				order(ByteOrder.LITTLE_ENDIAN);
+			preamble.putLong(MAGIC).putInt(FORMAT_VERSION).putShort((short) fingerprintBytes.length).
+				put(fingerprintBytes);
+			preamble.flip();
+			write(channel, preamble);
+
+			final BlockWriter blockWriter = new BlockWriter(channel);
+			while (it.hasNext()) {
+				final SAMRecord record = it.next();
+				if (record.getReferenceIndex() < 0) {
+					continue;
+				}
+				blockWriter.add(record);
+			}
+			blockWriter.flush();
+			blockWriter.writeDirectory();
+		}
+	}
+
+	/**
+	 * End used by BAMFileReader to decide whether a record overlaps a query interval
+	 */
+	private static int getQueryEnd(SAMRecord record) {
+		if (record.getReadUnmappedFlag() && record.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START) {
+			return record.getAlignmentStart();
+		}
+		return record.getAlignmentEnd();
+	}
+
+	private static class BlockWriter {
+		private final FileChannel channel;
+		private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		private final BAMRecordCodec codec = new BAMRecordCodec(null);
+		private final ByteBuffer[] records = new ByteBuffer[BLOCK_SIZE];
+		private final int[] queryEnds = new int[BLOCK_SIZE];
+		private int nRecords = 0;
+		private int blockContig = -1;
+		private final TLongArrayList offsets = new TLongArrayList();
+		private final TIntArrayList directory = new TIntArrayList();
+
+		BlockWriter(FileChannel channel) {
+			this.channel = channel;
+			codec.setOutputStream(encoded);
+		}
+
+		void add(SAMRecord record) throws IOException {
+			final int contig = record.getReferenceIndex();
+			if (nRecords == BLOCK_SIZE || (nRecords > 0 && contig != blockContig)) {
+				flush();
+			}
+			blockContig = contig;
+			encoded.reset();
+			codec.encode(record);
+			records[nRecords] = ByteBuffer.wrap(encoded.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+			queryEnds[nRecords] = getQueryEnd(record);
+			nRecords++;
+		}
+
+		/**
+		 * Records as encoded by BAMRecordCodec: block size, reference index, 0-based
+		 * position, bin_mq_nl, flag_nc, read length, mate reference index, mate 0-based
+		 * position, insert size, variable part.
+		 */
+		void flush() throws IOException {
+			if (nRecords == 0) {
+				return;
+			}
+			int variableSize = 0;
+			int maxQueryEnd = 0;
+			for (int i = 0; i < nRecords; i++) {
+				variableSize += records[i].limit() - 36;
+				maxQueryEnd = Math.max(maxQueryEnd, queryEnds[i]);
+			}
+			final ByteBuffer block = ByteBuffer.allocate(nRecords * FIXED_COLUMNS_SIZE + variableSize).
+				order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].getInt(8) + 1);
+			}
+			block.asIntBuffer().put(queryEnds, 0, nRecords);
+			block.position(block.position() + 4 * nRecords);
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].getInt(20));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].getInt(24));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].getInt(28) + 1);
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].getInt(32));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putInt(records[i].limit() - 36);
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putShort(records[i].getShort(14));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putShort(records[i].getShort(16));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.putShort(records[i].getShort(18));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.put(records[i].get(12));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.put(records[i].get(13));
+			}
+			for (int i = 0; i < nRecords; i++) {
+				block.put(records[i].array(), 36, records[i].limit() - 36);
+			}
+			block.flip();
+			offsets.add(channel.position());
+			directory.add(block.limit());
+			directory.add(blockContig);
+			directory.add(nRecords);
+			directory.add(records[0].getInt(8) + 1);
+			directory.add(maxQueryEnd);
+			write(channel, block);
+			Arrays.fill(records, 0, nRecords, null);
+			nRecords = 0;
+		}
+
+		void writeDirectory() throws IOException {
+			final long directoryOffset = channel.position();
+			final int nBlocks = offsets.size();
+			final ByteBuffer buffer = ByteBuffer.allocate(4 + nBlocks * DIRECTORY_ENTRY_SIZE + 8).
+				order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(nBlocks);
+			for (int i = 0; i < nBlocks; i++) {
+				buffer.putLong(offsets.get(i));
+				for (int j = 0; j < 5; j++) {
+					buffer.putInt(directory.get(i * 5 + j));
+				}
+			}
+			buffer.putLong(directoryOffset);
+			buffer.flip();
+			write(channel, buffer);
+		}
+	}
+
+	/**
+	 * Same records, in the same order, as a BAM query for records overlapping
+	 * [start, end of contig], except for records that are not placed on a contig.
+	 * @param contigIndex
+	 * @param start 1-based
+	 * @return
+	 */
+	public @NonNull CloseableIterator<@NonNull SAMRecord> queryOverlapping(int contigIndex, int start) {
+		return new RecordIterator(contigIndex, start);
+	}
+
+	public int getNBlocks() {
+		return blockOffsets.length;
+	}
+
+	private class RecordIterator implements CloseableIterator<@NonNull SAMRecord> {
+		private final int contigIndex;
+		private final int start;
+		private final FileChannel channel;
+		private final ValidationStringency validationStringency =
+			SAMFileReader.getDefaultValidationStringency();
+		private int blockIndex;
+
+		private @Nullable ByteBuffer block;
+		private int nRecords, recordIndex, variableOffset;
+		private int coordinateColumn, queryEndColumn, readLengthColumn, mateReferenceColumn,
+			mateCoordinateColumn, insertSizeColumn, variableLengthColumn, binColumn, cigarLengthColumn,
+			flagsColumn, readNameLengthColumn, mappingQualityColumn;
+
+		private @Nullable SAMRecord next;
+
+		RecordIterator(int contigIndex, int start) {
+			this.contigIndex = contigIndex;
+			this.start = start;
+			try {
+				channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			int i = Arrays.binarySearch(blockContigs, contigIndex);
+			if (i >= 0) {
+				while (i > 0 && blockContigs[i - 1] == contigIndex) {
+					i--;
+				}
+			} else {
+				i = blockContigs.length;
+			}
+			blockIndex = i;
+		}
+
+		private boolean loadNextBlock() throws IOException {
+			while (blockIndex < blockContigs.length && blockContigs[blockIndex] == contigIndex) {
+				final int i = blockIndex++;
+				if (blockMaxQueryEnds[i] < start) {
+					continue;
+				}
+				final ByteBuffer b = read(channel, blockOffsets[i], blockLengths[i]);
+				final int n = blockNRecords[i];
+				nRecords = n;
+				recordIndex = 0;
+				coordinateColumn = 0;
+				queryEndColumn = coordinateColumn + 4 * n;
+				readLengthColumn = queryEndColumn + 4 * n;
+				mateReferenceColumn = readLengthColumn + 4 * n;
+				mateCoordinateColumn = mateReferenceColumn + 4 * n;
+				insertSizeColumn = mateCoordinateColumn + 4 * n;
+				variableLengthColumn = insertSizeColumn + 4 * n;
+				binColumn = variableLengthColumn + 4 * n;
+				cigarLengthColumn = binColumn + 2 * n;
+				flagsColumn = cigarLengthColumn + 2 * n;
+				readNameLengthColumn = flagsColumn + 2 * n;
+				mappingQualityColumn = readNameLengthColumn + n;
+				variableOffset = mappingQualityColumn + n;
+				block = b;
+				return true;
+			}
+			block = null;
+			return false;
+		}
+
+		private @Nullable SAMRecord computeNext() throws IOException {
+			while (true) {
+				ByteBuffer b = block;
+				if (b == null || recordIndex == nRecords) {
+					if (!loadNextBlock()) {
+						return null;
+					}
+					b = block;
+				}
+				final int i = recordIndex++;
+				final int variableLength = b.getInt(variableLengthColumn + 4 * i);
+				final int offset = variableOffset;
+				variableOffset += variableLength;
+				if (b.getInt(queryEndColumn + 4 * i) < start) {
+					continue;
+				}
+				final byte[] restOfData = Arrays.copyOfRange(b.array(), offset, offset + variableLength);
+				final SAMRecord record = recordFactory.createBAMRecord(header,
+					contigIndex,
+					b.getInt(coordinateColumn + 4 * i),
+					(short) (b.get(readNameLengthColumn + i) & 0xFF),
+					(short) (b.get(mappingQualityColumn + i) & 0xFF),
+					b.getShort(binColumn + 2 * i) & 0xFFFF,
+					b.getShort(cigarLengthColumn + 2 * i) & 0xFFFF,
+					b.getShort(flagsColumn + 2 * i) & 0xFFFF,
+					b.getInt(readLengthColumn + 4 * i),
+					b.getInt(mateReferenceColumn + 4 * i),
+					b.getInt(mateCoordinateColumn + 4 * i),
+					b.getInt(insertSizeColumn + 4 * i),
+					restOfData);
+				record.setHeader(header);
+				record.setValidationStringency(validationStringency);
+				return record;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = computeNext();
+				} catch (IOException e) {
+					throw new UncheckedIOException("Problem reading " + cacheFile.getAbsolutePath(), e);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public @NonNull SAMRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final SAMRecord result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void close() {
+			block = null;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private static @NonNull ByteBuffer read(FileChannel channel, long position, int length)
+			throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at offset " + position);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.sequence_IO;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import contrib.net.sf.picard.reference.FastaSequenceIndex;
+import contrib.net.sf.picard.reference.IndexedFastaSequenceFile;
+import contrib.net.sf.picard.reference.ReferenceSequence;
+
+/**
+ * Gives access to the contigs of an indexed FASTA file without loading them in
+ * full: bases are read on demand in fixed-size windows, so that only the regions
+ * that are actually analyzed are read from disk and held in memory. The windows of
+ * all contigs share a cache whose size is bounded; windows are evicted in
+ * approximate least-recently-used order (CLOCK), so that cache hits do not
+ * require any locking.
+ */
+public final class WindowedReference {
+
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 20;
+	public static final int DEFAULT_MAX_WINDOWS = 256;
+
+	private final @NonNull IndexedFastaSequenceFile refFile;
+	private final @NonNull FastaSequenceIndex index;
+	private final int windowSize;
+	private final int maxWindows;
+	private final Map<String, WindowedReferenceSequence> sequences = new ConcurrentHashMap<>();
+
+	/**
+	 * Guarded by this
+	 */
+	private final List<Window> loaded = new ArrayList<>();
+	private int clockHand = 0;
+
+	public WindowedReference(@NonNull File fasta, int windowSize, int maxWindows)
+			throws FileNotFoundException {
+		if (windowSize < 1 || maxWindows < 1) {
+			throw new IllegalArgumentException("Window size and number of windows must be at least 1");
+		}
+		final File indexFile = new File(fasta.getAbsolutePath() + ".fai");
+		if (!indexFile.exists()) {
+			throw new FileNotFoundException(indexFile.getAbsolutePath() + " not found");
+		}
+		this.index = new FastaSequenceIndex(indexFile);
+		this.refFile = new IndexedFastaSequenceFile(fasta, index);
+		this.windowSize = windowSize;
+		this.maxWindows = maxWindows;
+	}
+
+	public boolean hasSequence(@NonNull String contigName) {
+		return index.hasIndexEntry(contigName);
+	}
+
+	public @NonNull WindowedReferenceSequence getSequence(@NonNull String contigName) {
+		return sequences.computeIfAbsent(contigName, name ->
+			new WindowedReferenceSequence(name, index.getSequenceIndex(name), (int) index.getSize(name)));
+	}
+
+	/**
+	 * Number of windows currently held in memory
+	 */
+	public synchronized int getNLoadedWindows() {
+		return loaded.size();
+	}
+
+	private static final class Window {
+		final WindowedReferenceSequence sequence;
+		final int index;
+		final byte @NonNull[] bases;
+		/**
+		 * Set on access, cleared by the clock hand; races are harmless
+		 */
+		boolean referenced = true;
+
+		Window(WindowedReferenceSequence sequence, int index, byte @NonNull[] bases) {
+			this.sequence = sequence;
+			this.index = index;
+			this.bases = bases;
+		}
+	}
+
+	private synchronized @NonNull Window load(@NonNull WindowedReferenceSequence sequence, int windowIndex) {
+		final Window existing = sequence.windows.get(windowIndex);
+		if (existing != null) {
+			return existing;
+		}
+		while (loaded.size() >= maxWindows) {
+			if (clockHand >= loaded.size()) {
+				clockHand = 0;
+			}
+			final Window candidate = loaded.get(clockHand);
+			if (candidate.referenced) {
+				candidate.referenced = false;
+				clockHand++;
+			} else {
+				candidate.sequence.windows.set(candidate.index, null);
+				loaded.set(clockHand, loaded.get(loaded.size() - 1));
+				loaded.remove(loaded.size() - 1);
+			}
+		}
+		final long start = (long) windowIndex * windowSize;
+		final long end = Math.min(sequence.length(), start + windowSize);
+		final Window window = new Window(sequence, windowIndex,
+			refFile.getSubsequenceAt(sequence.getName(), start + 1, end).getBases());
+		sequence.windows.set(windowIndex, window);
+		loaded.add(window);
+		return window;
+	}
+
+	/**
+	 * Contig view whose bases are fetched through the shared window cache; safe for
+	 * concurrent use.
+	 */
+	public final class WindowedReferenceSequence extends ReferenceSequence {
+		private final AtomicReferenceArray<Window> windows;
+
+		WindowedReferenceSequence(String name, int contigIndex, int length) {
+			super(name, contigIndex, length);
+			windows = new AtomicReferenceArray<>((int) ((length + (long) windowSize - 1) / windowSize));
+		}
+
+		private @NonNull Window getWindow(int windowIndex) {
+			Window window = windows.get(windowIndex);
+			if (window == null) {
+				window = load(this, windowIndex);
+			} else if (!window.referenced) {
+				window.referenced = true;
+			}
+			return window;
+		}
+
+		@Override
+		public byte getBase(int position) {
+			if (position < 0 || position >= length()) {
+				throw new ArrayIndexOutOfBoundsException(position);
+			}
+			final int windowIndex = position / windowSize;
+			return getWindow(windowIndex).bases[position - windowIndex * windowSize];
+		}
+
+		@Override
+		public byte[] getBases(int from, int to) {
+			if (from > to) {
+				throw new IllegalArgumentException(from + " > " + to);
+			}
+			if (from < 0 || to > length()) {
+				throw new ArrayIndexOutOfBoundsException(from < 0 ? from : to);
+			}
+			final byte[] result = new byte[to - from];
+			int position = from;
+			while (position < to) {
+				final int windowIndex = position / windowSize;
+				final int windowStart = windowIndex * windowSize;
+				final int n = Math.min(to, windowStart + windowSize) - position;
+				System.arraycopy(getWindow(windowIndex).bases, position - windowStart, result,
+					position - from, n);
+				position += n;
+			}
+			return result;
+		}
+
+		/**
+		 * Reads the whole contig; prefer {@link #getBase} and {@link #getBases(int, int)}
+		 */
+		@Override
+		public byte[] getBases() {
+			return refFile.getSubsequenceAt(getName(), 1, length()).getBases();
+		}
+	}
+}
@@ -19,17 +19,16 @@ package uk.org.cinquin.mutinack.statistics;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
@@ -112,17 +111,44 @@ public class Counter<T> implements ICounter<T>, Serializable, Actualizable {
 	}
 
 	public void initialize(@NonNull GenomeInterval f) {
-		accept(f, daf -> {}, 0);
+		resolve(f);
 	}
 
 	void acceptVarArgs(long n, @NonNull Object ... indices) {
 		if (on)
-			accept(Arrays.asList(indices), n);
+			acceptVarArgs((double) n, indices);
 	}
 
 	void acceptVarArgs(double d, @NonNull Object ... indices) {
-		if (on)
-			accept(Arrays.asList(indices), d);
+		if (!on)
+			return;
+		Counter<?> counter = this;
+		final int last = indices.length - 1;
+		for (int i = 0; i < last; i++) {
+			counter = (Counter<?>) counter.getOrCreate(indices[i], false);
+		}
+		((DoubleAdderFormatter) counter.getOrCreate(indices[last], true)).add(d);
+	}
+
+	/**
+	 * Same as {@link #acceptVarArgs(double, Object...)} with two integer indices,
+	 * without allocation once the counters for these indices exist
+	 */
+	void acceptInts(double d, int index0, int index1) {
+		if (!on)
+			return;
+		((DoubleAdderFormatter) ((Counter<?>) getOrCreate(index0, false)).getOrCreate(index1, true)).add(d);
+	}
+
+	/**
+	 * Same as {@link #acceptVarArgs(double, Object...)} with one arbitrary index
+	 * followed by two integer indices
+	 */
+	void acceptInts(double d, @NonNull Object index0, int index1, int index2) {
+		if (!on)
+			return;
+		((DoubleAdderFormatter) ((Counter<?>) ((Counter<?>) getOrCreate(index0, false)).
+			getOrCreate(index1, false)).getOrCreate(index2, true)).add(d);
 	}
 
 	@Override
@@ -141,34 +167,88 @@ public class Counter<T> implements ICounter<T>, Serializable, Actualizable {
 		return keyCache.computeIfAbsent(key, k -> k);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void accept(@NonNull Object t, Consumer<DoubleAdderFormatter> action, int offset) {
-		@NonNull Handle<@NonNull Object> index = new Handle<>(t);
-		Handle<Boolean> terminal = new Handle(true);
-		final List<@NonNull Object> list;
-		if (t instanceof List) {
-			list = (List<@NonNull Object>) t;
-			index.set(list.get(offset));
-			terminal.set(offset == list.size() - 1);
-		} else {
-			list = null;
+	/**
+	 * Maximum number of small non-negative integer keys whose counters are also
+	 * kept in an array, so that they can be retrieved without boxing or hashing
+	 */
+	private static final int MAX_DENSE_INDEX = 4_096;
+
+	@JsonIgnore
+	private transient volatile @Nullable AtomicReferenceArray<Object> denseIndex;
+
+	/**
+	 * @return The counter stored under key, which is created if necessary as a
+	 * DoubleAdderFormatter if terminal, and as a Counter otherwise
+	 */
+	private @NonNull Object getOrCreate(@NonNull Object key, boolean terminal) {
+		final Object existing = map.get(key);
+		if (existing != null) {
+			return existing;
 		}
-		Object counter = map.computeIfAbsent(index.get(), i -> {
-			if (terminal.get()) {
-				index.set(getCachedKey(index.get()));
-				return new DoubleAdderFormatter();
-			} else {
-				Counter newCounter = new Counter<>(sortByValue, groupSettings);
-				newCounter.setKeyNamePrintingProcessor(nameProcessors.subList(1, nameProcessors.size()));
-				isMultidimensionalCounter = true;
-				return newCounter;
+		return map.computeIfAbsent(terminal ? getCachedKey(key) : key, k -> newCounter(terminal));
+	}
+
+	private @NonNull Object getOrCreate(int key, boolean terminal) {
+		if (key < 0 || key >= MAX_DENSE_INDEX) {
+			return getOrCreate(Integer.valueOf(key), terminal);
+		}
+		AtomicReferenceArray<Object> dense = denseIndex;
+		if (dense != null && key < dense.length()) {
+			final Object existing = dense.get(key);
+			if (existing != null) {
+				return existing;
 			}
-		});
-		if (terminal.get()) {
-			action.accept((DoubleAdderFormatter) counter);
+		}
+		final Object result = getOrCreate(Integer.valueOf(key), terminal);
+		if (dense == null || key >= dense.length()) {
+			synchronized (this) {
+				dense = denseIndex;
+				if (dense == null || key >= dense.length()) {
+					final AtomicReferenceArray<Object> newDense = new AtomicReferenceArray<>(
+						Math.min(MAX_DENSE_INDEX, Math.max(16, Integer.highestOneBit(key) << 1)));
+					if (dense != null) {
+						for (int i = 0; i < dense.length(); i++) {
+							newDense.set(i, dense.get(i));
+						}
+					}
+					denseIndex = dense = newDense;
+				}
+			}
+		}
+		//Counters are never removed from the map, so there is no risk of caching
+		//a stale one
+		dense.set(key, result);
+		return result;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private @NonNull Object newCounter(boolean terminal) {
+		if (terminal) {
+			return new DoubleAdderFormatter();
 		} else {
-			((Counter<Object>) counter).accept(Objects.requireNonNull(list), action, offset + 1);
+			Counter newCounter = new Counter<>(sortByValue, groupSettings);
+			newCounter.setKeyNamePrintingProcessor(nameProcessors.subList(1, nameProcessors.size()));
+			isMultidimensionalCounter = true;
+			return newCounter;
+		}
+	}
+
+	/**
+	 * @param t If a List, successive elements are used as indices into nested counters
+	 * @return The terminal counter for t, created if necessary
+	 */
+	@SuppressWarnings("unchecked")
+	private @NonNull DoubleAdderFormatter resolve(@NonNull Object t) {
+		if (!(t instanceof List)) {
+			return (DoubleAdderFormatter) getOrCreate(t, true);
+		}
+		final List<@NonNull Object> list = (List<@NonNull Object>) t;
+		Counter<?> counter = this;
+		final int last = list.size() - 1;
+		for (int i = 0; i < last; i++) {
+			counter = (Counter<?>) counter.getOrCreate(list.get(i), false);
 		}
+		return (DoubleAdderFormatter) counter.getOrCreate(list.get(last), true);
 	}
 
 	/* (non-Javadoc)
@@ -178,7 +258,7 @@ public class Counter<T> implements ICounter<T>, Serializable, Actualizable {
 	public void accept(@NonNull Object t, double d) {
 		if (!on)
 				return;
-		accept(t, daf -> daf.add(d), 0);
+		resolve(t).add(d);
 	}
 
 	/* (non-Javadoc)
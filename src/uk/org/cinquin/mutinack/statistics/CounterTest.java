@@ -17,6 +17,7 @@
 
 package uk.org.cinquin.mutinack.statistics;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -57,4 +58,44 @@ public class CounterTest {
 		assertTrue(c.toString().equals(reference));
 	}
 
+	@Test
+	public void testIntIndices() throws InterruptedException {
+		final MutinackGroup group = new MutinackGroup(false);
+		final Counter<Object> ints = new Counter<>(false, group);
+		final Counter<Object> lists = new Counter<>(false, group);
+		final Counter<Object> ints3 = new Counter<>(false, group);
+		final Counter<Object> lists3 = new Counter<>(false, group);
+		for (Counter<Object> c: Arrays.asList(ints, lists, ints3, lists3)) {
+			c.setKeyNamePrintingProcessor(Arrays.asList(null, null, null));
+		}
+		final int[] keys = {0, 1, 15, 16, 17, 1_000, 4_095, 4_096, 100_000, -3};
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1_000; i++) {
+					for (int k: keys) {
+						ints.acceptInts(1d, k, keys[i % keys.length]);
+						ints3.acceptInts(2d, "x", k, 7);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			for (int i = 0; i < 1_000; i++) {
+				for (int k: keys) {
+					lists.accept(Arrays.asList(k, keys[i % keys.length]), 1d);
+					lists3.accept(Arrays.asList("x", k, 7), 2d);
+				}
+			}
+		}
+		assertEquals(lists.sum(), ints.sum(), 0);
+		assertEquals(lists.toString(), ints.toString());
+		assertEquals(lists3.sum(), ints3.sum(), 0);
+		assertEquals(lists3.toString(), ints3.toString());
+	}
+
 }
@@ -48,13 +48,13 @@ public class CounterWithSeqLocOnly extends Counter implements ICounterSeqLoc, Se
 	@Override
 	public void accept(@NonNull SequenceLocation loc) {
 		if (on)
-			super.acceptVarArgs(1d, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
+			super.acceptInts(1d, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
 	}
 
 	@Override
 	public void accept (@NonNull SequenceLocation loc, long n) {
 		if (on)
-			super.acceptVarArgs(n, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
+			super.acceptInts(n, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
 	}
 
 	@Override
@@ -64,12 +64,7 @@ public class CounterWithSeqLocOnly extends Counter implements ICounterSeqLoc, Se
 
 	@Override
 	public void accept(@NonNull SequenceLocation loc, double d) {
-		if (on) {
-			//super.acceptVarArgs(d, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
-			List<Object> l = new ArrayList<>(2);
-			l.add(loc.contigIndex);
-			l.add(loc.position / groupSettings.BIN_SIZE);
-			super.accept(l, d);
-		}
+		if (on)
+			super.acceptInts(d, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
 	}
 }
@@ -48,13 +48,13 @@ public class CounterWithSeqLocOnlyReportAll extends Counter implements ICounterS
 	@Override
 	public void accept(@NonNull SequenceLocation loc) {
 		if (on)
-			super.acceptVarArgs(1d, loc.contigIndex, loc.position);
+			super.acceptInts(1d, loc.contigIndex, loc.position);
 	}
 
 	@Override
 	public void accept (@NonNull SequenceLocation loc, long n) {
 		if (on)
-			super.acceptVarArgs(n, loc.contigIndex, loc.position);
+			super.acceptInts(n, loc.contigIndex, loc.position);
 	}
 
 	@Override
@@ -64,11 +64,7 @@ public class CounterWithSeqLocOnlyReportAll extends Counter implements ICounterS
 
 	@Override
 	public void accept(@NonNull SequenceLocation loc, double d) {
-		if (on) {
-			List<Object> l = new ArrayList<>(2);
-			l.add(loc.contigIndex);
-			l.add(loc.position);
-			super.accept(l, d);
-		}
+		if (on)
+			super.acceptInts(d, loc.contigIndex, loc.position);
 	}
 }
@@ -51,6 +51,6 @@ public class CounterWithSeqLocation<T> extends Counter<T> implements Serializabl
 	}
 
 	public void accept(SequenceLocation loc, @NonNull Object o) {
-		super.acceptVarArgs(1d, o, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
+		super.acceptInts(1d, o, loc.contigIndex, loc.position / groupSettings.BIN_SIZE);
 	}
 }
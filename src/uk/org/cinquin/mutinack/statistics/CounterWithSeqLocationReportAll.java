@@ -51,6 +51,6 @@ public class CounterWithSeqLocationReportAll<T> extends Counter<T> implements Se
 	}
 
 	public void accept(SequenceLocation loc, @NonNull Object o) {
-		super.acceptVarArgs(1d, o, loc.contigIndex, loc.position);
+		super.acceptInts(1d, o, loc.contigIndex, loc.position);
 	}
 }
@@ -69,6 +69,7 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 
 	@Override
 	public String toString() {
+		mergeShards();
 		double nEntriesAsD = 0;
 		boolean medianSet = false;
 		float medianAsF = Float.NaN;
@@ -96,6 +97,7 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 	}
 
 	public double @NonNull[] toProbabilityArray(boolean smoothen, boolean useMaxSize) {
+		mergeShards();
 		final double @NonNull[] result = new double[useMaxSize ? maxSize : size()];
 
 		for (int i = size() - 1; i >= 0; i--) {
@@ -121,8 +123,19 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 	public void insert(int value, long count) {
 		if (!on)
 			return;
-		sum.add(value * count);
-		value = Math.min(value, maxSize - 1);
+		addToSum(value * count);
+		addToBin(Math.min(value, maxSize - 1), count);
+	}
+
+	protected final int getMaxSize() {
+		return maxSize;
+	}
+
+	protected final void addToSum(long value) {
+		sum.add(value);
+	}
+
+	protected final void addToBin(int value, long count) {
 		if (size() < value + 1) {
 			synchronized(this) {
 				while (size() < value + 1) {
@@ -145,6 +158,13 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 		insert(value, 1);
 	}
 
+	/**
+	 * Make counts recorded by subclasses outside of the list visible; must be called
+	 * before the list is read directly. No-op for this class.
+	 */
+	public void mergeShards() {
+	}
+
 	@Override
 	public void turnOff() {
 		on = false;
@@ -162,6 +182,7 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 
 	@Override
 	public void actualize() {
+		mergeShards();
 		double nEntries0 = 0;
 		boolean medianSet = false;
 		float median0 = Float.NaN;
@@ -232,6 +253,7 @@ public class Histogram extends ArrayList<LongAdderFormatter>
 	}
 
 	public XYChart getChart() {
+		mergeShards();
 		return QuickChart.getChart("sample", "x", "Frequency", "Series 1",
 			DoubleStream.iterate(0, d -> d + 1).limit(size()).toArray(), this.stream().
 			mapToDouble(LongAdder::sum).toArray());
@@ -0,0 +1,141 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.statistics;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import uk.org.cinquin.mutinack.SequenceLocation;
+import uk.org.cinquin.mutinack.features.BedComplement;
+import uk.org.cinquin.mutinack.misc_util.SerializablePredicate;
+
+/**
+ * Memoizes the results of location predicates that are shared by several
+ * {@link MultiCounter}s, so that e.g. a BED file is queried once per position
+ * instead of once per counter. Each thread keeps the membership bitmasks of the
+ * few positions it has most recently tested; since counters are updated position
+ * by position, this captures nearly all repeated tests. Results are assumed not
+ * to change for a given location.
+ */
+public final class LocationPredicateCache implements Serializable {
+
+	private static final long serialVersionUID = -2430262185453290478L;
+
+	private static final int N_SLOTS = 16;
+
+	private final List<@NonNull SerializablePredicate<SequenceLocation>> predicates =
+		new CopyOnWriteArrayList<>();
+	private transient ThreadLocal<Slots> slots = ThreadLocal.withInitial(Slots::new);
+
+	private static final class Slots {
+		final long[] keys = new long[N_SLOTS];
+		final boolean[] used = new boolean[N_SLOTS];
+		long[][] computed = new long[N_SLOTS][1];
+		long[][] values = new long[N_SLOTS][1];
+
+		void ensureCapacity(int nWords) {
+			if (computed[0].length >= nWords) {
+				return;
+			}
+			for (int i = 0; i < N_SLOTS; i++) {
+				computed[i] = Arrays.copyOf(computed[i], nWords);
+				values[i] = Arrays.copyOf(values[i], nWords);
+			}
+		}
+	}
+
+	/**
+	 * @param predicate
+	 * @return A predicate that gives the same results as predicate, but that shares
+	 * them with all other predicates returned by this cache for the same object (or
+	 * for the complement of the same object, in the case of {@link BedComplement})
+	 */
+	public synchronized @NonNull SerializablePredicate<SequenceLocation> cached(
+			@NonNull SerializablePredicate<SequenceLocation> predicate) {
+		final boolean negate = predicate instanceof BedComplement;
+		final SerializablePredicate<SequenceLocation> target = negate ?
+			((BedComplement) predicate).getFeatureSet()
+		:
+			predicate;
+		int index = -1;
+		for (int i = 0; i < predicates.size(); i++) {
+			if (predicates.get(i) == target) {
+				index = i;
+				break;
+			}
+		}
+		if (index == -1) {
+			index = predicates.size();
+			predicates.add(target);
+		}
+		return new CachedPredicate(this, index, negate);
+	}
+
+	boolean test(int index, @NonNull SequenceLocation location) {
+		final long key = location.toLong();
+		final Slots s = slots.get();
+		final int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 60);
+		final int word = index >>> 6;
+		final long bit = 1L << index;
+		s.ensureCapacity(word + 1);
+		final long[] computed = s.computed[slot];
+		if (!s.used[slot] || s.keys[slot] != key) {
+			s.used[slot] = true;
+			s.keys[slot] = key;
+			Arrays.fill(computed, 0);
+		} else if ((computed[word] & bit) != 0) {
+			return (s.values[slot][word] & bit) != 0;
+		}
+		final boolean result = predicates.get(index).test(location);
+		computed[word] |= bit;
+		if (result) {
+			s.values[slot][word] |= bit;
+		} else {
+			s.values[slot][word] &= ~bit;
+		}
+		return result;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		slots = ThreadLocal.withInitial(Slots::new);
+	}
+
+	private static final class CachedPredicate implements SerializablePredicate<SequenceLocation> {
+		private static final long serialVersionUID = 5166009766806016453L;
+		private final @NonNull LocationPredicateCache cache;
+		private final int index;
+		private final boolean negate;
+
+		CachedPredicate(@NonNull LocationPredicateCache cache, int index, boolean negate) {
+			this.cache = cache;
+			this.index = index;
+			this.negate = negate;
+		}
+
+		@Override
+		public boolean test(SequenceLocation location) {
+			return cache.test(index, location) != negate;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.junit.Test;
+
+import uk.org.cinquin.mutinack.SequenceLocation;
+import uk.org.cinquin.mutinack.features.BedComplement;
+import uk.org.cinquin.mutinack.features.GenomeFeatureTester;
+import uk.org.cinquin.mutinack.features.GenomeInterval;
+
+@SuppressWarnings("static-method")
+public class LocationPredicateCacheTest {
+
+	private static class CountingTester implements GenomeFeatureTester {
+		private static final long serialVersionUID = 1L;
+		final AtomicInteger nTests = new AtomicInteger();
+
+		@Override
+		public boolean test(SequenceLocation loc) {
+			nTests.incrementAndGet();
+			return loc.position % 3 == 0;
+		}
+
+		@Override
+		public @NonNull Collection<@NonNull GenomeInterval> apply(SequenceLocation loc) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public @NonNull Optional<Boolean> getNegativeStrand(SequenceLocation loc) {
+			return Optional.empty();
+		}
+	}
+
+	@Test
+	public void testSharedResults() {
+		final LocationPredicateCache cache = new LocationPredicateCache();
+		final CountingTester tester = new CountingTester();
+		final Predicate<SequenceLocation> p1 = cache.cached(tester);
+		final Predicate<SequenceLocation> p2 = cache.cached(tester);
+		final Predicate<SequenceLocation> notP = cache.cached(new BedComplement(tester));
+		final Predicate<SequenceLocation> other = cache.cached(l -> l.position < 50);
+
+		for (int i = 0; i < 100; i++) {
+			final SequenceLocation loc = new SequenceLocation("test", 0, "chr1", i);
+			final boolean expected = i % 3 == 0;
+			for (int j = 0; j < 3; j++) {
+				assertEquals(expected, p1.test(loc));
+				assertEquals(expected, p2.test(loc));
+				assertEquals(!expected, notP.test(loc));
+				assertEquals(i < 50, other.test(loc));
+			}
+		}
+		assertEquals(100, tester.nTests.get());
+
+		//Results must not leak between contigs or half positions
+		final SequenceLocation loc = new SequenceLocation("test", 1, "chr2", 3);
+		assertEquals(true, p1.test(loc));
+		assertEquals(true, p1.test(new SequenceLocation("test", 1, "chr2", 3, true)));
+		assertEquals(102, tester.nTests.get());
+	}
+}
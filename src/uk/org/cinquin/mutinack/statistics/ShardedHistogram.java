@@ -0,0 +1,125 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.statistics;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import uk.org.cinquin.mutinack.output.json.HistogramSerializer;
+
+/**
+ * {@link Histogram} for metrics that are updated very frequently from many threads.
+ * Each thread records its insertions in its own array of primitive counts, which
+ * avoids contention on the shared {@link LongAdderFormatter} bins; shards are
+ * merged into the list when the histogram is read through {@link #actualize},
+ * {@link #toString}, serialization or {@link #mergeShards}. Values larger than
+ * maxSize - 1 are counted in the last bin, as in {@link Histogram}.
+ */
+@JsonSerialize(using = HistogramSerializer.class)
+public class ShardedHistogram extends Histogram {
+
+	private static final long serialVersionUID = 2412286412386312839L;
+
+	private static final int INITIAL_SHARD_SIZE = 64;
+
+	private static final class Shard {
+		/**
+		 * Only written by the thread that owns the shard
+		 */
+		volatile long[] bins;
+		long sum;
+		/**
+		 * Only accessed while holding the histogram lock
+		 */
+		long[] merged = new long[0];
+		long mergedSum;
+
+		Shard(int size) {
+			bins = new long[size];
+		}
+	}
+
+	private transient Queue<Shard> shards;
+	private transient ThreadLocal<Shard> localShard;
+
+	public ShardedHistogram(int maxSize) {
+		super(maxSize, 0);
+		initShards();
+	}
+
+	private void initShards() {
+		shards = new ConcurrentLinkedQueue<>();
+		localShard = ThreadLocal.withInitial(() -> {
+			final Shard shard = new Shard(Math.min(INITIAL_SHARD_SIZE, getMaxSize()));
+			shards.add(shard);
+			return shard;
+		});
+	}
+
+	@Override
+	public void insert(int value, long count) {
+		if (!on)
+			return;
+		final Shard shard = localShard.get();
+		shard.sum += value * count;
+		final int bin = Math.min(value, getMaxSize() - 1);
+		long[] bins = shard.bins;
+		if (bin >= bins.length) {
+			bins = Arrays.copyOf(bins, (int) Math.min(getMaxSize(),
+				Math.max(bin + 1L, 2L * bins.length)));
+			shard.bins = bins;
+		}
+		bins[bin] += count;
+	}
+
+	@Override
+	public synchronized void mergeShards() {
+		for (Shard shard: shards) {
+			final long[] bins = shard.bins;
+			if (shard.merged.length < bins.length) {
+				shard.merged = Arrays.copyOf(shard.merged, bins.length);
+			}
+			for (int i = bins.length - 1; i >= 0; i--) {
+				final long delta = bins[i] - shard.merged[i];
+				if (delta > 0) {
+					addToBin(i, delta);
+					shard.merged[i] += delta;
+				}
+			}
+			final long sum = shard.sum;
+			if (sum != shard.mergedSum) {
+				addToSum(sum - shard.mergedSum);
+				shard.mergedSum = sum;
+			}
+		}
+	}
+
+	private Object writeReplace() {
+		mergeShards();
+		return this;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initShards();
+	}
+}
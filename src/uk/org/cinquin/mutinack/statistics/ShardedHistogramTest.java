@@ -0,0 +1,64 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class ShardedHistogramTest {
+
+	@Test
+	public void testSameAsHistogram() throws Exception {
+		final Histogram reference = new Histogram(100);
+		final Histogram sharded = new ShardedHistogram(100);
+		IntStream.range(0, 100_000).parallel().forEach(i -> {
+			reference.insert(i % 150, 2);
+			sharded.insert(i % 150, 2);
+		});
+		assertEquals(reference.toString(), sharded.toString());
+
+		sharded.insert(3);
+		reference.insert(3);
+		reference.actualize();
+		sharded.actualize();
+		assertEquals(reference.average, sharded.average);
+		assertEquals(reference.nEntries, sharded.nEntries);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+			sharded.insert(200);
+			os.writeObject(sharded);
+		}
+		reference.insert(200);
+		try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			final Histogram read = (Histogram) is.readObject();
+			assertEquals(reference.toString(), read.toString());
+			read.insert(5);
+			reference.insert(5);
+			assertEquals(reference.toString(), read.toString());
+		}
+	}
+}
@@ -19,6 +19,7 @@ public class HistogramSumCollector implements Collector<Histogram, Histogram, Hi
 	}
 
 	private BiConsumer<Histogram, Histogram> addToLeft = (Histogram accumulator, Histogram value) -> {
+		value.mergeShards();
 		for(int i = value.size() - 1; i >= 0; i--) {
 			accumulator.insert(i, value.get(i).sum());
 		}
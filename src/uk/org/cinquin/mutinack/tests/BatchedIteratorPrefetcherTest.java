@@ -0,0 +1,213 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import uk.org.cinquin.mutinack.sequence_IO.BatchedIteratorPrefetcher;
+
+@SuppressWarnings("static-method")
+public class BatchedIteratorPrefetcherTest {
+
+	private static final int BATCH_SIZE = 4;
+	private static final int N_ELEMENTS = 1_000;
+
+	/**
+	 * Returns 0, 1, 2, ... and counts the elements that have been fetched
+	 */
+	private static class CountingIterator implements Iterator<Integer> {
+		final AtomicInteger nFetched = new AtomicInteger();
+
+		@Override
+		public boolean hasNext() {
+			return nFetched.get() < N_ELEMENTS;
+		}
+
+		@Override
+		public Integer next() {
+			return nFetched.getAndIncrement();
+		}
+	}
+
+	/**
+	 * With a read-ahead of 1, the ring holds 2 batches; once it is full, the fetching
+	 * thread fills up a third batch and blocks trying to publish it. Elements of that
+	 * third batch have not been handed over and must not be counted as fetched.
+	 */
+	@Test
+	public void testFetchedUpToWhenRingFull() throws Exception {
+		final CountingIterator it = new CountingIterator();
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(it, 1,
+				null, i -> {}, null, BATCH_SIZE, Integer::intValue)) {
+			final long deadline = System.currentTimeMillis() + 10_000;
+			while (it.nFetched.get() < 3 * BATCH_SIZE && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(3 * BATCH_SIZE, it.nFetched.get());
+			//Give the fetching thread time to get to the point where it blocks
+			Thread.sleep(200);
+			assertEquals(3 * BATCH_SIZE, it.nFetched.get());
+			assertEquals(2 * BATCH_SIZE - 1, prefetcher.getFetchedUpTo());
+
+			//Take the first batch out of the ring, which frees up a slot for the third
+			//batch; the fetching thread then blocks again with a fourth batch
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				assertTrue(prefetcher.hasNext());
+				assertEquals(i, (int) prefetcher.next());
+			}
+			while (it.nFetched.get() < 4 * BATCH_SIZE && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(200);
+			assertEquals(4 * BATCH_SIZE, it.nFetched.get());
+			assertEquals(3 * BATCH_SIZE - 1, prefetcher.getFetchedUpTo());
+		}
+	}
+
+	@Test
+	public void testAllElementsInOrder() throws Exception {
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(
+				new CountingIterator(), 10, null, i -> {}, null, BATCH_SIZE, Integer::intValue)) {
+			for (int i = 0; i < N_ELEMENTS; i++) {
+				assertTrue(prefetcher.hasNext());
+				final int element = prefetcher.next();
+				assertEquals(i, element);
+				assertTrue(prefetcher.getFetchedUpTo() >= element);
+			}
+			assertFalse(prefetcher.hasNext());
+			assertEquals(Integer.MAX_VALUE, prefetcher.getFetchedUpTo());
+		}
+	}
+
+	@Test
+	public void testPreProcessorAndCloseWhenDone() throws Exception {
+		final List<Integer> preProcessed = new ArrayList<>();
+		final AtomicBoolean closed = new AtomicBoolean();
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(
+				new CountingIterator(), 10, () -> closed.set(true), preProcessed::add, null)) {
+			int n = 0;
+			while (prefetcher.hasNext()) {
+				assertEquals(n++, (int) prefetcher.next());
+			}
+			assertEquals(N_ELEMENTS, n);
+			//The fetching thread only closes closeWhenDone after signaling that the
+			//iterator is exhausted
+			final long deadline = System.nanoTime() + 10_000_000_000L;
+			while (!closed.get() && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertTrue(closed.get());
+			//Written by the fetching thread before it published the last batch
+			assertEquals(N_ELEMENTS, preProcessed.size());
+		}
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testNextPastEnd() throws Exception {
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(
+				new ArrayList<Integer>().iterator(), 10, null, i -> {}, null)) {
+			assertFalse(prefetcher.hasNext());
+			prefetcher.next();
+		}
+	}
+
+	/**
+	 * Elements that the underlying iterator produces slowly should be handed over one
+	 * by one rather than waiting for a batch to fill up
+	 */
+	@Test(timeout = 10_000)
+	public void testPartialBatchesWhenIteratorSlow() throws Exception {
+		final Iterator<Integer> slow = new CountingIterator() {
+			@Override
+			public Integer next() {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return super.next();
+			}
+		};
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(slow, 100,
+				null, i -> {}, null, 1_000, null)) {
+			for (int i = 0; i < 20; i++) {
+				assertTrue(prefetcher.hasNext());
+				assertEquals(i, (int) prefetcher.next());
+			}
+		}
+	}
+
+	@Test
+	public void testExceptionPropagated() throws Exception {
+		final RuntimeException cause = new IllegalStateException();
+		final Iterator<Integer> failing = new CountingIterator() {
+			@Override
+			public Integer next() {
+				final int i = super.next();
+				if (i == 10) {
+					throw cause;
+				}
+				return i;
+			}
+		};
+		try (BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(failing, 100,
+				null, i -> {}, null, BATCH_SIZE)) {
+			int n = 0;
+			try {
+				while (prefetcher.hasNext()) {
+					assertEquals(n++, (int) prefetcher.next());
+				}
+				throw new AssertionError("Exception not propagated");
+			} catch (RuntimeException e) {
+				assertSame(cause, e.getCause());
+			}
+			assertTrue(n <= 10);
+		}
+	}
+
+	/**
+	 * Closing the prefetcher while the fetching thread is blocked on a full ring
+	 * should stop the fetching thread and close the underlying resource
+	 */
+	@Test(timeout = 10_000)
+	public void testCloseWhileRingFull() throws Exception {
+		final CountingIterator it = new CountingIterator();
+		final AtomicBoolean closed = new AtomicBoolean();
+		final BatchedIteratorPrefetcher<Integer> prefetcher = new BatchedIteratorPrefetcher<>(it, 1,
+			() -> closed.set(true), i -> {}, null, BATCH_SIZE);
+		while (it.nFetched.get() < 3 * BATCH_SIZE) {
+			Thread.sleep(1);
+		}
+		prefetcher.close();
+		assertTrue(closed.get());
+		Thread.sleep(200);
+		assertEquals(3 * BATCH_SIZE, it.nFetched.get());
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import contrib.net.sf.samtools.util.BlockCompressedInputStream;
+import contrib.net.sf.samtools.util.BlockCompressedOutputStream;
+
+public class BlockCompressedReadAheadTest {
+
+	private static final int FILE_LENGTH = 3_000_000;
+	private static final int READ_LENGTH = 10_007;
+
+	private static File file;
+	private static byte[] content;
+	/**
+	 * Virtual file offsets before each read of READ_LENGTH bytes, as reported without
+	 * read-ahead
+	 */
+	private static long[] offsets;
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void writeFile() throws IOException {
+		executor = Executors.newFixedThreadPool(3);
+		file = File.createTempFile("BlockCompressedReadAheadTest", ".bgzf");
+		file.deleteOnExit();
+		content = new byte[FILE_LENGTH];
+		final Random random = new Random(0);
+		//Only partly compressible, so that the file has many blocks
+		for (int i = 0; i < FILE_LENGTH; i++) {
+			content[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 'A' + i % 7);
+		}
+		try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(file)) {
+			os.write(content);
+		}
+		assertTrue(file.length() > 20 * 65_536);
+
+		offsets = new long[FILE_LENGTH / READ_LENGTH + 1];
+		try (BlockCompressedInputStream is = new BlockCompressedInputStream(file)) {
+			//getFilePointer cannot be called before the first block is read
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = i == 0 ? 0 : is.getFilePointer();
+				final byte[] buffer = new byte[READ_LENGTH];
+				readFully(is, buffer);
+			}
+		}
+	}
+
+	@AfterClass
+	public static void shutDown() {
+		executor.shutdownNow();
+	}
+
+	private static int readFully(BlockCompressedInputStream is, byte[] buffer) throws IOException {
+		int total = 0;
+		while (total < buffer.length) {
+			final int n = is.read(buffer, total, buffer.length - total);
+			if (n < 0) {
+				break;
+			}
+			total += n;
+		}
+		return total;
+	}
+
+	private static void checkSequentialRead(BlockCompressedInputStream is) throws IOException {
+		for (int i = 0; i < offsets.length; i++) {
+			if (i > 0) {
+				assertEquals(offsets[i], is.getFilePointer());
+			}
+			final byte[] buffer = new byte[READ_LENGTH];
+			final int n = readFully(is, buffer);
+			final int expectedLength = Math.min(READ_LENGTH, FILE_LENGTH - i * READ_LENGTH);
+			assertEquals(expectedLength, n);
+			for (int j = 0; j < n; j++) {
+				assertEquals(content[i * READ_LENGTH + j], buffer[j]);
+			}
+		}
+		assertEquals(-1, is.read());
+	}
+
+	@Test
+	public void testSequentialRead() throws IOException {
+		try (BlockCompressedInputStream is = new BlockCompressedInputStream(file)) {
+			checkSequentialRead(is);
+		}
+		for (int nBlocks: new int[] {1, 2, 8, 100}) {
+			try (BlockCompressedInputStream is = new BlockCompressedInputStream(file)) {
+				is.setReadAhead(executor, nBlocks);
+				checkSequentialRead(is);
+			}
+		}
+	}
+
+	/**
+	 * Seeks within blocks already read ahead, beyond them, and backwards, turning
+	 * read-ahead on and off along the way; bytes read and virtual offsets after each
+	 * read should be the same as without read-ahead
+	 */
+	@Test
+	public void testSeeks() throws IOException {
+		final Random random = new Random(1);
+		try (BlockCompressedInputStream reference = new BlockCompressedInputStream(file);
+				BlockCompressedInputStream is = new BlockCompressedInputStream(file)) {
+			is.setReadAhead(executor, 4);
+			int index = 0;
+			for (int i = 0; i < 500; i++) {
+				final int r = random.nextInt(10);
+				if (r < 4) {
+					index = Math.min(offsets.length - 1, index + 1 + random.nextInt(3));
+				} else if (r < 6) {
+					index = Math.min(offsets.length - 1, index + random.nextInt(50));
+				} else if (r < 8) {
+					index = random.nextInt(offsets.length);
+				} else if (r == 8) {
+					is.setReadAhead(executor, random.nextBoolean() ? 0 : 1 + random.nextInt(10));
+				}
+				reference.seek(offsets[index]);
+				is.seek(offsets[index]);
+				assertEquals(offsets[index], is.getFilePointer());
+				final byte[] expected = new byte[1 + random.nextInt(3 * READ_LENGTH)];
+				final byte[] actual = new byte[expected.length];
+				assertEquals(readFully(reference, expected), readFully(is, actual));
+				assertArrayEquals(expected, actual);
+				assertEquals(reference.getFilePointer(), is.getFilePointer());
+			}
+		}
+	}
+
+	/**
+	 * When the executor is busy and its queue is full, blocks are inflated by the
+	 * reading thread
+	 */
+	@Test
+	public void testSaturatedExecutor() throws Exception {
+		final ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(1));
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			saturated.execute(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			try (BlockCompressedInputStream is = new BlockCompressedInputStream(file)) {
+				is.setReadAhead(saturated, 8);
+				checkSequentialRead(is);
+			}
+		} finally {
+			release.countDown();
+			saturated.shutdown();
+		}
+	}
+}
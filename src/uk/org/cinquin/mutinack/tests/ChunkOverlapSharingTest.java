@@ -0,0 +1,53 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class ChunkOverlapSharingTest {
+
+	/**
+	 * The analyzed region is split into 4 chunks that run concurrently; whether each
+	 * chunk gets the records it needs to finish up from the chunk on its right or
+	 * from its own iterator, it should see the same records in the same order.
+	 */
+	@Test
+	public void testSharedSameAsUnshared() throws Exception {
+		final List<String> unshared = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-parallelizationFactor", "4", "-verbosity", "1");
+		final List<String> shared = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-parallelizationFactor", "4", "-verbosity", "1",
+			"-shareChunkOverlapReads", "true");
+
+		assertEquals(0, FixtureRunHelper.getStatisticTotal(unshared, "nRecordsSharedByChunkOverlap"));
+		assertTrue(FixtureRunHelper.getStatisticTotal(shared, "nRecordsSharedByChunkOverlap") > 0);
+
+		final List<String> calls = FixtureRunHelper.getMutationCalls(unshared);
+		assertFalse(calls.isEmpty());
+		assertEquals(calls, FixtureRunHelper.getMutationCalls(shared));
+		assertEquals(FixtureRunHelper.withoutRunDependentOutput(unshared, "nRecordsSharedByChunkOverlap"),
+			FixtureRunHelper.withoutRunDependentOutput(shared, "nRecordsSharedByChunkOverlap"));
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMRecord;
+
+@SuppressWarnings("static-method")
+public class ConcurrentPositionExaminationTest {
+
+	/**
+	 * With these settings the analyzed region is divided into 6 blocks that are
+	 * examined concurrently. Reported locations and the duplex information written
+	 * to the output BAM (including duplex issues and qualities, which accumulate over
+	 * the positions a duplex covers) should be identical to sequential examination.
+	 */
+	@Test
+	public void testConcurrentSameAsSequential() throws Exception {
+		final Path dir = Files.createTempDirectory("concurrent_examination_test_");
+		try {
+			final String sequentialBam = dir.resolve("sequential.bam").toString();
+			final String concurrentBam = dir.resolve("concurrent.bam").toString();
+			final List<String> sequential = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-verbosity", "1", "-outputAlignmentFile", sequentialBam);
+			final List<String> concurrent = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-verbosity", "1", "-outputAlignmentFile", concurrentBam,
+				"-concurrentPositionExamination", "true");
+
+			assertEquals(0, FixtureRunHelper.getStatisticTotal(sequential, "nPosExaminedConcurrently"));
+			assertTrue(FixtureRunHelper.getStatisticTotal(concurrent, "nPosExaminedConcurrently") > 0);
+
+			final List<String> calls = FixtureRunHelper.getMutationCalls(sequential);
+			assertFalse(calls.isEmpty());
+			assertEquals(calls, FixtureRunHelper.getMutationCalls(concurrent));
+			assertEquals(FixtureRunHelper.withoutRunDependentOutput(sequential, "nPosExaminedConcurrently"),
+				FixtureRunHelper.withoutRunDependentOutput(concurrent, "nPosExaminedConcurrently"));
+
+			final List<String> sequentialRecords = readRecords(sequentialBam);
+			assertFalse(sequentialRecords.isEmpty());
+			assertEquals(sequentialRecords, readRecords(concurrentBam));
+		} finally {
+			FileUtils.deleteQuietly(dir.toFile());
+		}
+	}
+
+	/**
+	 * @return SAM representation of all records, in sorted order since the order in
+	 * which reads are written depends on the order in which duplexes are processed
+	 */
+	private static List<String> readRecords(String bam) throws IOException {
+		final List<String> result = new ArrayList<>();
+		try (SAMFileReader reader = new SAMFileReader(new File(bam))) {
+			for (SAMRecord rec: reader) {
+				//Duplex names are derived from object identity hash codes
+				rec.setAttribute("DN", null);
+				result.add(rec.getSAMString());
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
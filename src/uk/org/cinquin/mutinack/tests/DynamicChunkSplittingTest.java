@@ -0,0 +1,59 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class DynamicChunkSplittingTest {
+
+	/**
+	 * The analyzed region is about 2,750 positions long, so with these settings the
+	 * initial chunk hands off its tail at the end of its first step (and the handed-off
+	 * tail is itself too short to be split again). Records and duplexes that straddle
+	 * the split point are counted by both chunks, as happens with static splitting,
+	 * so only position-level statistics are expected to be identical.
+	 */
+	@Test
+	public void testSplitSameAsUnsplit() throws Exception {
+		final List<String> unsplit = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-verbosity", "1");
+		final List<String> split = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-verbosity", "1",
+			"-dynamicChunkSplitting", "true",
+			"-minDynamicSplitSpan", "100",
+			"-maxDynamicSplitRunningChunks", "8");
+
+		assertEquals(0, FixtureRunHelper.getStatisticTotal(unsplit, "nChunkTailsHandedOff"));
+		assertTrue(FixtureRunHelper.getStatisticTotal(split, "nChunkTailsHandedOff") > 0);
+
+		final List<String> calls = FixtureRunHelper.getMutationCalls(unsplit);
+		assertFalse(calls.isEmpty());
+		assertEquals(calls, FixtureRunHelper.getMutationCalls(split));
+
+		final List<String> positionStats = FixtureRunHelper.getStatistics(unsplit, "nPos");
+		assertFalse(positionStats.isEmpty());
+		assertEquals(positionStats, FixtureRunHelper.getStatistics(split, "nPos"));
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class ExcludedRegionReadSkippingTest {
+
+	/**
+	 * Reads that only cover excluded positions are processed unless
+	 * -skipReadsInExcludedRegions is set; skipping them should not change
+	 * mutation calls.
+	 */
+	@Test
+	public void testSkippedSameCalls() throws Exception {
+		final Path dir = Files.createTempDirectory("excluded_region_test_");
+		try {
+			final Path bed = dir.resolve("excluded.bed");
+			Files.write(bed, Collections.singletonList("chrIII\t3993700\t3994700"));
+			final List<String> processed = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-verbosity", "2", "-excludeRegionsInBED", bed.toString());
+			final List<String> skipped = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-verbosity", "2", "-excludeRegionsInBED", bed.toString(),
+				"-skipReadsInExcludedRegions", "true");
+
+			assertEquals(0, FixtureRunHelper.getStatisticTotal(processed, "nReadsSkippedInExcludedRegions"));
+			assertTrue(FixtureRunHelper.getStatisticTotal(skipped, "nReadsSkippedInExcludedRegions") > 0);
+
+			final List<String> calls = FixtureRunHelper.getMutationCalls(processed);
+			assertFalse(calls.isEmpty());
+			assertEquals(calls, FixtureRunHelper.getMutationCalls(skipped));
+		} finally {
+			for (File f: dir.toFile().listFiles()) {
+				f.delete();
+			}
+			dir.toFile().delete();
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import com.beust.jcommander.JCommander;
+
+import contrib.net.sf.samtools.AlignmentBlock;
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMRecord;
+import uk.org.cinquin.mutinack.Mutinack;
+import uk.org.cinquin.mutinack.Parameters;
+import uk.org.cinquin.mutinack.misc_util.StaticStuffToAvoidMutating;
+
+/**
+ * Runs a complete in-process analysis of the BAM files of functional test
+ * derived_from_test_20, restricted to the chrIII region that test looks at, so that
+ * the output of different processing modes can be compared to each other. The
+ * reference sequence is synthesized from the read alignments (it matches the aligned
+ * bases of every chrIII read and is 'A' elsewhere), so no genome needs to be
+ * installed for the comparison to run.
+ */
+public class FixtureRunHelper {
+
+	static final String FIXTURE_DIR = "functional_tests/test_duplex_grouping/derived_from_test_20/";
+
+	static final List<String> INPUT_BAMS = Arrays.asList(
+		FIXTURE_DIR + "alignment-1/test1.bwa_mem_unpaired_no_adapt.map.sorted.bam",
+		FIXTURE_DIR + "alignment-2/test1.bwa_mem_unpaired_no_adapt.map.sorted.bam");
+
+	private static final String CONTIG = "chrIII";
+	private static final int LINE_LENGTH = 50;
+
+	private static Path referenceDir;
+
+	static synchronized String getReferenceGenome() throws IOException {
+		if (referenceDir != null) {
+			return referenceDir.resolve("ref.fa").toString();
+		}
+		final byte[] sequence;
+		try (SAMFileReader reader = new SAMFileReader(new File(INPUT_BAMS.get(0)))) {
+			sequence = new byte[reader.getFileHeader().getSequence(CONTIG).getSequenceLength()];
+		}
+		Arrays.fill(sequence, (byte) 'A');
+		for (String bam: INPUT_BAMS) {
+			try (SAMFileReader reader = new SAMFileReader(new File(bam))) {
+				for (SAMRecord rec: reader) {
+					if (rec.getReadUnmappedFlag() || !CONTIG.equals(rec.getReferenceName())) {
+						continue;
+					}
+					final byte[] bases = rec.getReadBases();
+					for (AlignmentBlock block: rec.getAlignmentBlocks()) {
+						System.arraycopy(bases, block.getReadStart() - 1, sequence,
+							block.getReferenceStart() - 1, block.getLength());
+					}
+				}
+			}
+		}
+
+		final Path dir = Files.createTempDirectory("fixture_reference_");
+		final Path fasta = dir.resolve("ref.fa");
+		try (BufferedWriter writer = Files.newBufferedWriter(fasta, StandardCharsets.US_ASCII)) {
+			writer.write('>' + CONTIG + '\n');
+			for (int i = 0; i < sequence.length; i += LINE_LENGTH) {
+				writer.write(new String(sequence, i, Math.min(LINE_LENGTH, sequence.length - i),
+					StandardCharsets.US_ASCII));
+				writer.write('\n');
+			}
+		}
+		Files.write(dir.resolve("ref.fa.fai"), (CONTIG + '\t' + sequence.length + '\t' +
+			(CONTIG.length() + 2) + '\t' + LINE_LENGTH + '\t' + (LINE_LENGTH + 1) + '\n').
+			getBytes(StandardCharsets.US_ASCII));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(dir.toFile())));
+		referenceDir = dir;
+		return fasta.toString();
+	}
+
+	/**
+	 * Analyzes the fixture with the given extra command-line arguments.
+	 * @return lines of output that do not depend on timing, memory usage or the
+	 * parameters themselves (i.e. mutation calls and analysis statistics)
+	 */
+	static List<String> run(String... extraArgs) throws IOException, InterruptedException {
+		final Path outputDir = Files.createTempDirectory("fixture_run_");
+		try {
+			final List<String> args = new ArrayList<>(Arrays.asList(
+				"-referenceGenome", getReferenceGenome(),
+				"-referenceGenomeShortName", "ce10",
+				"-contigNamesToProcess", CONTIG,
+				"-startAtPosition", CONTIG + ":3,993,790",
+				"-stopAtPosition", CONTIG + ":3,996,544",
+				"-forceOutputAtPositionsFile", FIXTURE_DIR + "test_genome_locations.txt",
+				"-auxOutputFileBaseName", outputDir.toString() + '/',
+				"-outputToDatabaseURL", "",
+				"-randomSeed", "0",
+				"-noStatusMessages",
+				"-sampleName", "test",
+				"-sampleName", "control"));
+			for (String bam: INPUT_BAMS) {
+				args.add("-inputReads");
+				args.add(bam);
+			}
+			args.addAll(Arrays.asList(extraArgs));
+
+			final Parameters param = new Parameters();
+			JCommander commander = new JCommander();
+			commander.setAcceptUnknownOptions(false);
+			commander.setAllowAbbreviatedOptions(false);
+			commander.addObject(param);
+			commander.parse(args.toArray(new String[0]));
+			param.automaticAdjustments();
+			param.validate();
+
+			StaticStuffToAvoidMutating.instantiateThreadPools(64);
+			try (ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+					ByteArrayOutputStream errStream = new ByteArrayOutputStream()) {
+				try (PrintStream outPS = new PrintStream(outStream);
+						PrintStream errPS = new PrintStream(errStream)) {
+					Mutinack.realMain1(param, outPS, errPS);
+				}
+				final List<String> result = new ArrayList<>();
+				boolean headerSeen = false;
+				for (String line: outStream.toString().split("\n")) {
+					headerSeen |= line.startsWith("Notes\tLocation");
+					if (headerSeen && !line.startsWith("Processed at ") && !line.contains(" init = ")) {
+						result.add(line);
+					}
+				}
+				return result;
+			}
+		} finally {
+			FileUtils.deleteQuietly(outputDir.toFile());
+		}
+	}
+
+	/**
+	 * @return Mutation calls in sorted order; the order in which they are output depends
+	 * on the order in which contig chunks complete
+	 */
+	static List<String> getMutationCalls(List<String> output) {
+		final List<String> result = new ArrayList<>();
+		for (String line: output) {
+			if (line.startsWith("|_")) {
+				result.add(line);
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return The output of all statistics whose name starts with prefix; statistics
+	 * that are broken down by contig take up several lines, up to the next blank line
+	 */
+	static List<String> getStatistics(List<String> output, String prefix) {
+		final List<String> result = new ArrayList<>();
+		boolean inStatistic = false;
+		for (String line: output) {
+			if (line.isEmpty()) {
+				inStatistic = false;
+			} else if (inStatistic) {
+				result.add(line);
+			} else if (line.startsWith(prefix)) {
+				result.add(line);
+				inStatistic = line.contains(": All: ");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Output with all lines that belong to statistics whose name starts with
+	 * one of the given prefixes left out
+	 */
+	static List<String> withoutStatistics(List<String> output, String... prefixes) {
+		final List<String> result = new ArrayList<>();
+		boolean inStatistic = false;
+		for (String line: output) {
+			if (line.isEmpty()) {
+				inStatistic = false;
+			} else if (inStatistic) {
+				continue;
+			} else {
+				for (String prefix: prefixes) {
+					if (line.startsWith(prefix)) {
+						inStatistic = true;
+						break;
+					}
+				}
+				if (inStatistic) {
+					inStatistic = line.contains(": All: ");
+					continue;
+				}
+			}
+			result.add(line);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Output (normally obtained with -verbosity 1) without the lines that may
+	 * differ between runs that are expected to give the same results: mutation calls,
+	 * which are output in an order that depends on chunk completion, disagreement maps,
+	 * which are output in an order that depends on hashing, prefetch queue occupancy,
+	 * and the barcode cache, which is shared by all runs in the JVM; statistics
+	 * whose name starts with one of extraPrefixes are also left out
+	 */
+	static List<String> withoutRunDependentOutput(List<String> output, String... extraPrefixes) {
+		final List<String> prefixes = new ArrayList<>(Arrays.asList("|_", "nReadsInPrefetchQueue",
+			"disagMutConsensus", "disagWtConsensus", "Top 100 barcode hits"));
+		prefixes.addAll(Arrays.asList(extraPrefixes));
+		return withoutStatistics(output, prefixes.toArray(new String[0]));
+	}
+
+	/**
+	 * @return Sum over all samples and parameter sets of the totals of the given
+	 * statistic, which must be a counter, or of its number of entries if it is a
+	 * histogram
+	 */
+	static long getStatisticTotal(List<String> output, String name) {
+		long total = 0;
+		boolean found = false;
+		for (String line: getStatistics(output, name + ": ")) {
+			final String value;
+			int index;
+			if ((index = line.lastIndexOf("; total: ")) >= 0) {
+				value = line.substring(index + "; total: ".length());
+			} else if ((index = line.lastIndexOf("; nEntries = ")) >= 0) {
+				final String s = line.substring(index + "; nEntries = ".length());
+				value = s.substring(0, s.indexOf(';'));
+			} else {
+				throw new IllegalArgumentException("Not a counter or histogram: " + line);
+			}
+			total += Long.parseLong(value.replace(",", ""));
+			found = true;
+		}
+		if (!found) {
+			throw new IllegalArgumentException("Statistic " + name + " not found in output");
+		}
+		return total;
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class IncrementalDuplexGroupingTest {
+
+	/**
+	 * With short processing steps, duplexes are carried over many times, including
+	 * duplexes whose reads were grouped before their mates had been loaded. Mutation
+	 * calls and all duplex statistics should be the same as when all reads are
+	 * regrouped at each step. The only expected difference is in duplexGroupingDepth,
+	 * which gets an entry for each merge of duplexes with mismatching barcodes:
+	 * merges between duplexes that did not change since the previous step are not
+	 * performed again, so there are fewer of them.
+	 */
+	@Test
+	public void testIncrementalSameAsFullRegrouping() throws Exception {
+		final List<String> full = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-processingChunk", "20", "-verbosity", "1");
+		final List<String> incremental = FixtureRunHelper.run("-maxInsertSize", "300",
+			"-processingChunk", "20", "-verbosity", "1",
+			"-incrementalDuplexGrouping", "true");
+
+		final List<String> calls = FixtureRunHelper.getMutationCalls(full);
+		assertFalse(calls.isEmpty());
+		assertEquals(calls, FixtureRunHelper.getMutationCalls(incremental));
+
+		final List<String> duplexStats = FixtureRunHelper.getStatistics(full, "nPosDuplex");
+		assertFalse(duplexStats.isEmpty());
+		assertEquals(duplexStats, FixtureRunHelper.getStatistics(incremental, "nPosDuplex"));
+		assertEquals(FixtureRunHelper.withoutRunDependentOutput(full, "duplexGroupingDepth"),
+			FixtureRunHelper.withoutRunDependentOutput(incremental, "duplexGroupingDepth"));
+
+		final long nIncrementalMerges = FixtureRunHelper.getStatisticTotal(incremental, "duplexGroupingDepth");
+		assertTrue(nIncrementalMerges > 0);
+		assertTrue(nIncrementalMerges < FixtureRunHelper.getStatisticTotal(full, "duplexGroupingDepth"));
+	}
+}
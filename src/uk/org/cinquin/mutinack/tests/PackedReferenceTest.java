@@ -0,0 +1,87 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import contrib.net.sf.picard.reference.ReferenceSequence;
+import contrib.net.sf.picard.reference.ReferenceSequenceFile;
+import contrib.net.sf.picard.reference.ReferenceSequenceFileFactory;
+import uk.org.cinquin.mutinack.sequence_IO.PackedReference;
+
+@SuppressWarnings("static-method")
+public class PackedReferenceTest {
+
+	@Test
+	public void testSameBasesAsFasta() throws IOException {
+		final File fasta = File.createTempFile("PackedReferenceTest", ".fa");
+		fasta.deleteOnExit();
+		new File(fasta.getPath() + PackedReference.CACHE_EXTENSION).deleteOnExit();
+		final Random random = new Random(0);
+		final String alphabet = "ACGTacgtNNnRY";
+		try (FileWriter writer = new FileWriter(fasta)) {
+			for (int contig = 0; contig < 3; contig++) {
+				writer.write(">chr" + contig + " description\n");
+				final int length = 1 + random.nextInt(10_000);
+				for (int i = 0; i < length; i++) {
+					//Runs of identical bases, to exercise run encoding of Ns
+					final char c = alphabet.charAt(random.nextInt(alphabet.length()));
+					final int runLength = 1 + random.nextInt(20);
+					for (int j = 0; j < runLength && i < length; j++, i++) {
+						writer.write(c);
+						if (i % 60 == 59) {
+							writer.write('\n');
+						}
+					}
+					i--;
+				}
+				writer.write('\n');
+			}
+		}
+
+		final PackedReference packed = PackedReference.open(fasta.getPath());
+		final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta);
+		ReferenceSequence ref;
+		int nContigs = 0;
+		while ((ref = refFile.nextSequence()) != null) {
+			final ReferenceSequence packedRef = packed.getSequence(ref.getName());
+			assertEquals(ref.length(), packedRef.length());
+			assertEquals(ref.getContigIndex(), packedRef.getContigIndex());
+			assertArrayEquals(ref.getBases(), packedRef.getBases());
+			for (int i = 0; i < ref.length(); i += 7) {
+				assertEquals(ref.getBase(i), packedRef.getBase(i));
+				final int end = Math.min(ref.length(), i + 13);
+				assertArrayEquals(ref.getBases(i, end), packedRef.getBases(i, end));
+			}
+			nContigs++;
+		}
+		assertEquals(3, nContigs);
+
+		//Second opening reads the cached file
+		assertArrayEquals(packed.getSequence("chr1").getBases(),
+			PackedReference.open(fasta.getPath()).getSequence("chr1").getBases());
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import contrib.net.sf.samtools.SAMFileHeader;
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMFileWriter;
+import contrib.net.sf.samtools.SAMFileWriterFactory;
+import contrib.net.sf.samtools.SAMRecord;
+import contrib.net.sf.samtools.SAMRecordIterator;
+import contrib.net.sf.samtools.SAMSequenceDictionary;
+import contrib.net.sf.samtools.SAMSequenceRecord;
+import uk.org.cinquin.mutinack.sequence_IO.ReadNameIndex;
+
+@SuppressWarnings("static-method")
+public class ReadNameIndexTest {
+
+	private static final int MAX_INSERT_SIZE = 1_000;
+	private static final int READ_LENGTH = 20;
+
+	private static File dir;
+	private static File bam;
+
+	@BeforeClass
+	public static void writeBAM() throws IOException {
+		dir = Files.createTempDirectory("read_name_index_test_").toFile();
+		bam = new File(dir, "test.bam");
+		final SAMFileHeader header = new SAMFileHeader();
+		header.setSequenceDictionary(new SAMSequenceDictionary(Arrays.asList(
+			new SAMSequenceRecord("chr1", 10_000), new SAMSequenceRecord("chr2", 10_000))));
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).
+			makeBAMWriter(header, false, bam);
+		try {
+			writer.addAlignment(record(header, "other", true, 0, "chr1", 100, "chr1", 250));
+			writer.addAlignment(record(header, "other", false, 0, "chr1", 250, "chr1", 100));
+			//Secondary alignment with a nearby mate, which on its own would not be indexed,
+			//and which comes before the distant-mate primary alignment
+			writer.addAlignment(record(header, "distant", true, 0x100, "chr1", 990, "chr1", 1_100));
+			writer.addAlignment(record(header, "distant", true, 0, "chr1", 1_000, "chr2", 500));
+			writer.addAlignment(record(header, "distant", false, 0, "chr2", 500, "chr1", 1_000));
+			writer.addAlignment(record(header, "near", true, 0, "chr1", 2_000, "chr1", 2_100));
+			writer.addAlignment(record(header, "near", false, 0, "chr1", 2_100, "chr1", 2_000));
+			writer.addAlignment(record(header, "far", true, 0, "chr1", 3_000, "chr1", 8_000));
+			writer.addAlignment(record(header, "far", false, 0, "chr1", 8_000, "chr1", 3_000));
+		} finally {
+			writer.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteBAM() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	private static SAMRecord record(SAMFileHeader header, String name, boolean firstOfPair,
+			int extraFlags, String contig, int start, String mateContig, int mateStart) {
+		final SAMRecord record = new SAMRecord(header);
+		record.setReadName(name);
+		record.setFlags(0x1 | (firstOfPair ? 0x40 : 0x80) | extraFlags);
+		record.setReferenceName(contig);
+		record.setAlignmentStart(start);
+		record.setMappingQuality(60);
+		record.setCigarString(READ_LENGTH + "M");
+		final char[] bases = new char[READ_LENGTH];
+		Arrays.fill(bases, 'A');
+		record.setReadString(new String(bases));
+		Arrays.fill(bases, 'F');
+		record.setBaseQualityString(new String(bases));
+		record.setMateReferenceName(mateContig);
+		record.setMateAlignmentStart(mateStart);
+		if (contig.equals(mateContig)) {
+			final int insertSize = Math.max(start, mateStart) + READ_LENGTH - Math.min(start, mateStart);
+			record.setInferredInsertSize(start <= mateStart ? insertSize : -insertSize);
+		}
+		return record;
+	}
+
+	/**
+	 * Same as the scan performed by Mutinack.getRead when the read is not indexed
+	 */
+	private static @Nullable SAMRecord scan(SAMFileReader reader, String readName,
+			boolean firstOfPair, String contig, int windowStart, int windowEnd,
+			int avoidAlignmentStart0Based) {
+		try (SAMRecordIterator it = reader.queryOverlapping(contig, Math.max(windowStart, 1), windowEnd)) {
+			while (it.hasNext()) {
+				final SAMRecord record = it.next();
+				if (record.getReadName().equals(readName) && record.getFirstOfPairFlag() == firstOfPair &&
+						record.getAlignmentStart() - 1 != avoidAlignmentStart0Based) {
+					return record;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static void checkSameAsScan(ReadNameIndex index, SAMFileReader reader,
+			String readName, boolean firstOfPair, String contig, int position,
+			int avoidAlignmentStart0Based) {
+		final int windowStart = position - 50, windowEnd = position + 50;
+		final long[] offsets = index.getCandidateOffsets(readName, firstOfPair);
+		assertTrue(offsets.length > 0);
+		final SAMRecord expected = scan(reader, readName, firstOfPair, contig, windowStart,
+			windowEnd, avoidAlignmentStart0Based);
+		final SAMRecord found = ReadNameIndex.getRecord(reader, offsets, readName, firstOfPair,
+			contig, windowStart, windowEnd, avoidAlignmentStart0Based);
+		assertEquals(expected == null ? null : expected.getSAMString(),
+			found == null ? null : found.getSAMString());
+	}
+
+	@Test
+	public void testLookupsMatchScan() {
+		final ReadNameIndex index = ReadNameIndex.getIndex(bam, MAX_INSERT_SIZE);
+		try (SAMFileReader reader = new SAMFileReader(bam)) {
+			//Both alignments of the first read of "distant" are indexed, the secondary one
+			//because the same read has a distant mate
+			assertEquals(2, index.getCandidateOffsets("distant", true).length);
+			final SAMRecord secondary = ReadNameIndex.getRecord(reader,
+				index.getCandidateOffsets("distant", true), "distant", true, "chr1", 950, 1_050, -1);
+			assertNotNull(secondary);
+			assertEquals(990, secondary.getAlignmentStart());
+
+			final List<Object[]> lookups = Arrays.asList(
+				new Object[] {"distant", true, "chr1", 1_000, -1},
+				new Object[] {"distant", true, "chr1", 1_000, 989},
+				new Object[] {"distant", true, "chr1", 1_000, 999},
+				new Object[] {"distant", true, "chr1", 5_000, -1},
+				new Object[] {"distant", true, "chr2", 1_000, -1},
+				new Object[] {"distant", false, "chr2", 500, -1},
+				new Object[] {"distant", false, "chr2", 500, 499},
+				new Object[] {"far", true, "chr1", 3_000, -1},
+				new Object[] {"far", false, "chr1", 8_010, -1},
+				new Object[] {"far", false, "chr1", 3_000, -1});
+			for (Object[] l: lookups) {
+				checkSameAsScan(index, reader, (String) l[0], (Boolean) l[1], (String) l[2],
+					(Integer) l[3], (Integer) l[4]);
+			}
+
+			//Reads without a distant mate are not indexed, and need to be scanned for
+			assertEquals(0, index.getCandidateOffsets("near", true).length);
+			assertEquals(0, index.getCandidateOffsets("other", false).length);
+		}
+	}
+}
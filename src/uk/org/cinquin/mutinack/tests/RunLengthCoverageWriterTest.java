@@ -0,0 +1,225 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.ContigNumbers;
+import uk.org.cinquin.mutinack.features.PosByPosNumbersPB.GenomeNumbers;
+import uk.org.cinquin.mutinack.output.RunLengthCoverageWriter;
+
+@SuppressWarnings("static-method")
+public class RunLengthCoverageWriterTest {
+
+	private static final List<String> contigNames = Arrays.asList("chrA", "chrB", "chrC");
+
+	private static Map<String, Integer> getContigSizes() {
+		final Map<String, Integer> contigSizes = new LinkedHashMap<>();
+		contigSizes.put("chrA", 5_000);
+		contigSizes.put("chrB", 3_001);
+		contigSizes.put("chrC", 1);
+		return contigSizes;
+	}
+
+	@Test
+	public void testSameAsArrays() throws Exception {
+		final Map<String, Integer> contigSizes = getContigSizes();
+		final File bedGraph = File.createTempFile("RunLengthCoverageWriterTest", ".bedGraph");
+		final File proto = File.createTempFile("RunLengthCoverageWriterTest", ".proto");
+		bedGraph.deleteOnExit();
+		proto.deleteOnExit();
+		final GenomeNumbers header = GenomeNumbers.newBuilder().setSampleName("sample").
+			setGeneratingProgramVersion("version").setGeneratingProgramArgs("args").build();
+		final RunLengthCoverageWriter writer = new RunLengthCoverageWriter(contigNames, contigSizes,
+			bedGraph.getPath(), header, proto.getPath(), 7);
+
+		final Random random = new Random(0);
+		final int[][] expected = new int[contigNames.size()][];
+		final List<int[]> chunks = new ArrayList<>();
+		for (int contig = 0; contig < contigNames.size(); contig++) {
+			final int size = contigSizes.get(contigNames.get(contig));
+			expected[contig] = new int[size];
+			int value = 0;
+			for (int i = 0; i < size; i++) {
+				if (random.nextInt(10) == 0) {
+					final int r = random.nextInt(10);
+					//Include values that take more than one byte as varints
+					value = r == 0 ? 300 + random.nextInt(100_000) : r < 3 ? 0 : random.nextInt(5);
+				}
+				expected[contig][i] = value;
+			}
+			for (int start = 0; start < size;) {
+				final int end = Math.min(size, start + 1 + random.nextInt(400));
+				chunks.add(new int[] {contig, start, end});
+				start = end;
+			}
+		}
+		//Positions that are never reported have coverage 0
+		for (int i = 0; i < 100; i++) {
+			expected[0][random.nextInt(expected[0].length)] = 0;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int[] chunk: chunks) {
+				futures.add(executor.submit(() -> {
+					for (int position = chunk[1]; position < chunk[2]; position++) {
+						final int value = expected[chunk[0]][position];
+						if (value != 0 || position % 3 == 0) {
+							writer.add(chunk[0], position, value);
+						}
+					}
+				}));
+			}
+			for (Future<?> f: futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		writer.close();
+
+		final GenomeNumbers genomeNumbers = GenomeNumbers.parseFrom(Files.readAllBytes(proto.toPath()));
+		assertEquals("sample", genomeNumbers.getSampleName());
+		assertEquals("args", genomeNumbers.getGeneratingProgramArgs());
+		assertEquals(contigNames.size(), genomeNumbers.getContigNumbersCount());
+		for (int contig = 0; contig < contigNames.size(); contig++) {
+			final ContigNumbers contigNumbers = genomeNumbers.getContigNumbers(contig);
+			assertEquals(contigNames.get(contig), contigNumbers.getContigName());
+			assertArrayEquals(expected[contig], getNumbers(contigNumbers));
+		}
+
+		final int[][] fromBedGraph = new int[contigNames.size()][];
+		for (int contig = 0; contig < contigNames.size(); contig++) {
+			fromBedGraph[contig] = new int[expected[contig].length];
+		}
+		String previousContig = null;
+		int previousEnd = -1, previousValue = 0;
+		for (String line: Files.readAllLines(bedGraph.toPath())) {
+			final String[] fields = line.split("\t");
+			final int contig = contigNames.indexOf(fields[0]);
+			final int start = Integer.parseInt(fields[1]);
+			final int end = Integer.parseInt(fields[2]);
+			final int value = Integer.parseInt(fields[3]);
+			assertFalse(value == 0);
+			//Adjacent runs with the same value are merged
+			assertFalse(fields[0].equals(previousContig) && start == previousEnd && value == previousValue);
+			Arrays.fill(fromBedGraph[contig], start, end, value);
+			previousContig = fields[0];
+			previousEnd = end;
+			previousValue = value;
+		}
+		for (int contig = 0; contig < contigNames.size(); contig++) {
+			assertArrayEquals(expected[contig], fromBedGraph[contig]);
+		}
+	}
+
+	private static int[] getNumbers(ContigNumbers contigNumbers) {
+		final int[] numbers = new int[contigNumbers.getNumbersCount()];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = contigNumbers.getNumbers(i);
+		}
+		return numbers;
+	}
+
+	/**
+	 * Values reported more than once for a position are summed, as they were when
+	 * they were accumulated in per-position arrays
+	 */
+	@Test
+	public void testRepeatedPositions() throws IOException {
+		final File proto = File.createTempFile("RunLengthCoverageWriterTest", ".proto");
+		proto.deleteOnExit();
+		final GenomeNumbers header = GenomeNumbers.newBuilder().setSampleName("sample").
+			setGeneratingProgramVersion("version").setGeneratingProgramArgs("args").build();
+		final RunLengthCoverageWriter writer = new RunLengthCoverageWriter(contigNames, getContigSizes(),
+			null, header, proto.getPath(), 2);
+		final int[] expected = new int[getContigSizes().get("chrB")];
+		final Random random = new Random(0);
+		for (int i = 0; i < 2_000; i++) {
+			final int start = random.nextInt(expected.length - 50);
+			final int value = random.nextInt(4);
+			for (int position = start; position < start + random.nextInt(50); position++) {
+				writer.add(1, position, value);
+				expected[position] += value;
+			}
+		}
+		writer.add(1, 10, 1);
+		writer.add(1, 10, 2);
+		expected[10] += 3;
+		writer.close();
+
+		final GenomeNumbers genomeNumbers = GenomeNumbers.parseFrom(Files.readAllBytes(proto.toPath()));
+		assertEquals("chrB", genomeNumbers.getContigNumbers(1).getContigName());
+		assertArrayEquals(expected, getNumbers(genomeNumbers.getContigNumbers(1)));
+	}
+
+	/**
+	 * All contigs with a size are included in protobuf output, as they were when
+	 * output was produced from per-position arrays
+	 */
+	@Test
+	public void testContigsWithoutCoverage() throws IOException {
+		final File proto = File.createTempFile("RunLengthCoverageWriterTest", ".proto");
+		proto.deleteOnExit();
+		final Map<String, Integer> contigSizes = getContigSizes();
+		contigSizes.put("chrD", 20);
+		final GenomeNumbers header = GenomeNumbers.newBuilder().setSampleName("sample").
+			setGeneratingProgramVersion("version").setGeneratingProgramArgs("args").build();
+		try (RunLengthCoverageWriter writer = new RunLengthCoverageWriter(Arrays.asList("chrB", "chrA"),
+				contigSizes, null, header, proto.getPath())) {
+			writer.add(0, 2, 7);
+		}
+		final GenomeNumbers genomeNumbers = GenomeNumbers.parseFrom(Files.readAllBytes(proto.toPath()));
+		final List<String> names = new ArrayList<>();
+		for (ContigNumbers contigNumbers: genomeNumbers.getContigNumbersList()) {
+			names.add(contigNumbers.getContigName());
+			assertEquals((int) contigSizes.get(contigNumbers.getContigName()),
+				contigNumbers.getNumbersCount());
+		}
+		assertEquals(Arrays.asList("chrB", "chrA", "chrC", "chrD"), names);
+		assertEquals(7, genomeNumbers.getContigNumbers(0).getNumbers(2));
+		assertEquals(7, Arrays.stream(getNumbers(genomeNumbers.getContigNumbers(0))).sum());
+		assertEquals(0, Arrays.stream(getNumbers(genomeNumbers.getContigNumbers(3))).sum());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutOfBounds() throws IOException {
+		try (RunLengthCoverageWriter writer = new RunLengthCoverageWriter(contigNames, getContigSizes(),
+				null, null, null)) {
+			writer.add(1, 3_001, 1);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("static-method")
+public class SampleReadAheadTest {
+
+	/**
+	 * With sample read-ahead, processing steps are lengthened up to the position that
+	 * both samples have decoded, which depends on thread timing; results should be the
+	 * same as with short fixed-length steps, including when the region is split into
+	 * chunks that run concurrently. The control sample has few reads in the analyzed
+	 * region, so steps can only be lengthened once it has been completely decoded.
+	 */
+	@Test
+	public void testReadAheadSameAsFixedSteps() throws Exception {
+		for (String parallelizationFactor: new String[] {"1", "4"}) {
+			final List<String> fixedSteps = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-processingChunk", "20", "-parallelizationFactor", parallelizationFactor,
+				"-verbosity", "1");
+			final List<String> readAhead = FixtureRunHelper.run("-maxInsertSize", "300",
+				"-processingChunk", "20", "-parallelizationFactor", parallelizationFactor,
+				"-verbosity", "1", "-sampleReadAheadRecords", "200");
+
+			assertEquals(0, FixtureRunHelper.getStatisticTotal(fixedSteps, "nProcessingStepsLengthened"));
+			assertTrue(FixtureRunHelper.getStatisticTotal(readAhead, "nProcessingStepsLengthened") > 0);
+
+			final List<String> calls = FixtureRunHelper.getMutationCalls(fixedSteps);
+			assertFalse(calls.isEmpty());
+			assertEquals(calls, FixtureRunHelper.getMutationCalls(readAhead));
+			assertEquals(FixtureRunHelper.withoutRunDependentOutput(fixedSteps, "nProcessingStepsLengthened"),
+				FixtureRunHelper.withoutRunDependentOutput(readAhead, "nProcessingStepsLengthened"));
+		}
+	}
+}
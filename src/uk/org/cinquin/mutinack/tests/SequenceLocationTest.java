@@ -0,0 +1,102 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.org.cinquin.mutinack.SequenceLocation;
+import uk.org.cinquin.mutinack.misc_util.collections.LocationInterningSet;
+
+public class SequenceLocationTest {
+
+	private static final int[] positions = {Integer.MIN_VALUE, -1, 0, 1, 1_000, 15_072_434,
+		Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+
+	@SuppressWarnings("static-method")
+	@Test
+	public void testPackRoundTrip() {
+		for (int contigIndex: new int [] {0, 1, 6, 1_000_000}) {
+			for (int position: positions) {
+				for (boolean plusHalf: new boolean [] {false, true}) {
+					long packed = SequenceLocation.pack(contigIndex, position, plusHalf);
+					assertEquals(contigIndex, SequenceLocation.unpackContigIndex(packed));
+					assertEquals(position, SequenceLocation.unpackPosition(packed));
+					assertEquals(plusHalf, SequenceLocation.unpackPlusHalf(packed));
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("static-method")
+	@Test
+	public void testPackPreservesOrder() {
+		List<SequenceLocation> locations = new ArrayList<>();
+		for (int contigIndex = 0; contigIndex < 3; contigIndex++) {
+			for (int position: positions) {
+				locations.add(new SequenceLocation("ref", contigIndex, "contig" + contigIndex, position, false));
+				locations.add(new SequenceLocation("ref", contigIndex, "contig" + contigIndex, position, true));
+			}
+		}
+		Random random = new Random(0);
+		for (int i = 0; i < 1_000; i++) {
+			SequenceLocation l1 = locations.get(random.nextInt(locations.size()));
+			SequenceLocation l2 = locations.get(random.nextInt(locations.size()));
+			assertEquals(Integer.signum(l1.compareTo(l2)),
+				Integer.signum(Long.compare(l1.toLong(), l2.toLong())));
+		}
+		Collections.shuffle(locations, random);
+		Collections.sort(locations);
+		for (int i = 1; i < locations.size(); i++) {
+			assertEquals(-1, Long.compare(locations.get(i - 1).toLong(), locations.get(i).toLong()));
+		}
+	}
+
+	@SuppressWarnings("static-method")
+	@Test
+	public void testInterning() {
+		LocationInterningSet set = new LocationInterningSet(10);
+		SequenceLocation l1 = SequenceLocation.get(set, 2, "ref", "chrII", 12_345);
+		SequenceLocation l2 = SequenceLocation.get(set, 2, "ref", "chrII", 12_345, false);
+		SequenceLocation l3 = SequenceLocation.get(set, 2, "ref", "chrII", 12_345, true);
+		assertSame(l1, l2);
+		assertEquals(l1, new SequenceLocation("ref", 2, "chrII", 12_345));
+		assertEquals(new SequenceLocation("ref", 2, "chrII", 12_345, true), l3);
+		assertEquals(2, set.size());
+	}
+
+	@SuppressWarnings("static-method")
+	@Test
+	public void testInterningExistingObjects() {
+		LocationInterningSet set = new LocationInterningSet(10);
+		SequenceLocation l1 = new SequenceLocation("ref", 2, "chrII", 12_345);
+		assertSame(l1, set.intern(l1));
+		assertSame(l1, set.intern(new SequenceLocation("ref", 2, "chrII", 12_345)));
+		assertSame(l1, SequenceLocation.get(set, 2, "ref", "chrII", 12_345));
+		SequenceLocation l2 = new SequenceLocation("ref", 2, "chrII", 12_345, true);
+		assertSame(l2, set.intern(l2));
+		assertEquals(2, set.size());
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import contrib.net.sf.samtools.SAMFileHeader;
+import contrib.net.sf.samtools.SAMFileReader;
+import contrib.net.sf.samtools.SAMFileWriter;
+import contrib.net.sf.samtools.SAMFileWriterFactory;
+import contrib.net.sf.samtools.SAMRecord;
+import contrib.net.sf.samtools.SAMSequenceDictionary;
+import contrib.net.sf.samtools.SAMSequenceRecord;
+import contrib.net.sf.samtools.util.CloseableIterator;
+import uk.org.cinquin.mutinack.sequence_IO.UncompressedReadCache;
+
+@SuppressWarnings("static-method")
+public class UncompressedReadCacheTest {
+
+	private static File dir;
+	/**
+	 * Copy of a fixture BAM file, so the cache is not written to the source tree
+	 */
+	private static File bam;
+	/**
+	 * Enough records for several cache blocks per contig
+	 */
+	private static File largeBam;
+
+	@BeforeClass
+	public static void createBAMs() throws IOException {
+		dir = Files.createTempDirectory("uncompressed_read_cache_test_").toFile();
+		bam = new File(dir, "test.bam");
+		final String source = FixtureRunHelper.INPUT_BAMS.get(0);
+		FileUtils.copyFile(new File(source), bam);
+		FileUtils.copyFile(new File(source + ".bai"), new File(bam.getPath() + ".bai"));
+
+		largeBam = new File(dir, "large.bam");
+		final SAMFileHeader header = new SAMFileHeader();
+		header.setSequenceDictionary(new SAMSequenceDictionary(Arrays.asList(
+			new SAMSequenceRecord("chr1", 100_000), new SAMSequenceRecord("chr2", 100_000),
+			new SAMSequenceRecord("chr3", 100_000))));
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		final Random random = new Random(0);
+		final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).
+			makeBAMWriter(header, false, largeBam);
+		try {
+			for (int i = 0; i < 20_000; i++) {
+				final SAMRecord record = new SAMRecord(header);
+				record.setReadName("read" + i);
+				//No records on chr2
+				record.setReferenceIndex(random.nextBoolean() ? 0 : 2);
+				record.setAlignmentStart(1 + random.nextInt(99_000));
+				final int length = 1 + random.nextInt(300);
+				final char[] bases = new char[length];
+				Arrays.fill(bases, 'C');
+				record.setReadString(new String(bases));
+				Arrays.fill(bases, 'F');
+				record.setBaseQualityString(new String(bases));
+				record.setAttribute("XX", i);
+				if (i % 1_000 == 0) {
+					//Unmapped, but placed on a contig
+					record.setReadUnmappedFlag(true);
+					record.setCigarString("*");
+				} else {
+					record.setCigarString(length + "M");
+					record.setMappingQuality(1 + random.nextInt(60));
+				}
+				writer.addAlignment(record);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteBAM() {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	private static List<String> toStrings(CloseableIterator<SAMRecord> it) {
+		final List<String> result = new ArrayList<>();
+		try {
+			while (it.hasNext()) {
+				result.add(it.next().getSAMString());
+			}
+		} finally {
+			it.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Compare cache and BAM queries starting at the given positions, on all contigs
+	 * @return Number of non-empty query results
+	 */
+	private static int checkQueriesMatchBAM(File bamFile, int... starts) {
+		final UncompressedReadCache cache = UncompressedReadCache.getCache(bamFile);
+		assertTrue(new File(bamFile.getPath() + UncompressedReadCache.CACHE_EXTENSION).exists());
+		for (File f: dir.listFiles()) {
+			assertFalse(f.getName(), f.getName().endsWith(".tmp"));
+		}
+		int nNonEmpty = 0;
+		try (SAMFileReader reader = new SAMFileReader(bamFile)) {
+			final SAMFileHeader header = reader.getFileHeader();
+			for (int contig = 0; contig < header.getSequenceDictionary().size(); contig++) {
+				final String contigName = header.getSequence(contig).getSequenceName();
+				for (int start: starts) {
+					final List<String> expected = toStrings(reader.queryOverlapping(contigName, start, 0));
+					assertEquals(contigName + ':' + start, expected,
+						toStrings(cache.queryOverlapping(contig, start)));
+					if (!expected.isEmpty()) {
+						nNonEmpty++;
+					}
+				}
+			}
+		}
+		return nNonEmpty;
+	}
+
+	@Test
+	public void testQueriesMatchBAM() {
+		assertTrue(checkQueriesMatchBAM(bam, 1, 3_993_790, 3_995_500, 3_996_544, 20_000_000) > 2);
+	}
+
+	@Test
+	public void testMultiBlockQueriesMatchBAM() {
+		assertTrue(UncompressedReadCache.getCache(largeBam).getNBlocks() > 4);
+		assertTrue(checkQueriesMatchBAM(largeBam, 1, 5_000, 49_999, 50_000, 98_000, 99_500) > 8);
+	}
+
+	@Test
+	public void testUnsortedNotCacheable() throws IOException {
+		assertTrue(UncompressedReadCache.isCacheable(bam));
+		final File unsorted = new File(dir, "unsorted.bam");
+		try (SAMFileReader reader = new SAMFileReader(bam)) {
+			final SAMFileHeader header = reader.getFileHeader().clone();
+			header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+			final SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(header, true, unsorted);
+			try {
+				int n = 0;
+				for (SAMRecord record: reader) {
+					if (n++ == 100) {
+						break;
+					}
+					writer.addAlignment(record);
+				}
+			} finally {
+				writer.close();
+			}
+		}
+		assertFalse(UncompressedReadCache.isCacheable(unsorted));
+		try {
+			UncompressedReadCache.getCache(unsorted);
+			throw new AssertionError("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertFalse(new File(unsorted.getPath() + UncompressedReadCache.CACHE_EXTENSION).exists());
+		} finally {
+			FileUtils.deleteQuietly(unsorted);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Mutinack mutation detection program.
+ * Copyright (C) 2014-2016 Olivier Cinquin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.org.cinquin.mutinack.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import contrib.net.sf.picard.reference.ReferenceSequence;
+import uk.org.cinquin.mutinack.sequence_IO.WindowedReference;
+
+@SuppressWarnings("static-method")
+public class WindowedReferenceTest {
+
+	private static final int LINE_LENGTH = 50;
+
+	@Test
+	public void testSameBasesAsFasta() throws IOException {
+		final File fasta = File.createTempFile("WindowedReferenceTest", ".fa");
+		fasta.deleteOnExit();
+		final File index = new File(fasta.getPath() + ".fai");
+		index.deleteOnExit();
+		final Random random = new Random(0);
+		final List<byte[]> contigs = new ArrayList<>();
+		long offset = 0;
+		try (FileWriter writer = new FileWriter(fasta); FileWriter indexWriter = new FileWriter(index)) {
+			for (int contig = 0; contig < 3; contig++) {
+				final String header = ">chr" + contig + '\n';
+				writer.write(header);
+				offset += header.length();
+				final byte[] bases = new byte[1 + random.nextInt(2_000)];
+				for (int i = 0; i < bases.length; i++) {
+					bases[i] = (byte) "ACGTNacgt".charAt(random.nextInt(9));
+				}
+				contigs.add(bases);
+				indexWriter.write("chr" + contig + '\t' + bases.length + '\t' + offset + '\t' +
+					LINE_LENGTH + '\t' + (LINE_LENGTH + 1) + '\n');
+				for (int i = 0; i < bases.length; i += LINE_LENGTH) {
+					final String line = new String(bases, i, Math.min(LINE_LENGTH, bases.length - i)) + '\n';
+					writer.write(line);
+					offset += line.length();
+				}
+			}
+		}
+
+		final int maxWindows = 3;
+		final WindowedReference reference = new WindowedReference(fasta, 97, maxWindows);
+		IntStream.range(0, 20).parallel().forEach(repeat -> {
+			for (int contig = 0; contig < 3; contig++) {
+				final byte[] expected = contigs.get(contig);
+				final ReferenceSequence ref = reference.getSequence("chr" + contig);
+				assertEquals(expected.length, ref.length());
+				assertEquals(contig, ref.getContigIndex());
+				for (int i = 0; i < expected.length; i += 1 + repeat) {
+					assertEquals(expected[i], ref.getBase(i));
+					final int end = Math.min(expected.length, i + 150);
+					assertArrayEquals(Arrays.copyOfRange(expected, i, end), ref.getBases(i, end));
+				}
+				assertArrayEquals(expected, ref.getBases());
+			}
+		});
+		assertTrue(reference.getNLoadedWindows() <= maxWindows);
+	}
+}